@@ -1,12 +1,15 @@
 package repastInterSim.agent;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
 
 import repast.simphony.space.gis.Geography;
 import repastInterSim.environment.GISFunctions;
 import repastInterSim.environment.OD;
 import repastInterSim.environment.Road;
 import repastInterSim.exceptions.RoutingException;
+import repastInterSim.main.GlobalVars;
 import repastInterSim.main.SpaceBuilder;
 
 public class MobileAgent {
@@ -17,6 +20,7 @@ public class MobileAgent {
     protected OD origin; // The origin agent this agent starts at
     protected OD destination; // The destination agent that this agents is heading towards.
     protected Coordinate defaultDestination;
+    private double destMinX, destMinY, destMaxX, destMaxY; // Envelope of the destination geometry, cached since destinations do not move
     protected double bearing;
     protected double tau; // Agent reaction time
     
@@ -27,6 +31,12 @@ public class MobileAgent {
     	
     	// Initialise default destination as the actual destination
     	this.defaultDestination = d.getGeom().getCoordinate();
+    	
+    	Envelope dEnv = d.getGeom().getEnvelopeInternal();
+    	this.destMinX = dEnv.getMinX();
+    	this.destMinY = dEnv.getMinY();
+    	this.destMaxX = dEnv.getMaxX();
+    	this.destMaxY = dEnv.getMaxY();
     }
 	
 	public OD getOrigin() {
@@ -101,6 +111,52 @@ public class MobileAgent {
 		;
 	}
 	
+	/*
+	 * Get the radius of a circle centred on the agent's location that contains the agent's geometry.
+	 */
+	public double getBoundingRadius() {
+		return 0;
+	}
+	
+	/*
+	 * Check whether the agent is within the arrival distance of its destination or default destination.
+	 * 
+	 * Distances from the agent's location to the default destination and the destination's envelope are used to decide 
+	 * most cases. The agent's geometry is only compared to the destination geometry when the agent is close enough to the
+	 * destination that the shape of either matters.
+	 * 
+	 * @return boolean
+	 */
+	public boolean atDestination() {
+		double d = GlobalVars.MOBILE_AGENT_PARAMS.destinationArrivalDistance;
+		
+		double dx = this.maLoc.x - this.defaultDestination.x;
+		double dy = this.maLoc.y - this.defaultDestination.y;
+		if (dx*dx + dy*dy < d*d) {
+			return true;
+		}
+		
+		// Distance from the agent's location to the destination's envelope
+		dx = Math.max(0, Math.max(this.destMinX - this.maLoc.x, this.maLoc.x - this.destMaxX));
+		dy = Math.max(0, Math.max(this.destMinY - this.maLoc.y, this.maLoc.y - this.destMaxY));
+		double envDist2 = dx*dx + dy*dy;
+		
+		// The agent's geometry lies within the bounding radius of its location
+		double maxDist = d + getBoundingRadius();
+		if (envDist2 > maxDist*maxDist) {
+			return false;
+		}
+		
+		// For point destinations the envelope is the destination, and the agent's location is within its geometry
+		boolean pointDestination = (this.destMinX == this.destMaxX) && (this.destMinY == this.destMaxY);
+		if (pointDestination && (envDist2 <= d*d)) {
+			return true;
+		}
+		
+		Geometry mAGeom = GISFunctions.getAgentGeometry(SpaceBuilder.geography, this);
+		return this.destination.getGeom().isWithinDistance(mAGeom, d);
+	}
+	
 	public Coordinate getDefaultDestination() {
 		return this.defaultDestination;
 	}
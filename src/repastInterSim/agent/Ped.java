@@ -12,9 +12,10 @@ import java.util.logging.Logger;
 import org.geotools.coverage.grid.GridCoordinates2D;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
-import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
 import com.vividsolutions.jts.operation.distance.DistanceOp;
@@ -26,11 +27,14 @@ import repastInterSim.environment.OD;
 import repastInterSim.environment.GISFunctions;
 import repastInterSim.environment.Junction;
 import repastInterSim.environment.NetworkEdge;
+import repastInterSim.environment.ObstructionSegments;
 import repastInterSim.environment.PedObstruction;
+import repastInterSim.environment.RoadLink;
 import repastInterSim.environment.SpatialIndexManager;
 import repastInterSim.environment.Vector;
 import repastInterSim.main.GlobalVars;
 import repastInterSim.main.IO;
+import repastInterSim.main.SimulationMetrics;
 import repastInterSim.main.SpaceBuilder;
 import repastInterSim.pathfinding.PedPathFinder;
 
@@ -48,8 +52,16 @@ public class Ped extends MobileAgent {
     private double v0; // Desired walking speed of pedestrian agent
     private double a0; // Angle to the destination
     private double angres; // Angular resolution used when sampling the field of vision
+    private double[] fovOffsets, fovOffsetsSin, fovOffsetsCos; // Sampled field of vision angles relative to the ped's bearing, and their sines and cosines
+    private double[] fovAngles, fovSin, fovCos, fovCosToDest; // Sampled field of vision bearings, their sines and cosines and the cosine of the angle between each bearing and the destination
+    private double[] fovDistances, fovDisplacementDistances; // Distance to nearest collision and displacement distance at each sampled bearing
+    private int nFoVSamples; // Number of bearings sampled at the ped's current bearing
     private double[] v, newV; // Velocity and direction vectors
+    private double[] pendingA; // Acceleration calculated in the sense phase of the step, applied in the act phase
     private double rad; // Radius of circle representing pedestrian, metres
+    private double[] geomOffsets; // Coordinates of the pedestrian's circle relative to its centre, {x1, y1, x2, y2, ...}
+    private Polygon[] pedGeoms; // Circles reused to represent the pedestrian when GlobalVars.translatePedGeometry is true
+    private int nextPedGeom = 0;
     
     // Variables used in accumulator model of crossing choice
 	private double lambda; // Used to control effect of salience distance on contribution of option utility to activation
@@ -64,6 +76,7 @@ public class Ped extends MobileAgent {
     private boolean yieldAtCrossing = false; // Indicates whether the pedestrian agent is in a yield state or not, which determines how they move
     
     private String roadLinkFID = null;
+    private RoadLink crossingRoadLink = null; // The road link this ped is registered as crossing, null if the ped is not crossing
     
     private Double pHorizon; // Tactical planning horizon of ped agent in degrees
         
@@ -106,9 +119,10 @@ public class Ped extends MobileAgent {
         this.v =  v;
 
         this.tau  = 0.5/GlobalVars.tStep; // as per Moussaid 2011
-        this.dmax = 10/GlobalVars.spaceScale; // as per Moussaid 2011
+        this.dmax = GlobalVars.pedDmax/GlobalVars.spaceScale; // as per Moussaid 2011
         this.angres = (2*Math.PI) / (36 / 3); // Equivalent to 30 degrees
         this.theta = (2*Math.PI*75) / 360; // 75 degrees, as per Moussaid 2011
+        initFoVSamples();
         this.k = GlobalVars.interactionForceConstant;
         
         // Set the tactical planning horizon
@@ -130,6 +144,31 @@ public class Ped extends MobileAgent {
     @ScheduledMethod(start = 1, interval = 1, priority = 2)
     public void step() throws Exception {        
     	
+    	// When stepping in parallel SpaceBuilder.stepPedsParallel runs the step phases for all peds instead
+    	if (GlobalVars.parallelPedStepping) {
+    		return;
+    	}
+    	
+    	long start = SimulationMetrics.start();
+    	try {
+	    	Coordinate target = prepareStep();
+	    	if (target != null) {
+	    		walk(target);
+	    		pathFinder.step();
+	    	}
+	    	completeStep();
+    	}
+    	finally {
+    		SimulationMetrics.stop(SimulationMetrics.Metric.PED_STEP, start);
+    	}
+    }
+    
+    /*
+     * First phase of the step. Updates the tactical path if required and returns the coordinate the ped will walk towards 
+     * this tick, or null if the ped does not walk this tick.
+     */
+    public Coordinate prepareStep() {
+    	
     	this.stepsSinceReachedTarget++;
     	int nUpdates = 0;
     	
@@ -146,8 +185,7 @@ public class Ped extends MobileAgent {
         		pathFinder.updateTacticalPath();
         		nUpdates++;
         	}
-        	walk(pathFinder.getTacticalPath().getTargetCoordinate());
-        	pathFinder.step();
+        	return pathFinder.getTacticalPath().getTargetCoordinate();
     	}
    		
    		// If agent does intend to yield, agent walks as usual until the crossing point is reached
@@ -163,14 +201,19 @@ public class Ped extends MobileAgent {
         			pathFinder.updateTacticalPath();
         			nUpdates++;
             	}
-            	walk(pathFinder.getTacticalPath().getTargetCoordinate());
-            	pathFinder.step();
-
+            	return pathFinder.getTacticalPath().getTargetCoordinate();
         	}
         	else {
         		assert true;
         	}
     	}
+    	return null;
+    }
+    
+    /*
+     * Final phase of the step. Updates the target coordinate if it has been reached and removes the ped if it is stuck.
+     */
+    public void completeStep() {
    		
     	// Finally update the target coordinate if current target coordinate has been reached
     	if (this.maLoc.distance(this.pathFinder.getTacticalPath().getTargetCoordinate()) < 0.5) {
@@ -182,16 +225,42 @@ public class Ped extends MobileAgent {
     	if (this.stepsSinceReachedTarget>GlobalVars.stuckPedNSteps) {
     		String msg = "Removed stuck ped. Origin ID: " + this.origin.getFID() + " Dest ID: " + this.destination.getFID();
     		SpaceBuilder.removeMobileAgent(this, msg);
+    		return;
+    	}
+    	
+    	// Peds only move during their own step so this is where arrival at the destination is detected
+    	if (atDestination()) {
+    		SpaceBuilder.registerArrival(this);
     	}
     }
     
     public void walk(Coordinate dLoc) {
+    	senseWalk(dLoc);
+    	actWalk();
+    }
+    
+    /*
+     * Calculate the acceleration of the ped towards the input coordinate. Only reads the positions and velocities of 
+     * other peds and only writes to this ped, so can be run for all peds in parallel provided no ped moves.
+     * 
+     * @param Coordinate dLoc
+     * 		The coordinate the ped is walking towards
+     */
+    public void senseWalk(Coordinate dLoc) {
     	
     	// Update pedestrians knowledge of which direction the current destination is
         this.a0 = getBearingToDestinationCoord(dLoc);
+        
+        this.pendingA = accel();
+    }
+    
+    /*
+     * Update the velocity and position of the ped using the acceleration calculated by senseWalk.
+     */
+    public void actWalk() {
     	
         // Assume that velocity is updated instantly, and then position is update with new velocity since (walking takes time but adjusting velocity is quick)
-        double[] a = accel();
+        double[] a = this.pendingA;
         double[] dv = {a[0]*this.tau, a[1]*this.tau};
         this.newV  = Vector.sumV(v,dv);
         this.v = newV;
@@ -200,8 +269,7 @@ public class Ped extends MobileAgent {
         maLoc.y += this.v[1]*this.tau;
         
         // Now create new geometry at the location of the new centroid
-        Point pt = GISFunctions.pointGeometryFromCoordinate(maLoc);
-		Geometry pGeomNew = pt.buffer(this.rad);
+        Geometry pGeomNew = pedGeometryAt(maLoc);
         
         // Move the agent to the new location. This requires transforming the geometry 
         // back to the geometry used by the geography, which is what this function does.
@@ -214,6 +282,47 @@ public class Ped extends MobileAgent {
         setPedestrianBearingFromVelocity(this.v);
     }
    
+    /*
+     * Get the circle representing the pedestrian centred on the input coordinate.
+     * 
+     * If GlobalVars.translatePedGeometry is true the circle is made by translating the coordinates of a circle buffered once
+     * when the ped first moves, rather than buffering a point each step. Two polygons are used in turn so that the one 
+     * currently held by the geography is never modified.
+     * 
+     * @param Coordinate c
+     * 		The centre of the circle
+     */
+    public Geometry pedGeometryAt(Coordinate c) {
+    	if (!GlobalVars.translatePedGeometry) {
+    		Point pt = GISFunctions.pointGeometryFromCoordinate(c);
+    		return pt.buffer(this.rad);
+    	}
+    	
+    	if (this.pedGeoms == null) {
+    		Polygon template = (Polygon) GISFunctions.pointGeometryFromCoordinate(new Coordinate(0, 0)).buffer(this.rad);
+    		Coordinate[] templateCoords = template.getExteriorRing().getCoordinates();
+    		this.geomOffsets = new double[templateCoords.length*2];
+    		for (int i=0; i<templateCoords.length; i++) {
+    			this.geomOffsets[2*i] = templateCoords[i].x;
+    			this.geomOffsets[2*i+1] = templateCoords[i].y;
+    		}
+    		Polygon[] geoms = {template, (Polygon) template.clone()};
+    		this.pedGeoms = geoms;
+    	}
+    	
+    	Polygon g = this.pedGeoms[this.nextPedGeom];
+    	this.nextPedGeom = 1 - this.nextPedGeom;
+    	
+    	CoordinateSequence cs = g.getExteriorRing().getCoordinateSequence();
+    	for (int i=0; i<cs.size(); i++) {
+    		cs.setOrdinate(i, CoordinateSequence.X, c.x + this.geomOffsets[2*i]);
+    		cs.setOrdinate(i, CoordinateSequence.Y, c.y + this.geomOffsets[2*i+1]);
+    	}
+    	g.geometryChanged();
+    	
+    	return g;
+    }
+    
     /*
      * Calculate the acceleration of the pedestrian.
      * 
@@ -336,58 +445,119 @@ public class Ped extends MobileAgent {
     public double[] desiredVelocity(Iterable<Geometry> obstGeoms, Iterable<Ped> peds)  {
     	
     	// Get the desired direction of travel and minimum distance to collision in that direction
-    	Map<String, Double> desiredDirection = desiredDirection(obstGeoms, peds);
+    	int i = desiredDirectionIndex(obstGeoms, peds);
     	
     	// Calculate the desired speed, minimum between desired speed and speed required to avoid colliding
-    	double desiredSpeed = Math.min(this.v0, (desiredDirection.get("collision_distance")) / this.tau);
+    	double desiredSpeed = Math.min(this.v0, this.fovDistances[i] / this.tau);
     	
     	// Get the desired direction for the pedestrian and use to set velocity
-    	double alpha = desiredDirection.get("angle");
-    	double[] v = {desiredSpeed*Math.sin(alpha), desiredSpeed*Math.cos(alpha)};
+    	double[] v = {desiredSpeed*this.fovSin[i], desiredSpeed*this.fovCos[i]};
     	
     	return v;
     }
     
     // Wrapper function that identifies the chosen walking direction
     public Map<String, Double> desiredDirection(Iterable<Geometry> obstGeoms, Iterable<Ped> peds)  {
+    	int i = desiredDirectionIndex(obstGeoms, peds);
     	
-    	// Then sample field of vision and initialise arrays of distances that correspond to each angle 
-    	List<Double> sampledAngles = sampleFoV();
-    	double[] distances = new double[sampledAngles.size()];
-    	double[] displacementDistances = new double[sampledAngles.size()];
+    	Map<String, Double> output = new HashMap<String, Double>();
+    	output.put("angle", this.fovAngles[i]);
+    	output.put("collision_distance", this.fovDistances[i]);
     	
-    	// Initialise values as dmax since this is limit of peds field of vision
-    	for (int i=0; i<distances.length; i++) {
-    		distances[i] = this.dmax;
+    	return output;
+    }
+    
+    /*
+     * Set up the angles, relative to the ped's bearing, at which the field of vision is sampled along with their sines and cosines.
+     * Arrays used to hold the sampled bearings and distances are also created here and reused at each step.
+     * 
+     * Sampled bearings are found by adding angres to the first bearing until the edge of the field of vision is passed, so rounding
+     * means the last sample is included at some bearings and not others. Arrays are sized for the largest number of samples.
+     */
+    private void initFoVSamples() {
+    	int nSamples = (int) Math.floor(2*this.theta / this.angres) + 2;
+    	this.fovOffsets = new double[nSamples];
+    	this.fovOffsetsSin = new double[nSamples];
+    	this.fovOffsetsCos = new double[nSamples];
+    	for (int i=0; i<nSamples; i++) {
+    		this.fovOffsets[i] = -this.theta + i*this.angres;
+    		this.fovOffsetsSin[i] = Math.sin(this.fovOffsets[i]);
+    		this.fovOffsetsCos[i] = Math.cos(this.fovOffsets[i]);
     	}
     	
-    	// First find the minimum displacement distance and associated angle for obstruction geometries
-    	displacementDistancesToObstacleGeometries(obstGeoms, sampledAngles, distances, displacementDistances);
-    	displacementDistancesToPeds(peds, sampledAngles, distances, displacementDistances);
+    	this.fovAngles = new double[nSamples];
+    	this.fovSin = new double[nSamples];
+    	this.fovCos = new double[nSamples];
+    	this.fovCosToDest = new double[nSamples];
+    	this.fovDistances = new double[nSamples];
+    	this.fovDisplacementDistances = new double[nSamples];
+    }
+    
+    /*
+     * Fill the sampled bearings for the ped's current bearing. The bearings, and so the number of samples, are the same as those
+     * given by sampleFoV. Sines and cosines are found from the tables of sample angles relative to the bearing so trig functions
+     * are only evaluated for the bearing and the angle to the destination.
+     */
+    private void fillFoVSamples() {
+    	double sinB = Math.sin(this.bearing);
+    	double cosB = Math.cos(this.bearing);
+    	double sinA0 = Math.sin(this.a0);
+    	double cosA0 = Math.cos(this.a0);
     	
-    	Integer lowi = null;
-    	double minDD = Double.MAX_VALUE;
+    	double sampleAngle = this.bearing-this.theta; // First angle to sample
+    	double sampleAnglemax = this.bearing + this.theta;
+    	int i = 0;
+    	while ( (sampleAngle <= sampleAnglemax) && (i < this.fovOffsets.length) ) {
+    		this.fovAngles[i] = sampleAngle;
+    		this.fovSin[i] = sinB*this.fovOffsetsCos[i] + cosB*this.fovOffsetsSin[i];
+    		this.fovCos[i] = cosB*this.fovOffsetsCos[i] - sinB*this.fovOffsetsSin[i];
+    		this.fovCosToDest[i] = cosA0*this.fovCos[i] + sinA0*this.fovSin[i];
+    		this.fovDistances[i] = this.dmax;
+    		sampleAngle+=this.angres;
+    		i++;
+    	}
+    	this.nFoVSamples = i;
+    }
+    
+    /*
+     * Identify the chosen walking direction. Distances and displacement distances for each sampled bearing are held in arrays
+     * that are reused at each step so no objects are created.
+     * 
+     * @param Iterable<Geometry> obstGeoms
+     * 		The obstruction geometries in the field of vision
+     * @param Iterable<Ped> peds
+     * 		The peds in the field of vision
+     * 
+     * @return int
+     * 		Index of the sampled bearing with the lowest displacement distance. See getFoVAngle and getFoVDistance.
+     */
+    public int desiredDirectionIndex(Iterable<Geometry> obstGeoms, Iterable<Ped> peds)  {
+    	fillFoVSamples();
     	
-    	// Now loop through the remaining angles and calculate displacement distances for any angles that don't have obstacles in
-    	for (int i = 0;i<sampledAngles.size(); i++) {
-    		if (displacementDistances[i] < 0) {
-    			distances[i] = this.dmax;
-    			displacementDistances[i] = displacementDistance(sampledAngles.get(i), distances[i]);
+    	// First find the distances and displacement distances for obstruction geometries and peds
+    	for(int i=0; i<this.nFoVSamples; i++) {
+    		this.fovDistances[i] = distanceToObject(this.fovSin[i], this.fovCos[i], obstGeoms);
+    		this.fovDisplacementDistances[i] = sampleDisplacementDistance(i, this.fovDistances[i]);
+    	}
+    	displacementDistancesToPeds(peds);
+    	
+    	int lowi = 0;
+    	double minDD = Double.MAX_VALUE;
+    	for (int i = 0;i<this.nFoVSamples; i++) {
+    		if (this.fovDisplacementDistances[i] < 0) {
+    			this.fovDistances[i] = this.dmax;
+    			this.fovDisplacementDistances[i] = sampleDisplacementDistance(i, this.fovDistances[i]);
     		}
     		
-    		if (displacementDistances[i] < minDD) {
-    			minDD = displacementDistances[i];
+    		if (this.fovDisplacementDistances[i] < minDD) {
+    			minDD = this.fovDisplacementDistances[i];
     			lowi = i;
     		}
     	}
     	
-    	Map<String, Double> output = new HashMap<String, Double>();
-    	output.put("angle", sampledAngles.get(lowi));
-    	output.put("collision_distance", distances[lowi]);
-    	
-    	return output;    	
+    	return lowi;
     }
-
+    
 	/*
      * Given a set of geometries, calculate displacement distance for each of the geometries. Fill arrays of distances and displacement distances 
      * with the lowest distance at that angle.
@@ -454,60 +624,56 @@ public class Ped extends MobileAgent {
     }
     
     /*
-     * Calculate the distance and displacement distance to each ped in the input iterable.
+     * Calculate the distance and displacement distance to each ped in the input iterable for each of the sampled bearings
+     * filled by fillFoVSamples.
      * 
      * Distance are the distance of first collision with the ped if the ego ped moves at it's preferred walking
      * speed at the sample angle and the other ped continues with its current velocity.
      * 
      * @param Iterable<Ped>
      * 		The peds to consider when calculating distances.
-     * @param List<Double> sampledAngles
-     * 		The bearings to consider the ego ped moving in.
-     * @param double[] distances
-     * 		The distance of nearest collision for each bearing.
-     * @param double[] displacementDistances
-     * 		The displacement distances for each bearing.
      */
-    private void displacementDistancesToPeds(Iterable<Ped> peds, List<Double> sampledAngles, double[] distances,
-			double[] displacementDistances) {
+    private void displacementDistancesToPeds(Iterable<Ped> peds) {
 		for (Ped p: peds) {
+			double px = p.getLoc().x;
+			double py = p.getLoc().y;
+			double pvx = p.getV()[0];
+			double pvy = p.getV()[1];
+			double rads = this.rad + p.getRad();
+			
 			// Calculate difference in current position
-			double[] dR = {this.maLoc.x - p.getLoc().x, this.maLoc.y - p.getLoc().y};
+			double dRx = this.maLoc.x - px;
+			double dRy = this.maLoc.y - py;
 			
 			// Iterate over possible directions of travel
-			for (int i=0; i<sampledAngles.size(); i++) {
-				double b = sampledAngles.get(i);
-				double[] vThis = {this.v0*Math.sin(b), this.v0*Math.cos(b)};
-				double[] dV = {vThis[0] - p.getV()[0], vThis[1] - p.getV()[1]};
-				
-				// Calculate time of closest approach
-				double tClosest = -(dR[0] *dV[0] + dR[1] * dV[1]) / ( dV[0]*dV[0] + dV[1]*dV[1]);				
+			for (int i=0; i<this.nFoVSamples; i++) {
+				double vx = this.v0*this.fovSin[i];
+				double vy = this.v0*this.fovCos[i];
+				double dVx = vx - pvx;
+				double dVy = vy - pvy;
 				
-				// If tClosest is in the past set time of closest approach to now
+				// Calculate time of closest approach, if this is in the past set time of closest approach to now
+				double tClosest = -(dRx*dVx + dRy*dVy) / (dVx*dVx + dVy*dVy);
 				if (tClosest<0) {
 					tClosest = 0;
 				}
 				
 				// Calculate distance of closest approach
-				double[] futurePLoc = {p.getLoc().x+p.getV()[0]*tClosest, p.getLoc().y+p.getV()[1]*tClosest};
-				double[] futureThisLoc = {maLoc.x+this.v0*Math.sin(b)*tClosest, maLoc.y+this.v0*Math.cos(b)*tClosest};
-				double dClosest = Math.sqrt( Math.pow(futureThisLoc[0] - futurePLoc[0], 2) +  Math.pow(futureThisLoc[1] - futurePLoc[1], 2) ) - this.rad - p.getRad();
+				double dx = (this.maLoc.x + vx*tClosest) - (px + pvx*tClosest);
+				double dy = (this.maLoc.y + vy*tClosest) - (py + pvy*tClosest);
+				double dClosest = Math.sqrt(dx*dx + dy*dy) - rads;
 				
 				// If peds collide on this course find distance this ped can travel in direction b until collision
 				// If this is less that the current distance set for this angle, update the distance and displacement distance for this angle
 				if (dClosest<0) {
-					double fAlpha = this.v0*tClosest - this.rad - p.getRad();
-					
-					// Assumes that angles without a detected obstruction have dmax entered as distance
-					if (fAlpha < distances[i]) {
-						distances[i] = fAlpha;
-						displacementDistances[i] = displacementDistance(b, fAlpha);
+					double fAlpha = this.v0*tClosest - rads;
+					if (fAlpha < this.fovDistances[i]) {
+						this.fovDistances[i] = fAlpha;
+						this.fovDisplacementDistances[i] = sampleDisplacementDistance(i, fAlpha);
 					}
-						
 				}
 			}
 		}
-		
 	}
     
     /*
@@ -550,40 +716,41 @@ public class Ped extends MobileAgent {
      * 		Distance to the nearest object in the direction of the angle alpha
      */
     public double distanceToObject(double alpha, Iterable<Geometry> obstGeoms)  {
+    	return distanceToObject(Math.sin(alpha), Math.cos(alpha), obstGeoms);
+    }
+    
+    /*
+     * Calculate distance to nearest collision with obstruction geometries along the direction given by the sine and cosine of a bearing.
+     * 
+     * @param double dx
+     * 		Sine of the bearing to look for objects along
+     * @param double dy
+     * 		Cosine of the bearing to look for objects along
+     * @param Iterable<Geometry> obstGeoms
+     * 		The obstruction geometries to check distances to
+     * 
+     * @return double
+     * 		Distance to the nearest object in the direction of the bearing
+     */
+    public double distanceToObject(double dx, double dy, Iterable<Geometry> obstGeoms)  {
     	
     	// Initialise distance to nearest object as the max distance in the field of vision
     	double d = this.dmax;
+    	double tMin = Double.POSITIVE_INFINITY;
     	
-    	LineString sampledRay = GISFunctions.linestringRay(maLoc, alpha, dmax);
-    	
-    	// Check to see if this line intersects with any pedestrian agents
+    	// Find the nearest intersection between the sampled ray and the segments of each obstruction
         for (Geometry obstG :obstGeoms) {
-               	
-           	DistanceOp distOP = new DistanceOp(obstG, sampledRay);
-           	// This check is equivalent to agentG.intersects(sampledRay) (tested this using assertions in a simulation run) but is slightly faster.
-           	int i=0;
-           	while (Double.compare(distOP.distance(), 0.0) == 0) {
-           		// DistanceOp can be used to approximate intersection.
-           		// When distance is zero geometries overlapp. The nearest point between the two geometries are the intersection.
-           		// Distance Op approximately returns one of the intersection points
-           		// Since there might be multiple, need to create a new ray that extends just up to the first point distance op found
-           		// and re run until the distance is no zero, meaning that the nearest intersecting coord is found.
-           		Coordinate intersectingCoord = distOP.nearestPoints()[1];
-           		d = maLoc.distance(intersectingCoord) - this.rad;
-           		
-           		sampledRay = GISFunctions.linestringRay(maLoc, alpha, d*0.9999);
-           		distOP = new DistanceOp(obstG, sampledRay);
-           		i++;
-           		
-           		// Add break clause to avoid infinite loop occuring
-           		if (i>100) {
-           			d = 0;
-           			break;
-           		}
-           	}              	
+        	double t = ObstructionSegments.rayIntersectionDistance(maLoc.x, maLoc.y, dx, dy, this.dmax, ObstructionSegments.getSegments(obstG));
+        	if (t < tMin) {
+        		tMin = t;
+        	}
+        }
+        
+        if (tMin <= this.dmax) {
+        	d = tMin - this.rad;
         }
         
-        return d;    	
+        return d;
     }
     
     /*
@@ -609,7 +776,32 @@ public class Ped extends MobileAgent {
      * Calculate the displacement distance in a direction given the direction angle, angle to destination, and distance to nearest object in direction angle 
      */
     public double displacementDistance(double alpha, double fAlpha) {
-    	return Math.pow(this.dmax, 2) + Math.pow(fAlpha, 2) - 2*this.dmax*fAlpha*Math.cos(this.a0 - alpha);
+    	return this.dmax*this.dmax + fAlpha*fAlpha - 2*this.dmax*fAlpha*Math.cos(this.a0 - alpha);
+    }
+    
+    /*
+     * Calculate the displacement distance for one of the sampled bearings filled by fillFoVSamples.
+     */
+    private double sampleDisplacementDistance(int i, double fAlpha) {
+    	return this.dmax*this.dmax + fAlpha*fAlpha - 2*this.dmax*fAlpha*this.fovCosToDest[i];
+    }
+    
+    public int getNFoVSamples() {
+    	return this.nFoVSamples;
+    }
+    
+    /*
+     * Get the sampled bearing at index i, as set by the last call to desiredDirectionIndex.
+     */
+    public double getFoVAngle(int i) {
+    	return this.fovAngles[i];
+    }
+    
+    /*
+     * Get the distance to the nearest collision at the sampled bearing at index i, as set by the last call to desiredDirectionIndex.
+     */
+    public double getFoVDistance(int i) {
+    	return this.fovDistances[i];
     }
     
     
@@ -687,6 +879,10 @@ public class Ped extends MobileAgent {
      * Method to be run when agent is removed from the context.
      */
     public void tidyForRemoval() {
+    	if (this.crossingRoadLink != null) {
+    		this.crossingRoadLink.removeCrossingPed(this);
+    		this.crossingRoadLink = null;
+    	}
     	//IO.exportPedGridRouteData(this, "final_", false);
     }
     
@@ -770,8 +966,7 @@ public class Ped extends MobileAgent {
     public List<Geometry> getObstacleGeometries(Polygon fieldOfVisionApprox, Geography<PedObstruction> pedObstGeog) {
         // Get list of all geometries of other pedestrian agents and pedestrian obstructions that intersect field of vision
         List<Geometry> obstacleGeoms = SpatialIndexManager.searchGeoms(pedObstGeog, fieldOfVisionApprox);
-        Iterable<Ped> pedsInArea = SpaceBuilder.geography.getObjectsWithin(fieldOfVisionApprox.getEnvelopeInternal(), Ped.class);
-        for (Ped p: pedsInArea) {
+        for (Ped p: getPedsWithinEnvelope(fieldOfVisionApprox.getEnvelopeInternal())) {
         	if (p != this) {
         		Geometry pGeom = GISFunctions.getAgentGeometry(SpaceBuilder.geography, p);
         		obstacleGeoms.add(pGeom);
@@ -782,8 +977,8 @@ public class Ped extends MobileAgent {
     
     public HashMap<Ped, Geometry> getPedsAndGeomsWithinGeometry(Geometry fieldOfVisionApprox) {
     	HashMap<Ped, Geometry> peds = new HashMap<Ped, Geometry>();
-        Iterable<Ped> pedsInArea = SpaceBuilder.geography.getObjectsWithin(fieldOfVisionApprox.getEnvelopeInternal(), Ped.class);
-        for (Ped p: pedsInArea) {
+    	Envelope searchEnv = fieldOfVisionApprox.getEnvelopeInternal();
+        for (Ped p: getPedsWithinEnvelope(searchEnv)) {
         	if (p != this) {
         		Geometry pGeom = GISFunctions.getAgentGeometry(SpaceBuilder.geography, p);
         		peds.put(p, pGeom);
@@ -792,6 +987,37 @@ public class Ped extends MobileAgent {
         return peds;
     }
     
+    /*
+     * Get the peds whose geometries intersect the input envelope.
+     * 
+     * Uses the per tick ped grid index when it has been built, otherwise queries the geography directly. Since peds move 
+     * during a tick the grid index is searched with a padding of one field of vision horizon and candidates are filtered 
+     * using their current geometries.
+     * 
+     * @param Envelope searchEnv
+     * 		The envelope to search for peds within
+     */
+    private Iterable<Ped> getPedsWithinEnvelope(Envelope searchEnv) {
+    	SimulationMetrics.increment(SimulationMetrics.Metric.SPATIAL_QUERIES);
+    	if (SpaceBuilder.pedIndex == null) {
+    		return SpaceBuilder.geography.getObjectsWithin(searchEnv, Ped.class);
+    	}
+    	
+    	List<Ped> candidates = new ArrayList<Ped>();
+    	SpaceBuilder.pedIndex.query(searchEnv, this.dmax, candidates);
+    	
+    	List<Ped> pedsInArea = new ArrayList<Ped>();
+    	for (Ped p: candidates) {
+    		Geometry pGeom = GISFunctions.getAgentGeometry(SpaceBuilder.geography, p);
+    		
+    		// Geometry is null if ped has been removed from the context since the index was built
+    		if ( (pGeom != null) && searchEnv.intersects(pGeom.getEnvelopeInternal()) ) {
+    			pedsInArea.add(p);
+    		}
+    	}
+    	return pedsInArea;
+    }
+    
     public void setRoadLinkFID(String rlFID) {
     	this.roadLinkFID = rlFID;
     }
@@ -800,6 +1026,11 @@ public class Ped extends MobileAgent {
     	return this.roadLinkFID;
     }
     
+    @Override
+    public double getBoundingRadius() {
+    	return this.rad;
+    }
+    
     public double getRad() {
     	return this.rad;
     }
@@ -905,6 +1136,30 @@ public class Ped extends MobileAgent {
 		return this.pathFinder.getTacticalPath().getAccumulatorRoute().isCrossing();
 	}
 	
+	/*
+	 * Register this ped as crossing the road link it is walking along, or deregister it if it is no longer crossing, so that
+	 * vehicles can get crossing peds from the road link without checking every ped on it. Must be called whenever the ped 
+	 * starts or stops crossing or moves onto the next road link in its strategic path.
+	 */
+	public void updateCrossingRoadLink() {
+		RoadLink rl = null;
+		if ( (this.pathFinder != null) && (this.pathFinder.getTacticalPath() != null) && isCrossing() && (this.pathFinder.getStrategicPath().size() > 0) ) {
+			rl = this.pathFinder.getStrategicPath().get(0);
+		}
+		
+		if (rl == this.crossingRoadLink) {
+			return;
+		}
+		
+		if (this.crossingRoadLink != null) {
+			this.crossingRoadLink.removeCrossingPed(this);
+		}
+		if (rl != null) {
+			rl.addCrossingPed(this);
+		}
+		this.crossingRoadLink = rl;
+	}
+	
     public double[] getV() {
 		return v;
 	}
@@ -1,9 +1,8 @@
 package repastInterSim.agent;
 
 import java.text.DecimalFormat;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
@@ -16,7 +15,10 @@ import repastInterSim.environment.OD;
 import repastInterSim.environment.CrossingAlternative;
 import repastInterSim.environment.GISFunctions;
 import repastInterSim.environment.RoadLink;
+import repastInterSim.environment.RoadLinkCrossingAlternatives;
+import repastInterSim.environment.VehicleQueue;
 import repastInterSim.main.GlobalVars;
+import repastInterSim.main.SimulationMetrics;
 import repastInterSim.main.SpaceBuilder;
 
 public class Vehicle extends MobileAgent {
@@ -28,7 +30,13 @@ public class Vehicle extends MobileAgent {
 	private double dmax;	    
 	private RoadLink currentRoadLink; // Used for identifying when the vehicle moves from one road link to another
 	private Integer queuePos;
+	private RoadLink nextRoadLink = null; // The road link after the current road link on the route
+	private RoadLink nextRoadLinkFrom = null; // The current road link when the next road link was found
+	private CrossingAlternative signalCA = null; // The crossing alternative signalLinkIndex was found for
+	private String signalRoadLinkID = null; // The road link ID signalLinkIndex was found for
+	private int signalLinkIndex = -1; // Index of the vehicle's road link in the signal of signalCA
 	private Route route;
+	private double boundingRadius = 2; // Vehicles are added to the geography as a circle of radius 2 and then represented by a rectangle once they drive
 
 
 	public Vehicle(int mS, double a, double s, OD o, OD d) {
@@ -51,21 +59,31 @@ public class Vehicle extends MobileAgent {
 	 */
 	@ScheduledMethod(start = 1, interval = 1, shuffle = false)
 	public void step() throws Exception {
-		
-    	// Check that a route has been generated
-    	if (this.route.getRouteX() == null) {
-    		this.route.setRoute();
-    	}
-    	
-    	if (this.queuePos==null) {
-    		// Set queue pos. If no capacity on link will return null and vehicle will not be able to drive
-    		this.setCurrentRoadLinkAndQueuePos(this.route.getRoadsX().get(0));
+		long start = SimulationMetrics.start();
+		try {
+	    	// Check that a route has been generated
+	    	if (this.route.getRouteX() == null) {
+	    		this.route.setRoute();
+	    	}
+	    	
+	    	if (this.queuePos==null) {
+	    		// Set queue pos. If no capacity on link will return null and vehicle will not be able to drive
+	    		this.setCurrentRoadLinkAndQueuePos(this.route.getRoadsX().get(0));
+			}
+	
+			// Drive only if vehicle has been added to road link
+	    	if(this.queuePos!=null) {
+	    		drive();
+	    	}
+	    	
+	    	// Vehicles only move during their own step so this is where arrival at the destination is detected
+	    	if (atDestination()) {
+	    		SpaceBuilder.registerArrival(this);
+	    	}
+		}
+		finally {
+			SimulationMetrics.stop(SimulationMetrics.Metric.VEHICLE_STEP, start);
 		}
-
-		// Drive only if vehicle has been added to road link
-    	if(this.queuePos!=null) {
-    		drive();
-    	}
 	}
 	
 	/*
@@ -225,7 +243,7 @@ public class Vehicle extends MobileAgent {
 		}
 		
 		// Check for a traffic signal
-		char signalState = nearestCAInFront.getState(this.route.getRoadsX().get(0).getFID());
+		char signalState = nearestCAInFront.getState(getSignalLinkIndex(nearestCAInFront, this.route.getRoadsX().get(0).getFID()));
 		
 		// If signal is green, also return max value so that vehicle ignores signal in its speed choice 
 		if (signalState == 'g') {
@@ -241,6 +259,24 @@ public class Vehicle extends MobileAgent {
 		}
 	}
 	
+	/*
+	 * Get the index of a road link in a crossing alternative's signal. The index is only looked up again when the crossing
+	 * alternative or road link change, which happens rarely compared to how often the signal state is checked.
+	 * 
+	 * @param CrossingAlternative ca
+	 * @param String rlID
+	 * 
+	 * @return int. The index, or -1 if the signal doesn't control the road link
+	 */
+	private int getSignalLinkIndex(CrossingAlternative ca, String rlID) {
+		if ( (ca != this.signalCA) || !rlID.equals(this.signalRoadLinkID) ) {
+			this.signalLinkIndex = ca.getLinkIndex(rlID);
+			this.signalCA = ca;
+			this.signalRoadLinkID = rlID;
+		}
+		return this.signalLinkIndex;
+	}
+	
 	/*
 	 * Get safe speed required to avoid collision with crossing pedestrians, assuming pedestrians are not going to yield.
 	 * 
@@ -305,19 +341,26 @@ public class Vehicle extends MobileAgent {
     public Vehicle getVehicleInFront()  {
     	
     	// Use road link queue to check for any vehicles in front on the current link
-    	Vehicle vInFront = this.currentRoadLink.getQueue().getElementAhead(this.queuePos);
+    	VehicleQueue q = this.currentRoadLink.getQueue();
+    	int pos = q.leaderPos(this.queuePos);
     	
-    	if (vInFront == null) {
-    		// Get vehicle at the back of the road link ahead, returns null if there are no road links ahead.
-    		vInFront = getVehicleAtEndOfNextRoadLink();
+    	if (pos == -1) {
+    		// Get vehicle at the back of the road link ahead, if there is a road link ahead.
+    		RoadLink next = getNextRoadLink();
+    		if (next != null) {
+    			q = next.getQueue();
+    			pos = q.backPos();
+    		}
     	}
     	
-    	// If still no vehicle in front return null, otherwise check distance to vehicle in front
-    	if (vInFront==null) {
+    	// If still no vehicle in front return null, otherwise check distance to vehicle in front using the location recorded in the queue
+    	if (pos == -1) {
     		return null;
     	}
-    	else if (maLoc.distance(vInFront.getLoc()) < this.dmax) {
-    		return vInFront;
+    	double dx = this.maLoc.x - q.getX(pos);
+    	double dy = this.maLoc.y - q.getY(pos);
+    	if (Math.sqrt(dx * dx + dy * dy) < this.dmax) {
+    		return q.elements[pos];
     	}
     	else {
     		return null;
@@ -325,24 +368,32 @@ public class Vehicle extends MobileAgent {
     }
 	
 	/*
-	 * Get vehicle at the end of the next road link  by looping over roads in route until the 
-	 * next road link is reached and check this queue.
+	 * Get vehicle at the end of the next road link on the route.
 	 */
 	public Vehicle getVehicleAtEndOfNextRoadLink() {
-		int i = 0;
-		String nextRoadID = this.route.getRoadsX().get(i).getFID();
-		while ( (this.currentRoadLink.getFID() == nextRoadID) & (i<this.route.getRoadsX().size())) {
-			nextRoadID = this.route.getRoadsX().get(i).getFID();
-			i++;
-		}
-		
-		// Get vehicle at the back of the road link ahead if there is a link ahead
-		if (nextRoadID.contentEquals(this.currentRoadLink.getFID())==false) {
-			return this.route.getRoadsX().get(i).getQueue().getEndElement();
-		}
-		else {
+		RoadLink next = getNextRoadLink();
+		if (next == null) {
 			return null;
 		}
+		return next.getQueue().getEndElement();
+	}
+	
+	/*
+	 * Get the first road link in the route that is not the current road link, or null if there isn't one. Road links are only
+	 * removed from the front of the route so this only needs to be found again when the vehicle moves onto a new road link.
+	 */
+	private RoadLink getNextRoadLink() {
+		if (this.nextRoadLinkFrom != this.currentRoadLink) {
+			this.nextRoadLink = null;
+			for (RoadLink rl: this.route.getRoadsX()) {
+				if (!rl.getFID().contentEquals(this.currentRoadLink.getFID())) {
+					this.nextRoadLink = rl;
+					break;
+				}
+			}
+			this.nextRoadLinkFrom = this.currentRoadLink;
+		}
+		return this.nextRoadLink;
 	}
 	
     
@@ -351,12 +402,12 @@ public class Vehicle extends MobileAgent {
      */
     public List<Ped> getCrossingPedestrians() {
     	// Get peds on current road by getting the OR road link associated to the vehicle's current ITN road link
+    	// The OR road link keeps a live list of crossing peds so this does not copy or filter the peds on the road link
     	RoadLink currentITNLink = this.route.getRoadsX().get(0);
-    	List<Ped> crossingPedsOnRoad = new ArrayList<Ped>();
     	if(currentITNLink.getRoads().size()>0) {
-    		crossingPedsOnRoad = currentITNLink.getRoads().get(0).getORRoadLink().getPeds().stream().filter(p -> p.isCrossing()).collect(Collectors.toList());
+    		return currentITNLink.getRoads().get(0).getORRoadLink().getCrossingPeds();
     	}
-    	return crossingPedsOnRoad;
+    	return Collections.emptyList();
     }
 
 
@@ -370,20 +421,7 @@ public class Vehicle extends MobileAgent {
 	 * 		The crossing alternatives that control the traffic flow of this road link.
 	 */
 	public List<CrossingAlternative> getRoadLinkCrossingAlterantives(String itnRoadLinkID) {
-		List<CrossingAlternative> cas = new ArrayList<CrossingAlternative>();
-		
-		// Agent identifies crossing locations on the road links passed in
-		// Loop through these and get crossing alternatives that belong to these road links
-		for (CrossingAlternative ca: SpaceBuilder.caGeography.getAllObjects()) {
-			if (ca.getITNRoadLinkIDs()==null) continue;
-			
-			for(int i=0; i< ca.getITNRoadLinkIDs().length; i++) {
-				if(ca.getITNRoadLinkIDs()[i].contentEquals(itnRoadLinkID)) {
-					cas.add(ca);
-				}
-			}
-		}
-		return cas;
+		return RoadLinkCrossingAlternatives.getITNRoadLinkCrossingAlternatives(SpaceBuilder.caGeography, itnRoadLinkID);
 	}
 	
 	/**
@@ -394,6 +432,7 @@ public class Vehicle extends MobileAgent {
 	@Override
 	public void tidyForRemoval() {
 		this.currentRoadLink.removeVehicleFromQueue();
+		this.queuePos = null;
 	}
 	
 	/*
@@ -468,11 +507,17 @@ public class Vehicle extends MobileAgent {
 	
 	public void setSpeed(double s) {
 		this.speed = s;
+		updateQueueState();
 	}
 	
 	public double getSpeed() {
 		return this.speed;
 	}
+	
+	@Override
+	public double getBoundingRadius() {
+		return this.boundingRadius;
+	}
     
     /*
      * Set the location attribute of the agent to be the coordinate of its 
@@ -486,7 +531,29 @@ public class Vehicle extends MobileAgent {
     	vL.x = Double.valueOf(newFormat.format(vL.x));
     	vL.y = Double.valueOf(newFormat.format(vL.y));
     	this.maLoc = vL;
+    	updateQueueState();
     }
+	
+	@Override
+	public void setLoc(Coordinate c) {
+		super.setLoc(c);
+		updateQueueState();
+	}
+	
+	@Override
+	public void setBearing(double b) {
+		super.setBearing(b);
+		updateQueueState();
+	}
+	
+	/*
+	 * Record the location, speed and bearing of this vehicle in the queue of the road link it is on.
+	 */
+	private void updateQueueState() {
+		if ( (this.queuePos != null) && (this.currentRoadLink != null) && (this.maLoc != null) ) {
+			this.currentRoadLink.getQueue().updateState(this.queuePos, this.maLoc, this.speed, this.bearing);
+		}
+	}
     
     /*
      * Get the destination of this vehicle
@@ -550,10 +617,13 @@ public class Vehicle extends MobileAgent {
     	
     	// Get coordinates of corners of vehicle rectangle
     	Coordinate[] recCoords = new Coordinate[corners.length+1];
+    	double maxCornerDist2 = 0;
     	for (int i=0; i<corners.length; i++) {
     		Coordinate c = new Coordinate(loc.x+corners[i][0], loc.y+corners[i][1]);
     		recCoords[i] = c;
+    		maxCornerDist2 = Math.max(maxCornerDist2, corners[i][0]*corners[i][0] + corners[i][1]*corners[i][1]);
     	}
+    	this.boundingRadius = Math.sqrt(maxCornerDist2);
     	recCoords[corners.length] = recCoords[0];
     	
     	Polygon vehicleRec = null;
@@ -72,7 +72,7 @@ public class CrossingAlternative extends Signal implements FixedGeography  {
 	 */
 	public void setITNLinkIDs(String ids) {
 		String[] itnRLIDs = ids.split(",");
-		this.itnLinkIDs = itnRLIDs;
+		setLinkIDs(itnRLIDs);
 	}
 	
 	public void setSigPhases(String phases) {
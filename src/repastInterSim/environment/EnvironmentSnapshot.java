@@ -0,0 +1,368 @@
+package repastInterSim.environment;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+import com.vividsolutions.jts.io.WKBWriter;
+
+import repast.simphony.context.Context;
+import repast.simphony.space.gis.Geography;
+import repastInterSim.main.GlobalVars;
+
+/*
+ * Binary snapshots of the agents loaded from shapefiles, so that later runs can create the fixed environment without
+ * parsing shapefiles with GeoTools.
+ *
+ * A snapshot is written for each shapefile the first time it is read. It holds the attribute values used to set the
+ * properties of each agent and the agent geometry as well-known binary. Snapshots are read into memory with a single file
+ * read. Each snapshot records a checksum of the shapefile it was created from and is rebuilt when the shapefile changes.
+ *
+ * Only the agents are snapshotted. Road and pedestrian networks, the joins between agent layers and spatial indices are still
+ * built from the loaded agents each run: Repast networks and geographies have to be created in memory anyway and building
+ * them from the agents is linear in the number of agents.
+ *
+ * Snapshots are only used if the EnvironmentSnapshotDir property is set or a directory is given with setSnapshotDirectory.
+ */
+public class EnvironmentSnapshot {
+
+	private static Logger LOGGER = Logger.getLogger(EnvironmentSnapshot.class.getName());
+
+	static final int MAGIC = 0x52495345; // "RISE"
+	static final int VERSION = 1;
+
+	// Files that make up a shapefile and are included in the checksum
+	private static final String[] SHAPEFILE_EXTENSIONS = {".shp", ".shx", ".dbf", ".prj"};
+
+	// Attribute value type tags
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte INTEGER = 2;
+	private static final byte LONG = 3;
+	private static final byte DOUBLE = 4;
+	private static final byte FLOAT = 5;
+	private static final byte BOOLEAN = 6;
+	private static final byte SHORT = 7;
+
+	private static File snapshotDir = null;
+	private static int nLoaded = 0;
+	private static int nWritten = 0;
+
+	/*
+	 * Set the directory snapshots are read from and written to, overriding the EnvironmentSnapshotDir property.
+	 *
+	 * @param File dir
+	 * 		The snapshot directory. If null the directory is taken from the model properties.
+	 */
+	public static synchronized void setSnapshotDirectory(File dir) {
+		snapshotDir = dir;
+	}
+
+	/*
+	 * Get the directory snapshots are stored in, or null if snapshots are not used.
+	 */
+	public static synchronized File getSnapshotDirectory() {
+		if (snapshotDir != null) {
+			return snapshotDir;
+		}
+		if (GlobalVars.properties == null) {
+			return null;
+		}
+		String dirName = GlobalVars.properties.getProperty(GlobalVars.EnvironmentSnapshotDir);
+		if ( (dirName == null) || dirName.equals("") ) {
+			return null;
+		}
+		return new File(GlobalVars.properties.getProperty(GlobalVars.GISDataDirectory) + dirName);
+	}
+
+	/*
+	 * Get the snapshot file used for agents of a given class loaded from a shapefile, or null if snapshots are not used.
+	 *
+	 * @param Class<T> cl
+	 * @param File shapefile
+	 */
+	public static <T> File getSnapshotFile(Class<T> cl, File shapefile) {
+		File dir = getSnapshotDirectory();
+		if (dir == null) {
+			return null;
+		}
+		String name = shapefile.getName().replaceAll("\\.shp$", "");
+		return new File(dir, name + "." + cl.getSimpleName() + ".snapshot");
+	}
+
+	public static synchronized int getNLoaded() {
+		return nLoaded;
+	}
+
+	public static synchronized int getNWritten() {
+		return nWritten;
+	}
+
+	/*
+	 * Calculate a checksum of the files making up a shapefile, the CRS of the geography the agents are loaded into, the agent
+	 * class and the versions of the snapshot format and of the ShapefileLoader attribute mapping. A snapshot written before
+	 * any of these changed is out of date.
+	 *
+	 * @param Class<T> cl
+	 * 		The agent class
+	 * @param File shapefile
+	 * @param Geography<T> geography
+	 *
+	 * @returns long
+	 */
+	public static <T> long calculateSourceChecksum(Class<T> cl, File shapefile, Geography<T> geography) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(("v" + VERSION + "." + ShapefileLoader.ATTRIBUTE_MAPPING_VERSION + ":" + cl.getName()).getBytes(StandardCharsets.UTF_8));
+		String base = shapefile.getPath().replaceAll("\\.shp$", "");
+		byte[] buf = new byte[1 << 16];
+		for (String ext: SHAPEFILE_EXTENSIONS) {
+			File f = new File(base + ext);
+			if (!f.exists()) {
+				continue;
+			}
+			crc.update(ext.getBytes(StandardCharsets.UTF_8));
+			try (InputStream in = new BufferedInputStream(new FileInputStream(f))) {
+				int n;
+				while ( (n = in.read(buf)) > 0) {
+					crc.update(buf, 0, n);
+				}
+			}
+		}
+		crc.update(String.valueOf(geography.getCRS()).getBytes(StandardCharsets.UTF_8));
+		return crc.getValue();
+	}
+
+	/*
+	 * Create agents from a snapshot, adding them to the context and geography.
+	 *
+	 * @param Class<T> cl
+	 * 		The agent class
+	 * @param File snapshot
+	 * 		The snapshot file
+	 * @param long sourceChecksum
+	 * 		Checksum of the shapefile the agents would otherwise be loaded from
+	 * @param Geography<T> geography
+	 * @param Context<T> context
+	 *
+	 * @returns boolean
+	 * 		True if the agents were loaded, false if the snapshot does not exist or is out of date, in which case no agents are created
+	 */
+	public static <T extends FixedGeography> boolean load(Class<T> cl, File snapshot, long sourceChecksum, Geography<T> geography, Context<T> context) {
+		if (!snapshot.exists()) {
+			return false;
+		}
+
+		double time = System.nanoTime();
+		List<T> agents = new ArrayList<T>();
+		List<Geometry> geoms = new ArrayList<Geometry>();
+		try {
+			// Read into a heap buffer rather than mapping the file, since a mapping holds the file open until it is garbage
+			// collected and on Windows that stops an out of date snapshot being replaced
+			ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(snapshot.toPath()));
+
+			if ( (buf.getInt() != MAGIC) || (buf.getInt() != VERSION) ) {
+				LOGGER.log(Level.INFO, "EnvironmentSnapshot, " + snapshot.getName() + " has an unknown format, rebuilding");
+				return false;
+			}
+			if ( (buf.getLong() != sourceChecksum) || !readString(buf).equals(cl.getName()) ) {
+				LOGGER.log(Level.INFO, "EnvironmentSnapshot, " + snapshot.getName() + " does not match source data, rebuilding");
+				return false;
+			}
+
+			Map<String, Method> methodMap = ShapefileLoader.getAttributeMethodMap(cl, "w");
+			int nAttributes = buf.getInt();
+			Method[] writeMethods = new Method[nAttributes];
+			for (int i=0; i<nAttributes; i++) {
+				String attributeName = readString(buf);
+				writeMethods[i] = ShapefileLoader.getAttributeWriteMethod(methodMap, attributeName);
+				if (writeMethods[i] == null) {
+					LOGGER.log(Level.INFO, "EnvironmentSnapshot, " + cl.getSimpleName() + " has no property for attribute " + attributeName + ", rebuilding");
+					return false;
+				}
+			}
+
+			WKBReader wkbReader = new WKBReader(new GeometryFactory());
+			int nAgents = buf.getInt();
+			for (int i=0; i<nAgents; i++) {
+				T agent = cl.newInstance();
+				for (int j=0; j<nAttributes; j++) {
+					writeMethods[j].invoke(agent, readValue(buf));
+				}
+				byte[] wkb = new byte[buf.getInt()];
+				buf.get(wkb);
+				agents.add(agent);
+				geoms.add(wkbReader.read(wkb));
+			}
+		} catch (IOException | ReflectiveOperationException | ParseException | RuntimeException e) {
+			LOGGER.log(Level.WARNING, "EnvironmentSnapshot, could not read " + snapshot.getAbsolutePath() + ", rebuilding: " + e);
+			return false;
+		}
+
+		// Only add agents once the whole snapshot has been read so a failed read leaves the context unchanged
+		for (int i=0; i<agents.size(); i++) {
+			context.add(agents.get(i));
+			geography.move(agents.get(i), geoms.get(i));
+		}
+		synchronized (EnvironmentSnapshot.class) {
+			nLoaded++;
+		}
+		LOGGER.log(Level.FINE, "EnvironmentSnapshot, loaded " + agents.size() + " " + cl.getSimpleName() + " agents from " + snapshot.getName()
+				+ " in (" + 0.000001 * (System.nanoTime() - time) + "ms)");
+		return true;
+	}
+
+	/*
+	 * Write a snapshot of the agents loaded from a shapefile. Failures are logged and otherwise ignored since the agents
+	 * can still be loaded from the shapefile.
+	 *
+	 * @param Class<T> cl
+	 * 		The agent class
+	 * @param File snapshot
+	 * 		The snapshot file
+	 * @param long sourceChecksum
+	 * 		Checksum of the shapefile the agents were loaded from
+	 * @param List<String> attributeNames
+	 * 		Names of the shapefile attributes used to set agent properties
+	 * @param List<Object[]> attributeValues
+	 * 		Attribute values of each agent
+	 * @param List<Geometry> geoms
+	 * 		Geometry of each agent
+	 */
+	public static <T> void write(Class<T> cl, File snapshot, long sourceChecksum, List<String> attributeNames, List<Object[]> attributeValues, List<Geometry> geoms) {
+		if (snapshot.getParentFile() != null) {
+			snapshot.getParentFile().mkdirs();
+		}
+
+		// Write to a temporary file and move it into place so that runs sharing the snapshot never read a partly written file
+		File tmp = new File(snapshot.getAbsolutePath() + "." + Thread.currentThread().getId() + ".tmp");
+		WKBWriter wkbWriter = new WKBWriter();
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(sourceChecksum);
+				writeString(out, cl.getName());
+
+				out.writeInt(attributeNames.size());
+				for (String name: attributeNames) {
+					writeString(out, name);
+				}
+
+				out.writeInt(geoms.size());
+				for (int i=0; i<geoms.size(); i++) {
+					for (Object val: attributeValues.get(i)) {
+						writeValue(out, val);
+					}
+					byte[] wkb = wkbWriter.write(geoms.get(i));
+					out.writeInt(wkb.length);
+					out.write(wkb);
+				}
+			}
+			try {
+				Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			synchronized (EnvironmentSnapshot.class) {
+				nWritten++;
+			}
+		} catch (IOException e) {
+			tmp.delete();
+			LOGGER.log(Level.WARNING, "EnvironmentSnapshot, could not write " + snapshot.getAbsolutePath() + ": " + e);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	private static String readString(ByteBuffer buf) {
+		byte[] b = new byte[buf.getInt()];
+		buf.get(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	private static void writeValue(DataOutputStream out, Object val) throws IOException {
+		if (val == null) {
+			out.writeByte(NULL);
+		}
+		else if (val instanceof String) {
+			out.writeByte(STRING);
+			writeString(out, (String) val);
+		}
+		else if (val instanceof Integer) {
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) val);
+		}
+		else if (val instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) val);
+		}
+		else if (val instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) val);
+		}
+		else if (val instanceof Float) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) val);
+		}
+		else if (val instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) val);
+		}
+		else if (val instanceof Short) {
+			out.writeByte(SHORT);
+			out.writeShort((Short) val);
+		}
+		else {
+			throw new IOException("EnvironmentSnapshot.writeValue() error: unsupported attribute type " + val.getClass().getName());
+		}
+	}
+
+	private static Object readValue(ByteBuffer buf) throws IOException {
+		byte tag = buf.get();
+		switch (tag) {
+		case NULL:
+			return null;
+		case STRING:
+			return readString(buf);
+		case INTEGER:
+			return buf.getInt();
+		case LONG:
+			return buf.getLong();
+		case DOUBLE:
+			return buf.getDouble();
+		case FLOAT:
+			return buf.getFloat();
+		case BOOLEAN:
+			return buf.get() != 0;
+		case SHORT:
+			return buf.getShort();
+		default:
+			throw new IOException("EnvironmentSnapshot.readValue() error: unknown attribute type tag " + tag);
+		}
+	}
+}
@@ -12,6 +12,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.math3.util.FastMath;
 import org.geotools.coverage.grid.GridCoordinates2D;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridEnvelope2D;
@@ -154,6 +155,50 @@ public class GISFunctions {
 		} // for roadLink:
 	}
 	
+	/*
+	 * Link roads with the ITN and OR road links they belong to. Also assigns the Road objects to the road links. This enables
+	 * lookups between OR and ITN road links, through the road objects.
+	 * 
+	 * Road links are indexed by ID first so that each road is matched with a lookup rather than by comparing it to every
+	 * road link.
+	 * 
+	 * @param Geography<Road> roadGeography
+	 * @param Geography<RoadLink> itnRoadLinkGeography
+	 * 			The vehicle road links. These are matched to roads using their corresponding ped road link (open road) id
+	 * @param Geography<RoadLink> orRoadLinkGeography
+	 * 			The open road road links
+	 */
+	public static void associateRoadsWithRoadLinks(Geography<Road> roadGeography, Geography<RoadLink> itnRoadLinkGeography, Geography<RoadLink> orRoadLinkGeography) {
+		Map<String, List<RoadLink>> itnLinksByPedRLID = new HashMap<String, List<RoadLink>>();
+		for (RoadLink rl: itnRoadLinkGeography.getAllObjects()) {
+			itnLinksByPedRLID.computeIfAbsent(rl.getPedRLID(), k -> new ArrayList<RoadLink>()).add(rl);
+		}
+		
+		Map<String, RoadLink> orLinksByFID = new HashMap<String, RoadLink>();
+		for (RoadLink rl: orRoadLinkGeography.getAllObjects()) {
+			orLinksByFID.putIfAbsent(rl.getFID(), rl);
+		}
+		
+		for (Road r: roadGeography.getAllObjects()) {
+			List<RoadLink> roadLinks = new ArrayList<RoadLink>();
+			List<RoadLink> itnLinks = itnLinksByPedRLID.get(r.getRoadLinkID());
+			if (itnLinks != null) {
+				for (RoadLink rl: itnLinks) {
+					roadLinks.add(rl);
+					rl.getRoads().add(r);
+				}
+			}
+			
+			RoadLink orLink = orLinksByFID.get(r.getRoadLinkID());
+			if (orLink != null) {
+				orLink.getRoads().add(r);
+			}
+			
+			r.setRoadLinks(roadLinks);
+			r.setORRoadLink(orLink);
+		}
+	}
+	
 	/*
 	 * Get a list of coordinates that are randomly distributed within the geometries associated with Road agents.
 	 * 
@@ -344,10 +389,41 @@ public class GISFunctions {
 		if (!shapefile.exists()) {
 			throw new FileNotFoundException("Could not find the given shapefile: " + shapefile.getAbsolutePath());
 		}
-		loader = new ShapefileLoader<T>(cl, shapefile.toURI().toURL(), geography, context);
-		while (loader.hasNext()) {
-			loader.next();
+		
+		// Create the agents from a snapshot of the shapefile if there is an up to date one
+		File snapshot = EnvironmentSnapshot.getSnapshotFile(cl, shapefile);
+		long sourceChecksum = 0;
+		if (snapshot != null) {
+			try {
+				sourceChecksum = EnvironmentSnapshot.calculateSourceChecksum(cl, shapefile, geography);
+			} catch (IOException e) {
+				snapshot = null;
+			}
 		}
+		
+		if ( (snapshot == null) || !EnvironmentSnapshot.load(cl, snapshot, sourceChecksum, geography, context) ) {
+			loader = new ShapefileLoader<T>(cl, shapefile.toURI().toURL(), geography, context);
+			List<T> loaded = new ArrayList<T>();
+			List<Object[]> attributeValues = new ArrayList<Object[]>();
+			while (loader.hasNext()) {
+				T obj = loader.next();
+				if (obj == null) {
+					// Agent could not be created from the feature, don't snapshot an incomplete set of agents
+					snapshot = null;
+				}
+				loaded.add(obj);
+				attributeValues.add(loader.getLastAttributeValues());
+			}
+			
+			if (snapshot != null) {
+				List<Geometry> geoms = new ArrayList<Geometry>();
+				for (T obj : loaded) {
+					geoms.add(getAgentGeometry(geography, obj));
+				}
+				EnvironmentSnapshot.write(cl, snapshot, sourceChecksum, loader.getAttributeNames(), attributeValues, geoms);
+			}
+		}
+		
 		for (T obj : context.getObjects(cl)) {
 			// Warning of unchecked type cast below should be ok since only objects of this type were selected from the context
 			Geometry geom = getAgentGeometry(geography, obj);
@@ -641,6 +717,22 @@ public class GISFunctions {
 		return a;
 	}
 	
+	/*
+	 * Bearing from the point (x1, y1) to the point (x2, y2). Gives the same result as bearingBetweenCoordinates(Coordinate, Coordinate)
+	 * without creating vectors.
+	 */
+	public static double bearingBetweenCoordinates(double x1, double y1, double x2, double y2) {
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double mag = FastMath.sqrt(FastMath.pow(dx, 2) + FastMath.pow(dy, 2));
+		
+		double a = Math.acos(dy / mag);
+		if (Math.signum(dx / mag) == -1) {
+			return 2*Math.PI - a;
+		}
+		return a;
+	}
+	
 	/*
 	 * Creates a point geometry from a coordinate.
 	 * 
@@ -1107,5 +1199,14 @@ public class GISFunctions {
 		// If difference between bearings is < 90 degs then coordinate is in front
 		return Math.abs(bearing - bearingToC) < Math.PI/2;
 	}
+	
+	/*
+	 * Check whether the point (cx, cy) is in front of an object at (x, y) with the given bearing. Gives the same result as
+	 * coordInFront(Coordinate, double, Coordinate).
+	 */
+	public static boolean coordInFront(double x, double y, double bearing, double cx, double cy) {
+		double bearingToC = bearingBetweenCoordinates(x, y, cx, cy);
+		return Math.abs(bearing - bearingToC) < Math.PI/2;
+	}
 
 }
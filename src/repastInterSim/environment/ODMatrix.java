@@ -0,0 +1,186 @@
+package repastInterSim.environment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+
+import repast.simphony.random.RandomHelper;
+
+/*
+ * Origin-destination flows used to initialise mobile agents. The OD matrix CSV data is parsed once into a float
+ * matrix indexed by the position of each OD's FID in the header row of the data.
+ *
+ * Each time agents are added, each origin gets at most one agent. Destinations are considered in order and an agent is
+ * created for the first destination whose flow is greater than a uniform random number. This is sampled with a single
+ * draw per origin from a cumulative table of the probability that each destination is the first one accepted.
+ */
+public class ODMatrix {
+
+	private String[] ids;
+	private OD[] ods;
+	private Map<String, Integer> fidIndex = new HashMap<String, Integer>();
+	private float[][] flows; // [origin index][destination index]
+	private double[][] cumulativeProbs; // [origin index][destination index]
+	private int[] sampledOrigins; // Origins with a non zero probability of creating an agent
+
+	/*
+	 * Create an OD matrix from OD matrix CSV data.
+	 *
+	 * @param Iterable<OD> odObjects
+	 * 		The OD objects the flow data refers to
+	 * @param List<String[]> odFlows
+	 * 		The OD matrix data. The first row gives the FIDs of the ODs, the following rows give the flows from each origin
+	 * 		to each destination, in the same order as the FIDs.
+	 */
+	public ODMatrix(Iterable<OD> odObjects, List<String[]> odFlows) {
+		this.ids = odFlows.get(0);
+		int nOD = this.ids.length;
+
+		for (int i=0; i<nOD; i++) {
+			this.fidIndex.put(this.ids[i], i);
+		}
+
+		this.ods = new OD[nOD];
+		for (OD od: odObjects) {
+			Integer i = this.fidIndex.get(od.getFID());
+			if (i != null) {
+				this.ods[i] = od;
+			}
+		}
+
+		this.flows = new float[nOD][nOD];
+		for (int iO=0; iO<nOD; iO++) {
+			String[] row = odFlows.get(iO+1);
+			for (int iD=0; iD<nOD; iD++) {
+				this.flows[iO][iD] = Float.parseFloat(row[iD]);
+			}
+		}
+
+		buildCumulativeProbabilities();
+	}
+
+	/*
+	 * For each origin, calculate the cumulative probability that the agent created at the origin has each destination.
+	 *
+	 * A destination is accepted with probability equal to its flow, limited to between 0 and 1, if no earlier destination
+	 * was accepted. The final entry for each origin is the probability that any agent is created at the origin.
+	 */
+	private void buildCumulativeProbabilities() {
+		int nOD = this.ids.length;
+		this.cumulativeProbs = new double[nOD][nOD];
+		List<Integer> origins = new ArrayList<Integer>();
+
+		for (int iO=0; iO<nOD; iO++) {
+			double pNoneAccepted = 1.0;
+			double cumulative = 0.0;
+			for (int iD=0; iD<nOD; iD++) {
+				double p = Math.min(Math.max(this.flows[iO][iD], 0.0), 1.0);
+				cumulative += pNoneAccepted * p;
+				pNoneAccepted *= (1 - p);
+				this.cumulativeProbs[iO][iD] = cumulative;
+			}
+
+			if (cumulative > 0) {
+				origins.add(iO);
+			}
+		}
+
+		this.sampledOrigins = origins.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/*
+	 * Sample the destination of the agent created at an origin.
+	 *
+	 * @param int iO
+	 * 		The index of the origin
+	 * @param double u
+	 * 		Uniform random number between 0 and 1
+	 *
+	 * @returns int
+	 * 		The index of the destination, or -1 if no agent is created at this origin
+	 */
+	public int sampleDestination(int iO, double u) {
+		double[] cumulative = this.cumulativeProbs[iO];
+		if ( (cumulative.length == 0) || (u >= cumulative[cumulative.length-1]) ) {
+			return -1;
+		}
+
+		// First destination with cumulative probability greater than u
+		int i = Arrays.binarySearch(cumulative, u);
+		if (i < 0) {
+			i = -(i + 1);
+		}
+		else {
+			// Exact match, step past destinations with the same cumulative probability
+			while (cumulative[i] <= u) {
+				i++;
+			}
+		}
+		return i;
+	}
+
+	/*
+	 * Produce list of origin and destination pairs that are used to initialise a group of mobile agents. Pairs are
+	 * ordered by destination and then by origin.
+	 *
+	 * @param DoubleSupplier uniform
+	 * 		Source of uniform random numbers between 0 and 1
+	 *
+	 * @returns List<OD[]>
+	 */
+	public List<OD[]> sampleODs(DoubleSupplier uniform) {
+		List<int[]> sampled = new ArrayList<int[]>();
+		for (int iO: this.sampledOrigins) {
+			int iD = sampleDestination(iO, uniform.getAsDouble());
+			if (iD != -1) {
+				int[] pair = {iO, iD};
+				sampled.add(pair);
+			}
+		}
+
+		sampled.sort((a, b) -> (a[1] != b[1]) ? Integer.compare(a[1], b[1]) : Integer.compare(a[0], b[0]));
+
+		List<OD[]> odPairs = new ArrayList<OD[]>(sampled.size());
+		for (int[] pair: sampled) {
+			OD[] od = {this.ods[pair[0]], this.ods[pair[1]]};
+			odPairs.add(od);
+		}
+		return odPairs;
+	}
+
+	public List<OD[]> sampleODs() {
+		return sampleODs(RandomHelper::nextDouble);
+	}
+
+	public int size() {
+		return this.ids.length;
+	}
+
+	/*
+	 * Get the matrix index of an OD
+	 *
+	 * @param String fid
+	 * 		The FID of the OD
+	 *
+	 * @returns int
+	 * 		The index, or -1 if the OD is not in the matrix
+	 */
+	public int getIndex(String fid) {
+		Integer i = this.fidIndex.get(fid);
+		if (i == null) {
+			return -1;
+		}
+		return i;
+	}
+
+	public OD getOD(int i) {
+		return this.ods[i];
+	}
+
+	public float getFlow(int iO, int iD) {
+		return this.flows[iO][iD];
+	}
+}
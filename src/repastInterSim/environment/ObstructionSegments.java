@@ -0,0 +1,180 @@
+package repastInterSim.environment;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Polygon;
+
+import repast.simphony.space.gis.Geography;
+
+/*
+ * Caches the line segments of fixed geometries as packed coordinate arrays and provides a ray casting kernel over them.
+ *
+ * Used by pedestrians to find the distance to the nearest obstruction in each direction in their field of vision without
+ * creating JTS geometries. Segments are stored as {x1, y1, x2, y2, x1, y1, x2, y2, ...}.
+ */
+public class ObstructionSegments implements Cacheable {
+
+	// Keyed on the geometry objects stored in the geography. JTS geometry equality compares coordinates, so an identity map
+	// is used both to keep lookups O(1) and because geometries that are moved in place (eg ped geometries) must not be keys.
+	// The map is only replaced, never modified, so it can be read without locking while peds step in parallel.
+	private static volatile Map<Geometry, double[]> segmentCache = new IdentityHashMap<Geometry, double[]>();
+
+	/*
+	 * Extract and cache the segments of all geometries in the geography. Used to extract segments of fixed geometries when the
+	 * geography is loaded, rather than when pedestrians first look at the obstruction.
+	 */
+	public static synchronized <T> void cacheGeographySegments(Geography<T> geography) {
+		Map<Geometry, double[]> cache = new IdentityHashMap<Geometry, double[]>(segmentCache);
+		for (T t: geography.getAllObjects()) {
+			Geometry g = geography.getGeometry(t);
+			cache.put(g, extractSegments(g));
+		}
+		segmentCache = cache;
+	}
+
+	/*
+	 * Get the packed segment coordinates of a geometry. Segments are extracted each time for geometries that were not cached by
+	 * cacheGeographySegments.
+	 *
+	 * @param Geometry g
+	 * 		The geometry to get the segments of
+	 * @returns double[]
+	 * 		Array of segment end point coordinates
+	 */
+	public static double[] getSegments(Geometry g) {
+		double[] segs = segmentCache.get(g);
+		if (segs == null) {
+			segs = extractSegments(g);
+		}
+		return segs;
+	}
+
+	/*
+	 * Extract the line segments of a geometry. Polygon rings and line strings contribute a segment for each pair of consecutive
+	 * coordinates. Points have no segments.
+	 */
+	public static double[] extractSegments(Geometry g) {
+		int nSegs = countSegments(g);
+		double[] segs = new double[nSegs*4];
+		addSegments(g, segs, 0);
+		return segs;
+	}
+
+	private static int countSegments(Geometry g) {
+		if (g instanceof LineString) {
+			return Math.max(g.getNumPoints() - 1, 0);
+		}
+		else if (g instanceof Polygon) {
+			Polygon p = (Polygon) g;
+			int n = countSegments(p.getExteriorRing());
+			for (int i=0; i<p.getNumInteriorRing(); i++) {
+				n += countSegments(p.getInteriorRingN(i));
+			}
+			return n;
+		}
+		else if (g.getNumGeometries() > 1) {
+			int n = 0;
+			for (int i=0; i<g.getNumGeometries(); i++) {
+				n += countSegments(g.getGeometryN(i));
+			}
+			return n;
+		}
+		else if ( (g.getNumGeometries() == 1) & (g.getGeometryN(0) != g) ) {
+			return countSegments(g.getGeometryN(0));
+		}
+		return 0;
+	}
+
+	private static int addSegments(Geometry g, double[] segs, int pos) {
+		if (g instanceof LineString) {
+			Coordinate[] coords = g.getCoordinates();
+			for (int i=0; i<coords.length-1; i++) {
+				segs[pos++] = coords[i].x;
+				segs[pos++] = coords[i].y;
+				segs[pos++] = coords[i+1].x;
+				segs[pos++] = coords[i+1].y;
+			}
+		}
+		else if (g instanceof Polygon) {
+			Polygon p = (Polygon) g;
+			pos = addSegments(p.getExteriorRing(), segs, pos);
+			for (int i=0; i<p.getNumInteriorRing(); i++) {
+				pos = addSegments(p.getInteriorRingN(i), segs, pos);
+			}
+		}
+		else if (g.getNumGeometries() > 1) {
+			for (int i=0; i<g.getNumGeometries(); i++) {
+				pos = addSegments(g.getGeometryN(i), segs, pos);
+			}
+		}
+		else if ( (g.getNumGeometries() == 1) & (g.getGeometryN(0) != g) ) {
+			pos = addSegments(g.getGeometryN(0), segs, pos);
+		}
+		return pos;
+	}
+
+	/*
+	 * Find the distance along a ray to its first intersection with a set of segments.
+	 *
+	 * @param double ox
+	 * 		x coordinate of the ray origin
+	 * @param double oy
+	 * 		y coordinate of the ray origin
+	 * @param double dx
+	 * 		x component of the unit vector giving the direction of the ray
+	 * @param double dy
+	 * 		y component of the unit vector giving the direction of the ray
+	 * @param double length
+	 * 		The length of the ray
+	 * @param double[] segs
+	 * 		Packed segment coordinates
+	 *
+	 * @returns double
+	 * 		The distance from the ray origin to the nearest intersection, or Double.POSITIVE_INFINITY if the ray does not intersect any segment
+	 */
+	public static double rayIntersectionDistance(double ox, double oy, double dx, double dy, double length, double[] segs) {
+		double tMin = Double.POSITIVE_INFINITY;
+		for (int i=0; i<segs.length; i+=4) {
+			double ax = segs[i] - ox;
+			double ay = segs[i+1] - oy;
+			double ex = segs[i+2] - segs[i];
+			double ey = segs[i+3] - segs[i+1];
+
+			double denom = dx*ey - dy*ex;
+			double aCrossD = ax*dy - ay*dx;
+			double t;
+			if (denom == 0) {
+				// Parallel. Only intersects if the segment is collinear with the ray, in which case take the nearest end point along the ray
+				if (aCrossD != 0) {
+					continue;
+				}
+				double tA = ax*dx + ay*dy;
+				double tB = tA + ex*dx + ey*dy;
+				if ( (tA < 0) & (tB < 0) ) {
+					continue;
+				}
+				t = Math.max(0, Math.min(tA, tB));
+			}
+			else {
+				t = (ax*ey - ay*ex) / denom;
+				double u = aCrossD / denom;
+				if ( (u < 0) | (u > 1) ) {
+					continue;
+				}
+			}
+
+			if ( (t >= 0) & (t <= length) & (t < tMin) ) {
+				tMin = t;
+			}
+		}
+		return tMin;
+	}
+
+	public static synchronized void clearCaches() {
+		segmentCache = new IdentityHashMap<Geometry, double[]>();
+	}
+}
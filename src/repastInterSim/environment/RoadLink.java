@@ -13,7 +13,6 @@ import com.vividsolutions.jts.geom.impl.CoordinateArraySequence;
 import repastInterSim.agent.Ped;
 import repastInterSim.agent.Vehicle;
 import repastInterSim.main.GlobalVars;
-import repastInterSim.util.RingBufferFillCount;
 
 public class RoadLink implements FixedGeography, Serializable {
 	
@@ -31,8 +30,10 @@ public class RoadLink implements FixedGeography, Serializable {
 	private String direction = null;
 	private String MNodeFID = null;
 	private String PNodeFID = null;
-	private RingBufferFillCount<Vehicle> queue;
+	private VehicleQueue queue;
+	private VehicleArrivals vehicleArrivals;
 	private List<Ped> peds = new ArrayList<Ped>();
+	private List<Ped> crossingPeds = new ArrayList<Ped>(); // Peds on this road link that are crossing it, updated by peds as they start and stop crossing
 	private List<Road> roads = new ArrayList<Road>();
 	
 	/**
@@ -56,8 +57,8 @@ public class RoadLink implements FixedGeography, Serializable {
 	
 	private void initQueue(double roadLength) {
 		int capacity = Math.max(1, (int) (roadLength / GlobalVars.vehicleLength)); 
-		Vehicle[] queueArr = new Vehicle[capacity];
-		this.queue = new RingBufferFillCount<Vehicle>(queueArr);
+		this.queue = new VehicleQueue(capacity);
+		this.vehicleArrivals = new VehicleArrivals(this.queue, this.geom.getCoordinates());
 	}
 
 	@Override
@@ -168,14 +169,56 @@ public class RoadLink implements FixedGeography, Serializable {
 		this.pedRoadID = pedRoadID;
 	}
 	
-	public RingBufferFillCount<Vehicle> getQueue() {
+	public VehicleQueue getQueue() {
 		return this.queue;
 	}
 	
+	public VehicleArrivals getVehicleArrivals() {
+		return this.vehicleArrivals;
+	}
+	
+	/*
+	 * Count the vehicles on this road link that are behind a point and, at their current speed and bearing, will reach or
+	 * pass it within a time period. Uses the vehicle arrival summary if GlobalVars.vehicleArrivalSummary is set, otherwise
+	 * checks the bearing of each vehicle.
+	 * 
+	 * @param double x
+	 * @param double y
+	 * 		The coordinates of the point
+	 * @param double t
+	 * 		The time period
+	 * 
+	 * @returns int
+	 */
+	public int countVehiclesReachingWithin(double x, double y, double t) {
+		if (GlobalVars.vehicleArrivalSummary) {
+			return this.vehicleArrivals.countReachingWithin(x, y, t);
+		}
+		return this.queue.countReachingWithin(x, y, t);
+	}
+	
 	public List<Ped> getPeds() {
 		return this.peds;
 	}
 	
+	/*
+	 * Get the pedestrians that are crossing this road link. The returned list is live and should not be modified,
+	 * use addCrossingPed and removeCrossingPed instead.
+	 */
+	public List<Ped> getCrossingPeds() {
+		return this.crossingPeds;
+	}
+	
+	public void addCrossingPed(Ped p) {
+		if (!this.crossingPeds.contains(p)) {
+			this.crossingPeds.add(p);
+		}
+	}
+	
+	public void removeCrossingPed(Ped p) {
+		this.crossingPeds.remove(p);
+	}
+	
 	public List<Road> getRoads(){
 		return this.roads;
 	}
@@ -0,0 +1,126 @@
+package repastInterSim.environment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import repast.simphony.space.gis.Geography;
+
+/*
+ * Lookup of the crossing alternatives located on each road link, keyed on road link FID.
+ *
+ * Crossing alternatives are recorded against the open road link they lie on (used by pedestrians) and the ITN road links
+ * whose traffic they control (used by vehicles). The lookups are built from the crossing alternative geography the first
+ * time they are used and rebuilt if a different crossing alternative geography is queried.
+ */
+public class RoadLinkCrossingAlternatives implements Cacheable {
+
+	private static final List<CrossingAlternative> noCrossingAlternatives = Collections.unmodifiableList(new ArrayList<CrossingAlternative>());
+
+	private static volatile Geography<CrossingAlternative> indexedGeography = null;
+	private static Map<String, List<CrossingAlternative>> orLinkCrossingAlternatives = new HashMap<String, List<CrossingAlternative>>();
+	private static Map<String, List<CrossingAlternative>> itnLinkCrossingAlternatives = new HashMap<String, List<CrossingAlternative>>();
+
+	/*
+	 * Build the road link to crossing alternative lookups from the crossing alternatives in the geography. Crossing
+	 * alternatives are added to the lookups in the order the geography returns them.
+	 *
+	 * @param Geography<CrossingAlternative> caG
+	 * 		The geography containing all crossing alternative objects
+	 */
+	public static synchronized void indexCrossingAlternatives(Geography<CrossingAlternative> caG) {
+		orLinkCrossingAlternatives = new HashMap<String, List<CrossingAlternative>>();
+		itnLinkCrossingAlternatives = new HashMap<String, List<CrossingAlternative>>();
+
+		for (CrossingAlternative ca: caG.getAllObjects()) {
+			if (ca.getRoadLinkID() != null) {
+				addToLookup(orLinkCrossingAlternatives, ca.getRoadLinkID(), ca);
+			}
+
+			if (ca.getITNRoadLinkIDs() != null) {
+				for (String itnRoadLinkID: ca.getITNRoadLinkIDs()) {
+					addToLookup(itnLinkCrossingAlternatives, itnRoadLinkID, ca);
+				}
+			}
+		}
+
+		// Lists are shared by all callers so are made read only
+		makeUnmodifiable(orLinkCrossingAlternatives);
+		makeUnmodifiable(itnLinkCrossingAlternatives);
+
+		indexedGeography = caG;
+	}
+
+	private static void makeUnmodifiable(Map<String, List<CrossingAlternative>> lookup) {
+		for (Map.Entry<String, List<CrossingAlternative>> e: lookup.entrySet()) {
+			e.setValue(Collections.unmodifiableList(e.getValue()));
+		}
+	}
+
+	private static void addToLookup(Map<String, List<CrossingAlternative>> lookup, String rlID, CrossingAlternative ca) {
+		List<CrossingAlternative> cas = lookup.get(rlID);
+		if (cas == null) {
+			cas = new ArrayList<CrossingAlternative>();
+			lookup.put(rlID, cas);
+		}
+		cas.add(ca);
+	}
+
+	private static void checkIndex(Geography<CrossingAlternative> caG) {
+		if (indexedGeography != caG) {
+			synchronized (RoadLinkCrossingAlternatives.class) {
+				if (indexedGeography != caG) {
+					indexCrossingAlternatives(caG);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Get the crossing alternatives that lie on an open road link.
+	 *
+	 * @param Geography<CrossingAlternative> caG
+	 * 		The geography containing all crossing alternative objects
+	 * @param String orRoadLinkID
+	 * 		The FID of the open road link
+	 *
+	 * @returns List<CrossingAlternative>
+	 * 		The crossing alternatives on the road link. The list is shared and cannot be modified.
+	 */
+	public static List<CrossingAlternative> getORRoadLinkCrossingAlternatives(Geography<CrossingAlternative> caG, String orRoadLinkID) {
+		checkIndex(caG);
+		List<CrossingAlternative> cas = orLinkCrossingAlternatives.get(orRoadLinkID);
+		if (cas == null) {
+			return noCrossingAlternatives;
+		}
+		return cas;
+	}
+
+	/*
+	 * Get the crossing alternatives that control the traffic flow of an ITN road link.
+	 *
+	 * @param Geography<CrossingAlternative> caG
+	 * 		The geography containing all crossing alternative objects
+	 * @param String itnRoadLinkID
+	 * 		The FID of the ITN road link
+	 *
+	 * @returns List<CrossingAlternative>
+	 * 		The crossing alternatives on the road link. The list is shared and cannot be modified.
+	 */
+	public static List<CrossingAlternative> getITNRoadLinkCrossingAlternatives(Geography<CrossingAlternative> caG, String itnRoadLinkID) {
+		checkIndex(caG);
+		List<CrossingAlternative> cas = itnLinkCrossingAlternatives.get(itnRoadLinkID);
+		if (cas == null) {
+			return noCrossingAlternatives;
+		}
+		return cas;
+	}
+
+	public static synchronized void clearCaches() {
+		indexedGeography = null;
+		orLinkCrossingAlternatives = new HashMap<String, List<CrossingAlternative>>();
+		itnLinkCrossingAlternatives = new HashMap<String, List<CrossingAlternative>>();
+	}
+}
@@ -45,6 +45,10 @@ import simphony.util.messages.MessageCenter;
  */
 public class ShapefileLoader<T> {
 
+  // Increment when the way shapefile attributes are mapped onto agent properties changes, so that
+  // environment snapshots created with the old mapping are rebuilt
+  public static final int ATTRIBUTE_MAPPING_VERSION = 1;
+
   private static final MessageCenter msg = MessageCenter.getMessageCenter(ShapefileLoader.class);
   private static Map<Class, Class> primToObject = new HashMap<Class, Class>();
 
@@ -62,6 +66,8 @@ public class ShapefileLoader<T> {
   private Geography geography;
   private Context context;
   private Map<String, Method> attributeMethodMap = new HashMap<String, Method>();
+  private List<String> attributeNames = new ArrayList<String>();
+  private Object[] lastAttributeValues = null;
   private Class agentClass;
 
   private Iterator<SimpleFeature>featureIterator;
@@ -103,10 +109,10 @@ public class ShapefileLoader<T> {
         type = schema.getType(i);
         name = type.getName().getLocalPart();
         
-        Method method = methodMap.get(name.toLowerCase());
-        if (method == null) method = methodMap.get(name.replace("_", "").toLowerCase());
+        Method method = getAttributeWriteMethod(methodMap, name);
         if (method != null && isCompatible(method.getParameterTypes()[0], (type.getBinding()))) {
             attributeMethodMap.put(name, method);  
+            attributeNames.add(name);
         }
       }
       iter = store.getFeatureSource().getFeatures().features();
@@ -164,6 +170,37 @@ public class ShapefileLoader<T> {
 	    return methodMap;
 	}
 
+  /**
+   * Get the method that sets the agent property matching a shapefile attribute.
+   *
+   * @param methodMap map of property name to write method, from getAttributeMethodMap
+   * @param attributeName the shapefile attribute name
+   * @return the write method or null if the agent has no matching property
+   */
+  public static Method getAttributeWriteMethod(Map<String, Method> methodMap, String attributeName) {
+    Method method = methodMap.get(attributeName.toLowerCase());
+    if (method == null) method = methodMap.get(attributeName.replace("_", "").toLowerCase());
+    return method;
+  }
+
+  /**
+   * Returns the names of the shapefile attributes that are used to set agent properties.
+   *
+   * @return the attribute names, in the same order as the values returned by getLastAttributeValues
+   */
+  public List<String> getAttributeNames() {
+    return attributeNames;
+  }
+
+  /**
+   * Returns the attribute values used to set the properties of the last agent created.
+   *
+   * @return the attribute values, in the same order as the names returned by getAttributeNames
+   */
+  public Object[] getLastAttributeValues() {
+    return lastAttributeValues;
+  }
+
   private boolean isCompatible(Class methodParam, Class attributeType) {
     if (methodParam.equals(attributeType)) return true;
     Class clazz = primToObject.get(methodParam);
@@ -319,10 +356,13 @@ public class ShapefileLoader<T> {
   }
 
   private T fillAgent(SimpleFeature feature, T agent) throws IllegalAccessException, InvocationTargetException {
-    for (String attribName : attributeMethodMap.keySet()) {
+    lastAttributeValues = new Object[attributeNames.size()];
+    for (int i = 0; i < attributeNames.size(); i++) {
+      String attribName = attributeNames.get(i);
       Object val = feature.getAttribute(attribName);
       Method write = attributeMethodMap.get(attribName);
       write.invoke(agent, val);
+      lastAttributeValues[i] = val;
     }
     return agent;
   }
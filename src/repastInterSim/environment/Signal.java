@@ -1,14 +1,22 @@
 package repastInterSim.environment;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import com.vividsolutions.jts.geom.Coordinate;
 
-import repast.simphony.engine.schedule.ScheduledMethod;
+import repast.simphony.engine.schedule.ISchedule;
+import repast.simphony.engine.schedule.ScheduleParameters;
+import repastInterSim.main.SimulationMetrics;
 
 public class Signal {
 		
 	// The itn road links this signal controls
 	protected String[] itnLinkIDs;
 	
+	// Index of each road link in itnLinkIDs, which is also the index of the road link's state in each phase
+	private Map<String, Integer> linkIndex = null;
+	
 	// Nested array, each elements contains a phase state
 	protected char[][] phases;
 	protected int[] phaseDurations;
@@ -20,6 +28,9 @@ public class Signal {
 	
 	protected Coordinate signalLoc;
 	
+	// Schedule used to change phase, null unless phase changes have been scheduled
+	private ISchedule schedule = null;
+	
 	/*
 	 * Blank instance method.
 	 */
@@ -35,11 +46,40 @@ public class Signal {
 	}
 	
 	private void init(String[] rlIDs, char[][] phs, int[] pD, int pI) {
-		this.itnLinkIDs = rlIDs;
+		setLinkIDs(rlIDs);
 		this.phases = phs;
 		this.phaseDurations = pD;
 		this.phaseIndex = pI;
 	}
+	
+	/*
+	 * Set the itn road links this signal controls and index their positions.
+	 * 
+	 * @param String[] rlIDs
+	 */
+	protected void setLinkIDs(String[] rlIDs) {
+		this.itnLinkIDs = rlIDs;
+		this.linkIndex = new HashMap<String, Integer>();
+		for (int i=rlIDs.length-1; i>=0; i--) {
+			// Iterate backwards so that if a road link ID is repeated its first index is used
+			this.linkIndex.put(rlIDs[i], i);
+		}
+	}
+	
+	/*
+	 * Get the index of a road link in the road links this signal controls.
+	 * 
+	 * @param String rlID
+	 * 
+	 * @return int. The index, or -1 if the signal doesn't control the road link
+	 */
+	public int getLinkIndex(String rlID) {
+		if (this.linkIndex == null) {
+			return -1;
+		}
+		Integer i = this.linkIndex.get(rlID);
+		return i == null ? -1 : i;
+	}
 		
 	/*
 	 * Get the state of the signal for a given road link
@@ -50,21 +90,25 @@ public class Signal {
 	 * @return char. The state of the signal
 	 */
 	public char getState(String rlID) {
-		char phase = 'u';
-		
 		if(this.phases == null) {
-			return phase;
+			return 'u';
 		}
-		else {
-			// get index this road link appears at and return state value at this index
-			for(int i=0; i<this.itnLinkIDs.length; i++) {
-				if(this.itnLinkIDs[i].contentEquals(rlID)) {
-					phase = this.phases[this.phaseIndex][i];
-					break;
-				}
-			}
-			return phase;
+		return getState(getLinkIndex(rlID));
+	}
+	
+	/*
+	 * Get the state of the signal for the road link at the given index
+	 * 
+	 * @param int i
+	 * 		Index of the road link, given by getLinkIndex
+	 * 
+	 * @return char. The state of the signal, 'u' if the signal has no phases or the index is -1
+	 */
+	public char getState(int i) {
+		if( (this.phases == null) || (i < 0) ) {
+			return 'u';
 		}
+		return this.phases[this.phaseIndex][i];
 	}
 	
 	/*
@@ -90,9 +134,12 @@ public class Signal {
 	}
 	
 	/*
-	 * Change the current state of the signal to be the next phase when the current phases duration has ended.
+	 * Advance the signal by one tick, changing the current state of the signal to be the next phase when the current phases 
+	 * duration has ended.
+	 * 
+	 * In simulations signals are not stepped every tick. Instead phase changes are scheduled with schedulePhaseChanges. 
+	 * Step should not be used on a signal whose phase changes have been scheduled.
 	 */
-	@ScheduledMethod(start = 0, interval = 1)
 	public void step() {
 		if(this.phases!=null) {
 			updateSignal();
@@ -102,17 +149,72 @@ public class Signal {
 	private void updateSignal() {
 		// Check if it's time to change phase
 		if(this.ticksSincePhaseChange >= this.phaseDurations[this.phaseIndex]) {
-			this.ticksSincePhaseChange = 0;
-			this.phaseIndex++;
-			if(this.phaseIndex == this.phases.length) {
-				this.phaseIndex = 0;
-			}
+			changePhase();
 		}
 		else {
 			this.ticksSincePhaseChange+=1;
 		}
 	}
 	
+	/*
+	 * Change to the next phase.
+	 */
+	public void changePhase() {
+		this.ticksSincePhaseChange = 0;
+		this.phaseIndex++;
+		if(this.phaseIndex == this.phases.length) {
+			this.phaseIndex = 0;
+		}
+	}
+	
+	/*
+	 * Get the tick at which the current phase ends, given the first tick that the signal would next be stepped at. 
+	 * 
+	 * Phases change on the step after the phase duration has elapsed, so this gives the same sequence of phases as 
+	 * stepping the signal every tick.
+	 * 
+	 * @param double startTick
+	 * 		The tick the signal would next be stepped at
+	 * 
+	 * @return double
+	 */
+	public double getNextPhaseChangeTick(double startTick) {
+		return startTick + this.phaseDurations[this.phaseIndex] - this.ticksSincePhaseChange;
+	}
+	
+	/*
+	 * Schedule the signal to change phase at the end of each phase, so that it is only invoked when its state changes.
+	 * Phase changes start from tick 0, or the tick after the current tick if the schedule has started. 
+	 * 
+	 * @param ISchedule schedule
+	 */
+	public void schedulePhaseChanges(ISchedule schedule) {
+		if (this.phases == null) {
+			return;
+		}
+		this.schedule = schedule;
+		scheduleNextPhaseChange(Math.max(0, schedule.getTickCount() + 1));
+	}
+	
+	private void scheduleNextPhaseChange(double startTick) {
+		ScheduleParameters params = ScheduleParameters.createOneTime(getNextPhaseChangeTick(startTick));
+		this.schedule.schedule(params, this, "scheduledPhaseChange");
+	}
+	
+	/*
+	 * Called by the schedule at the end of each phase.
+	 */
+	public void scheduledPhaseChange() {
+		long start = SimulationMetrics.start();
+		try {
+			changePhase();
+			scheduleNextPhaseChange(this.schedule.getTickCount() + 1);
+		}
+		finally {
+			SimulationMetrics.stop(SimulationMetrics.Metric.SIGNAL_PHASE_CHANGE, start);
+		}
+	}
+	
 	public String[] getITNRoadLinkIDs() {
 		return this.itnLinkIDs;
 	}
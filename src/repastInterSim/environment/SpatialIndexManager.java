@@ -15,32 +15,41 @@ GNU General Public License for more details.
 You should have received a copy of the GNU General Public License
 along with RepastCity.  If not, see <http://www.gnu.org/licenses/>.
 */
-
 package repastInterSim.environment;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
 import com.vividsolutions.jts.index.SpatialIndex;
 import com.vividsolutions.jts.index.strtree.STRtree;
 import com.vividsolutions.jts.operation.distance.DistanceOp;
 
 import repast.simphony.space.gis.Geography;
 import repastInterSim.main.GlobalVars;
+import repastInterSim.main.SimulationMetrics;
 
 /**
  * Class that can be used to hold spatial indexes for Geography Projections. This
  * allows for more efficient GIS operations (e.g. finding nearby objects). The inner
  * <code>Index</code> class is used to actually hold the index.
+ * <p>
+ * Queries against an index are synchronised on this class unless the index has been frozen
+ * (see {@link #freezeIndex(Geography)}). Frozen indices are read only and are queried without locking,
+ * so that agents can query fixed geographies concurrently. Frozen indices also hold prepared versions of their
+ * geometries, which are used for the contains and intersects tests in {@link #findIntersectingObjects(Geography, Geometry, String)}.
  * 
  * @author Nick Malleson
  * @see SpatialIndex
@@ -49,7 +58,7 @@ import repastInterSim.main.GlobalVars;
 public abstract class SpatialIndexManager implements Cacheable {
 	
 	// Link spatial indices to their geographies.
-	private static Map<Geography<?>, Index<?>> indices = new HashMap<Geography<?>, Index<?>>();
+	private static Map<Geography<?>, Index<?>> indices = new ConcurrentHashMap<Geography<?>, Index<?>>();
 	
 	/**
 	 * Create a new spatial index for the given geography <code>Geography</code>.  
@@ -61,6 +70,39 @@ public abstract class SpatialIndexManager implements Cacheable {
 		Index<T> i = new Index<T>(geog, clazz);
 		SpatialIndexManager.indices.put(geog, i);
 	}
+
+	/**
+	 * Freeze the spatial index of the given geography. The index is built and its geometry to object
+	 * lookups are precomputed, after which it is queried without locking. Should only be used for geographies
+	 * whose objects do not change, e.g. once <code>SpaceBuilder.build</code> has loaded the fixed environment.
+	 *
+	 * @param geog The geography whose index should be frozen.
+	 * @throws NoSuchElementException
+	 *             If there is no spatial index for the given geography.
+	 */
+	public static synchronized <T> void freezeIndex(Geography<T> geog) throws NoSuchElementException {
+		Index<T> index = getIndex(geog);
+		index.freeze(geog);
+	}
+
+	/**
+	 * Freeze all the spatial indices that have been created.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static synchronized void freezeIndices() {
+		for (Map.Entry<Geography<?>, Index<?>> e: indices.entrySet()) {
+			((Index) e.getValue()).freeze((Geography) e.getKey());
+		}
+	}
+
+	/**
+	 * Find out whether the index for the given geography is frozen.
+	 */
+	public static boolean isFrozen(Geography<?> geog) {
+		Index<?> index = indices.get(geog);
+		return (index != null) && index.isFrozen();
+	}
+
 	/**
 	 * Find the nearest object in the given geography to the coordinate.
 	 * 
@@ -77,16 +119,23 @@ public abstract class SpatialIndexManager implements Cacheable {
 	 * @throws NoSuchElementException
 	 *             If there is no spatial index for the given geography.
 	 */
-	@SuppressWarnings("unchecked")
-	public static synchronized <T> T findNearestObject(Geography<T> geog, Coordinate x, List<Coordinate> closestPoints,
+	public static <T> T findNearestObject(Geography<T> geog, Coordinate x, List<Coordinate> closestPoints,
 			GlobalVars.GEOGRAPHY_PARAMS.BUFFER_DISTANCE searchDist) 
 		throws NoSuchElementException {
 		
-		
-		Index<T> index = (Index<T>) indices.get(geog);
-		if (index==null) {
-			throw new NoSuchElementException("The geometry "+geog.getName()+" does not have a spatial index.");
+		Index<T> index = getIndex(geog);
+		if (index.isFrozen()) {
+			return nearestObject(index, x, closestPoints, searchDist);
 		}
+		synchronized (SpatialIndexManager.class) {
+			return nearestObject(index, x, closestPoints, searchDist);
+		}
+	}
+		
+	@SuppressWarnings("unchecked")
+	private static <T> T nearestObject(Index<T> index, Coordinate x, List<Coordinate> closestPoints,
+			GlobalVars.GEOGRAPHY_PARAMS.BUFFER_DISTANCE searchDist) {
+		SimulationMetrics.increment(SimulationMetrics.Metric.SPATIAL_QUERIES);
 		
 		Point p = new GeometryFactory().createPoint(x);
 		
@@ -132,15 +181,11 @@ public abstract class SpatialIndexManager implements Cacheable {
 	 * @throws NoSuchElementException
 	 *             If there is no spatial index for the given geography.
 	 */
-	@SuppressWarnings("unchecked")
-	public static synchronized <T> List<T> findIntersectingObjects(Geography<T> geog, Coordinate x) 
+	public static <T> List<T> findIntersectingObjects(Geography<T> geog, Coordinate x)
 		throws NoSuchElementException {
 		
-		
-		Index<T> index = (Index<T>) indices.get(geog);
-		if (index==null) {
-			throw new NoSuchElementException("The geometry "+geog.getName()+" does not have a spatial index.");
-		}
+		// Check the index exists before creating the point geometry
+		getIndex(geog);
 		
 		Point p = new GeometryFactory().createPoint(x);
 		
@@ -161,24 +206,9 @@ public abstract class SpatialIndexManager implements Cacheable {
 	 * @throws NoSuchElementException
 	 *             If there is no spatial index for the given geography.
 	 */
-	@SuppressWarnings("unchecked")
-	public static synchronized <T> List<T> findIntersectingObjects(Geography<T> geog, Geometry geomIn) 
+	public static <T> List<T> findIntersectingObjects(Geography<T> geog, Geometry geomIn)
 		throws NoSuchElementException {
-		
-		List<Geometry> intersectingGeoms = findIntersectingGeometries(geog, geomIn, "intersects");
-		
-		// This not a very neat method for getting the objects associated with these geometries.
-		// Required due to the way the data is structured, having duplicated geometries associated to different objects.
-		List<T> intersectingObjects = new ArrayList<T>();
-		for (Geometry g: intersectingGeoms) {
-			for (T object: geog.getObjectsWithin(g.getEnvelopeInternal())) {
-				if (GISFunctions.getAgentGeometry(geog, object).equals(g)) {
-					intersectingObjects.add(object);
-				}
-			}
-			//intersectingObjects.add(index.lookupFeature(g));
-		}
-		return intersectingObjects;
+		return findIntersectingObjects(geog, geomIn, "intersects");
 	}
 
 	
@@ -196,21 +226,39 @@ public abstract class SpatialIndexManager implements Cacheable {
 	 * @throws NoSuchElementException
 	 *             If there is no spatial index for the given geography.
 	 */
-	@SuppressWarnings("unchecked")
-	public static synchronized <T> List<T> findIntersectingObjects(Geography<T> geog, Geometry geomIn, String gisOp) 
+	public static <T> List<T> findIntersectingObjects(Geography<T> geog, Geometry geomIn, String gisOp)
 		throws NoSuchElementException {
 		
-		List<Geometry> intersectingGeoms = findIntersectingGeometries(geog, geomIn, gisOp);
+		Index<T> index = getIndex(geog);
+		if (index.isFrozen()) {
+			return intersectingObjects(index, geog, geomIn, gisOp);
+		}
+		synchronized (SpatialIndexManager.class) {
+			return intersectingObjects(index, geog, geomIn, gisOp);
+		}
+	}
+
+	private static <T> List<T> intersectingObjects(Index<T> index, Geography<T> geog, Geometry geomIn, String gisOp) {
+
+		List<Geometry> intersectingGeoms = intersectingGeometries(index, geomIn, gisOp);
+
+		// Frozen indices have already matched geometries to objects
+		List<T> intersectingObjects = new ArrayList<T>();
+		if (index.isFrozen()) {
+			for (Geometry g: intersectingGeoms) {
+				List<T> matches = index.lookupFeatures(g);
+				if (matches == null) {
+					matches = Index.matchingObjects(geog, g);
+				}
+				intersectingObjects.addAll(matches);
+			}
+			return intersectingObjects;
+		}
 		
 		// This not a very neat method for getting the objects associated with these geometries.
 		// Required due to the way the data is structured, having duplicated geometries associated to different objects.
-		List<T> intersectingObjects = new ArrayList<T>();
 		for (Geometry g: intersectingGeoms) {
-			for (T object: geog.getObjectsWithin(g.getEnvelopeInternal())) {
-				if (GISFunctions.getAgentGeometry(geog, object).equals(g)) {
-					intersectingObjects.add(object);
-				}
-			}
+			intersectingObjects.addAll(Index.matchingObjects(geog, g));
 			//intersectingObjects.add(index.lookupFeature(g));
 		}
 		return intersectingObjects;
@@ -230,18 +278,25 @@ public abstract class SpatialIndexManager implements Cacheable {
 	 * @throws NoSuchElementException
 	 *             If there is no spatial index for the given geography.
 	 */
-	@SuppressWarnings("unchecked")
-	public static synchronized <T> List<Geometry> findIntersectingGeometries(Geography<T> geog, Geometry geomIn, String gisOp) 
+	public static <T> List<Geometry> findIntersectingGeometries(Geography<T> geog, Geometry geomIn, String gisOp)
 			throws NoSuchElementException {
+
+		Index<T> index = getIndex(geog);
+		if (index.isFrozen()) {
+			return intersectingGeometries(index, geomIn, gisOp);
+		}
+		synchronized (SpatialIndexManager.class) {
+			return intersectingGeometries(index, geomIn, gisOp);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> List<Geometry> intersectingGeometries(Index<T> index, Geometry geomIn, String gisOp) {
+		SimulationMetrics.increment(SimulationMetrics.Metric.SPATIAL_QUERIES);
 		
 		if (gisOp == null) {
 			gisOp = "";
 		}
-		
-		Index<T> index = (Index<T>) indices.get(geog);
-		if (index==null) {
-			throw new NoSuchElementException("The geometry "+geog.getName()+" does not have a spatial index.");
-		}
 				
 		// Query the spatial index for the nearest objects.
 		List<Geometry> close = index.si.query(geomIn.getEnvelope().buffer(GlobalVars.GEOGRAPHY_PARAMS.BUFFER_DISTANCE.SMALL.dist).getEnvelopeInternal());
@@ -249,8 +304,10 @@ public abstract class SpatialIndexManager implements Cacheable {
 		// Now go through and find the intersecting geometries
 		List<Geometry> intersectingGeoms = new ArrayList<Geometry>();
 		for (Geometry g:close) {
+			// Prepared geometries are only available once the index is frozen
+			PreparedGeometry pg = index.lookupPreparedGeometry(g);
 			if (gisOp.contentEquals("contains")) {
-				if (g.contains(geomIn)) {
+				if ( (pg != null) ? pg.contains(geomIn) : g.contains(geomIn)) {
 					intersectingGeoms.add(g);
 				} // if thisDist < minDist
 			}
@@ -260,7 +317,7 @@ public abstract class SpatialIndexManager implements Cacheable {
 				} // if thisDist < minDist
 			}
 			else {
-				if (g.intersects(geomIn)) {
+				if ( (pg != null) ? pg.intersects(geomIn) : g.intersects(geomIn)) {
 					intersectingGeoms.add(g);
 				} // if thisDist < minDist
 			}
@@ -285,14 +342,20 @@ public abstract class SpatialIndexManager implements Cacheable {
 	 *             If there is no spatial index for the given geography.
 	 * @see STRtree
 	 */
-	@SuppressWarnings("unchecked")
-	public static synchronized <T> List<T> search(Geography<T> geog, Geometry geom) throws NoSuchElementException {
-		
-		Index<T> index = (Index<T>) indices.get(geog);
-		if (index==null) {
-			throw new NoSuchElementException("The geometry "+geog.getName()+" does not have a spatial index.");
+	public static <T> List<T> search(Geography<T> geog, Geometry geom) throws NoSuchElementException {
+
+		Index<T> index = getIndex(geog);
+		if (index.isFrozen()) {
+			return searchObjects(index, geom);
 		}
-		
+		synchronized (SpatialIndexManager.class) {
+			return searchObjects(index, geom);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> List<T> searchObjects(Index<T> index, Geometry geom) {
+		SimulationMetrics.increment(SimulationMetrics.Metric.SPATIAL_QUERIES);
 		// Query the spatial index for the nearest objects.
 		List<Geometry> close = index.si.query(geom.getEnvelopeInternal());
 		List<T> objects = new ArrayList<T>();
@@ -317,16 +380,18 @@ public abstract class SpatialIndexManager implements Cacheable {
 	 * @see STRtree
 	 */
 	@SuppressWarnings("unchecked")
-	public static synchronized <T> List<Geometry> searchGeoms(Geography<T> geog, Geometry geom) throws NoSuchElementException {
+	public static <T> List<Geometry> searchGeoms(Geography<T> geog, Geometry geom) throws NoSuchElementException {
 		
-		Index<T> index = (Index<T>) indices.get(geog);
-		if (index==null) {
-			throw new NoSuchElementException("The geometry "+geog.getName()+" does not have a spatial index.");
+		Index<T> index = getIndex(geog);
+		SimulationMetrics.increment(SimulationMetrics.Metric.SPATIAL_QUERIES);
+		if (index.isFrozen()) {
+			return index.si.query(geom.getEnvelopeInternal());
+		}
+		synchronized (SpatialIndexManager.class) {
+			// Query the spatial index for the nearest objects.
+			List<Geometry> close = index.si.query(geom.getEnvelopeInternal());
+			return close;
 		}
-		
-		// Query the spatial index for the nearest objects.
-		List<Geometry> close = index.si.query(geom.getEnvelopeInternal());
-		return close;
 	}
 	
 	/**
@@ -343,12 +408,19 @@ public abstract class SpatialIndexManager implements Cacheable {
 	 *             If there is no spatial index for the given geography.
 	 * @see STRtree
 	 */
-	@SuppressWarnings("unchecked")
-	public static synchronized <T> List<T> search(Geography<T> geog, Coordinate x) throws NoSuchElementException {
+	public static <T> List<T> search(Geography<T> geog, Coordinate x) throws NoSuchElementException {
 		Point p = new GeometryFactory().createPoint(x);
 		return search(geog, p);
 	}
 	
+	@SuppressWarnings("unchecked")
+	private static <T> Index<T> getIndex(Geography<T> geog) throws NoSuchElementException {
+		Index<T> index = (Index<T>) indices.get(geog);
+		if (index==null) {
+			throw new NoSuchElementException("The geometry "+geog.getName()+" does not have a spatial index.");
+		}
+		return index;
+	}
 	
 	/**
 	 * Find out whether or not this <code>SpatialIndexManager</code> has an index for the
@@ -383,9 +455,31 @@ class Index <T> {
 	 */
 	private Map<Geometry, T> featureLookup;
 	
+	/*
+	 * The geometries inserted into the index. Geometries that are equal to each other are all included.
+	 */
+	private List<Geometry> geometries;
+	
+	/*
+	 * Set once the index has been built and will no longer change. Frozen indices can be queried concurrently.
+	 */
+	private volatile boolean frozen = false;
+
+	/*
+	 * For frozen indices, the objects in the geography whose geometry equals each indexed geometry.
+	 */
+	private Map<Geometry, List<T>> geometryObjects;
+
+	/*
+	 * For frozen indices, prepared versions of the indexed geometries. Keyed by the geometry instances held in the index,
+	 * which are the instances returned by queries.
+	 */
+	private Map<Geometry, PreparedGeometry> preparedGeometries;
+
 	public Index(Geography<T> geog, Class<T> clazz) {
 		this.si = new STRtree();
 		this.featureLookup = new HashMap<Geometry, T>();
+		this.geometries = new ArrayList<Geometry>();
 		this.createIndex(geog, clazz);		
 	}
 	
@@ -398,13 +492,70 @@ class Index <T> {
             bounds = geom.getEnvelopeInternal();
             this.si.insert(bounds, geom);
             this.featureLookup.put(geom, t);
+            this.geometries.add(geom);
 		}
 	}
 	
+	/*
+	 * Build the STRtree and precompute geometry to object matches so that subsequent queries do not modify the index or
+	 * read from the geography. The geometries will no longer change so are prepared here for repeated predicate tests.
+	 */
+	void freeze(Geography<T> geog) {
+		if (this.frozen) {
+			return;
+		}
+
+		// STRtree builds itself lazily on first query, build now so that queries are read only
+		((STRtree) this.si).build();
+
+		Map<Geometry, List<T>> lookup = new HashMap<Geometry, List<T>>();
+		for (Geometry g: this.featureLookup.keySet()) {
+			lookup.put(g, matchingObjects(geog, g));
+		}
+		this.geometryObjects = lookup;
+
+		Map<Geometry, PreparedGeometry> prepared = new IdentityHashMap<Geometry, PreparedGeometry>();
+		for (Geometry g: this.geometries) {
+			prepared.put(g, PreparedGeometryFactory.prepare(g));
+		}
+		this.preparedGeometries = prepared;
+		this.frozen = true;
+	}
+
+	boolean isFrozen() {
+		return this.frozen;
+	}
+
+	/*
+	 * Get the objects in the geography whose geometry is equal to the input geometry.
+	 */
+	static <T> List<T> matchingObjects(Geography<T> geog, Geometry g) {
+		List<T> objects = new ArrayList<T>();
+		for (T object: geog.getObjectsWithin(g.getEnvelopeInternal())) {
+			if (GISFunctions.getAgentGeometry(geog, object).equals(g)) {
+				objects.add(object);
+			}
+		}
+		return objects;
+	}
+
 	public T lookupFeature (Geometry geom) throws NoSuchElementException {
 		assert this.featureLookup.containsKey(geom) : "Internal error: for some reason the " +
 				"given geometry is not a key in the feature lookup table.";
 		return this.featureLookup.get(geom);
 	}
-}
 
+	List<T> lookupFeatures(Geometry geom) {
+		return this.geometryObjects.get(geom);
+	}
+
+	/*
+	 * Get the prepared version of an indexed geometry. Returns null if the index is not frozen.
+	 */
+	PreparedGeometry lookupPreparedGeometry(Geometry geom) {
+		if (!this.frozen) {
+			return null;
+		}
+		return this.preparedGeometries.get(geom);
+	}
+}
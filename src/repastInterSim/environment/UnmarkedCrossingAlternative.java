@@ -14,7 +14,6 @@ import com.vividsolutions.jts.operation.distance.DistanceOp;
 
 import repast.simphony.space.gis.Geography;
 import repastInterSim.agent.Ped;
-import repastInterSim.agent.Vehicle;
 import repastInterSim.main.SpaceBuilder;
 import repastInterSim.pathfinding.RoadNetworkRoute;
 
@@ -65,33 +64,12 @@ public class UnmarkedCrossingAlternative extends CrossingAlternative {
 	public Integer getvFlow() {
 		double crossingTime = this.getC1().distance(this.getC2()) / this.ped.getSpeed();
 		
-		// Loop through vehicles on the road links this crossing covers, count the number that will pass crossing point in crossing time
+		// Count the vehicles on the road links this crossing covers that will pass the crossing point in the crossing time
+		Coordinate c1 = getC1();
 		int vehicleCount = 0;
 		for (int i=0; i<this.getRoad().getRoadLinks().size(); i++){
 			RoadLink rl = this.getRoad().getRoadLinks().get(i);
-			for(int j = 0; j<rl.getQueue().count(); j++){
-				int vi = rl.getQueue().readPos() + j;
-				if (vi>=rl.getQueue().capacity()) {
-					vi = vi-rl.getQueue().capacity();
-				}
-				Vehicle v = rl.getQueue().elements[vi];
-				
-				// Check if crossing is in front of vehicle, if not continue to next vehicle
-				if (!GISFunctions.coordInFront(v.getLoc(), v.getBearing(), getC1())) {
-					continue;
-				}
-				
-				// Get expected future location of vehicle
-				double travelDist = v.getSpeed() * crossingTime;
-				Coordinate futureLoc = new Coordinate(v.getLoc().x + Math.sin(v.getBearing())*travelDist, v.getLoc().y + Math.cos(v.getBearing())*travelDist);
-				
-				// Check if crossing location is in front of future location or not
-				boolean crossingAhead = GISFunctions.coordInFront(futureLoc, v.getBearing(), getC1());
-							
-				if (!crossingAhead){
-					vehicleCount++;
-				}
-			}
+			vehicleCount += rl.countVehiclesReachingWithin(c1.x, c1.y, crossingTime);
 		}
 		return vehicleCount;
 	}
@@ -0,0 +1,184 @@
+package repastInterSim.environment;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+/*
+ * Summary of where the vehicles on a road link are along the link, used to count the vehicles that will arrive at a point on the
+ * link within a time period.
+ *
+ * Each vehicle's location is projected onto the road link and measured as a distance along the link in the vehicle's direction
+ * of travel. Distances and speeds are held in arrays sorted by distance, one pair of arrays for each direction of travel along
+ * the link geometry. A count is then two binary searches plus a check of the vehicles between them.
+ *
+ * The summary is rebuilt from the road link's VehicleQueue when the queue has changed since it was last built. Vehicles do not
+ * move while pedestrians step, so this happens at most once per road link per tick.
+ */
+public class VehicleArrivals {
+
+	private VehicleQueue queue;
+	private double[] xs;
+	private double[] ys;
+	private double[] cumLengths; // Distance along the link to the start of each segment
+	private double length;
+
+	private double[] fwdPos = new double[0];
+	private double[] fwdSpeeds = new double[0];
+	private int nFwd = 0;
+	private double maxFwdSpeed = 0;
+	private double[] bwdPos = new double[0];
+	private double[] bwdSpeeds = new double[0];
+	private int nBwd = 0;
+	private double maxBwdSpeed = 0;
+
+	private long version = -1;
+	private int projectedSegment; // Segment of the last projected point
+
+	public VehicleArrivals(VehicleQueue queue, Coordinate[] linkCoords) {
+		this.queue = queue;
+		int n = linkCoords.length;
+		this.xs = new double[n];
+		this.ys = new double[n];
+		this.cumLengths = new double[n];
+		for (int i=0; i<n; i++) {
+			this.xs[i] = linkCoords[i].x;
+			this.ys[i] = linkCoords[i].y;
+			if (i > 0) {
+				this.cumLengths[i] = this.cumLengths[i-1] + Math.sqrt((xs[i]-xs[i-1])*(xs[i]-xs[i-1]) + (ys[i]-ys[i-1])*(ys[i]-ys[i-1]));
+			}
+		}
+		this.length = this.cumLengths[n-1];
+	}
+
+	/*
+	 * Count the vehicles on the road link that are behind a point and, at their current speed, will reach or pass it within a
+	 * time period.
+	 *
+	 * @param double x
+	 * @param double y
+	 * 		The coordinates of the point
+	 * @param double t
+	 * 		The time period
+	 *
+	 * @returns int
+	 */
+	public synchronized int countReachingWithin(double x, double y, double t) {
+		if (this.version != this.queue.getVersion()) {
+			build(this.queue);
+		}
+		if (this.nFwd + this.nBwd == 0) {
+			return 0;
+		}
+		double s = project(x, y);
+		return countReaching(this.fwdPos, this.fwdSpeeds, this.nFwd, this.maxFwdSpeed, s, t) +
+				countReaching(this.bwdPos, this.bwdSpeeds, this.nBwd, this.maxBwdSpeed, this.length - s, t);
+	}
+
+	// Vehicles behind distance s that get to s within time t. Only vehicles within the furthest distance any vehicle can travel are checked
+	private static int countReaching(double[] pos, double[] speeds, int n, double maxSpeed, double s, double t) {
+		int hi = lowerBound(pos, n, s);
+		int lo = lowerBound(pos, hi, s - maxSpeed * t);
+		int count = 0;
+		for (int i=lo; i<hi; i++) {
+			if (pos[i] + speeds[i] * t >= s) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	// Index of the first of the first n values that is not less than v
+	private static int lowerBound(double[] values, int n, double v) {
+		int lo = 0;
+		int hi = n;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (values[mid] < v) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/*
+	 * Rebuild the sorted distances and speeds from the vehicle states recorded in the queue.
+	 */
+	private void build(VehicleQueue q) {
+		int n = q.count();
+		if (this.fwdPos.length < n) {
+			this.fwdPos = new double[n];
+			this.fwdSpeeds = new double[n];
+			this.bwdPos = new double[n];
+			this.bwdSpeeds = new double[n];
+		}
+		this.nFwd = 0;
+		this.nBwd = 0;
+		this.maxFwdSpeed = 0;
+		this.maxBwdSpeed = 0;
+
+		// Go from the back of the queue to the front so that distances are added in close to ascending order
+		int pos = q.backPos();
+		for (int k=0; k<n; k++) {
+			double s = project(q.getX(pos), q.getY(pos));
+			int seg = this.projectedSegment;
+			double b = q.getBearing(pos);
+			double speed = q.getSpeed(pos);
+			boolean forward = Math.sin(b)*(this.xs[seg+1] - this.xs[seg]) + Math.cos(b)*(this.ys[seg+1] - this.ys[seg]) >= 0;
+			if (forward) {
+				this.nFwd = insert(this.fwdPos, this.fwdSpeeds, this.nFwd, s, speed);
+				this.maxFwdSpeed = Math.max(this.maxFwdSpeed, speed);
+			}
+			else {
+				this.nBwd = insert(this.bwdPos, this.bwdSpeeds, this.nBwd, this.length - s, speed);
+				this.maxBwdSpeed = Math.max(this.maxBwdSpeed, speed);
+			}
+			pos = q.leaderPos(pos);
+		}
+		this.version = q.getVersion();
+	}
+
+	// Insertion sort step, cheap because vehicles further back in the queue are nearly always further back along the link
+	private static int insert(double[] pos, double[] speeds, int n, double s, double speed) {
+		int i = n;
+		while ( (i > 0) && (pos[i-1] > s) ) {
+			pos[i] = pos[i-1];
+			speeds[i] = speeds[i-1];
+			i--;
+		}
+		pos[i] = s;
+		speeds[i] = speed;
+		return n + 1;
+	}
+
+	/*
+	 * Get the distance along the road link geometry to the point on the link nearest the input point. The segment of the link
+	 * this point is on is stored in projectedSegment.
+	 */
+	private double project(double x, double y) {
+		double minDist = Double.MAX_VALUE;
+		double along = 0;
+		this.projectedSegment = 0;
+		for (int i=0; i<this.xs.length-1; i++) {
+			double dx = this.xs[i+1] - this.xs[i];
+			double dy = this.ys[i+1] - this.ys[i];
+			double segLen2 = dx*dx + dy*dy;
+			double f = segLen2 > 0 ? ((x - this.xs[i])*dx + (y - this.ys[i])*dy) / segLen2 : 0;
+			f = Math.max(0, Math.min(1, f));
+			double px = this.xs[i] + f*dx - x;
+			double py = this.ys[i] + f*dy - y;
+			double d = px*px + py*py;
+			if (d < minDist) {
+				minDist = d;
+				along = this.cumLengths[i] + f*(this.cumLengths[i+1] - this.cumLengths[i]);
+				this.projectedSegment = i;
+			}
+		}
+		return along;
+	}
+
+	public double getLength() {
+		return this.length;
+	}
+}
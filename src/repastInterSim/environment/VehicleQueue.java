@@ -0,0 +1,170 @@
+package repastInterSim.environment;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+import repastInterSim.agent.Vehicle;
+import repastInterSim.util.RingBufferFillCount;
+
+/*
+ * The queue of vehicles on a road link, from the vehicle that entered the link first to the vehicle that entered it last.
+ *
+ * Alongside the vehicles the queue holds the location, speed and bearing of each vehicle in arrays indexed by queue position.
+ * Vehicles update their entry when they move or change speed, so the vehicle ahead of or behind a position and the vehicles
+ * approaching a point can be found by reading these arrays rather than the vehicle objects.
+ */
+public class VehicleQueue extends RingBufferFillCount<Vehicle> {
+
+	private double[] xs;
+	private double[] ys;
+	private double[] speeds;
+	private double[] bearings;
+	private double[] sinBearings;
+	private double[] cosBearings;
+	private long version = 0; // Incremented whenever vehicles are added, removed or update their state
+
+	public VehicleQueue(int capacity) {
+		super(new Vehicle[capacity]);
+		this.xs = new double[capacity];
+		this.ys = new double[capacity];
+		this.speeds = new double[capacity];
+		this.bearings = new double[capacity];
+		this.sinBearings = new double[capacity];
+		this.cosBearings = new double[capacity];
+	}
+
+	/*
+	 * Add a vehicle to the back of the queue, recording its current location, speed and bearing.
+	 *
+	 * @returns Integer
+	 * 		The queue position of the vehicle, or null if the queue is full
+	 */
+	@Override
+	public Integer put(Vehicle v) {
+		Integer pos = super.put(v);
+		if ( (pos != null) && (v != null) && (v.getLoc() != null) ) {
+			updateState(pos, v.getLoc().x, v.getLoc().y, v.getSpeed(), v.getBearing());
+		}
+		this.version++;
+		return pos;
+	}
+
+	@Override
+	public Vehicle take() {
+		this.version++;
+		return super.take();
+	}
+
+	@Override
+	public void reset() {
+		this.version++;
+		super.reset();
+	}
+
+	/*
+	 * Record the location, speed and bearing of the vehicle at a queue position.
+	 */
+	public void updateState(int pos, double x, double y, double speed, double bearing) {
+		this.xs[pos] = x;
+		this.ys[pos] = y;
+		this.speeds[pos] = speed;
+		this.bearings[pos] = bearing;
+		this.sinBearings[pos] = Math.sin(bearing);
+		this.cosBearings[pos] = Math.cos(bearing);
+		this.version++;
+	}
+
+	public void updateState(int pos, Coordinate loc, double speed, double bearing) {
+		updateState(pos, loc.x, loc.y, speed, bearing);
+	}
+
+	/*
+	 * Get the position of the vehicle ahead of the input position, or -1 if the input position is at the front of the queue.
+	 */
+	public int leaderPos(int pos) {
+		if ( (this.count() == 0) || (pos == this.readPos()) ) {
+			return -1;
+		}
+		return pos == 0 ? this.capacity() - 1 : pos - 1;
+	}
+
+	/*
+	 * Get the position of the vehicle behind the input position, or -1 if the input position is at the back of the queue.
+	 */
+	public int followerPos(int pos) {
+		if ( (this.count() == 0) || (pos == this.endPos()) ) {
+			return -1;
+		}
+		return pos == this.capacity() - 1 ? 0 : pos + 1;
+	}
+
+	/*
+	 * Get the position of the vehicle at the back of the queue, or -1 if the queue is empty.
+	 */
+	public int backPos() {
+		return this.count() == 0 ? -1 : this.endPos();
+	}
+
+	public Vehicle getLeader(int pos) {
+		int lp = leaderPos(pos);
+		return lp == -1 ? null : this.elements[lp];
+	}
+
+	public Vehicle getFollower(int pos) {
+		int fp = followerPos(pos);
+		return fp == -1 ? null : this.elements[fp];
+	}
+
+	/*
+	 * Count the vehicles that are heading towards a point and, at their current speed, will reach or pass it within a time period.
+	 *
+	 * A vehicle is heading towards the point if the point is in front of it (see GISFunctions.coordInFront). It reaches the point
+	 * if the point is no longer in front of it after travelling for the time period.
+	 *
+	 * @param double x
+	 * @param double y
+	 * 		The coordinates of the point
+	 * @param double t
+	 * 		The time period
+	 *
+	 * @returns int
+	 */
+	public int countReachingWithin(double x, double y, double t) {
+		int n = 0;
+		int pos = this.readPos();
+		for (int k=0; k<this.count(); k++) {
+			if (GISFunctions.coordInFront(this.xs[pos], this.ys[pos], this.bearings[pos], x, y)) {
+				double travelDist = this.speeds[pos] * t;
+				double fx = this.xs[pos] + this.sinBearings[pos]*travelDist;
+				double fy = this.ys[pos] + this.cosBearings[pos]*travelDist;
+				if (!GISFunctions.coordInFront(fx, fy, this.bearings[pos], x, y)) {
+					n++;
+				}
+			}
+			pos = pos == this.capacity() - 1 ? 0 : pos + 1;
+		}
+		return n;
+	}
+
+	public double getX(int pos) {
+		return this.xs[pos];
+	}
+
+	public double getY(int pos) {
+		return this.ys[pos];
+	}
+
+	public double getSpeed(int pos) {
+		return this.speeds[pos];
+	}
+
+	public double getBearing(int pos) {
+		return this.bearings[pos];
+	}
+
+	/*
+	 * Get a number that changes whenever the vehicles in the queue or their states change.
+	 */
+	public long getVersion() {
+		return this.version;
+	}
+}
@@ -61,6 +61,8 @@ public abstract class GlobalVars {
 	public static final String BuildingsRoadsCache = "BuildingsRoadsCache";
 	public static final String RoadLinkRoadsCache = "RoadLinkRoadsCache";
 	public static final String ODPavementJunctionCache = "ODPavementJunctionCache";
+	public static final String StrategicPathCache = "StrategicPathCache";
+	public static final String EnvironmentSnapshotDir = "EnvironmentSnapshotDir";
 			
 	public static double spaceScale = 1;
 	public static double stepToTimeRatio = 1;
@@ -74,9 +76,15 @@ public abstract class GlobalVars {
 	public static double pedMassAv = 60; // 60kg average mass
 	public static double pedMasssd = 10; // 60kg average mass
 	public static double interactionForceConstant = 5000; // 5e3 as per moussaid 2011
+	public static double pedDmax = 10; // Horizon of pedestrian field of vision in metres, as per Moussaid 2011
 	public static int lookAheadTimeSteps = 3; // The number of timesteps to use when calculating an agents lookahead coordinate, used to identifying upcoming crossings.
 	public static double deafultTacticalPlanningHorizon = 20.0; // Degrees
 	public static int stuckPedNSteps = 300; // 5 mins
+	public static boolean parallelPedStepping = false; // If true, ped accelerations are calculated in parallel against positions at the start of the tick
+	public static int pedSteppingThreads = Runtime.getRuntime().availableProcessors(); // Number of threads used for parallel ped stepping
+	public static boolean translatePedGeometry = false; // If true, ped geometries are moved by translating a reused circle rather than buffering a new point each step
+	public static boolean recordTickMetrics = false; // If true, per tick timings and counts are recorded by SimulationMetrics and written to outputDir
+	public static int tickMetricsBufferTicks = 1000; // Number of ticks of metrics held in memory before being written to file
 	
 	public static double defaultVehicleAcceleration = 0.8;
 	public static double defaultVehicleDecceleration = 4.5; // These two values taken from SUMO car following model https://sumo.dlr.de/pdf/KraussDiss.pdf
@@ -85,6 +93,7 @@ public abstract class GlobalVars {
 	public static double vehicleLength = 3.5; // 3.5m
 	public static double vehicleWidth = 1.7; // 1.7m
 	public static double obstacleYieldDistance = 2; // Keep 2m distance from obstacles such as peds and traffic signals
+	public static boolean vehicleArrivalSummary = false; // If true, crossing vehicle flows are counted from vehicle distances along road links rather than from vehicle bearings. Faster, but counts can differ on bent road links
 	
 	
 	public static final class GEOGRAPHY_PARAMS {
@@ -195,6 +204,15 @@ public abstract class GlobalVars {
 		
 		public static Integer defaultGridValue = 0;
 		
+		// Fill grid cells in a random order when flood filling a grid route, rather than in order of distance from the destination
+		public static boolean randomFloodFill = false;
+		
+		// Memory available for caching flood fills shared by routes to the same destination, 0 disables the cache
+		public static double floodFieldCacheMB = 256;
+		
+		// Store cached flood fills deflated, trading time spent on each cache hit for memory
+		public static boolean compressFloodFields = false;
+		
 		public static HashMap<String, Integer> getPriorityValueMap() {
 			if (priorityValueMap.isEmpty()) {
 				priorityValueMap.put("pedestrian", 1);
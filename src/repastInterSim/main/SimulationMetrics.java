@@ -0,0 +1,240 @@
+package repastInterSim.main;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Records per tick wall time, split by scheduled action, along with counts of spatial queries, route planning, flood field
+ * cache use and agents.
+ *
+ * Times and counts for the current tick are accumulated in LongAdders so that peds stepped in parallel can record
+ * without contention. At the end of each tick they are copied into a fixed size buffer of rows, which is appended to
+ * a CSV file in GlobalVars.outputDir when it fills and at the end of the run. A JSON summary of totals is written
+ * alongside the CSV file each time the buffer is flushed.
+ *
+ * Recording is off by default. When off, start() and stop() only read a boolean, so instrumented code costs nothing
+ * noticeable.
+ */
+public class SimulationMetrics {
+
+	private static Logger LOGGER = Logger.getLogger(SimulationMetrics.class.getName());
+
+	public enum Metric {
+		PED_STEP("ped_step_ns"),
+		VEHICLE_STEP("vehicle_step_ns"),
+		SIGNAL_PHASE_CHANGE("signal_phase_change_ns"),
+		ADD_PED_AGENTS("add_ped_agents_ns"),
+		ADD_VEHICLE_AGENTS("add_vehicle_agents_ns"),
+		REMOVE_AGENTS("remove_agents_ns"),
+		SPATIAL_QUERIES("spatial_queries"),
+		STRATEGIC_ROUTES("strategic_routes"),
+		TACTICAL_PATHS("tactical_paths"),
+		FLOOD_FIELD_HITS("flood_field_hits"),
+		FLOOD_FIELD_MISSES("flood_field_misses");
+
+		private String columnName;
+
+		Metric(String columnName) {
+			this.columnName = columnName;
+		}
+
+		public String getColumnName() {
+			return this.columnName;
+		}
+	}
+
+	// Columns of each row, in addition to one for each metric
+	static final String[] TICK_COLUMNS = {"tick", "tick_ns"};
+	static final String[] AGENT_COLUMNS = {"n_peds", "n_vehicles"};
+	static final int N_COLUMNS = TICK_COLUMNS.length + Metric.values().length + AGENT_COLUMNS.length;
+
+	private static volatile boolean enabled = false;
+
+	private static LongAdder[] current;
+	private static long[] rows;
+	private static int capacity;
+	private static int nRows;
+	private static long lastTickTime;
+
+	// Totals over all flushed ticks, used for the summary
+	private static long[] totals;
+	private static long nTicks;
+
+	private static File csvFile;
+	private static File jsonFile;
+
+	/*
+	 * Start recording metrics. Replaces any metrics recorded since the last call.
+	 *
+	 * @param File dir
+	 * 		Directory to write metrics to
+	 * @param String runID
+	 * 		Identifies the run in the names of the metrics files
+	 * @param int bufferTicks
+	 * 		Number of ticks to hold in memory before writing to file
+	 */
+	public static synchronized void enable(File dir, String runID, int bufferTicks) {
+		dir.mkdirs();
+		csvFile = new File(dir, "tick_metrics." + runID + ".csv");
+		jsonFile = new File(dir, "tick_metrics." + runID + ".json");
+
+		current = new LongAdder[Metric.values().length];
+		for (int i=0; i<current.length; i++) {
+			current[i] = new LongAdder();
+		}
+		capacity = bufferTicks;
+		rows = new long[capacity * N_COLUMNS];
+		nRows = 0;
+		totals = new long[N_COLUMNS];
+		nTicks = 0;
+		lastTickTime = System.nanoTime();
+		enabled = true;
+	}
+
+	public static synchronized void disable() {
+		enabled = false;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/*
+	 * Get the start time of a timed section, or 0 if metrics are not being recorded.
+	 */
+	public static long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/*
+	 * Add the time since start to the metric for the current tick.
+	 */
+	public static void stop(Metric m, long start) {
+		if (enabled) {
+			current[m.ordinal()].add(System.nanoTime() - start);
+		}
+	}
+
+	public static void increment(Metric m) {
+		if (enabled) {
+			current[m.ordinal()].increment();
+		}
+	}
+
+	/*
+	 * Get the value recorded so far this tick for a metric.
+	 */
+	public static long getCurrent(Metric m) {
+		return enabled ? current[m.ordinal()].sum() : 0;
+	}
+
+	/*
+	 * Record the metrics accumulated this tick as a row in the buffer and reset them for the next tick. The buffer is
+	 * written to file if full.
+	 *
+	 * @param double tick
+	 * @param int nPeds
+	 * 		Number of peds alive at the end of the tick
+	 * @param int nVehicles
+	 * 		Number of vehicles alive at the end of the tick
+	 */
+	public static synchronized void endTick(double tick, int nPeds, int nVehicles) {
+		if (!enabled) {
+			return;
+		}
+
+		long now = System.nanoTime();
+		int r = nRows * N_COLUMNS;
+		rows[r++] = (long) tick;
+		rows[r++] = now - lastTickTime;
+		for (LongAdder a: current) {
+			rows[r++] = a.sumThenReset();
+		}
+		rows[r++] = nPeds;
+		rows[r++] = nVehicles;
+		lastTickTime = now;
+		nRows++;
+
+		if (nRows == capacity) {
+			flush();
+		}
+	}
+
+	/*
+	 * Append the buffered rows to the CSV file and rewrite the JSON summary.
+	 */
+	public static synchronized void flush() {
+		if (!enabled) {
+			return;
+		}
+
+		boolean newFile = !csvFile.exists();
+		try (FileWriter writer = new FileWriter(csvFile, true)) {
+			if (newFile) {
+				writer.append(String.join(",", getColumnNames())).append("\n");
+			}
+			for (int i=0; i<nRows; i++) {
+				for (int j=0; j<N_COLUMNS; j++) {
+					long v = rows[i*N_COLUMNS + j];
+					if (j > 0) {
+						writer.append(",");
+						totals[j] += v;
+					}
+					writer.append(String.valueOf(v));
+				}
+				writer.append("\n");
+			}
+			nTicks += nRows;
+			nRows = 0;
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "SimulationMetrics.flush() could not write to " + csvFile, e);
+			return;
+		}
+
+		writeSummary();
+	}
+
+	private static void writeSummary() {
+		String[] columns = getColumnNames();
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n  \"ticks\": ").append(nTicks);
+		for (int j=TICK_COLUMNS.length-1; j<N_COLUMNS; j++) {
+			double mean = nTicks > 0 ? (double) totals[j] / nTicks : 0;
+			sb.append(",\n  \"").append(columns[j]).append("\": {\"total\": ").append(totals[j]).append(", \"mean\": ").append(mean).append("}");
+		}
+		sb.append("\n}\n");
+
+		try (FileWriter writer = new FileWriter(jsonFile)) {
+			writer.append(sb);
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "SimulationMetrics.writeSummary() could not write to " + jsonFile, e);
+		}
+	}
+
+	public static String[] getColumnNames() {
+		String[] names = new String[N_COLUMNS];
+		int i = 0;
+		for (String c: TICK_COLUMNS) {
+			names[i++] = c;
+		}
+		for (Metric m: Metric.values()) {
+			names[i++] = m.getColumnName();
+		}
+		for (String c: AGENT_COLUMNS) {
+			names[i++] = c;
+		}
+		return names;
+	}
+
+	public static File getCSVFile() {
+		return csvFile;
+	}
+
+	public static File getJSONFile() {
+		return jsonFile;
+	}
+}
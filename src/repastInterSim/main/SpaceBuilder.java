@@ -2,12 +2,18 @@ package repastInterSim.main;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.File;
 import java.net.MalformedURLException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 import org.opengis.geometry.MismatchedDimensionException;
 
@@ -32,21 +38,30 @@ import repast.simphony.random.RandomHelper;
 import repast.simphony.space.gis.Geography;
 import repast.simphony.space.gis.GeographyParameters;
 import repast.simphony.space.graph.Network;
+import repast.simphony.util.SimUtilities;
 import repast.simphony.util.collections.IndexedIterable;
 import repastInterSim.agent.MobileAgent;
 import repastInterSim.agent.Ped;
 import repastInterSim.agent.Vehicle;
 import repastInterSim.environment.OD;
+import repastInterSim.environment.ODMatrix;
 import repastInterSim.environment.CrossingAlternative;
 import repastInterSim.environment.GISFunctions;
 import repastInterSim.environment.Junction;
 import repastInterSim.environment.NetworkEdgeCreator;
+import repastInterSim.environment.ObstructionSegments;
 import repastInterSim.environment.PedObstruction;
 import repastInterSim.environment.Road;
 import repastInterSim.environment.RoadLink;
+import repastInterSim.environment.RoadLinkCrossingAlternatives;
 import repastInterSim.environment.SpatialIndexManager;
 import repastInterSim.environment.contexts.VehicleDestinationContext;
+import repastInterSim.pathfinding.FloodFieldCache;
+import repastInterSim.pathfinding.GridRaster;
+import repastInterSim.pathfinding.NetworkPathFinder;
 import repastInterSim.pathfinding.RoadNetworkRoute;
+import repastInterSim.pathfinding.StrategicPathCache;
+import repastInterSim.util.UniformGridIndex;
 import repastInterSim.environment.contexts.RoadContext;
 import repastInterSim.environment.contexts.CAContext;
 import repastInterSim.environment.contexts.JunctionContext;
@@ -64,6 +79,9 @@ public class SpaceBuilder extends DefaultContext<Object> implements ContextBuild
 	private static Integer vDI = 0; // Vehicle destination index. Used to select which destination to assign to pedestrians
 		
 	public static Context<Object> context;
+	
+	// Agents that have arrived at their destinations this tick, in the order they arrived
+	private static LinkedHashSet<MobileAgent> arrivedAgents = new LinkedHashSet<MobileAgent>();
 	public static Geography<Object> geography; 
 	
 	public static Context<Road> roadContext;
@@ -104,6 +122,9 @@ public class SpaceBuilder extends DefaultContext<Object> implements ContextBuild
 	public static Geography<RoadLink> pavementLinkGeography;
 	public static Network<Junction> pavementNetwork;
 	
+	// Grid index of pedestrian locations, rebuilt each tick before pedestrians step
+	public static UniformGridIndex<Ped> pedIndex;
+	
 	
 	private static ArrayList<Geography> fixedGeographies = new ArrayList<Geography>();
 	
@@ -112,6 +133,10 @@ public class SpaceBuilder extends DefaultContext<Object> implements ContextBuild
 	private static ISchedulableAction addVehicleAction;
 	private static ISchedulableAction addPedAction;
 	private static ISchedulableAction removeMAgentAction;
+	private static ISchedulableAction updatePedIndexAction;
+	private static ISchedulableAction stepPedsAction;
+	
+	private static ForkJoinPool pedStepPool;
 	
 	private Normal pedSpeeds;
 	private Normal pedMasses;
@@ -134,9 +159,16 @@ public class SpaceBuilder extends DefaultContext<Object> implements ContextBuild
 		// Clear caches before starting
 		RoadNetworkRoute.clearCaches();
 		SpatialIndexManager.clearCaches();
+		ObstructionSegments.clearCaches();
+		NetworkPathFinder.clearCaches();
+		RoadLinkCrossingAlternatives.clearCaches();
+		StrategicPathCache.clearCaches();
+		GridRaster.clearCaches();
+		FloodFieldCache.clearCaches();
 	    
 		context = c;
 		context.setId(GlobalVars.CONTEXT_NAMES.MAIN_CONTEXT);
+		arrivedAgents.clear();
 		
 		// Setup random number distributions
 		pedSpeeds = RandomHelper.createNormal(GlobalVars.pedVavg, GlobalVars.pedVsd);
@@ -144,6 +176,9 @@ public class SpaceBuilder extends DefaultContext<Object> implements ContextBuild
 		
 		fac = new GeometryFactory();
 		
+		// Cell size matches pedestrian field of vision horizon so that perception queries only search neighbouring cells
+		pedIndex = new UniformGridIndex<Ped>(GlobalVars.pedDmax/GlobalVars.spaceScale);
+		
 		// Read in the model properties
 		try {
 			IO.readProperties();
@@ -278,40 +313,22 @@ public class SpaceBuilder extends DefaultContext<Object> implements ContextBuild
 			SpatialIndexManager.createIndex(roadGeography, Road.class);
 			
 			// Link road with itn and OR road links
-			// Also assigns the Road objects to the road links. This enables lookups between OR and ITN road links, through the road objects.
-			for (Road r: SpaceBuilder.roadGeography.getAllObjects()) {
-				List<RoadLink> roadLinks = new ArrayList<RoadLink>();
-				for(RoadLink rl: SpaceBuilder.roadLinkGeography.getAllObjects()) {
-					// Iterating over the vehicle road links (ITN) but using their corresponding ped road link (open road) id to check whether they belong to this vehicle polygon
-					if (rl.getPedRLID().contentEquals(r.getRoadLinkID())) {
-						roadLinks.add(rl);
-						rl.getRoads().add(r);
-					}
-				}
-				
-				RoadLink orLink = null;
-				for(RoadLink rl: SpaceBuilder.orRoadLinkGeography.getAllObjects()) {
-					// Iterating over the vehicle road links (ITN) but using their corresponding ped road link (open road) id to check whether they belong to this vehicle polygon
-					if (rl.getFID().contentEquals(r.getRoadLinkID())) {
-						orLink = rl;
-						orLink.getRoads().add(r);
-						break;
-					}
-				}
-				
-				r.setRoadLinks(roadLinks);
-				r.setORRoadLink(orLink);
-			}
+			GISFunctions.associateRoadsWithRoadLinks(roadGeography, roadLinkGeography, orRoadLinkGeography);
 						
 			// 3. Load pedestrian obstruction boundaries
 			String pedObstructionFile = GISDataDir + IO.getProperty("PedestrianObstructionShapefile");
 			GISFunctions.readShapefile(PedObstruction.class, pedObstructionFile, pedObstructGeography, pedObstructContext);
 			SpatialIndexManager.createIndex(pedObstructGeography, PedObstruction.class);
+			ObstructionSegments.cacheGeographySegments(pedObstructGeography);
 			
 			// 4. Load crossing alternatives
 			String caFile = GISDataDir + IO.getProperty("CAShapefile");
 			GISFunctions.readShapefile(CrossingAlternative.class, caFile, caGeography, caContext);
 			SpatialIndexManager.createIndex(caGeography, CrossingAlternative.class);
+			RoadLinkCrossingAlternatives.indexCrossingAlternatives(caGeography);
+			
+			// The fixed environment has now been loaded. Freeze spatial indices so they can be queried without locking
+			SpatialIndexManager.freezeIndices();
 			
 		} catch (MalformedURLException | FileNotFoundException | MismatchedDimensionException e1 ) {
 			// TODO Auto-generated catch block
@@ -334,15 +351,20 @@ public class SpaceBuilder extends DefaultContext<Object> implements ContextBuild
 		}		
 		
 		// Read in OD matrix data for vehicles from CSV
-		List<String[]> vehicleFlows = IO.readCSV(GISDataDir + IO.getProperty("vehicleODFlowsFile"));
+		ODMatrix vehicleFlows = new ODMatrix(vehicleDestinationGeography.getAllObjects(), IO.readCSV(GISDataDir + IO.getProperty("vehicleODFlowsFile")));
 		
 		// Read in OD matrix data for pedestrians from CSV
-		List<String[]> pedestrianFlows = IO.readCSV(GISDataDir + IO.getProperty("pedestrianODFlowsFile"));
+		ODMatrix pedestrianFlows = new ODMatrix(pedestrianDestinationGeography.getAllObjects(), IO.readCSV(GISDataDir + IO.getProperty("pedestrianODFlowsFile")));
 
 		// Schedule the creation of vehicle agents - tried doing this with annotations but it didnt work
 		ISchedule schedule = RunEnvironment.getInstance().getCurrentSchedule();
 		Parameters params = RunEnvironment.getInstance ().getParameters();
 		
+		// Signals are only invoked by the schedule when they change phase
+		for (CrossingAlternative ca: caGeography.getAllObjects()) {
+			ca.schedulePhaseChanges(schedule);
+		}
+		
 		int  addVehicleTicks = params.getInteger("addVehicleTicks");
 	    ScheduleParameters vehicleScheduleParams = ScheduleParameters.createRepeating(1, addVehicleTicks, ScheduleParameters.FIRST_PRIORITY);
 	    addVehicleAction = schedule.schedule(vehicleScheduleParams, this, "addVehicleAgents", vehicleFlows);
@@ -352,6 +374,42 @@ public class SpaceBuilder extends DefaultContext<Object> implements ContextBuild
 	    ScheduleParameters pedestrianScheduleParams = ScheduleParameters.createRepeating(1,addPedTicks,ScheduleParameters.FIRST_PRIORITY);
 	    addPedAction = schedule.schedule(pedestrianScheduleParams, this, "addPedestrianAgents", pedestrianFlows);
 	    
+	    // Schedule rebuild of the ped grid index. Runs after agents are added but before peds step (priority 2)
+	    ScheduleParameters updatePedIndexScheduleParams = ScheduleParameters.createRepeating(1, 1, 3);
+	    updatePedIndexAction = schedule.schedule(updatePedIndexScheduleParams, this, "updatePedIndex");
+	    
+	    // Optionally step peds in parallel. When enabled Ped.step does nothing and peds are stepped by stepPedsParallel instead.
+	    if (params.getSchema().contains("parallelPedStepping")) {
+	    	GlobalVars.parallelPedStepping = params.getBoolean("parallelPedStepping");
+	    }
+	    if (GlobalVars.parallelPedStepping) {
+	    	// Shut down any pool left by a previous run that didn't reach its end action
+	    	shutdownPedStepPool();
+	    	pedStepPool = new ForkJoinPool(GlobalVars.pedSteppingThreads);
+		    ScheduleParameters stepPedsScheduleParams = ScheduleParameters.createRepeating(1, 1, 2);
+		    stepPedsAction = schedule.schedule(stepPedsScheduleParams, this, "stepPedsParallel");
+		    ScheduleParameters shutdownPoolScheduleParams = ScheduleParameters.createAtEnd(ScheduleParameters.LAST_PRIORITY);
+		    schedule.schedule(shutdownPoolScheduleParams, this, "shutdownPedStepPool");
+	    }
+	    
+	    // Optionally record per tick timings and counts. These are written to file when the run ends.
+	    if (params.getSchema().contains("recordTickMetrics")) {
+	    	GlobalVars.recordTickMetrics = params.getBoolean("recordTickMetrics");
+	    }
+	    if (GlobalVars.recordTickMetrics) {
+	    	String runID = new SimpleDateFormat("yyyy.MMM.dd.HH_mm_ss").format(new Date()) + "." + RandomHelper.getSeed();
+	    	SimulationMetrics.enable(new File(GlobalVars.outputDir), runID, GlobalVars.tickMetricsBufferTicks);
+	    	ScheduleParameters flushMetricsScheduleParams = ScheduleParameters.createAtEnd(ScheduleParameters.LAST_PRIORITY);
+	    	schedule.schedule(flushMetricsScheduleParams, this, "flushTickMetrics");
+	    }
+	    else {
+	    	SimulationMetrics.disable();
+	    }
+	    
+	    // Write strategic paths planned during the run to file, so that they are available to later runs
+	    ScheduleParameters flushPathCacheScheduleParams = ScheduleParameters.createAtEnd(ScheduleParameters.LAST_PRIORITY);
+	    schedule.schedule(flushPathCacheScheduleParams, this, "flushStrategicPathCache");
+	    
 	    // Schedule method that removes agents
 		ScheduleParameters removeMAgentScheduleParameters = ScheduleParameters.createRepeating(1, 1, ScheduleParameters.LAST_PRIORITY);
 		removeMAgentAction = schedule.schedule(removeMAgentScheduleParameters, this, "removeAgentsAtDestinations");
@@ -405,14 +463,17 @@ public class SpaceBuilder extends DefaultContext<Object> implements ContextBuild
 	 * the flow of vehicles 
 	 * 
 	 */
-	public void addVehicleAgents(List<String[]> odData) {
+	public void addVehicleAgents(ODMatrix odData) {
+		long start = SimulationMetrics.start();
 		
-		List<OD[]> ods = mobileAgentODs(vehicleDestinationGeography, odData);
+		List<OD[]> ods = odData.sampleODs();
 		
 		for (int i=0; i< ods.size(); i++) {
 			OD[] od = ods.get(i);
 			addVehicle(od[0], od[1]);
 		}
+		
+		SimulationMetrics.stop(SimulationMetrics.Metric.ADD_VEHICLE_AGENTS, start);
 	}
 	
     /*
@@ -421,65 +482,17 @@ public class SpaceBuilder extends DefaultContext<Object> implements ContextBuild
      * 
      * @param odData The OD flow data used to create pedestrian agents with origins and destinations that match the flow data
      */
-	public void addPedestrianAgents(List<String[]> odData) {
+	public void addPedestrianAgents(ODMatrix odData) {
+		long start = SimulationMetrics.start();
 		
-		List<OD[]> ods = mobileAgentODs(pedestrianDestinationGeography, odData);
+		List<OD[]> ods = odData.sampleODs();
 		
 		for (int i=0; i< ods.size(); i++) {
 			OD[] od = ods.get(i);
 			addPed(od[0], od[1]);
 		}
-	}
-	
-	/*
-	 * Produce list of origin and destination pairs that are used to initialise a group of mobile agents.
-	 */
-	private List<OD[]> mobileAgentODs(Geography<OD> odGeography, List<String[]> odFlows) {
-		
-		List<OD[]> ods = new ArrayList<OD[]>();
-		
-		List<Integer> originsThisStep = new ArrayList<Integer>();
-		
-		// Iterate through all OD pairs and initialise ped moving between these two if prob is above threshold
-		// And ped hasn't been created at this origin already
-		int nOD = odGeography.size();
-		for (int iD = 0; iD<nOD; iD++) {			
-			for (int iO = 0; iO<nOD; iO++) {
-				// If ped already going to be created at this origin skip it, can have two peds created at same location
-				boolean inList = originsThisStep.contains(iO);
-				if (inList) {
-					continue;
-				}
-			
-				// First row of data is the IDs of the ODs
-				String[] ids = odFlows.get(0);
-				String idO = ids[iO];
-				String idD = ids[iD];
-				
-				// Get the OD matrix entry
-				Float flow = Float.parseFloat(odFlows.get(iO+1)[iD]);
-				double threshold = RandomHelper.nextDouble();
-				
-				// According to flow rate, record this od pair as a pair to create mobile agent moving between.
-				if (flow > threshold) {
-					originsThisStep.add(iO);
-					OD o = null;
-					OD d = null;
-					for (OD j: odGeography.getAllObjects()) {
-						if (j.getFID().contentEquals(idO)) {
-							o = j;
-						}
-						else if (j.getFID().contentEquals(idD)) {
-							d = j;
-						}
-					}
-					OD[] od = {o,d};
-					ods.add(od);
-				}
-			}
-		}
 		
-		return ods;
+		SimulationMetrics.stop(SimulationMetrics.Metric.ADD_PED_AGENTS, start);
 	}
 	
 	/*
@@ -618,35 +631,135 @@ public class SpaceBuilder extends DefaultContext<Object> implements ContextBuild
 		return V;
     }
     
+	/*
+	 * Rebuild the grid index of pedestrian locations. Peds are indexed by their location at the start of the tick.
+	 */
+	public void updatePedIndex() {
+		pedIndex.clear();
+		for (Object o: context.getObjects(Ped.class)) {
+			Ped p = (Ped) o;
+			pedIndex.put(p, p.getLoc().x, p.getLoc().y);
+		}
+	}
+    
+	/*
+	 * Step all pedestrians in two phases. Accelerations are calculated in parallel against the positions and velocities
+	 * of peds at the start of the tick, then peds are moved one at a time. Everything that uses the random number generator 
+	 * or modifies shared state is done serially, in an order that depends only on the random seed, so that runs are 
+	 * reproducible for a given seed.
+	 */
+	public void stepPedsParallel() throws Exception {
+		long start = SimulationMetrics.start();
+		try {
+			List<Ped> peds = new ArrayList<Ped>();
+			for (Object o: context.getObjects(Ped.class)) {
+				peds.add((Ped) o);
+			}
+		
+			// Order by id, then shuffle as the scheduler does for annotated methods
+			peds.sort((p1, p2) -> Integer.compare(p1.getID(), p2.getID()));
+			SimUtilities.shuffle(peds, RandomHelper.getUniform());
+			
+			stepPeds(peds, pedStepPool);
+		}
+		finally {
+			SimulationMetrics.stop(SimulationMetrics.Metric.PED_STEP, start);
+		}
+	}
+	
+	/*
+	 * Run the phases of one step for each ped in the order given, calculating accelerations in parallel on the pool.
+	 * 
+	 * @param List<Ped> peds
+	 * 		The peds to step, in the order their serial phases are run
+	 * @param ForkJoinPool pool
+	 * 		The pool accelerations are calculated on
+	 */
+	public static void stepPeds(List<Ped> peds, ForkJoinPool pool) throws Exception {
+		
+		// Serial phase: tactical path updates and choice of target coordinate
+		Coordinate[] targets = new Coordinate[peds.size()];
+		for (int i=0; i<peds.size(); i++) {
+			targets[i] = peds.get(i).prepareStep();
+		}
+		
+		// Parallel phase: no ped moves so all peds see the same snapshot of positions and velocities
+		pool.submit(() -> IntStream.range(0, targets.length).parallel().forEach(i -> {
+			if (targets[i] != null) {
+				peds.get(i).senseWalk(targets[i]);
+			}
+		})).get();
+		
+		// Serial phase: commit moves and update crossing choice
+		for (int i=0; i<peds.size(); i++) {
+			Ped p = peds.get(i);
+			if (targets[i] != null) {
+				p.actWalk();
+				p.getPathFinder().step();
+			}
+			p.completeStep();
+		}
+	}
+    
+	/*
+	 * Record that a mobile agent has arrived at its destination. Called by agents at the end of their step, the agent is 
+	 * removed from the context by removeAgentsAtDestinations at the end of the tick.
+	 */
+	public static void registerArrival(MobileAgent mA) {
+		arrivedAgents.add(mA);
+	}
+    
+	/*
+	 * Remove the agents that arrived at their destinations this tick. Agents detect their own arrival when they step so
+	 * only these agents are visited, rather than all agents in the context.
+	 */
 	public void removeAgentsAtDestinations() {
-        ArrayList<MobileAgent> AgentsToRemove = new ArrayList<MobileAgent>();
-        
-        // Iterate over peds and remove them if they have arrived at the destination
-        for (Object o :context.getObjects(MobileAgent.class)) {
-        	MobileAgent mA  = (MobileAgent) o;
-        	
-        	// Get the geometries in the CRS used for spatial calculations
-        	Geometry dGeom =  mA.getDestination().getGeom();
-        	Geometry mAGeom = GISFunctions.getAgentGeometry(SpaceBuilder.geography, mA);
-        	
-        	// If the pedestrian agent in within the bounds of the destination then remove it from the context as it has reached its destination
-        	if (dGeom.isWithinDistance(mAGeom, GlobalVars.MOBILE_AGENT_PARAMS.destinationArrivalDistance)) {
-        		AgentsToRemove.add(mA);
-        		continue;
-        	}
-        	
-        	// Also check whether the mobile agent has reached its default destination
-        	if (mA.getDefaultDestination().distance(mAGeom.getCoordinate()) < GlobalVars.MOBILE_AGENT_PARAMS.destinationArrivalDistance) {
-        		AgentsToRemove.add(mA);
-        		continue;
+		long start = SimulationMetrics.start();
+		
+        for (MobileAgent mA : arrivedAgents) {
+        	// Skip agents that have already been removed, eg because they got stuck
+        	if (context.contains(mA)) {
+        		removeMobileAgent(mA, null);
         	}
         }
-        // Now iterate over all of the peds to remove and remove them from the context
-        // Need to do this separately from iterating over the peds in the context since altering the context whilst iterating over it throws and exception
-        for (MobileAgent mA : AgentsToRemove) {
-        	removeMobileAgent(mA, null);
+        arrivedAgents.clear();
+        SimulationMetrics.stop(SimulationMetrics.Metric.REMOVE_AGENTS, start);
+        
+        // Removing agents is the last action of each tick so this tick's metrics are recorded here
+        if (SimulationMetrics.isEnabled()) {
+        	SimulationMetrics.endTick(RunEnvironment.getInstance().getCurrentSchedule().getTickCount(), context.getObjects(Ped.class).size(), context.getObjects(Vehicle.class).size());
         }
     }
+    
+    /*
+     * Shut down the threads used to step peds in parallel, so that they don't outlive the run. Scheduled to run at the end of the
+     * simulation.
+     */
+    public void shutdownPedStepPool() {
+    	if (pedStepPool != null) {
+    		pedStepPool.shutdown();
+    		pedStepPool = null;
+    	}
+    }
+    
+    /*
+     * Write strategic paths added to the path cache to file. Scheduled to run at the end of the simulation, since with one run
+     * per JVM the cache is not cleared again after the run.
+     */
+    public void flushStrategicPathCache() {
+    	try {
+    		StrategicPathCache.serialise();
+    	} catch (IOException e) {
+    		LOGGER.log(Level.WARNING, "SpaceBuilder, could not serialise strategic path cache: " + e);
+    	}
+    }
+    
+    /*
+     * Write any per tick metrics that have not yet been written to file. Scheduled to run at the end of the simulation.
+     */
+    public void flushTickMetrics() {
+    	SimulationMetrics.flush();
+    }
 	
 	public static void removeMobileAgent(MobileAgent mA, String msg) {
 		if (msg!=null) {
@@ -0,0 +1,358 @@
+package repastInterSim.main;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/*
+ * Headless runner that runs the points of a batch parameter sweep in parallel within one JVM.
+ *
+ * The model keeps its environment, agents and caches in static fields so two runs can't share the same classes. Each
+ * sweep point is therefore run by the Repast batch runner in its own class loader, which loads its own copy of the model
+ * and Repast classes. Agents, queues, schedules and random number generators are separate for each run.
+ *
+ * Runs share the fixed environment through the on-disk caches, environment snapshots and the strategic path cache, which are
+ * written atomically so runs can read them while another run writes them.
+ *
+ * The sweep is unrolled into one parameter file per point, written to the output directory along with sweep_points.csv
+ * which records the parameter values of each point. Each point is run from its own copy of the scenario in which file sinks
+ * write to the point's directory, so runs never write to the same output file. The JVM must be started with the model and
+ * Repast batch jars on the class path.
+ *
+ * Usage: SweepRunner <sweep parameters file> <scenario directory> [number of threads]
+ */
+public class SweepRunner {
+
+	private static Logger LOGGER = Logger.getLogger(SweepRunner.class.getName());
+
+	static final String BATCH_MAIN_CLASS = "repast.simphony.batch.BatchMain";
+
+	private static final Pattern FILE_SINK_NAME = Pattern.compile("<fileName>(.*?)</fileName>");
+	private static final Pattern CLASS_PATH_ENTRY = Pattern.compile("path=\"(.*?)\"");
+
+	/*
+	 * A single point in a parameter sweep
+	 */
+	public static class SweepPoint {
+		private int runs;
+		private Map<String, String> values = new LinkedHashMap<String, String>();
+		private Map<String, String> types = new LinkedHashMap<String, String>();
+
+		SweepPoint(int runs) {
+			this.runs = runs;
+		}
+
+		SweepPoint copy() {
+			SweepPoint p = new SweepPoint(this.runs);
+			p.values.putAll(this.values);
+			p.types.putAll(this.types);
+			return p;
+		}
+
+		public Map<String, String> getValues() {
+			return this.values;
+		}
+
+		public String getType(String name) {
+			return this.types.get(name);
+		}
+
+		public int getRuns() {
+			return this.runs;
+		}
+
+		/*
+		 * Get the point as a sweep parameters file in which every parameter is a constant.
+		 */
+		public String toSweepXML() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("<?xml version=\"1.0\" ?><sweep runs=\"").append(this.runs).append("\">");
+			for (String name: this.values.keySet()) {
+				sb.append("<parameter name=\"").append(name).append("\" type=\"constant\" constant_type=\"")
+				.append(this.types.get(name)).append("\" value=\"").append(this.values.get(name)).append("\"></parameter>");
+			}
+			sb.append("</sweep>");
+			return sb.toString();
+		}
+	}
+
+	/*
+	 * Read a sweep parameters file and list every combination of parameter values it defines.
+	 *
+	 * @param File sweepFile
+	 * 		A Repast batch parameters file, eg batch/batch_params_sig_spatial.xml
+	 *
+	 * @returns List<SweepPoint>
+	 */
+	public static List<SweepPoint> unrollSweep(File sweepFile) throws Exception {
+		Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(sweepFile);
+		Element sweep = doc.getDocumentElement();
+
+		int runs = 1;
+		if (sweep.hasAttribute("runs")) {
+			runs = Integer.parseInt(sweep.getAttribute("runs"));
+		}
+
+		List<SweepPoint> points = new ArrayList<SweepPoint>();
+		points.add(new SweepPoint(runs));
+		return unrollChildren(sweep, points);
+	}
+
+	/*
+	 * Combine each of the input points with every combination of the values of the parameters that are children of the element.
+	 */
+	private static List<SweepPoint> unrollChildren(Element e, List<SweepPoint> points) {
+		for (Node n = e.getFirstChild(); n != null; n = n.getNextSibling()) {
+			if ( (n instanceof Element) && ((Element) n).getTagName().equals("parameter") ) {
+				points = unrollParameter((Element) n, points);
+			}
+		}
+		return points;
+	}
+
+	private static List<SweepPoint> unrollParameter(Element param, List<SweepPoint> points) {
+		String name = param.getAttribute("name");
+		String type = param.getAttribute("type");
+		String valueType;
+		List<String> values = new ArrayList<String>();
+
+		if (type.equals("constant")) {
+			valueType = param.getAttribute("constant_type");
+			values.add(param.getAttribute("value"));
+		}
+		else if (type.equals("list")) {
+			valueType = param.getAttribute("value_type");
+			for (String v: param.getAttribute("values").trim().split("\\s+")) {
+				values.add(v);
+			}
+		}
+		else if (type.equals("number")) {
+			valueType = param.hasAttribute("number_type") ? param.getAttribute("number_type") : "double";
+			double start = Double.parseDouble(param.getAttribute("start"));
+			double end = Double.parseDouble(param.getAttribute("end"));
+			double step = Double.parseDouble(param.getAttribute("step"));
+			int nSteps = (int) Math.floor((end - start) / step + 1e-9);
+			for (int i=0; i<=nSteps; i++) {
+				double v = start + i*step;
+				values.add( valueType.equals("int") || valueType.equals("long") ? String.valueOf((long) Math.round(v)) : String.valueOf(v));
+			}
+		}
+		else {
+			throw new IllegalArgumentException("SweepRunner.unrollParameter() error: unsupported parameter type " + type + " for parameter " + name);
+		}
+
+		List<SweepPoint> unrolled = new ArrayList<SweepPoint>();
+		for (SweepPoint p: points) {
+			for (String v: values) {
+				SweepPoint pv = p.copy();
+				pv.values.put(name, v);
+				pv.types.put(name, valueType);
+				unrolled.add(pv);
+			}
+		}
+
+		// Parameters nested in this one vary fastest
+		return unrollChildren(param, unrolled);
+	}
+
+	/*
+	 * Record the parameter values of each point in a CSV file.
+	 */
+	static void writePoints(List<SweepPoint> points, File f) throws IOException {
+		FileWriter writer = new FileWriter(f);
+		List<String> names = new ArrayList<String>(points.get(0).getValues().keySet());
+		writer.append("point");
+		for (String name: names) {
+			writer.append(",").append(name);
+		}
+		writer.append("\n");
+		for (int i=0; i<points.size(); i++) {
+			writer.append(String.valueOf(i));
+			for (String name: names) {
+				writer.append(",").append(points.get(i).getValues().get(name));
+			}
+			writer.append("\n");
+		}
+		writer.close();
+	}
+
+	/*
+	 * Copy a scenario directory for a single sweep point. File sinks in the copy write to the point directory and class path
+	 * entries in user_path.xml, which are relative to the scenario directory, are made absolute.
+	 *
+	 * @param File scenarioDir
+	 * 		The model scenario directory
+	 * @param File pointDir
+	 * 		Directory the point's scenario and output files are written to
+	 *
+	 * @returns File
+	 * 		The copied scenario directory
+	 */
+	public static File createPointScenario(File scenarioDir, File pointDir) throws IOException {
+		Path source = scenarioDir.toPath();
+		Path target = new File(pointDir, scenarioDir.getName()).toPath();
+		List<Path> paths = new ArrayList<Path>();
+		try (Stream<Path> walk = Files.walk(source)) {
+			walk.forEach(paths::add);
+		}
+
+		for (Path p: paths) {
+			Path copy = target.resolve(source.relativize(p).toString());
+			if (Files.isDirectory(p)) {
+				Files.createDirectories(copy);
+				continue;
+			}
+
+			String name = p.getFileName().toString();
+			if (name.startsWith("repast.simphony.action.file_sink")) {
+				String xml = new String(Files.readAllBytes(p), StandardCharsets.UTF_8);
+				Matcher m = FILE_SINK_NAME.matcher(xml);
+				StringBuffer sb = new StringBuffer();
+				while (m.find()) {
+					String[] parts = m.group(1).split("[\\\\/]");
+					String outputFile = new File(pointDir, parts[parts.length-1]).getAbsolutePath();
+					m.appendReplacement(sb, Matcher.quoteReplacement("<fileName>" + outputFile + "</fileName>"));
+				}
+				m.appendTail(sb);
+				Files.write(copy, sb.toString().getBytes(StandardCharsets.UTF_8));
+			}
+			else if (name.equals("user_path.xml")) {
+				String xml = new String(Files.readAllBytes(p), StandardCharsets.UTF_8);
+				Matcher m = CLASS_PATH_ENTRY.matcher(xml);
+				StringBuffer sb = new StringBuffer();
+				while (m.find()) {
+					String entry = new File(scenarioDir, m.group(1)).getCanonicalPath();
+					m.appendReplacement(sb, Matcher.quoteReplacement("path=\"" + entry + "\""));
+				}
+				m.appendTail(sb);
+				Files.write(copy, sb.toString().getBytes(StandardCharsets.UTF_8));
+			}
+			else {
+				Files.copy(p, copy);
+			}
+		}
+		return target.toFile();
+	}
+
+	/*
+	 * Get the class path of this JVM, used to create a separate class loader for each run.
+	 */
+	static URL[] getClassPathURLs() throws IOException {
+		String[] entries = System.getProperty("java.class.path").split(File.pathSeparator);
+		URL[] urls = new URL[entries.length];
+		for (int i=0; i<entries.length; i++) {
+			urls[i] = new File(entries[i]).toURI().toURL();
+		}
+		return urls;
+	}
+
+	/*
+	 * Run a single sweep point with the Repast batch runner, in a class loader that does not share classes from the
+	 * class path with any other run.
+	 *
+	 * @param File pointFile
+	 * 		Sweep parameters file for the point
+	 * @param File scenarioDir
+	 * 		The model scenario directory
+	 * @param URL[] classPath
+	 */
+	static void runPoint(File pointFile, File scenarioDir, URL[] classPath) throws Exception {
+		ClassLoader previous = Thread.currentThread().getContextClassLoader();
+		try (URLClassLoader runLoader = new URLClassLoader(classPath, ClassLoader.getSystemClassLoader().getParent())) {
+			Thread.currentThread().setContextClassLoader(runLoader);
+			Class<?> batchMain = runLoader.loadClass(BATCH_MAIN_CLASS);
+			Method main = batchMain.getMethod("main", String[].class);
+			String[] batchArgs = {"-params", pointFile.getAbsolutePath(), scenarioDir.getAbsolutePath()};
+			main.invoke(null, (Object) batchArgs);
+		}
+		finally {
+			Thread.currentThread().setContextClassLoader(previous);
+		}
+	}
+
+	/*
+	 * Run every point of a sweep, running up to nThreads points at once.
+	 *
+	 * @param File sweepFile
+	 * 		A Repast batch parameters file
+	 * @param File scenarioDir
+	 * 		The model scenario directory
+	 * @param int nThreads
+	 * 		Number of points to run at once
+	 * @param File outputDir
+	 * 		Directory to write the parameter file, scenario and output files of each point to
+	 */
+	public static void runSweep(File sweepFile, File scenarioDir, int nThreads, File outputDir) throws Exception {
+		List<SweepPoint> points = unrollSweep(sweepFile);
+		outputDir.mkdirs();
+		writePoints(points, new File(outputDir, "sweep_points.csv"));
+
+		URL[] classPath = getClassPathURLs();
+		ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+		List<Future<?>> runs = new ArrayList<Future<?>>();
+		long start = System.nanoTime();
+		try {
+			for (int i=0; i<points.size(); i++) {
+				File pointDir = new File(outputDir, "point_" + i);
+				pointDir.mkdirs();
+				File pointFile = new File(pointDir, "sweep_point_" + i + ".xml");
+				FileWriter writer = new FileWriter(pointFile);
+				writer.append(points.get(i).toSweepXML());
+				writer.close();
+				File pointScenarioDir = createPointScenario(scenarioDir, pointDir);
+
+				final int iPoint = i;
+				runs.add(pool.submit(() -> {
+					LOGGER.log(Level.INFO, "SweepRunner starting point " + iPoint + " " + points.get(iPoint).getValues());
+					runPoint(pointFile, pointScenarioDir, classPath);
+					LOGGER.log(Level.INFO, "SweepRunner finished point " + iPoint);
+					return null;
+				}));
+			}
+
+			for (Future<?> f: runs) {
+				f.get();
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+		LOGGER.log(Level.INFO, "SweepRunner ran " + points.size() + " points on " + nThreads + " threads in " + (System.nanoTime() - start) / 1e9 + "s");
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("Usage: SweepRunner <sweep parameters file> <scenario directory> [number of threads]");
+			return;
+		}
+		int nThreads = Runtime.getRuntime().availableProcessors();
+		if (args.length > 2) {
+			nThreads = Integer.parseInt(args[2]);
+		}
+		runSweep(new File(args[0]), new File(args[1]), nThreads, new File(GlobalVars.outputDir, "sweep"));
+	}
+}
@@ -308,6 +308,10 @@ public class AccumulatorRoute {
 			this.caChosen = false;
 			this.isCrossing = false;
 		}
+		
+		if (this.ped != null) {
+			this.ped.updateCrossingRoadLink();
+		}
 	}
 	
 	public boolean isCrossing() {
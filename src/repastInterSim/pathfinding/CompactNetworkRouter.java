@@ -0,0 +1,275 @@
+package repastInterSim.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import repast.simphony.space.graph.Network;
+import repast.simphony.space.graph.RepastEdge;
+import repast.simphony.space.projection.ProjectionEvent;
+import repast.simphony.space.projection.ProjectionListener;
+import repastInterSim.environment.Cacheable;
+
+/*
+ * Shortest path routing over a compact, read only copy of a network.
+ *
+ * The network is copied into compressed adjacency arrays (the arcs leaving node i are at positions offsets[i] to offsets[i+1]-1
+ * of the arc arrays). Edge weights are read from the network edges when the copy is made. Queries do not modify the router so
+ * it can be used by many threads at once without locking.
+ *
+ * Routers are shared through getRouter(). A shared router is discarded when its network is modified and a new one is built on
+ * the next request.
+ */
+public class CompactNetworkRouter<T> implements Cacheable {
+
+	private static Map<Network<?>, CompactNetworkRouter<?>> routers = new ConcurrentHashMap<Network<?>, CompactNetworkRouter<?>>();
+	private static Map<Network<?>, RouterInvalidator<?>> invalidators = new ConcurrentHashMap<Network<?>, RouterInvalidator<?>>();
+
+	private Map<T, Integer> nodeIndex = new HashMap<T, Integer>();
+	private List<T> nodes = new ArrayList<T>();
+	private int[] offsets;
+	private int[] arcSources;
+	private int[] arcTargets;
+	private double[] arcWeights;
+	private List<RepastEdge<T>> arcEdges = new ArrayList<RepastEdge<T>>();
+
+	/*
+	 * Create a router from the current state of the network.
+	 *
+	 * @param Network<T> net
+	 * 		The network to copy
+	 */
+	public CompactNetworkRouter(Network<T> net) {
+		for (T node: net.getNodes()) {
+			this.nodeIndex.put(node, this.nodes.size());
+			this.nodes.add(node);
+		}
+
+		int nNodes = this.nodes.size();
+		this.offsets = new int[nNodes + 1];
+		List<Integer> sources = new ArrayList<Integer>();
+		List<Integer> targets = new ArrayList<Integer>();
+		List<Double> weights = new ArrayList<Double>();
+
+		for (int i=0; i<nNodes; i++) {
+			this.offsets[i] = targets.size();
+			T node = this.nodes.get(i);
+			Iterable<RepastEdge<T>> edges = net.isDirected() ? net.getOutEdges(node) : net.getEdges(node);
+			for (RepastEdge<T> e: edges) {
+				T other = e.getSource().equals(node) ? e.getTarget() : e.getSource();
+				sources.add(i);
+				targets.add(this.nodeIndex.get(other));
+				weights.add(e.getWeight());
+				this.arcEdges.add(e);
+			}
+		}
+		this.offsets[nNodes] = targets.size();
+
+		this.arcSources = sources.stream().mapToInt(Integer::intValue).toArray();
+		this.arcTargets = targets.stream().mapToInt(Integer::intValue).toArray();
+		this.arcWeights = weights.stream().mapToDouble(Double::doubleValue).toArray();
+	}
+
+	/*
+	 * Get the router shared by all agents routing on the input network, building it if the network has not been routed on
+	 * since it last changed.
+	 *
+	 * @param Network<T> net
+	 * 		The network to route on
+	 *
+	 * @returns CompactNetworkRouter<T>
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> CompactNetworkRouter<T> getRouter(Network<T> net) {
+		CompactNetworkRouter<T> router = (CompactNetworkRouter<T>) routers.get(net);
+		if (router == null) {
+			synchronized (routers) {
+				router = (CompactNetworkRouter<T>) routers.get(net);
+				if (router == null) {
+					router = new CompactNetworkRouter<T>(net);
+					routers.put(net, router);
+					if (!invalidators.containsKey(net)) {
+						RouterInvalidator<T> invalidator = new RouterInvalidator<T>(net);
+						net.addProjectionListener(invalidator);
+						invalidators.put(net, invalidator);
+					}
+				}
+			}
+		}
+		return router;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static void clearCaches() {
+		synchronized (routers) {
+			for (RouterInvalidator<?> invalidator: invalidators.values()) {
+				((RouterInvalidator<Object>) invalidator).detach();
+			}
+			invalidators.clear();
+			routers.clear();
+		}
+	}
+
+	/*
+	 * Removes the shared router for a network when edges or nodes are added or removed. One is registered per network.
+	 */
+	private static class RouterInvalidator<T> implements ProjectionListener<T> {
+
+		private Network<T> net;
+
+		RouterInvalidator(Network<T> net) {
+			this.net = net;
+		}
+
+		@Override
+		public void projectionEventOccurred(ProjectionEvent<T> evt) {
+			if (evt.getType() != ProjectionEvent.OBJECT_MOVED) {
+				routers.remove(this.net);
+			}
+		}
+
+		void detach() {
+			this.net.removeProjectionListener(this);
+		}
+	}
+
+	/*
+	 * The shortest paths from a single origin node to all other nodes in the network.
+	 */
+	public class ShortestPathTree {
+
+		private double[] dist;
+		private int[] prevArc;
+
+		private ShortestPathTree(double[] dist, int[] prevArc) {
+			this.dist = dist;
+			this.prevArc = prevArc;
+		}
+
+		/*
+		 * Get the length of the shortest path to the target node.
+		 *
+		 * @returns double
+		 * 		The path length or Double.POSITIVE_INFINITY if the target cannot be reached
+		 */
+		public double getPathLength(T target) {
+			Integer i = nodeIndex.get(target);
+			if (i == null) {
+				return Double.POSITIVE_INFINITY;
+			}
+			return this.dist[i];
+		}
+
+		/*
+		 * Get the edges in the shortest path to the target node, ordered from the origin.
+		 *
+		 * @returns List<RepastEdge<T>>
+		 * 		The path. Empty if the target is the origin or cannot be reached
+		 */
+		public List<RepastEdge<T>> getPath(T target) {
+			Integer i = nodeIndex.get(target);
+			if ( (i == null) || (this.dist[i] == Double.POSITIVE_INFINITY) ) {
+				return new ArrayList<RepastEdge<T>>();
+			}
+
+			List<RepastEdge<T>> path = new ArrayList<RepastEdge<T>>();
+			int node = i;
+			while (this.prevArc[node] != -1) {
+				int arc = this.prevArc[node];
+				path.add(arcEdges.get(arc));
+				node = arcSources[arc];
+			}
+			Collections.reverse(path);
+			return path;
+		}
+	}
+
+	/*
+	 * Find the shortest paths from the origin node to all nodes in the network using Dijkstra's algorithm.
+	 *
+	 * @param T origin
+	 * 		The node to find paths from
+	 *
+	 * @returns ShortestPathTree
+	 */
+	public ShortestPathTree getShortestPathTree(T origin) {
+		int nNodes = this.nodes.size();
+		double[] dist = new double[nNodes];
+		int[] prevArc = new int[nNodes];
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		Arrays.fill(prevArc, -1);
+
+		Integer source = this.nodeIndex.get(origin);
+		if (source == null) {
+			return new ShortestPathTree(dist, prevArc);
+		}
+
+		boolean[] settled = new boolean[nNodes];
+		NodeHeap heap = new NodeHeap(nNodes);
+		dist[source] = 0;
+		heap.push(source, 0);
+
+		while (heap.size() > 0) {
+			int node = heap.peekNode();
+			double d = heap.peekKey();
+			heap.pop();
+
+			if (settled[node]) {
+				continue;
+			}
+			settled[node] = true;
+
+			for (int arc = this.offsets[node]; arc < this.offsets[node+1]; arc++) {
+				int next = this.arcTargets[arc];
+				double nd = d + this.arcWeights[arc];
+				if (nd < dist[next]) {
+					dist[next] = nd;
+					prevArc[next] = arc;
+					heap.push(next, nd);
+				}
+			}
+		}
+
+		return new ShortestPathTree(dist, prevArc);
+	}
+
+	/*
+	 * Get the shortest path lengths between each origin and each destination. Runs one search per origin.
+	 *
+	 * @param List<T> origins
+	 * @param List<T> destinations
+	 *
+	 * @returns double[][]
+	 * 		Path lengths indexed by origin then destination. Double.POSITIVE_INFINITY where no path exists.
+	 */
+	public double[][] getPathLengths(List<T> origins, List<T> destinations) {
+		double[][] lengths = new double[origins.size()][destinations.size()];
+		for (int i=0; i<origins.size(); i++) {
+			ShortestPathTree tree = getShortestPathTree(origins.get(i));
+			for (int j=0; j<destinations.size(); j++) {
+				lengths[i][j] = tree.getPathLength(destinations.get(j));
+			}
+		}
+		return lengths;
+	}
+
+	public double getPathLength(T origin, T destination) {
+		return getShortestPathTree(origin).getPathLength(destination);
+	}
+
+	public List<RepastEdge<T>> getPath(T origin, T destination) {
+		return getShortestPathTree(origin).getPath(destination);
+	}
+
+	public int getNodeCount() {
+		return this.nodes.size();
+	}
+
+	public int getArcCount() {
+		return this.arcTargets.length;
+	}
+}
@@ -0,0 +1,248 @@
+package repastInterSim.pathfinding;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import repastInterSim.environment.Cacheable;
+import repastInterSim.main.GlobalVars;
+import repastInterSim.main.SimulationMetrics;
+import repastInterSim.main.SimulationMetrics.Metric;
+
+/*
+ * Caches wavefront flood fills so that routes to the same destination cell with the same cell costs and fill window share one
+ * fill.
+ *
+ * Only the fill window of each field is stored, optionally deflated (GlobalVars.GRID_PARAMS.compressFloodFields). Fields
+ * are evicted least recently used first once the stored fields take more than GlobalVars.GRID_PARAMS.floodFieldCacheMB.
+ * Each request returns a new array, so routes can not modify the cached fields.
+ */
+public class FloodFieldCache implements Cacheable {
+
+	private static Map<FieldKey, CachedField> fields = new LinkedHashMap<FieldKey, CachedField>(16, 0.75f, true);
+	private static long storedBytes = 0;
+	private static long nHits = 0;
+	private static long nMisses = 0;
+	private static long nEvictions = 0;
+
+	/*
+	 * Get the wavefront flood fill from a cell, filling from the cell if the fill is not cached. Parameters are as for
+	 * FloodFill.wavefront().
+	 *
+	 * @returns double[]
+	 * 		Fill value of each raster cell
+	 */
+	public static double[] getFloodField(GridRaster raster, double[] valueCosts, int mini, int minj, int maxi, int maxj, int end) {
+		FieldKey key = new FieldKey(raster, valueCosts, mini, minj, maxi, maxj, end);
+
+		CachedField cached;
+		synchronized (fields) {
+			cached = fields.get(key);
+			if (cached != null) {
+				nHits++;
+			}
+			else {
+				nMisses++;
+			}
+		}
+		if (cached != null) {
+			SimulationMetrics.increment(Metric.FLOOD_FIELD_HITS);
+			return cached.expand(key);
+		}
+		SimulationMetrics.increment(Metric.FLOOD_FIELD_MISSES);
+
+		double[] values = FloodFill.wavefront(raster, valueCosts, mini, minj, maxi, maxj, end);
+
+		long maxBytes = (long) (GlobalVars.GRID_PARAMS.floodFieldCacheMB * 1024 * 1024);
+		if (maxBytes > 0) {
+			CachedField field = new CachedField(key, values, GlobalVars.GRID_PARAMS.compressFloodFields);
+			synchronized (fields) {
+				if ( (field.bytes <= maxBytes) && !fields.containsKey(key) ) {
+					fields.put(key, field);
+					storedBytes += field.bytes;
+					evict(maxBytes);
+				}
+			}
+		}
+		return values;
+	}
+
+	// Remove the least recently used fields until the stored fields fit in the limit
+	private static void evict(long maxBytes) {
+		Iterator<CachedField> it = fields.values().iterator();
+		while ( (storedBytes > maxBytes) && it.hasNext() ) {
+			storedBytes -= it.next().bytes;
+			it.remove();
+			nEvictions++;
+		}
+	}
+
+	public static void clearCaches() {
+		synchronized (fields) {
+			fields.clear();
+			storedBytes = 0;
+			nHits = 0;
+			nMisses = 0;
+			nEvictions = 0;
+		}
+	}
+
+	public static long getNHits() {
+		return nHits;
+	}
+
+	public static long getNMisses() {
+		return nMisses;
+	}
+
+	public static long getNEvictions() {
+		return nEvictions;
+	}
+
+	/*
+	 * Get the proportion of requests that were served from the cache, or 0 if there have been no requests.
+	 */
+	public static double getHitRate() {
+		synchronized (fields) {
+			long n = nHits + nMisses;
+			return n > 0 ? (double) nHits / n : 0;
+		}
+	}
+
+	/*
+	 * Get the approximate memory used by the cached fields in bytes.
+	 */
+	public static long getStoredBytes() {
+		return storedBytes;
+	}
+
+	public static int getNFields() {
+		synchronized (fields) {
+			return fields.size();
+		}
+	}
+
+	/*
+	 * Identifies a flood fill by the raster, the cost of each cell value, the fill window and the cell filled from.
+	 */
+	private static class FieldKey {
+
+		private GridRaster raster;
+		private double[] valueCosts;
+		private int mini;
+		private int minj;
+		private int maxi;
+		private int maxj;
+		private int end;
+		private int hash;
+
+		FieldKey(GridRaster raster, double[] valueCosts, int mini, int minj, int maxi, int maxj, int end) {
+			this.raster = raster;
+			this.valueCosts = valueCosts;
+			this.mini = mini;
+			this.minj = minj;
+			this.maxi = maxi;
+			this.maxj = maxj;
+			this.end = end;
+			this.hash = 31 * (31 * (31 * (31 * (31 * (31 * System.identityHashCode(raster) + Arrays.hashCode(valueCosts)) + mini) + minj) + maxi) + maxj) + end;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof FieldKey)) {
+				return false;
+			}
+			FieldKey k = (FieldKey) o;
+			return (this.raster == k.raster) && (this.end == k.end) && (this.mini == k.mini) && (this.minj == k.minj) &&
+					(this.maxi == k.maxi) && (this.maxj == k.maxj) && Arrays.equals(this.valueCosts, k.valueCosts);
+		}
+	}
+
+	/*
+	 * The fill values within the fill window, stored either as an array or as deflated bytes.
+	 */
+	private static class CachedField {
+
+		private double[] windowValues = null;
+		private byte[] compressed = null;
+		private long bytes;
+
+		CachedField(FieldKey key, double[] values, boolean compress) {
+			int width = key.raster.getWidth();
+			int ww = key.maxi - key.mini;
+			int wh = key.maxj - key.minj;
+			double[] window = new double[ww*wh];
+			for (int j=0; j<wh; j++) {
+				System.arraycopy(values, (key.minj + j)*width + key.mini, window, j*ww, ww);
+			}
+
+			if (compress) {
+				ByteBuffer buf = ByteBuffer.allocate(window.length * Double.BYTES);
+				buf.asDoubleBuffer().put(window);
+				Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+				deflater.setInput(buf.array());
+				deflater.finish();
+				byte[] out = new byte[Math.max(64, buf.capacity() / 4)];
+				int n = 0;
+				while (!deflater.finished()) {
+					if (n == out.length) {
+						out = Arrays.copyOf(out, out.length * 2);
+					}
+					n += deflater.deflate(out, n, out.length - n);
+				}
+				deflater.end();
+				this.compressed = Arrays.copyOf(out, n);
+				this.bytes = this.compressed.length + 64;
+			}
+			else {
+				this.windowValues = window;
+				this.bytes = (long) window.length * Double.BYTES + 64;
+			}
+		}
+
+		// Get the fill values of every raster cell
+		double[] expand(FieldKey key) {
+			int width = key.raster.getWidth();
+			int ww = key.maxi - key.mini;
+			int wh = key.maxj - key.minj;
+
+			double[] window = this.windowValues;
+			if (window == null) {
+				byte[] raw = new byte[ww * wh * Double.BYTES];
+				Inflater inflater = new Inflater();
+				inflater.setInput(this.compressed);
+				try {
+					int n = 0;
+					while ( (n < raw.length) && !inflater.finished() && !inflater.needsInput() ) {
+						n += inflater.inflate(raw, n, raw.length - n);
+					}
+					if (n != raw.length) {
+						throw new DataFormatException("expected " + raw.length + " bytes, got " + n);
+					}
+				} catch (DataFormatException e) {
+					throw new IllegalStateException("FloodFieldCache: could not inflate cached flood field", e);
+				} finally {
+					inflater.end();
+				}
+				window = new double[ww*wh];
+				ByteBuffer.wrap(raw).asDoubleBuffer().get(window);
+			}
+
+			double[] values = new double[width * key.raster.getHeight()];
+			for (int j=0; j<wh; j++) {
+				System.arraycopy(window, j*ww, values, (key.minj + j)*width + key.mini, ww);
+			}
+			return values;
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package repastInterSim.pathfinding;
+
+import java.util.Arrays;
+
+import repast.simphony.random.RandomHelper;
+
+/*
+ * Flood fill of cell values outward from a destination cell of a GridRaster, used to find grid paths by greedy descent.
+ *
+ * The value of a cell is the value of the neighbouring cell it was reached from plus the cost of moving into the cell, looked
+ * up from the cell value. Cells that cost Integer.MAX_VALUE to move into (the default grid value) are given that value and are
+ * not filled through. Cells outside of the fill window, or not reached, keep a value of zero.
+ *
+ * Fill values are returned for the whole raster, indexed as GridRaster cells. Only arrays the size of the fill window are
+ * used as working storage.
+ */
+public class FloodFill {
+
+	private static final int[] DI = {-1, -1, -1, 0, 0, 1, 1, 1};
+	private static final int[] DJ = {-1, 0, 1, -1, 1, -1, 0, 1};
+
+	private static final byte UNREACHED = 0;
+	private static final byte QUEUED = 1;
+	private static final byte DONE = 2;
+
+	/*
+	 * Fill cells in order of increasing value, so that each cell gets the least cost of moving to it from the end cell.
+	 *
+	 * Cells waiting to be filled from are held in buckets of values one minimum move cost wide. Every cell in the lowest
+	 * bucket already has its least value, so buckets are emptied in turn without sorting the cells in them.
+	 *
+	 * @param GridRaster raster
+	 * @param double[] valueCosts
+	 * 		Cost of moving into a cell indexed by cell value minus the minimum cell value of the raster. See GridRaster.valueCosts
+	 * @param int mini
+	 * 		Minimum i value of the fill window
+	 * @param int minj
+	 * 		Minimum j value of the fill window
+	 * @param int maxi
+	 * 		Maximum i value of the fill window, exclusive
+	 * @param int maxj
+	 * 		Maximum j value of the fill window, exclusive
+	 * @param int end
+	 * 		Raster index of the cell to fill from
+	 *
+	 * @returns double[]
+	 * 		Fill value of each raster cell
+	 */
+	public static double[] wavefront(GridRaster raster, double[] valueCosts, int mini, int minj, int maxi, int maxj, int end) {
+		int width = raster.getWidth();
+		int minValue = raster.getMinValue();
+		int ww = maxi - mini;
+		int wh = maxj - minj;
+
+		// Bucket width is the smallest move cost, the number of buckets covers the largest move cost
+		double bucketWidth = Double.POSITIVE_INFINITY;
+		double maxCost = 0;
+		for (double c: valueCosts) {
+			if ( (c > 0) && (c < Integer.MAX_VALUE) ) {
+				bucketWidth = Math.min(bucketWidth, c);
+				maxCost = Math.max(maxCost, c);
+			}
+		}
+		if (bucketWidth == Double.POSITIVE_INFINITY) {
+			bucketWidth = 1;
+		}
+		int nBuckets = (int) (maxCost / bucketWidth) + 2;
+		int[][] buckets = new int[nBuckets][16];
+		int[] bucketSizes = new int[nBuckets];
+
+		double[] values = new double[raster.getWidth()*raster.getHeight()];
+		byte[] state = new byte[ww*wh];
+
+		state[toLocal(end, width, mini, minj, ww)] = QUEUED;
+		buckets[0][bucketSizes[0]++] = end;
+		int nQueued = 1;
+
+		long bucket = 0;
+		while (nQueued > 0) {
+			int slot = (int) (bucket % nBuckets);
+			if (bucketSizes[slot] == 0) {
+				bucket++;
+				continue;
+			}
+
+			int cell = buckets[slot][--bucketSizes[slot]];
+			nQueued--;
+			int local = toLocal(cell, width, mini, minj, ww);
+			if ( (state[local] == DONE) || ((long) Math.floor(values[cell] / bucketWidth) != bucket) ) {
+				// Already filled from, or queued again with a lower value
+				continue;
+			}
+			state[local] = DONE;
+
+			int ci = cell % width;
+			int cj = cell / width;
+			double v = values[cell];
+			for (int k=0; k<DI.length; k++) {
+				int ni = ci + DI[k];
+				int nj = cj + DJ[k];
+				if ( (ni < mini) || (ni >= maxi) || (nj < minj) || (nj >= maxj) ) {
+					continue;
+				}
+				int next = nj*width + ni;
+				int nextLocal = (nj - minj)*ww + (ni - mini);
+				if (state[nextLocal] == DONE) {
+					continue;
+				}
+
+				double cost = valueCosts[raster.getValue(next) - minValue];
+				if (cost >= Integer.MAX_VALUE) {
+					values[next] = Integer.MAX_VALUE;
+					state[nextLocal] = DONE;
+					continue;
+				}
+
+				double nv = v + cost;
+				if ( (state[nextLocal] == UNREACHED) || (nv < values[next]) ) {
+					values[next] = nv;
+					state[nextLocal] = QUEUED;
+					int nextSlot = (int) (((long) Math.floor(nv / bucketWidth)) % nBuckets);
+					if (bucketSizes[nextSlot] == buckets[nextSlot].length) {
+						buckets[nextSlot] = Arrays.copyOf(buckets[nextSlot], bucketSizes[nextSlot]*2);
+					}
+					buckets[nextSlot][bucketSizes[nextSlot]++] = next;
+					nQueued++;
+				}
+			}
+		}
+		return values;
+	}
+
+	/*
+	 * Fill cells in a random order. Cells are taken from the queue at random and each cell keeps the value it is first given,
+	 * so values depend on the order cells are filled from and are not in general the least cost from the end cell.
+	 *
+	 * This is the original GridRoute flood fill, enabled with GlobalVars.GRID_PARAMS.randomFloodFill. Parameters are as for
+	 * wavefront().
+	 */
+	public static double[] randomOrder(GridRaster raster, double[] valueCosts, int mini, int minj, int maxi, int maxj, int end) {
+		int width = raster.getWidth();
+		int minValue = raster.getMinValue();
+		int ww = maxi - mini;
+		int wh = maxj - minj;
+
+		double[] values = new double[raster.getWidth()*raster.getHeight()];
+		byte[] state = new byte[ww*wh];
+		int[] queue = new int[ww*wh];
+		int queueSize = 0;
+
+		// Make sure the end cell value doesn't get updated
+		state[toLocal(end, width, mini, minj, ww)] = DONE;
+		queue[queueSize++] = end;
+		while (queueSize > 0) {
+			// Get random cell from queue - random is important
+			int q = RandomHelper.nextIntFromTo(0, queueSize-1);
+			int cell = queue[q];
+			queue[q] = queue[--queueSize];
+
+			int ci = cell % width;
+			int cj = cell / width;
+			double v = values[cell];
+			for (int k=0; k<DI.length; k++) {
+				int ni = ci + DI[k];
+				int nj = cj + DJ[k];
+				if ( (ni < mini) || (ni >= maxi) || (nj < minj) || (nj >= maxj) ) {
+					continue;
+				}
+				int next = nj*width + ni;
+				int nextLocal = (nj - minj)*ww + (ni - mini);
+
+				double cost = valueCosts[raster.getValue(next) - minValue];
+				if (cost >= Integer.MAX_VALUE) {
+					values[next] = Integer.MAX_VALUE;
+					state[nextLocal] = DONE;
+					continue;
+				}
+
+				// Ensure the next cell doesn't already have a value
+				if (state[nextLocal] == UNREACHED) {
+					values[next] = v + cost;
+					state[nextLocal] = DONE;
+					queue[queueSize++] = next;
+				}
+			}
+		}
+		return values;
+	}
+
+	private static int toLocal(int cell, int width, int mini, int minj, int ww) {
+		return (cell / width - minj)*ww + (cell % width - mini);
+	}
+}
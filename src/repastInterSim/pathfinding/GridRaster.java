@@ -0,0 +1,128 @@
+package repastInterSim.pathfinding;
+
+import java.awt.image.RenderedImage;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+
+import repastInterSim.environment.Cacheable;
+import repastInterSim.main.GlobalVars;
+
+/*
+ * Read only copy of the cell values of the first band of a grid coverage, stored row by row in an int array.
+ *
+ * Decoding a coverage cell through GridCoverage2D.evaluate is slow, so grid path finding reads cell values from a raster
+ * decoded once per coverage and shared through getRaster(). Cell (i, j) is at index j*width + i.
+ */
+public class GridRaster implements Cacheable {
+
+	private static Map<GridCoverage2D, GridRaster> rasterCache = new ConcurrentHashMap<GridCoverage2D, GridRaster>();
+
+	private int width;
+	private int height;
+	private int[] values;
+	private int minValue;
+	private int maxValue;
+
+	/*
+	 * Create a raster from cell values.
+	 *
+	 * @param int width
+	 * @param int height
+	 * @param int[] values
+	 * 		Cell values ordered row by row
+	 */
+	public GridRaster(int width, int height, int[] values) {
+		if (values.length != width*height) {
+			throw new IllegalArgumentException("GridRaster: expected " + (width*height) + " values, got " + values.length);
+		}
+		this.width = width;
+		this.height = height;
+		this.values = values;
+
+		this.minValue = Integer.MAX_VALUE;
+		this.maxValue = Integer.MIN_VALUE;
+		for (int v: values) {
+			this.minValue = Math.min(this.minValue, v);
+			this.maxValue = Math.max(this.maxValue, v);
+		}
+	}
+
+	/*
+	 * Get the raster of a grid coverage, decoding the coverage the first time it is requested.
+	 *
+	 * @param GridCoverage2D grid
+	 *
+	 * @returns GridRaster
+	 */
+	public static GridRaster getRaster(GridCoverage2D grid) {
+		GridRaster raster = rasterCache.get(grid);
+		if (raster == null) {
+			RenderedImage img = grid.getRenderedImage();
+			int w = img.getWidth();
+			int h = img.getHeight();
+			int[] values = img.getData().getSamples(img.getMinX(), img.getMinY(), w, h, 0, new int[w*h]);
+			raster = new GridRaster(w, h, values);
+			rasterCache.put(grid, raster);
+		}
+		return raster;
+	}
+
+	public static void clearCaches() {
+		rasterCache.clear();
+	}
+
+	/*
+	 * Get the cost of moving into a cell for each cell value, given a mapping from cell value to cost. Cells with the default
+	 * grid value, or with values missing from the mapping, cost Integer.MAX_VALUE.
+	 *
+	 * @param Map<Integer, Double> priorityMap
+	 * 		Maps cell values to costs
+	 *
+	 * @returns double[]
+	 * 		Costs indexed by cell value minus the minimum cell value of the raster
+	 */
+	public double[] valueCosts(Map<Integer, Double> priorityMap) {
+		double[] costs = new double[this.values.length == 0 ? 0 : this.maxValue - this.minValue + 1];
+		for (int k=0; k<costs.length; k++) {
+			int v = this.minValue + k;
+			Double cost = priorityMap.get(v);
+			if ( (v == GlobalVars.GRID_PARAMS.defaultGridValue) || (cost == null) ) {
+				costs[k] = Integer.MAX_VALUE;
+			}
+			else {
+				costs[k] = cost;
+			}
+		}
+		return costs;
+	}
+
+	public int cellIndex(int i, int j) {
+		return j*this.width + i;
+	}
+
+	public int getValue(int i, int j) {
+		return this.values[j*this.width + i];
+	}
+
+	public int getValue(int cell) {
+		return this.values[cell];
+	}
+
+	public int getWidth() {
+		return this.width;
+	}
+
+	public int getHeight() {
+		return this.height;
+	}
+
+	public int getMinValue() {
+		return this.minValue;
+	}
+
+	public int getMaxValue() {
+		return this.maxValue;
+	}
+}
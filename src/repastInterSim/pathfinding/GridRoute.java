@@ -1,8 +1,6 @@
 package repastInterSim.pathfinding;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -21,12 +19,7 @@ import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.LineString;
 
 import repast.simphony.random.RandomHelper;
-import repast.simphony.space.graph.Network;
-import repast.simphony.space.graph.RepastEdge;
-import repast.simphony.space.graph.ShortestPath;
-import repast.simphony.space.graph.UndirectedJungNetwork;
 import repastInterSim.environment.GISFunctions;
-import repastInterSim.environment.NetworkEdgeCreator;
 import repastInterSim.environment.Road;
 import repastInterSim.environment.RoadLink;
 import repastInterSim.environment.SpatialIndexManager;
@@ -83,7 +76,7 @@ public class GridRoute {
 	private Map<GridCoordinates2D, List<GridCoordinates2D>> groupedGridPath;
 	
 	// Record the value of grid cells following flood fill (used when routing via a grid)
-	private double[][] floodFillValues = null;
+	private double[] floodFillValues = null;
 	
 	// Sets whether to run flood fill on full grid or just a partial section of it
 	private boolean partialFF = false;
@@ -343,7 +336,7 @@ public class GridRoute {
 		int maxi = gridBounds.get("maxi");
 		int maxj = gridBounds.get("maxj");
 		
-		double[][] cellValues = gridCoverageFloodFill(grid, end, mini, minj, maxi, maxj);
+		double[] cellValues = gridCoverageFloodFill(grid, end, mini, minj, maxi, maxj);
 		boolean atEnd = false;
 		
 		GridCoordinates2D next = start;
@@ -361,80 +354,45 @@ public class GridRoute {
 	
 	/**
 	 * Runs the flood fill algorithm on the grid coverage with the name given as an input parameter. This algorithm assigns 
-	 * each cell a value based on its distance from the mobile agent's end destination. THe process stops once the cell 
-	 * containing the mobile agents current position is reached.
+	 * each cell a value based on its distance from the mobile agent's end destination.
 	 * 
 	 * The grid coverage cell values are used in the calculation of the flood fill values, they represent the 'cost' of travelling through that cell.
+	 * Cells are filled in order of distance from the destination, see FloodFill.wavefront, unless GlobalVars.GRID_PARAMS.randomFloodFill
+	 * is set, in which case they are filled in a random order. Distance ordered fills are shared between routes through FloodFieldCache,
+	 * random order fills are not.
 	 * @param gridCoverageName
 	 * 			The name of the grid coverage to use when calculating cell flood fill values
 	 * @return
-	 * 			2D double array of cell values
+	 * 			double array of cell values, indexed by GridRaster cell
 	 */
-	private double[][] gridCoverageFloodFill(GridCoverage2D grid, GridCoordinates2D end, int mini, int minj, int maxi, int maxj) {
-
-		int width = grid.getRenderedImage().getTileWidth();
-		int height = grid.getRenderedImage().getTileHeight();
-		
-			floodFillValues = new double[height][width]; // Initialised with zeros
-		int [][] n = new int[height][width]; // Use to log number of times a cell is visited. All cells should get visited once.
-		List<GridCoordinates2D> q = new ArrayList<GridCoordinates2D>();
-		
-		// Staring at the destination, flood fill cell values using distance measure between cells
-		GridCoordinates2D thisCell;
-		double thisCellValue;
-		double nextCellValue;
-		int[] cellValue = new int[1];
+	private double[] gridCoverageFloodFill(GridCoverage2D grid, GridCoordinates2D end, int mini, int minj, int maxi, int maxj) {
+		GridRaster raster = GridRaster.getRaster(grid);
+		double[] valueCosts = raster.valueCosts(this.gridSummandPriorityMap);
+		int endCell = raster.cellIndex(end.x, end.y);
 		
-		int i = end.x;
-		int j = end.y;
-		n[j][i] = 1; // Make sure the end cell value doesn't get updated
-		q.add(end);
-		while(q.size() > 0) {
-			// Get random cell from queue - random is important
-			int nextCellIndex = RandomHelper.nextIntFromTo(0, q.size()-1);
-			thisCell = q.get(nextCellIndex);
-			q.remove(nextCellIndex);
-			
-			thisCellValue = floodFillValues[thisCell.y][thisCell.x];
-			for (GridCoordinates2D nextCell: xNeighbours(thisCell, "moore", mini, minj, maxi, maxj)) {
-				
-				cellValue = grid.evaluate(nextCell, cellValue);
-				i = nextCell.x;
-				j = nextCell.y;
-				
-				// If cell with default value, assign value the max int value and exclude from further computation
-				if (cellValue[0] == GlobalVars.GRID_PARAMS.defaultGridValue) {
-					floodFillValues[j][i] = Integer.MAX_VALUE;
-					n[j][i] += 1;
-					continue;
-				}
-				// Ensure the next cell doesn't already have a value
-				if (n[j][i] == 0) {
-					// Get the cost of moving through this cell for the mobile agent by mapping from cell value using agents priority map
-					double summand = this.gridSummandPriorityMap.get(cellValue[0]);
-					nextCellValue = thisCellValue + summand;
-					floodFillValues[j][i] = nextCellValue;
-					n[j][i] += 1;
-					q.add(nextCell);
-				}
-			}
+		if (GlobalVars.GRID_PARAMS.randomFloodFill) {
+			floodFillValues = FloodFill.randomOrder(raster, valueCosts, mini, minj, maxi, maxj, endCell);
+		}
+		else {
+			floodFillValues = FloodFieldCache.getFloodField(raster, valueCosts, mini, minj, maxi, maxj, endCell);
 		}
 		return floodFillValues;
 	}
 	
-	private GridCoordinates2D greedyManhattanNeighbour(GridCoordinates2D cell, double[][] cellValues, List<GridCoordinates2D> path, int mini, int minj, int maxi, int maxj) {
+	private GridCoordinates2D greedyManhattanNeighbour(GridCoordinates2D cell, double[] cellValues, List<GridCoordinates2D> path, int mini, int minj, int maxi, int maxj) {
 		GridCoordinates2D greedyNeighbour = greedyXNeighbour(cell, cellValues, path, "manhattan", mini, minj, maxi, maxj);
 		return greedyNeighbour;
 	}
 	
-	private GridCoordinates2D greedyMooreNeighbour(GridCoordinates2D cell, double[][] cellValues, List<GridCoordinates2D> path, int mini, int minj, int maxi, int maxj) {
+	private GridCoordinates2D greedyMooreNeighbour(GridCoordinates2D cell, double[] cellValues, List<GridCoordinates2D> path, int mini, int minj, int maxi, int maxj) {
 		GridCoordinates2D greedyNeighbour = greedyXNeighbour(cell, cellValues, path, "moore", mini, minj, maxi, maxj);
 		return greedyNeighbour;
 	}
 	
-	private GridCoordinates2D greedyXNeighbour(GridCoordinates2D cell, double[][] cellValues, List<GridCoordinates2D> path, String neighbourType, int mini, int minj, int maxi, int maxj) {
+	private GridCoordinates2D greedyXNeighbour(GridCoordinates2D cell, double[] cellValues, List<GridCoordinates2D> path, String neighbourType, int mini, int minj, int maxi, int maxj) {
 		
 		List<GridCoordinates2D> neighbours = xNeighbours(cell, neighbourType, mini, minj, maxi, maxj);
+		GridRaster raster = GridRaster.getRaster(this.grid);
 		
 		// Initialise greedy options
 		List<Double> minVal = new ArrayList<Double>();
@@ -448,7 +406,7 @@ public class GridRoute {
 			if (path.contains(neighbour)) {
 				continue;
 			}
-			double val = cellValues[neighbour.y][neighbour.x];
+			double val = cellValues[raster.cellIndex(neighbour.x, neighbour.y)];
 			
 			// If cell value equal to current minimum include in greedy option
 			if (Math.abs(val - minVal.get(0)) < 0.0000000001) {
@@ -502,123 +460,13 @@ public class GridRoute {
 	 * 			List<GridCoordinates2D> The grid coordinates path
 	 */
 	private List<GridCoordinates2D> getAStarGridPath(GridCoverage2D grid, Coordinate o, Coordinate d){
-		
-		List<GridCoordinates2D> gP = new ArrayList<GridCoordinates2D>();
-
-		DirectPosition2D dpStart = new DirectPosition2D(o.x, o.y);
-		DirectPosition2D dpEnd = new DirectPosition2D(d.x, d.y);
-		GridCoordinates2D start = null;
-		GridCoordinates2D end = null;
-		try {
-			start = grid.getGridGeometry().worldToGrid(dpStart);
-			end = grid.getGridGeometry().worldToGrid(dpEnd);
-		} catch (InvalidGridGeometryException | TransformException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		
-		Map<String, Integer> gridBounds = gridBounds(grid, start, end, this.partialFF);
-		int mini = gridBounds.get("mini");
-		int minj = gridBounds.get("minj");
-		int maxi = gridBounds.get("maxi");
-		int maxj = gridBounds.get("maxj");
-		
-		/*
-		 * Do A Star Algo
-		 * 
-		 * Taken, in part, from Justin Wetherell's Java implementation of the A Star algorithm:
-		 * https://github.com/phishman3579/java-algorithms-implementation/blob/master/src/com/jwetherell/algorithms/graph/AStar.java
-		 * 
-		 * 
-		 */
-		
-		// Initialise records of grid cell distance measures used to choose path
-		Set<GridCoordinates2D> closedSet = new HashSet<GridCoordinates2D>();
-		List<GridCoordinates2D> openSet = new ArrayList<GridCoordinates2D>();
-		Map<GridCoordinates2D, GridCoordinates2D> cameFrom = new HashMap<GridCoordinates2D, GridCoordinates2D>();
-		Map<GridCoordinates2D, Double> gScore = new HashMap<GridCoordinates2D, Double>();
-		Map<GridCoordinates2D, Double> fScore = new HashMap<GridCoordinates2D, Double>();
-		
-		GridCoordinates2D thisCell;
-		int[] cellValue = new int[1];
-		
-	    Comparator<GridCoordinates2D> fComparator = new Comparator<GridCoordinates2D>() {
-	        /**
-	         * {@inheritDoc}
-	         */
-	        @Override
-	        public int compare(GridCoordinates2D c1, GridCoordinates2D c2) {
-	            if (fScore.get(c1) < fScore.get(c2))
-	                return -1;
-	            if (fScore.get(c2) < fScore.get(c1))
-	                return 1;
-	            return 0;
-	        }
-	    };
-		
-		// Initialise f score values
-		for (int j = minj; j<maxj;j++) {
-			for (int i = mini; i<maxi;i++) {
-				fScore.put(new GridCoordinates2D(i, j), (double) Integer.MAX_VALUE);
-			}
-		}
-		
-		// Add stating coordinate to the openSet
-		openSet.add(start);
-        gScore.put(start, 0.0);
-		
-		// Run algorithm until destination is reached
-		while(!openSet.isEmpty()) {
-			thisCell = openSet.get(0);
-			
-			// If this is the destination, job's done
-			if (thisCell.equals(end)) {
-				// Unpack and return the path
-				gP = reconstructPath(cameFrom, thisCell);
-				return gP;
-			}
-			
-			openSet.remove(0);
-			closedSet.add(thisCell);
-			
-			// Get neighbours and compute fScores for each of these
-			for (GridCoordinates2D nextCell: xNeighbours(thisCell, "moore", mini, minj, maxi, maxj)) {
-				if(closedSet.contains(nextCell)) {
-					continue;
-				}
-				
-				cellValue = grid.evaluate(nextCell, cellValue);
-				double summand;
-				if (cellValue[0] == GlobalVars.GRID_PARAMS.defaultGridValue) {
-					summand = Integer.MAX_VALUE;
-				}
-				else {
-					summand = this.gridSummandPriorityMap.get(cellValue[0]);
-				}
-				double tentativeGScore = gScore.get(thisCell) + summand;
-				if(!openSet.contains(nextCell)) {
-					openSet.add(nextCell); // New candidate cell identified
-				}
-				else if (tentativeGScore >= gScore.get(nextCell)) {
-					continue; // Don't bother if neighbour not going to have good f score
-				}
-				
-				// thisCell is best path so far, record it
-				cameFrom.put(nextCell, thisCell);
-				gScore.put(nextCell, tentativeGScore);
-				double tentativeFScore = gScore.get(nextCell) + heuristicCostEstimate(nextCell, end);
-				fScore.put(nextCell, tentativeFScore);
-				Collections.sort(openSet, fComparator);
-			}	
-		}
-		return null;
+		return getRouterGridPath(grid, o, d, true);
 	}
 	
 	/**
 	 * Find a path through a grid coverage layer by using the Dijkstra's algorithm.
 	 * 
-	 * To do this, need to first create a network object from the grid , which enables the use of
-	 * existing implementation of Dijkstra's.
+	 * The search runs on the raster of cell values shared by all routes on the grid, see GridRouter.
 	 * 
 	 * @param grid
 	 * 		The grid coverage object
@@ -630,9 +478,30 @@ public class GridRoute {
 	 * 			List<GridCoordinates2D> The grid coordinates path
 	 */
 	private List<GridCoordinates2D> getDijkstraGridPath(GridCoverage2D grid, Coordinate o, Coordinate d){
-		
-		// Initialise the grid path to be produced
-		List<GridCoordinates2D> gP = new ArrayList<GridCoordinates2D>();
+		List<GridCoordinates2D> gP = getRouterGridPath(grid, o, d, false);
+		if (gP == null) {
+			gP = new ArrayList<GridCoordinates2D>();
+		}
+		return gP;
+	}
+	
+	/**
+	 * Find the least cost path through a grid coverage layer with GridRouter. The cost of moving into a cell is given by the
+	 * grid summand priority map.
+	 * 
+	 * @param grid
+	 * 		The grid coverage object
+	 * @param o
+	 * 		The coordinate of the origin
+	 * @param d
+	 * 		The coordinate of the destination
+	 * @param aStar
+	 * 		Whether to use A* rather than Dijkstra's algorithm
+	 * @return
+	 * 			List<GridCoordinates2D> The grid coordinates path, from the origin cell up to but excluding the destination cell.
+	 * 			Null if there is no path.
+	 */
+	private List<GridCoordinates2D> getRouterGridPath(GridCoverage2D grid, Coordinate o, Coordinate d, boolean aStar){
 		
 		DirectPosition2D dpStart = new DirectPosition2D(o.x, o.y);
 		DirectPosition2D dpEnd = new DirectPosition2D(d.x, d.y);
@@ -646,92 +515,26 @@ public class GridRoute {
 			e.printStackTrace();
 		}
 		
-		Network<GridCoordinates2D> gridNetwork = new UndirectedJungNetwork<GridCoordinates2D>(GlobalVars.CONTEXT_NAMES.GRID_NETWORK, new NetworkEdgeCreator<GridCoordinates2D>());
-		
-		// Initialise records of grid cell distance measures used to choose path
-		Set<GridCoordinates2D> closedSet = new HashSet<GridCoordinates2D>();
-		List<GridCoordinates2D> openSet = new ArrayList<GridCoordinates2D>();
-		
-		GridCoordinates2D thisCell;
-		int[] cellValue = new int[1];
-		
 		Map<String, Integer> gridBounds = gridBounds(grid, start, end, this.partialFF);
 		int mini = gridBounds.get("mini");
 		int minj = gridBounds.get("minj");
 		int maxi = gridBounds.get("maxi");
 		int maxj = gridBounds.get("maxj");
 		
-		// Create the network
-		openSet.add(start);
-		while(!openSet.isEmpty()) {
-			thisCell = openSet.get(0);			
-			openSet.remove(0);
-			closedSet.add(thisCell);
-			
-			// Get neighbours and compute fScores for each of these
-			for (GridCoordinates2D nextCell: xNeighbours(thisCell, "moore", mini, minj, maxi, maxj)) {
-				if(closedSet.contains(nextCell)) {
-					continue;
-				}
-				
-				cellValue = grid.evaluate(nextCell, cellValue);
-				double perceivedValue;
-				if (cellValue[0] == GlobalVars.GRID_PARAMS.defaultGridValue) {
-					perceivedValue = Integer.MAX_VALUE;
-				}
-				else {
-					perceivedValue = this.gridSummandPriorityMap.get(cellValue[0]);
-				}
-		
-				// Create an edge between the two junctions, assigning a weight equal to it's length
-				RepastEdge<GridCoordinates2D> edge = new RepastEdge<GridCoordinates2D>(thisCell, nextCell, false, perceivedValue);
-		
-				// Add the edge to the network
-				if (!gridNetwork.containsEdge(edge)) {
-					gridNetwork.addEdge(edge);
-				} else {
-					//LOGGER.severe("CityContext: buildRoadNetwork: for some reason this edge that has just been created "
-						//	+ "already exists in the RoadNetwork.");
-				}
-				
-				if(!openSet.contains(nextCell)) {
-					openSet.add(nextCell); // New candidate cell identified
-				}
-			}
+		GridRaster raster = GridRaster.getRaster(grid);
+		double[] valueCosts = raster.valueCosts(this.gridSummandPriorityMap);
+		int[] cells = GridRouter.shortestPath(raster, valueCosts, mini, minj, maxi, maxj, raster.cellIndex(start.x, start.y), raster.cellIndex(end.x, end.y), aStar);
+		if (cells == null) {
+			return null;
 		}
 		
-		// Get path using Dijkstras
-		ShortestPath<GridCoordinates2D> p = new ShortestPath<GridCoordinates2D>(gridNetwork);
-		List<RepastEdge<GridCoordinates2D>> shortestPath = p.getPath(start, end);
-		
-		// Iterate over the path to get the grid cells that make up the path
-		for (RepastEdge<GridCoordinates2D> edge : shortestPath) {
-			gP.add(edge.getSource());
+		List<GridCoordinates2D> gP = new ArrayList<GridCoordinates2D>();
+		for (int k=0; k<cells.length-1; k++) {
+			gP.add(new GridCoordinates2D(cells[k] % raster.getWidth(), cells[k] / raster.getWidth()));
 		}
-
 		return gP;
 	}
 	
-	private double heuristicCostEstimate(GridCoordinates2D cell, GridCoordinates2D destinationCell) {
-		// Calculate as the crow flies distance
-		double dist = Math.sqrt(Math.pow(cell.x - destinationCell.x, 2) +	Math.pow(cell.y - destinationCell.y,2));
-		return dist;
-	}
-	
-    private List<GridCoordinates2D> reconstructPath(Map<GridCoordinates2D,GridCoordinates2D> cameFrom, GridCoordinates2D thisCell) {
-        List<GridCoordinates2D> path = new ArrayList<GridCoordinates2D>();
-
-        while (thisCell != null) {
-            GridCoordinates2D previousCell = thisCell;
-            thisCell = cameFrom.get(thisCell);
-            if (thisCell != null) {
-            	path.add(thisCell);
-            }
-        }
-        Collections.reverse(path);
-        return path;
-    }
-	
 	/**
 	 * Given a grid coordinate return a list of the Manhattan neighbours of this coordinate (N, E, S, W)
 	 * @param cell
@@ -966,7 +769,7 @@ public class GridRoute {
 		return pathSection;
 	}
 	
-	public double[][] getFloodFillGridValues() {
+	public double[] getFloodFillGridValues() {
 		return this.floodFillValues;
 	}
 	
@@ -0,0 +1,151 @@
+package repastInterSim.pathfinding;
+
+import java.util.Arrays;
+
+/*
+ * Least cost paths between cells of a GridRaster using Dijkstra's algorithm or A*.
+ *
+ * Cells are connected to their Moore neighbours. The cost of a move is the cost of the cell moved into, looked up from the
+ * cell value. Searches are limited to a window of the raster and use arrays the size of the window, so no objects are
+ * created per cell.
+ */
+public class GridRouter {
+
+	private static final int[] DI = {-1, -1, -1, 0, 0, 1, 1, 1};
+	private static final int[] DJ = {-1, 0, 1, -1, 1, -1, 0, 1};
+
+	/*
+	 * Find the least cost path between two cells.
+	 *
+	 * @param GridRaster raster
+	 * 		The cell values
+	 * @param double[] valueCosts
+	 * 		Cost of moving into a cell indexed by cell value minus the minimum cell value of the raster. See GridRaster.valueCosts
+	 * @param int mini
+	 * 		Minimum i value of the search window
+	 * @param int minj
+	 * 		Minimum j value of the search window
+	 * @param int maxi
+	 * 		Maximum i value of the search window, exclusive
+	 * @param int maxj
+	 * 		Maximum j value of the search window, exclusive
+	 * @param int start
+	 * 		Raster index of the start cell
+	 * @param int end
+	 * 		Raster index of the end cell
+	 * @param boolean aStar
+	 * 		Use the A* heuristic to limit the cells searched
+	 *
+	 * @returns int[]
+	 * 		Raster indices of the cells in the path, from the start cell to the end cell inclusive. Null if there is no path.
+	 */
+	public static int[] shortestPath(GridRaster raster, double[] valueCosts, int mini, int minj, int maxi, int maxj, int start, int end, boolean aStar) {
+		int width = raster.getWidth();
+		int ww = maxi - mini;
+		int wh = maxj - minj;
+		int minValue = raster.getMinValue();
+
+		int endI = end % width;
+		int endJ = end / width;
+		int localStart = toLocal(start, width, mini, minj, ww);
+		int localEnd = toLocal(end, width, mini, minj, ww);
+
+		double minCost = 0;
+		if (aStar) {
+			minCost = Double.POSITIVE_INFINITY;
+			for (double c: valueCosts) {
+				minCost = Math.min(minCost, c);
+			}
+			minCost = Math.max(minCost, 0);
+		}
+
+		double[] dist = new double[ww*wh];
+		int[] prev = new int[ww*wh];
+		boolean[] settled = new boolean[ww*wh];
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+
+		NodeHeap heap = new NodeHeap(Math.max(ww, wh)*8);
+		dist[localStart] = 0;
+		prev[localStart] = -1;
+		heap.push(localStart, heuristicCostEstimate(start % width, start / width, endI, endJ, minCost));
+
+		while (heap.size() > 0) {
+			int cell = heap.peekNode();
+			heap.pop();
+
+			if (settled[cell]) {
+				continue;
+			}
+			settled[cell] = true;
+			if (cell == localEnd) {
+				break;
+			}
+
+			int ci = cell % ww;
+			int cj = cell / ww;
+			double d = dist[cell];
+			for (int k=0; k<DI.length; k++) {
+				int ni = ci + DI[k];
+				int nj = cj + DJ[k];
+				if ( (ni < 0) || (ni >= ww) || (nj < 0) || (nj >= wh) ) {
+					continue;
+				}
+				int next = nj*ww + ni;
+				if (settled[next]) {
+					continue;
+				}
+				double nd = d + valueCosts[raster.getValue(mini + ni, minj + nj) - minValue];
+				if (nd < dist[next]) {
+					dist[next] = nd;
+					prev[next] = cell;
+					heap.push(next, nd + heuristicCostEstimate(mini + ni, minj + nj, endI, endJ, minCost));
+				}
+			}
+		}
+
+		if (!settled[localEnd]) {
+			return null;
+		}
+
+		int n = 0;
+		for (int cell = localEnd; cell != -1; cell = prev[cell]) {
+			n++;
+		}
+		int[] path = new int[n];
+		for (int cell = localEnd; cell != -1; cell = prev[cell]) {
+			path[--n] = raster.cellIndex(mini + cell % ww, minj + cell / ww);
+		}
+		return path;
+	}
+
+	/*
+	 * Get the total cost of a path, excluding the start cell.
+	 *
+	 * @param GridRaster raster
+	 * @param double[] valueCosts
+	 * @param int[] path
+	 * 		Raster indices of the cells in the path
+	 *
+	 * @returns double
+	 */
+	public static double pathCost(GridRaster raster, double[] valueCosts, int[] path) {
+		double cost = 0;
+		for (int k=1; k<path.length; k++) {
+			cost += valueCosts[raster.getValue(path[k]) - raster.getMinValue()];
+		}
+		return cost;
+	}
+
+	/*
+	 * Lower bound of the cost of a path between two cells. Every move into a cell costs at least minCost and a path between two
+	 * cells makes at least as many moves as the larger of the differences between their i and j values. The estimate never
+	 * decreases by more than the cost of a move, so A* finds paths with the same cost as Dijkstra's algorithm.
+	 */
+	private static double heuristicCostEstimate(int i, int j, int endI, int endJ, double minCost) {
+		return minCost * Math.max(Math.abs(i - endI), Math.abs(j - endJ));
+	}
+
+	private static int toLocal(int cell, int width, int mini, int minj, int ww) {
+		return (cell / width - minj)*ww + (cell % width - mini);
+	}
+}
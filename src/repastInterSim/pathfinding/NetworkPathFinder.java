@@ -3,8 +3,10 @@ package repastInterSim.pathfinding;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 import java.util.function.Function;
 
@@ -17,6 +19,7 @@ import org.jgrapht.alg.shortestpath.YenShortestPathIterator;
 import org.jgrapht.graph.AsWeightedGraph;
 import org.jgrapht.graph.DefaultEdge;
 import org.jgrapht.graph.DefaultUndirectedGraph;
+import org.jgrapht.graph.MaskSubgraph;
 import org.jgrapht.graph.builder.GraphTypeBuilder;
 
 import edu.uci.ics.jung.algorithms.shortestpath.DijkstraShortestPath;
@@ -30,14 +33,19 @@ import repast.simphony.space.graph.Network;
 import repast.simphony.space.graph.RepastEdge;
 import repast.simphony.space.projection.ProjectionEvent;
 import repast.simphony.space.projection.ProjectionListener;
+import repastInterSim.environment.Cacheable;
 
 /*
  * An amended version of the Repast Simphony ShortestPath class that allows bespoke transformers to be used in the shortest path calculation
  */
-public class NetworkPathFinder<T> implements ProjectionListener<T> {
+public class NetworkPathFinder<T> implements ProjectionListener<T>, Cacheable {
+	
+		// Path finders shared between agents, one per network. Avoids converting the network to a graph and registering a new listener each time paths are planned 
+		private static Map<Network<?>, NetworkPathFinder<?>> sharedPathFinders = new HashMap<Network<?>, NetworkPathFinder<?>>();
 	
 		private Network<T> net;
 		private Graph<T, RepastEdge<T>> graph;
+		private DefaultUndirectedGraph<T, RepastEdge<T>> fullJgtGraph = null; // JGraphT version of the unfiltered network, built on first use
 		private boolean calc = true;
 		private Transformer<RepastEdge<T>,Double> transformer;
 		private DijkstraShortestPath<T,RepastEdge<T>> dsp;
@@ -67,6 +75,33 @@ public class NetworkPathFinder<T> implements ProjectionListener<T> {
 			this.graph = this.netToGraph(net);
 		}
 		
+		/*
+		 * Get the path finder shared by all agents routing on the input network. The shared path finder
+		 * should only be used with the methods that take a node filter and do not modify the path finder's graph,
+		 * ie getKShortestPaths and getAllShortestPaths.
+		 * 
+		 * @param Network<T> net
+		 * 		The network to find paths on
+		 * 
+		 * @returns NetworkPathFinder<T>
+		 */
+		@SuppressWarnings("unchecked")
+		public static synchronized <T> NetworkPathFinder<T> getSharedPathFinder(Network<T> net) {
+			NetworkPathFinder<T> nP = (NetworkPathFinder<T>) sharedPathFinders.get(net);
+			if (nP == null) {
+				nP = new NetworkPathFinder<T>(net);
+				sharedPathFinders.put(net, nP);
+			}
+			return nP;
+		}
+		
+		public static synchronized void clearCaches() {
+			for (NetworkPathFinder<?> nP: sharedPathFinders.values()) {
+				nP.finalize();
+			}
+			sharedPathFinders.clear();
+		}
+		
 		/*
 		 * Initialise the connection path objects used to record the paths between nodes in the network
 		 */
@@ -114,9 +149,8 @@ public class NetworkPathFinder<T> implements ProjectionListener<T> {
 		
 
 		public List<Stack<RepastEdge<T>>> getKShortestPaths(T node, T targetNode, int k, Predicate<T> nodeFilter) {
-			// Filter graph and convert to JgraphT graph
-			this.filterGraph(nodeFilter);
-			DefaultUndirectedGraph<T, RepastEdge<T>> jgt = this.getJGraphTGraph();
+			// Get view of JgraphT graph filtered to the nodes that pass the filter
+			org.jgrapht.Graph<T, RepastEdge<T>> jgt = this.getFilteredJGraphTGraph(nodeFilter);
 			
 			// Use Yen's K Shortest paths algorithm to get all paths of equally shortest length between node and targetNode
 			YenKShortestPath<T, RepastEdge<T>> ksp = new YenKShortestPath<T, RepastEdge<T>>(jgt);
@@ -127,9 +161,8 @@ public class NetworkPathFinder<T> implements ProjectionListener<T> {
 
 		public List<Stack<RepastEdge<T>>> getKShortestPaths(T node, T targetNode, int k, Predicate<T> nodeFilter, Transformer<RepastEdge<T>, Integer> transformer) {
 			
-			// Filter graph and convert to JgraphT graph
-			this.filterGraph(nodeFilter);
-			DefaultUndirectedGraph<T, RepastEdge<T>> jgt = this.getJGraphTGraph();
+			// Get view of JgraphT graph filtered to the nodes that pass the filter
+			org.jgrapht.Graph<T, RepastEdge<T>> jgt = this.getFilteredJGraphTGraph(nodeFilter);
 			
 			// convert to weighted graph with the weights given by the transformer
 			Function<RepastEdge<T>, Double> weightFunction = (RepastEdge<T> e)-> {return (double) transformer.transform(e); };
@@ -154,9 +187,8 @@ public class NetworkPathFinder<T> implements ProjectionListener<T> {
 		}
 		
 		public List<Stack<RepastEdge<T>>> getAllShortestPaths(T node, Collection<T> targetNodes, Predicate<T> nodeFilter, Transformer<RepastEdge<T>, Integer> transformer) {
-			// Filter graph and convert to JgraphT graph
-			this.filterGraph(nodeFilter);
-			DefaultUndirectedGraph<T, RepastEdge<T>> jgt = this.getJGraphTGraph();
+			// Get view of JgraphT graph filtered to the nodes that pass the filter
+			org.jgrapht.Graph<T, RepastEdge<T>> jgt = this.getFilteredJGraphTGraph(nodeFilter);
 			
 			// convert to weighted graph with the weights given by the transformer
 			Function<RepastEdge<T>, Double> weightFunction = (RepastEdge<T> e)-> {return (double) transformer.transform(e); };
@@ -199,9 +231,8 @@ public class NetworkPathFinder<T> implements ProjectionListener<T> {
 		 */
 		public List<Stack<RepastEdge<T>>> getAllShortestPaths(T node, T targetNode, Predicate<T> nodeFilter, Transformer<RepastEdge<T>, Integer> transformer) {
 			
-			// Filter graph and convert to JgraphT graph
-			this.filterGraph(nodeFilter);
-			DefaultUndirectedGraph<T, RepastEdge<T>> jgt = this.getJGraphTGraph();
+			// Get view of JgraphT graph filtered to the nodes that pass the filter
+			org.jgrapht.Graph<T, RepastEdge<T>> jgt = this.getFilteredJGraphTGraph(nodeFilter);
 			
 			// convert to weighted graph with the weights given by the transformer
 			Function<RepastEdge<T>, Double> weightFunction = (RepastEdge<T> e)-> {return (double) transformer.transform(e); };
@@ -219,9 +250,8 @@ public class NetworkPathFinder<T> implements ProjectionListener<T> {
 		 */
 		public List<Stack<RepastEdge<T>>> getAllShortestPaths(T node, T targetNode, Predicate<T> nodeFilter) {
 						
-			// Filter graph and convert to JgraphT graph
-			this.filterGraph(nodeFilter);
-			DefaultUndirectedGraph<T, RepastEdge<T>> jgt = this.getJGraphTGraph();
+			// Get view of JgraphT graph filtered to the nodes that pass the filter
+			org.jgrapht.Graph<T, RepastEdge<T>> jgt = this.getFilteredJGraphTGraph(nodeFilter);
 			
 			// Use Yen's K Shortest paths algorithm to get all paths of equally shortest length between node and targetNode
 			YenShortestPathIterator<T, RepastEdge<T>> iterator = new YenShortestPathIterator<T, RepastEdge<T>>(jgt, node, targetNode);
@@ -477,6 +507,9 @@ public class NetworkPathFinder<T> implements ProjectionListener<T> {
 		public void projectionEventOccurred(ProjectionEvent<T> evt) {
 			if (evt.getType() != ProjectionEvent.OBJECT_MOVED) {
 				calc = true;
+				synchronized (this) {
+					this.fullJgtGraph = null;
+				}
 			}
 		}
 		
@@ -492,6 +525,30 @@ public class NetworkPathFinder<T> implements ProjectionListener<T> {
 			return jgrapgtFromJung(this.graph);
 		}
 		
+		/*
+		 * Get the JGraphT version of the full, unfiltered network. This is built once and reused until the network changes.
+		 * The returned graph must not be modified.
+		 */
+		public synchronized DefaultUndirectedGraph<T, RepastEdge<T>> getFullJGraphTGraph() {
+			if (this.fullJgtGraph == null) {
+				this.fullJgtGraph = jgrapgtFromJung(this.netToGraph(net));
+			}
+			return this.fullJgtGraph;
+		}
+		
+		/*
+		 * Get a view of the full JGraphT graph that only includes the nodes that pass the filter, and the edges between them.
+		 * Creating the view does not copy the graph.
+		 * 
+		 * @param Predicate<T> nodeFilter
+		 * 		Used to filter which nodes are included in the graph
+		 * 
+		 * @returns org.jgrapht.Graph<T, RepastEdge<T>>
+		 */
+		public org.jgrapht.Graph<T, RepastEdge<T>> getFilteredJGraphTGraph(Predicate<T> nodeFilter) {
+			return new MaskSubgraph<T, RepastEdge<T>>(getFullJGraphTGraph(), v -> !nodeFilter.evaluate(v), e -> false);
+		}
+		
 		private Graph<T, RepastEdge<T>> netToGraph(Network<T> net) {
 			Graph<T, RepastEdge<T>> graph = null;
 
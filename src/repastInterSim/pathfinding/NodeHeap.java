@@ -0,0 +1,77 @@
+package repastInterSim.pathfinding;
+
+import java.util.Arrays;
+
+/*
+ * Binary min heap of node indices keyed on distance. Nodes can be pushed more than once, stale entries are skipped
+ * by the search. Shared by CompactNetworkRouter and GridRouter.
+ */
+class NodeHeap {
+
+	private int[] heapNodes;
+	private double[] heapKeys;
+	private int size = 0;
+
+	NodeHeap(int capacity) {
+		this.heapNodes = new int[Math.max(capacity, 1)];
+		this.heapKeys = new double[Math.max(capacity, 1)];
+	}
+
+	int size() {
+		return this.size;
+	}
+
+	int peekNode() {
+		return this.heapNodes[0];
+	}
+
+	double peekKey() {
+		return this.heapKeys[0];
+	}
+
+	void push(int node, double key) {
+		if (this.size == this.heapNodes.length) {
+			this.heapNodes = Arrays.copyOf(this.heapNodes, this.size * 2);
+			this.heapKeys = Arrays.copyOf(this.heapKeys, this.size * 2);
+		}
+		int i = this.size++;
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (this.heapKeys[parent] <= key) {
+				break;
+			}
+			this.heapNodes[i] = this.heapNodes[parent];
+			this.heapKeys[i] = this.heapKeys[parent];
+			i = parent;
+		}
+		this.heapNodes[i] = node;
+		this.heapKeys[i] = key;
+	}
+
+	void pop() {
+		this.size--;
+		if (this.size == 0) {
+			return;
+		}
+		int node = this.heapNodes[this.size];
+		double key = this.heapKeys[this.size];
+		int i = 0;
+		while (true) {
+			int child = 2*i + 1;
+			if (child >= this.size) {
+				break;
+			}
+			if ( (child + 1 < this.size) && (this.heapKeys[child+1] < this.heapKeys[child]) ) {
+				child++;
+			}
+			if (key <= this.heapKeys[child]) {
+				break;
+			}
+			this.heapNodes[i] = this.heapNodes[child];
+			this.heapKeys[i] = this.heapKeys[child];
+			i = child;
+		}
+		this.heapNodes[i] = node;
+		this.heapKeys[i] = key;
+	}
+}
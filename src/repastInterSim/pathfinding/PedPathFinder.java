@@ -25,6 +25,7 @@ import repastInterSim.environment.OD;
 import repastInterSim.environment.Road;
 import repastInterSim.environment.RoadLink;
 import repastInterSim.exceptions.RoutingException;
+import repastInterSim.main.SimulationMetrics;
 import repastInterSim.main.SpaceBuilder;
 import repastInterSim.pathfinding.transformers.EdgeRoadLinkIDTransformer;
 import repastInterSim.pathfinding.transformers.EdgeWeightTransformer;
@@ -61,7 +62,7 @@ public class PedPathFinder {
 		this.origin = o;
 		this.destination = d;
 				
-		planStrategicPath(this.origin.getGeom().getCoordinate(), this.destination.getGeom().getCoordinate(), paveG, paveNetwork);
+		planStrategicPath(this.origin, this.destination, paveG, paveNetwork);
 		
 		if (minimiseCrossings) {
 			this.primaryCostHeuristic = new EdgeRoadLinkIDTransformer<Junction>();
@@ -82,6 +83,24 @@ public class PedPathFinder {
 		}
 	}
 	
+	/**
+	 * Set the strategic path between an origin and destination, using the path cached for this origin and destination
+	 * if there is one. Otherwise plan the path and add it to the cache.
+	 * 
+	 */
+	public void planStrategicPath(OD o, OD d, Geography<Junction> paveG, Network<Junction> paveNetwork) {
+		Coordinate oC = o.getGeom().getCoordinate();
+		Coordinate dC = d.getGeom().getCoordinate();
+		StrategicPathCache.StrategicPath cachedPath = StrategicPathCache.get(o.getFID(), oC, d.getFID(), dC, SpaceBuilder.orRoadLinkGeography, paveG);
+		if (cachedPath != null) {
+			setStrategicPath(cachedPath.getRoadLinks(), cachedPath.getStartJunction(), cachedPath.getDestJunction());
+			return;
+		}
+		
+		planStrategicPath(oC, dC, paveG, paveNetwork);
+		StrategicPathCache.put(o.getFID(), oC, d.getFID(), dC, SpaceBuilder.orRoadLinkGeography, paveG, this.strategicPath, this.startPavementJunction, this.destPavementJunction);
+	}
+	
 	/**
 	 * Initialise a new road link routing object that can be used to find a path along a topological road network.
 	 * Use this to identify the shortest path through the network and assign this path to this classes' strategic path attribute.
@@ -102,14 +121,17 @@ public class PedPathFinder {
 		}
 		
 		// Get path of road links and set this as the strategic path
-		this.strategicPath = rnr.getRoadsX();
+		setStrategicPath(rnr.getRoadsX(), routeEnds[0], routeEnds[1]);
+	}
+	
+	private void setStrategicPath(List<RoadLink> sP, Junction startJ, Junction destJ) {
+		this.strategicPath = sP;
 		for (RoadLink rl: this.strategicPath) {
 			this.fullStrategicPathString = this.fullStrategicPathString + ":" + rl.getFID();
 		}
 		
-		
-		this.startPavementJunction = routeEnds[0];
-		this.destPavementJunction = routeEnds[1];
+		this.startPavementJunction = startJ;
+		this.destPavementJunction = destJ;
 	}
 	
 	/*
@@ -151,15 +173,19 @@ public class PedPathFinder {
 		// Calculate number of links in planning horizon
 		int tacticalHorizonLinks = getNLinksWithinAngularDistance(this.strategicPath, this.ped.getpHorizon());
 		this.tacticalPath = planTacticalPath(SpaceBuilder.pavementNetwork, SpaceBuilder.caGeography, SpaceBuilder.roadGeography, tacticalHorizonLinks, this.ped, this.strategicPath, startJunction, this.destPavementJunction, this.primaryCostHeuristic, this.secondaryCostHeuristic);
+		
+		// Road link and accumulator route have changed so update the road link the ped is registered as crossing
+		this.ped.updateCrossingRoadLink();
     }
 	
 	/*
 	 * Plan a tactical level path using the accumulator crossing choice path finding model.
 	 */
 	public static TacticalRoute planTacticalPath(Network<Junction> pavementNetwork, Geography<CrossingAlternative> caG, Geography<Road> rG, int nTL, Ped p, List<RoadLink> sP, Junction currentJ, Junction destJ, Transformer<RepastEdge<Junction>,Integer> heuristic1, Transformer<RepastEdge<Junction>,Integer> heuristic2) {
+		SimulationMetrics.increment(SimulationMetrics.Metric.TACTICAL_PATHS);
 		
 		// NetworkPath object is used to find paths on the pavement network
-		NetworkPathFinder<Junction> nP = new NetworkPathFinder<Junction>(pavementNetwork);
+		NetworkPathFinder<Junction> nP = NetworkPathFinder.getSharedPathFinder(pavementNetwork);
 		
 		boolean destInPlanningHorizon = false;
 		if (nTL == sP.size()) {
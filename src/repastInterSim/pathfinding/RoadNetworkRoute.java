@@ -47,7 +47,6 @@ import com.vividsolutions.jts.operation.distance.DistanceOp;
 import repast.simphony.space.gis.Geography;
 import repast.simphony.space.graph.Network;
 import repast.simphony.space.graph.RepastEdge;
-import repast.simphony.space.graph.ShortestPath;
 import repastInterSim.environment.Cacheable;
 import repastInterSim.environment.GISFunctions;
 import repastInterSim.environment.OD;
@@ -59,6 +58,7 @@ import repastInterSim.environment.SpatialIndexManager;
 import repastInterSim.exceptions.RoutingException;
 import repastInterSim.main.GlobalVars;
 import repastInterSim.main.IO;
+import repastInterSim.main.SimulationMetrics;
 import repastInterSim.main.SpaceBuilder;
 /**
  * Create routes around a GIS road network. The <code>setRoute</code> function actually finds the route and can be
@@ -465,29 +465,24 @@ public class RoadNetworkRoute implements Cacheable {
 			// as the origin
 			return;
 		}
-		// Lock the currentAgent so that NetworkEdge obejcts know what speed to use (depends on transport available to
-		// the specific agent).
-		synchronized (GlobalVars.TRANSPORT_PARAMS.currentBurglarLock) {
-
-			// Iterate over all edges in the route adding coords and weights as appropriate
-			NetworkEdge<Junction> e;
-			RoadLink r;
-			// Loop through the edges in the shortest path and add the corresponding road links for each to the RoadNetworkRoute's list of road links
-			for (int i = 0; i < shortestPath.size(); i++) {
-				e = (NetworkEdge<Junction>) shortestPath.get(i);
-				r = e.getRoadLink();
-				
-				double speed = e.getSpeed();
-				if (speed < 1)
-					speed = 1;
-				
-				addToRoute(r, speed, "getRouteBetweenJuctions - on road");
-				
-			// Finished!
-			/*
-			LOGGER.log(Level.FINER, "getRouteBetweenJunctions (" + (0.000001 * (System.nanoTime() - time)) + "ms");
-			*/
-			}
+		// Iterate over all edges in the route adding coords and weights as appropriate
+		NetworkEdge<Junction> e;
+		RoadLink r;
+		// Loop through the edges in the shortest path and add the corresponding road links for each to the RoadNetworkRoute's list of road links
+		for (int i = 0; i < shortestPath.size(); i++) {
+			e = (NetworkEdge<Junction>) shortestPath.get(i);
+			r = e.getRoadLink();
+			
+			double speed = e.getSpeed();
+			if (speed < 1)
+				speed = 1;
+			
+			addToRoute(r, speed, "getRouteBetweenJuctions - on road");
+			
+		// Finished!
+		/*
+		LOGGER.log(Level.FINER, "getRouteBetweenJunctions (" + (0.000001 * (System.nanoTime() - time)) + "ms");
+		*/
 		}
 		return;
 	} // getRouteBetweenJunctions
@@ -682,61 +677,63 @@ public class RoadNetworkRoute implements Cacheable {
 	public List<RepastEdge<Junction>> getShortestRoute(Network<Junction> net, Iterable<Junction> currentJunctions, Iterable<Junction> destJunctions,
 			Junction[] routeEndpoints, boolean longestShortest) throws Exception {
 		double time = System.nanoTime();
-		synchronized (GlobalVars.TRANSPORT_PARAMS.currentBurglarLock) {
+		SimulationMetrics.increment(SimulationMetrics.Metric.STRATEGIC_ROUTES);
+		
+		// The router is a read only copy of the network so routes can be found concurrently without locking
+		CompactNetworkRouter<Junction> router = CompactNetworkRouter.getRouter(net);
 			
-			Double comparisonPathLength;
-			int compVal = 0;
-			if (longestShortest) {
-				comparisonPathLength = Double.MIN_VALUE;
-				compVal = +1;
-			}
-			else {
-				comparisonPathLength = Double.MAX_VALUE;
-				compVal = -1;
-			}
-			Double pathLength = 0.0;
-			ShortestPath<Junction> p;
-			List<RepastEdge<Junction>> shortestPath = null;
-			for (Junction o : currentJunctions) {
-				for (Junction d : destJunctions) {
-					if (o == null || d == null) {
-						/*
-						LOGGER.log(Level.WARNING, "Route.getShortestRoute() error: either the destination or origin "
-								+ "junction is null. This can be caused by disconnected roads. It's probably OK"
-								+ "to ignore this as a route should still be created anyway.");
-								*/
-					} else {
-						p = new ShortestPath<Junction>(net);
-						pathLength = p.getPathLength(o,d);
-						int comp = Integer.signum(pathLength.compareTo(comparisonPathLength));
-						if (comp == compVal) {
-							comparisonPathLength = pathLength;
-							shortestPath = p.getPath(o,d);
-							routeEndpoints[0] = o;
-							routeEndpoints[1] = d;
-						}
-						// TODO See if the shortestpath bug has been fixed, would make this unnecessary
-						// this removes the projection listener from the network. Projection listener has something to do with listening for events.
-						p.finalize();
-						p = null;
-					} // if junc null
-				} // for dest junctions
-			} // for origin junctions
-			if (shortestPath == null) {
-				String debugString = "Route.getShortestRoute() could not find a route. Looking for the shortest route between :\n";
-				for (Junction j : currentJunctions)
-					debugString += "\t" + j.toString() + ", roads: " + j.getRoads().toString() + "\n";
-				for (Junction j : destJunctions)
-					debugString += "\t" + j.toString() + ", roads: " + j.getRoads().toString() + "\n";
-				throw new RoutingException(debugString);
-			}
-			/*
-			LOGGER.log(Level.FINER, "Route.getShortestRoute (" + (0.000001 * (System.nanoTime() - time))
-					+ "ms) found shortest path " + "(length: " + shortestPathLength + ") from "
-					+ routeEndpoints[0].toString() + " to " + routeEndpoints[1].toString());
-					*/
-			return shortestPath;
-		} // synchronized
+		Double comparisonPathLength;
+		int compVal = 0;
+		if (longestShortest) {
+			comparisonPathLength = Double.MIN_VALUE;
+			compVal = +1;
+		}
+		else {
+			comparisonPathLength = Double.MAX_VALUE;
+			compVal = -1;
+		}
+		Double pathLength = 0.0;
+		CompactNetworkRouter<Junction>.ShortestPathTree p;
+		List<RepastEdge<Junction>> shortestPath = null;
+		for (Junction o : currentJunctions) {
+			// One search from each origin gives the paths to all destinations
+			p = null;
+			for (Junction d : destJunctions) {
+				if (o == null || d == null) {
+					/*
+					LOGGER.log(Level.WARNING, "Route.getShortestRoute() error: either the destination or origin "
+							+ "junction is null. This can be caused by disconnected roads. It's probably OK"
+							+ "to ignore this as a route should still be created anyway.");
+							*/
+				} else {
+					if (p == null) {
+						p = router.getShortestPathTree(o);
+					}
+					pathLength = p.getPathLength(d);
+					int comp = Integer.signum(pathLength.compareTo(comparisonPathLength));
+					if (comp == compVal) {
+						comparisonPathLength = pathLength;
+						shortestPath = p.getPath(d);
+						routeEndpoints[0] = o;
+						routeEndpoints[1] = d;
+					}
+				} // if junc null
+			} // for dest junctions
+		} // for origin junctions
+		if (shortestPath == null) {
+			String debugString = "Route.getShortestRoute() could not find a route. Looking for the shortest route between :\n";
+			for (Junction j : currentJunctions)
+				debugString += "\t" + j.toString() + ", roads: " + j.getRoads().toString() + "\n";
+			for (Junction j : destJunctions)
+				debugString += "\t" + j.toString() + ", roads: " + j.getRoads().toString() + "\n";
+			throw new RoutingException(debugString);
+		}
+		/*
+		LOGGER.log(Level.FINER, "Route.getShortestRoute (" + (0.000001 * (System.nanoTime() - time))
+				+ "ms) found shortest path " + "(length: " + shortestPathLength + ") from "
+				+ routeEndpoints[0].toString() + " to " + routeEndpoints[1].toString());
+				*/
+		return shortestPath;
 	}
 	
 	/**
@@ -994,6 +991,7 @@ public class RoadNetworkRoute implements Cacheable {
 	}
 
 	public static void clearCaches() {
+		CompactNetworkRouter.clearCaches();
 		if (coordCache != null)
 			coordCache.clear();
 			coordCache = null;
@@ -0,0 +1,433 @@
+package repastInterSim.pathfinding;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+
+import repast.simphony.space.gis.Geography;
+import repastInterSim.environment.Cacheable;
+import repastInterSim.environment.Junction;
+import repastInterSim.environment.RoadLink;
+import repastInterSim.main.GlobalVars;
+
+/*
+ * Caches the strategic paths planned by pedestrians, keyed on the FIDs and coordinates of the origin and destination. Moving an
+ * origin or destination without changing its FID gives a new key, so the path is planned again.
+ *
+ * Recently used paths are held in memory, up to a fixed number of paths. Optionally, all paths are also recorded as FIDs in
+ * a file that is reused by later runs. The file tier is used when the StrategicPathCache property gives the name of the cache file
+ * (stored with the other GIS data), or when a file is set with setSerialisedLocation().
+ *
+ * Paths are only valid for the road link and pavement junction data they were planned on. A checksum of the FIDs and
+ * geometries in the road link and pavement junction geographies is saved with the file and the file is ignored if it does
+ * not match. New paths are written to file at the end of each run (see SpaceBuilder.flushStrategicPathCache).
+ */
+public class StrategicPathCache implements Cacheable {
+
+	private static Logger LOGGER = Logger.getLogger(StrategicPathCache.class.getName());
+
+	private static int capacity = 1000;
+
+	// Access ordered so that the least recently used path is removed first
+	private static LinkedHashMap<String, StrategicPath> memoryCache = newMemoryCache();
+
+	// Geographies that the FID lookups and checksum were built from
+	private static Geography<RoadLink> indexedRoadLinkGeography = null;
+	private static Geography<Junction> indexedJunctionGeography = null;
+	private static long networkChecksum;
+	private static Map<String, RoadLink> roadLinkIndex = new HashMap<String, RoadLink>();
+	private static Map<String, Junction> junctionIndex = new HashMap<String, Junction>();
+
+	// Paths stored as {start junction FID, destination junction FID, road link FIDs...}
+	private static File serialisedLoc = null;
+	private static Map<String, String[]> fileCache = null;
+	private static boolean fileCacheModified = false;
+
+	private static int hits = 0;
+	private static int misses = 0;
+
+	/*
+	 * A strategic path and the pavement junctions at either end of it.
+	 */
+	public static class StrategicPath {
+
+		private List<RoadLink> roadLinks;
+		private Junction startJunction;
+		private Junction destJunction;
+
+		private StrategicPath(List<RoadLink> roadLinks, Junction startJunction, Junction destJunction) {
+			this.roadLinks = Collections.unmodifiableList(new ArrayList<RoadLink>(roadLinks));
+			this.startJunction = startJunction;
+			this.destJunction = destJunction;
+		}
+
+		/*
+		 * Get a copy of the road links in the path. Pedestrians remove links from their strategic path as they walk
+		 * so each gets their own copy.
+		 */
+		public List<RoadLink> getRoadLinks() {
+			return new ArrayList<RoadLink>(this.roadLinks);
+		}
+
+		public Junction getStartJunction() {
+			return this.startJunction;
+		}
+
+		public Junction getDestJunction() {
+			return this.destJunction;
+		}
+	}
+
+	private static LinkedHashMap<String, StrategicPath> newMemoryCache() {
+		return new LinkedHashMap<String, StrategicPath>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, StrategicPath> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	private static String key(String originID, Coordinate originLoc, String destinationID, Coordinate destinationLoc) {
+		return originID + "@" + originLoc.x + "," + originLoc.y + ":" + destinationID + "@" + destinationLoc.x + "," + destinationLoc.y;
+	}
+
+	/*
+	 * Get the cached strategic path between an origin and destination.
+	 *
+	 * @param String originID
+	 * 		The FID of the origin
+	 * @param Coordinate originLoc
+	 * 		The coordinate of the origin the path is planned from
+	 * @param String destinationID
+	 * 		The FID of the destination
+	 * @param Coordinate destinationLoc
+	 * 		The coordinate of the destination the path is planned to
+	 * @param Geography<RoadLink> rlG
+	 * 		The geography of road links that strategic paths are made of
+	 * @param Geography<Junction> paveG
+	 * 		The geography of pavement junctions
+	 *
+	 * @returns StrategicPath
+	 * 		The path, or null if no path between the origin and destination has been cached
+	 */
+	public static synchronized StrategicPath get(String originID, Coordinate originLoc, String destinationID, Coordinate destinationLoc,
+			Geography<RoadLink> rlG, Geography<Junction> paveG) {
+		checkIndex(rlG, paveG);
+		String k = key(originID, originLoc, destinationID, destinationLoc);
+
+		StrategicPath sp = memoryCache.get(k);
+		if ( (sp == null) && (fileCache != null) ) {
+			String[] fids = fileCache.get(k);
+			if (fids != null) {
+				sp = fromFIDs(fids);
+				if (sp != null) {
+					memoryCache.put(k, sp);
+				}
+			}
+		}
+
+		if (sp == null) {
+			misses++;
+		}
+		else {
+			hits++;
+		}
+		return sp;
+	}
+
+	/*
+	 * Add a strategic path to the cache.
+	 *
+	 * @param String originID
+	 * 		The FID of the origin
+	 * @param Coordinate originLoc
+	 * 		The coordinate of the origin the path is planned from
+	 * @param String destinationID
+	 * 		The FID of the destination
+	 * @param Coordinate destinationLoc
+	 * 		The coordinate of the destination the path is planned to
+	 * @param Geography<RoadLink> rlG
+	 * 		The geography of road links that strategic paths are made of
+	 * @param Geography<Junction> paveG
+	 * 		The geography of pavement junctions
+	 * @param List<RoadLink> roadLinks
+	 * 		The road links in the path
+	 * @param Junction startJunction
+	 * 		The pavement junction the path starts from
+	 * @param Junction destJunction
+	 * 		The pavement junction the path ends at
+	 */
+	public static synchronized void put(String originID, Coordinate originLoc, String destinationID, Coordinate destinationLoc,
+			Geography<RoadLink> rlG, Geography<Junction> paveG, List<RoadLink> roadLinks, Junction startJunction, Junction destJunction) {
+		checkIndex(rlG, paveG);
+		String k = key(originID, originLoc, destinationID, destinationLoc);
+		memoryCache.put(k, new StrategicPath(roadLinks, startJunction, destJunction));
+
+		if (fileCache != null) {
+			String[] fids = new String[roadLinks.size() + 2];
+			fids[0] = startJunction.getFID();
+			fids[1] = destJunction.getFID();
+			for (int i=0; i<roadLinks.size(); i++) {
+				fids[i+2] = roadLinks.get(i).getFID();
+			}
+			fileCache.put(k, fids);
+			fileCacheModified = true;
+		}
+	}
+
+	/*
+	 * Convert FIDs read from the cache file back into road links and junctions. Returns null if any FID is not found.
+	 */
+	private static StrategicPath fromFIDs(String[] fids) {
+		Junction start = junctionIndex.get(fids[0]);
+		Junction dest = junctionIndex.get(fids[1]);
+		if ( (start == null) || (dest == null) ) {
+			return null;
+		}
+
+		List<RoadLink> roadLinks = new ArrayList<RoadLink>(fids.length - 2);
+		for (int i=2; i<fids.length; i++) {
+			RoadLink rl = roadLinkIndex.get(fids[i]);
+			if (rl == null) {
+				return null;
+			}
+			roadLinks.add(rl);
+		}
+		return new StrategicPath(roadLinks, start, dest);
+	}
+
+	/*
+	 * Rebuild the FID lookups and checksum if the geographies have changed since they were last built. Paths cached for
+	 * the previous geographies are discarded.
+	 */
+	private static void checkIndex(Geography<RoadLink> rlG, Geography<Junction> paveG) {
+		if ( (indexedRoadLinkGeography == rlG) && (indexedJunctionGeography == paveG) ) {
+			return;
+		}
+
+		// Save paths planned on the previous geographies before the file tier is reloaded
+		try {
+			serialise();
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "StrategicPathCache, could not serialise cache: " + e);
+		}
+
+		memoryCache.clear();
+		roadLinkIndex = new HashMap<String, RoadLink>();
+		junctionIndex = new HashMap<String, Junction>();
+		for (RoadLink rl: rlG.getAllObjects()) {
+			roadLinkIndex.put(rl.getFID(), rl);
+		}
+		for (Junction j: paveG.getAllObjects()) {
+			junctionIndex.put(j.getFID(), j);
+		}
+		networkChecksum = calculateNetworkChecksum(rlG, paveG);
+
+		indexedRoadLinkGeography = rlG;
+		indexedJunctionGeography = paveG;
+
+		if (serialisedLoc == null) {
+			serialisedLoc = getPropertySerialisedLocation();
+		}
+		loadFileCache();
+	}
+
+	/*
+	 * Calculate a checksum of the road link and pavement junction FIDs, including the FIDs of the junctions at the ends of
+	 * each road link, and of their geometries. Road link lengths are the weights paths are planned on, so editing a link's
+	 * geometry without changing its FID changes the checksum. Entries are sorted so the checksum does not depend on the order
+	 * the geographies return objects in.
+	 *
+	 * @param Geography<RoadLink> rlG
+	 * @param Geography<Junction> paveG
+	 *
+	 * @returns long
+	 */
+	public static long calculateNetworkChecksum(Geography<RoadLink> rlG, Geography<Junction> paveG) {
+		List<String> rlIDs = new ArrayList<String>();
+		for (RoadLink rl: rlG.getAllObjects()) {
+			StringBuilder sb = new StringBuilder(rl.getFID());
+			sb.append(":").append(rl.getMNodeFID()).append(":").append(rl.getPNodeFID());
+			appendGeometry(sb, rl.getGeom());
+			rlIDs.add(sb.toString());
+		}
+		List<String> jIDs = new ArrayList<String>();
+		for (Junction j: paveG.getAllObjects()) {
+			StringBuilder sb = new StringBuilder(j.getFID());
+			appendGeometry(sb, j.getGeom());
+			jIDs.add(sb.toString());
+		}
+		Collections.sort(rlIDs);
+		Collections.sort(jIDs);
+
+		CRC32 crc = new CRC32();
+		for (String id: rlIDs) {
+			crc.update(id.getBytes());
+			crc.update('\n');
+		}
+		crc.update('|');
+		for (String id: jIDs) {
+			crc.update(id.getBytes());
+			crc.update('\n');
+		}
+		return crc.getValue();
+	}
+
+	// Add the length and coordinates of a geometry to a checksum entry
+	private static void appendGeometry(StringBuilder sb, Geometry g) {
+		if (g == null) {
+			return;
+		}
+		sb.append(":").append(g.getLength());
+		for (Coordinate c: g.getCoordinates()) {
+			sb.append(":").append(c.x).append(",").append(c.y);
+		}
+	}
+
+	private static File getPropertySerialisedLocation() {
+		if (GlobalVars.properties == null) {
+			return null;
+		}
+		String fileName = GlobalVars.properties.getProperty(GlobalVars.StrategicPathCache);
+		if ( (fileName == null) || fileName.equals("") ) {
+			return null;
+		}
+		return new File(GlobalVars.properties.getProperty(GlobalVars.GISDataDirectory) + fileName);
+	}
+
+	/*
+	 * Read the paths saved to file. If the file does not exist, can't be read or was created for different road link and
+	 * pavement junction data the file tier starts empty.
+	 */
+	@SuppressWarnings("unchecked")
+	private static void loadFileCache() {
+		fileCacheModified = false;
+		if (serialisedLoc == null) {
+			fileCache = null;
+			return;
+		}
+
+		fileCache = new HashMap<String, String[]>();
+		if (!serialisedLoc.exists()) {
+			return;
+		}
+
+		double time = System.nanoTime();
+		try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(serialisedLoc))) {
+			long fileChecksum = in.readLong();
+			if (fileChecksum != networkChecksum) {
+				LOGGER.log(Level.FINE, "StrategicPathCache, found serialised cache but it doesn't match the road link and pavement junction data, "
+						+ "will create a new cache.");
+				return;
+			}
+			fileCache = (HashMap<String, String[]>) in.readObject();
+			LOGGER.log(Level.FINER, "StrategicPathCache, read " + fileCache.size() + " paths from " + serialisedLoc.getAbsolutePath()
+					+ " in (" + 0.000001 * (System.nanoTime() - time) + "ms)");
+		} catch (IOException | ClassNotFoundException | ClassCastException ex) {
+			LOGGER.log(Level.WARNING, "StrategicPathCache, could not read serialised cache " + serialisedLoc.getAbsolutePath() + ": " + ex);
+			fileCache = new HashMap<String, String[]>();
+		}
+	}
+
+	/*
+	 * Write the paths in the file tier to the cache file, if any have been added since it was read.
+	 */
+	public static synchronized void serialise() throws IOException {
+		if ( (fileCache == null) || (serialisedLoc == null) || !fileCacheModified ) {
+			return;
+		}
+
+		double time = System.nanoTime();
+		// Write to a temporary file and move it into place so that runs sharing the cache file never read a partly written file
+		File tmp = new File(serialisedLoc.getAbsolutePath() + "." + Thread.currentThread().getId() + ".tmp");
+		try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(tmp))) {
+			out.writeLong(networkChecksum);
+			out.writeObject(fileCache);
+		} catch (IOException ex) {
+			tmp.delete();
+			throw ex;
+		}
+		try {
+			Files.move(tmp.toPath(), serialisedLoc.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException ex) {
+			Files.move(tmp.toPath(), serialisedLoc.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		fileCacheModified = false;
+		LOGGER.log(Level.FINE, "... serialised StrategicPathCache to " + serialisedLoc.getAbsolutePath()
+				+ " in (" + 0.000001 * (System.nanoTime() - time) + "ms)");
+	}
+
+	/*
+	 * Set the file used to store paths between runs. Set to null to only cache paths in memory.
+	 *
+	 * @param File f
+	 */
+	public static synchronized void setSerialisedLocation(File f) {
+		serialisedLoc = f;
+		if (indexedRoadLinkGeography != null) {
+			loadFileCache();
+		}
+	}
+
+	public static synchronized void setCapacity(int c) {
+		capacity = c;
+		LinkedHashMap<String, StrategicPath> resized = newMemoryCache();
+		resized.putAll(memoryCache);
+		memoryCache = resized;
+	}
+
+	public static synchronized int getMemoryCacheSize() {
+		return memoryCache.size();
+	}
+
+	public static synchronized int getHits() {
+		return hits;
+	}
+
+	public static synchronized int getMisses() {
+		return misses;
+	}
+
+	/*
+	 * Save any new paths to file then clear the cache. Called at the start of each run so paths planned in one run of a
+	 * batch are available to the next.
+	 */
+	public static synchronized void clearCaches() {
+		try {
+			serialise();
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "StrategicPathCache, could not serialise cache: " + e);
+		}
+
+		memoryCache.clear();
+		indexedRoadLinkGeography = null;
+		indexedJunctionGeography = null;
+		roadLinkIndex = new HashMap<String, RoadLink>();
+		junctionIndex = new HashMap<String, Junction>();
+		fileCache = null;
+		fileCacheModified = false;
+		serialisedLoc = null;
+		hits = 0;
+		misses = 0;
+	}
+}
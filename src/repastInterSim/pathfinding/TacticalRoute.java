@@ -17,6 +17,7 @@ import repastInterSim.environment.Junction;
 import repastInterSim.environment.NetworkEdge;
 import repastInterSim.environment.Road;
 import repastInterSim.environment.RoadLink;
+import repastInterSim.environment.RoadLinkCrossingAlternatives;
 import repastInterSim.environment.UnmarkedCrossingAlternative;
 import repastInterSim.main.SpaceBuilder;
 
@@ -213,12 +214,7 @@ public class TacticalRoute {
 		// Agent identifies crossing locations on the road links passed in
 		// Loop through these and get crossing alternatives that belong to these road links
 		for (RoadLink rl: rls) {
-			for (CrossingAlternative ca: caG.getAllObjects()) {
-				if (ca.getRoadLinkID().contentEquals(rl.getFID())) {
-					// Add to list
-					cas.add(ca);
-				}
-			}
+			cas.addAll(RoadLinkCrossingAlternatives.getORRoadLinkCrossingAlternatives(caG, rl.getFID()));
 		}
 		
 		// Add unmarked crossing alternative to list
@@ -0,0 +1,255 @@
+package repastInterSim.tests;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Runs timed benchmarks and records the results in a CSV file, so that the performance of the model can be compared
+ * between commits.
+ *
+ * Each benchmark is run for a number of warm up iterations, which are not recorded, followed by a number of measured
+ * iterations. The set up of each iteration is not timed.
+ */
+class BenchmarkRunner {
+
+	static final String HEADER = "label,benchmark,iterations,ops,mean_ns_per_op,sd_ns_per_op,min_ns_per_op";
+
+	interface Benchmark {
+
+		/*
+		 * Prepare the state used by the next iteration. Not timed.
+		 */
+		default void setUp() throws Exception {
+		}
+
+		/*
+		 * Run one iteration of the benchmark.
+		 *
+		 * @returns int
+		 * 		The number of operations performed
+		 */
+		int run() throws Exception;
+	}
+
+	static class Result {
+		String name;
+		int iterations;
+		long ops;
+		double meanNsPerOp;
+		double sdNsPerOp;
+		double minNsPerOp;
+	}
+
+	private int warmupIterations;
+	private int measurementIterations;
+	private List<Result> results = new ArrayList<Result>();
+
+	BenchmarkRunner(int warmupIterations, int measurementIterations) {
+		this.warmupIterations = warmupIterations;
+		this.measurementIterations = measurementIterations;
+	}
+
+	Result run(String name, Benchmark b) throws Exception {
+		for (int i=0; i<this.warmupIterations; i++) {
+			b.setUp();
+			b.run();
+		}
+
+		double[] nsPerOp = new double[this.measurementIterations];
+		long totalOps = 0;
+		for (int i=0; i<this.measurementIterations; i++) {
+			b.setUp();
+			long start = System.nanoTime();
+			int ops = b.run();
+			long dur = System.nanoTime() - start;
+			nsPerOp[i] = (double) dur / Math.max(ops, 1);
+			totalOps += ops;
+		}
+
+		Result r = new Result();
+		r.name = name;
+		r.iterations = this.measurementIterations;
+		r.ops = totalOps;
+		r.minNsPerOp = Double.MAX_VALUE;
+		double sum = 0;
+		for (double x: nsPerOp) {
+			sum += x;
+			r.minNsPerOp = Math.min(r.minNsPerOp, x);
+		}
+		r.meanNsPerOp = sum / nsPerOp.length;
+		double ss = 0;
+		for (double x: nsPerOp) {
+			ss += (x - r.meanNsPerOp) * (x - r.meanNsPerOp);
+		}
+		r.sdNsPerOp = nsPerOp.length > 1 ? Math.sqrt(ss / (nsPerOp.length - 1)) : 0;
+
+		this.results.add(r);
+		System.out.println(name + " mean ns/op: " + r.meanNsPerOp + " sd: " + r.sdNsPerOp + " min: " + r.minNsPerOp);
+		return r;
+	}
+
+	List<Result> getResults() {
+		return this.results;
+	}
+
+	/*
+	 * Write the results to a CSV file, replacing any existing file.
+	 *
+	 * @param File f
+	 * 		The file to write to
+	 * @param String label
+	 * 		Label identifying this set of results, eg a commit hash
+	 */
+	void writeResults(File f, String label) throws IOException {
+		if (f.getParentFile() != null) {
+			f.getParentFile().mkdirs();
+		}
+		FileWriter writer = new FileWriter(f);
+		writer.append(HEADER).append("\n");
+		for (Result r: this.results) {
+			writer.append(label).append(",")
+			.append(r.name).append(",")
+			.append(String.valueOf(r.iterations)).append(",")
+			.append(String.valueOf(r.ops)).append(",")
+			.append(String.valueOf(r.meanNsPerOp)).append(",")
+			.append(String.valueOf(r.sdNsPerOp)).append(",")
+			.append(String.valueOf(r.minNsPerOp)).append("\n");
+		}
+		writer.close();
+	}
+
+	/*
+	 * Write the results to a CSV file, replacing the rows of benchmarks that have been run and keeping the rows of other
+	 * benchmarks already in the file.
+	 *
+	 * @param File f
+	 * 		The file to write to
+	 * @param String label
+	 * 		Label identifying this set of results, eg a commit hash
+	 */
+	void mergeResults(File f, String label) throws IOException {
+		List<String> keptRows = new ArrayList<String>();
+		if (f.exists()) {
+			BufferedReader reader = new BufferedReader(new FileReader(f));
+			String line = reader.readLine(); // Skip header
+			while ( (line = reader.readLine()) != null) {
+				String[] fields = line.split(",");
+				if ( (fields.length >= 5) && (getResult(fields[1]) == null) ) {
+					keptRows.add(line);
+				}
+			}
+			reader.close();
+		}
+
+		writeResults(f, label);
+		FileWriter writer = new FileWriter(f, true);
+		for (String row: keptRows) {
+			writer.append(row).append("\n");
+		}
+		writer.close();
+	}
+
+	private Result getResult(String name) {
+		for (Result r: this.results) {
+			if (r.name.equals(name)) {
+				return r;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Read the mean time per operation of each benchmark from a results file.
+	 *
+	 * @param File f
+	 *
+	 * @returns Map<String, Double>
+	 * 		Map from benchmark name to mean nanoseconds per operation
+	 */
+	static Map<String, Double> readMeans(File f) throws IOException {
+		return readColumn(f, 4);
+	}
+
+	/*
+	 * Read the minimum time per operation of each benchmark from a results file.
+	 *
+	 * @param File f
+	 *
+	 * @returns Map<String, Double>
+	 * 		Map from benchmark name to minimum nanoseconds per operation
+	 */
+	static Map<String, Double> readMins(File f) throws IOException {
+		return readColumn(f, 6);
+	}
+
+	private static Map<String, Double> readColumn(File f, int column) throws IOException {
+		Map<String, Double> values = new HashMap<String, Double>();
+		BufferedReader reader = new BufferedReader(new FileReader(f));
+		String line = reader.readLine(); // Skip header
+		while ( (line = reader.readLine()) != null) {
+			String[] fields = line.split(",");
+			if (fields.length > column) {
+				values.put(fields[1], Double.parseDouble(fields[column]));
+			}
+		}
+		reader.close();
+		return values;
+	}
+
+	/*
+	 * Get the benchmarks that have been run but have no result in a baseline results file.
+	 *
+	 * @param File baseline
+	 * 		Results file to compare against
+	 *
+	 * @returns List<String>
+	 * 		Names of the benchmarks missing from the baseline
+	 */
+	List<String> missingFromBaseline(File baseline) throws IOException {
+		Map<String, Double> baselineMeans = readMeans(baseline);
+		List<String> missing = new ArrayList<String>();
+		for (Result r: this.results) {
+			if (!baselineMeans.containsKey(r.name)) {
+				missing.add(r.name);
+			}
+		}
+		return missing;
+	}
+
+	/*
+	 * Compare the results against a baseline results file. Benchmarks are compared by their minimum time per operation, which
+	 * is less affected than the mean by other work on the machine and by garbage collection.
+	 *
+	 * @param File baseline
+	 * 		Results file to compare against
+	 * @param double tolerance
+	 * 		Fractional increase in minimum time per operation above which a benchmark is reported as a regression
+	 *
+	 * @returns List<String>
+	 * 		Names of the benchmarks that are slower than the baseline by more than the tolerance
+	 */
+	List<String> compareToBaseline(File baseline, double tolerance) throws IOException {
+		Map<String, Double> baselineMins = readMins(baseline);
+		List<String> regressions = new ArrayList<String>();
+		for (Result r: this.results) {
+			Double baselineMin = baselineMins.get(r.name);
+			if (baselineMin == null) {
+				System.out.println(r.name + " has no baseline result");
+				continue;
+			}
+			double ratio = r.minNsPerOp / baselineMin;
+			System.out.println(r.name + " time relative to baseline: " + ratio);
+			if (ratio > 1 + tolerance) {
+				regressions.add(r.name);
+			}
+		}
+		return regressions;
+	}
+}
@@ -12,6 +12,7 @@ import com.vividsolutions.jts.geom.Point;
 import repastInterSim.agent.Ped;
 import repastInterSim.environment.CrossingAlternative;
 import repastInterSim.environment.GISFunctions;
+import repastInterSim.environment.Signal;
 import repastInterSim.environment.UnmarkedCrossingAlternative;
 import repastInterSim.main.SpaceBuilder;
 
@@ -276,4 +277,55 @@ class CrossingAlternativeTest {
 		
 	}
 	
+	/*
+	 * Test that changing phase at the ticks given by getNextPhaseChangeTick, as the schedule does, gives the same phase
+	 * sequence as stepping the signal every tick.
+	 */
+	@Test
+	void testScheduledPhaseChangesMatchStepping() {
+		String[] rlIDs = {"rl1", "rl2", "rl3"};
+		char[][] phases = {{'r','g','g'}, {'g','r','r'}, {'r','r','g'}};
+		int[] durations = {10, 30, 0};
+		
+		Signal stepped = new Signal(rlIDs, phases, durations);
+		Signal scheduled = new Signal(rlIDs, phases, durations);
+		
+		double nextChangeTick = scheduled.getNextPhaseChangeTick(0);
+		int nChanges = 0;
+		for (int tick=0; tick<500; tick++) {
+			stepped.step();
+			if (tick == nextChangeTick) {
+				scheduled.changePhase();
+				nextChangeTick = scheduled.getNextPhaseChangeTick(tick+1);
+				nChanges++;
+			}
+			
+			for (String rlID: rlIDs) {
+				assert stepped.getState(rlID) == scheduled.getState(rlID);
+			}
+		}
+		
+		// Phases last one tick longer than their durations so the signal changes phase at ticks 10, 41 and 42 of every 43 tick cycle
+		assert nChanges == 34;
+	}
+	
+	@Test
+	void testSignalLinkIndex() {
+		String[] rlIDs = {"rl1", "rl2"};
+		char[][] phases = {{'r','g'}, {'g','r'}};
+		int[] durations = {5, 5};
+		Signal s = new Signal(rlIDs, phases, durations);
+		
+		assert s.getLinkIndex("rl1") == 0;
+		assert s.getLinkIndex("rl2") == 1;
+		assert s.getLinkIndex("wrong_link_id") == -1;
+		
+		assert s.getState(s.getLinkIndex("rl2")) == 'g';
+		assert s.getState(-1) == 'u';
+		assert s.getState("wrong_link_id") == 'u';
+		
+		s.changePhase();
+		assert s.getState(s.getLinkIndex("rl2")) == 'r';
+	}
+	
 }
@@ -26,10 +26,12 @@ import repastInterSim.environment.GISFunctions;
 import repastInterSim.environment.Junction;
 import repastInterSim.environment.NetworkEdge;
 import repastInterSim.environment.NetworkEdgeCreator;
+import repastInterSim.environment.ObstructionSegments;
 import repastInterSim.environment.OD;
 import repastInterSim.environment.PedObstruction;
 import repastInterSim.environment.Road;
 import repastInterSim.environment.RoadLink;
+import repastInterSim.environment.RoadLinkCrossingAlternatives;
 import repastInterSim.environment.SpatialIndexManager;
 import repastInterSim.environment.contexts.CAContext;
 import repastInterSim.environment.contexts.JunctionContext;
@@ -41,7 +43,9 @@ import repastInterSim.environment.contexts.RoadLinkContext;
 import repastInterSim.main.GlobalVars;
 import repastInterSim.main.IO;
 import repastInterSim.main.SpaceBuilder;
+import repastInterSim.pathfinding.NetworkPathFinder;
 import repastInterSim.pathfinding.RoadNetworkRoute;
+import repastInterSim.pathfinding.StrategicPathCache;
 
 public class EnvironmentSetup {
 	
@@ -171,6 +175,7 @@ public class EnvironmentSetup {
 	static void setUpCrossingAlternatives(String caFile) throws MalformedURLException, FileNotFoundException {
 		// Ped Obstruction context stores GIS linestrings representing barriers to pedestrian movement
 		Context<CrossingAlternative> caContext = new CAContext();
+		SpaceBuilder.caContext = caContext;
 		GeographyParameters<CrossingAlternative> GeoParams = new GeographyParameters<CrossingAlternative>();
 		SpaceBuilder.caGeography = GeographyFactoryFinder.createGeographyFactory(null).createGeography("caGeography", caContext, GeoParams);
 		SpaceBuilder.caGeography.setCRS(GlobalVars.geographyCRSString);
@@ -283,31 +288,7 @@ public class EnvironmentSetup {
 	 * Code taken from SpaceBuilder that connects Roads with Road Links and visa versa.
 	 */
 	static void assocaiteRoadsWithRoadLinks() {
-		// Link road with itn and OR road links
-		// Also assigns the Road objects to the road links. This enables lookups between OR and ITN road links, through the road objects.
-		for (Road r: SpaceBuilder.roadGeography.getAllObjects()) {
-			List<RoadLink> roadLinks = new ArrayList<RoadLink>();
-			for(RoadLink rl: SpaceBuilder.roadLinkGeography.getAllObjects()) {
-				// Iterating over the vehicle road links (ITN) but using their corresponding ped road link (open road) id to check whether they belong to this vehicle polygon
-				if (rl.getPedRLID().contentEquals(r.getRoadLinkID())) {
-					roadLinks.add(rl);
-					rl.getRoads().add(r);
-				}
-			}
-			
-			RoadLink orLink = null;
-			for(RoadLink rl: SpaceBuilder.orRoadLinkGeography.getAllObjects()) {
-				// Iterating over the vehicle road links (ITN) but using their corresponding ped road link (open road) id to check whether they belong to this vehicle polygon
-				if (rl.getFID().contentEquals(r.getRoadLinkID())) {
-					orLink = rl;
-					orLink.getRoads().add(r);
-					break;
-				}
-			}
-			
-			r.setRoadLinks(roadLinks);
-			r.setORRoadLink(orLink);
-		}
+		GISFunctions.associateRoadsWithRoadLinks(SpaceBuilder.roadGeography, SpaceBuilder.roadLinkGeography, SpaceBuilder.orRoadLinkGeography);
 	}
 	
 	static Vehicle createVehicle(OD o, OD d) {
@@ -376,6 +357,10 @@ public class EnvironmentSetup {
 	public static void clearCaches() {
 		RoadNetworkRoute.clearCaches();
 		SpatialIndexManager.clearCaches();
+		ObstructionSegments.clearCaches();
+		NetworkPathFinder.clearCaches();
+		RoadLinkCrossingAlternatives.clearCaches();
+		StrategicPathCache.clearCaches();
 	}
 	
 	public static Ped createPedAtLocation(int oID, int dID, boolean minimisesDistance, Coordinate c, double b) {
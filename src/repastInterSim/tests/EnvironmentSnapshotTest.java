@@ -0,0 +1,224 @@
+package repastInterSim.tests;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+import repast.simphony.context.Context;
+import repast.simphony.context.DefaultContext;
+import repast.simphony.context.space.gis.GeographyFactoryFinder;
+import repast.simphony.space.gis.Geography;
+import repast.simphony.space.gis.GeographyParameters;
+import repastInterSim.environment.CrossingAlternative;
+import repastInterSim.environment.EnvironmentSnapshot;
+import repastInterSim.environment.FixedGeography;
+import repastInterSim.environment.GISFunctions;
+import repastInterSim.environment.Junction;
+import repastInterSim.environment.OD;
+import repastInterSim.environment.PedObstruction;
+import repastInterSim.environment.Road;
+import repastInterSim.environment.RoadLink;
+import repastInterSim.environment.ShapefileLoader;
+import repastInterSim.main.GlobalVars;
+import repastInterSim.main.IO;
+
+class EnvironmentSnapshotTest {
+
+	String roadLinkFile = "mastermap-itn RoadLink Intersect Within with orientation.shp";
+
+	File setUpSnapshotDirectory() throws Exception {
+		EnvironmentSetup.setUpProperties();
+		File dir = Files.createTempDirectory("environment_snapshot").toFile();
+		EnvironmentSnapshot.setSnapshotDirectory(dir);
+		return dir;
+	}
+
+	void deleteSnapshotDirectory(File dir) {
+		for (File f: dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+		EnvironmentSnapshot.setSnapshotDirectory(null);
+	}
+
+	Map<String, RoadLink> roadLinksByFID(Geography<RoadLink> rlG) {
+		Map<String, RoadLink> rls = new HashMap<String, RoadLink>();
+		for (RoadLink rl: rlG.getAllObjects()) {
+			rls.put(rl.getFID(), rl);
+		}
+		return rls;
+	}
+
+	/*
+	 * Load the agents of a shapefile and describe each by its attribute properties and the coordinates of its geometry.
+	 * Descriptions are sorted so they can be compared however the geography orders the agents.
+	 */
+	<T extends FixedGeography> List<String> loadAgentDescriptions(Class<T> cl, String shapefile) throws Exception {
+		Context<T> context = new DefaultContext<T>();
+		Geography<T> geography = GeographyFactoryFinder.createGeographyFactory(null).createGeography("snapshotTestGeography", context, new GeographyParameters<T>());
+		geography.setCRS(GlobalVars.geographyCRSString);
+		GISFunctions.readShapefile(cl, shapefile, geography, context);
+
+		// Properties that can be set from a shapefile attribute and read back
+		Map<String, Method> readMethods = ShapefileLoader.getAttributeMethodMap(cl, "r");
+		Map<String, Method> writeMethods = ShapefileLoader.getAttributeMethodMap(cl, "w");
+		List<String> names = new ArrayList<String>();
+		for (String name: readMethods.keySet()) {
+			Class<?> type = readMethods.get(name).getReturnType();
+			boolean isValue = type.isPrimitive() || (type == String.class) || Number.class.isAssignableFrom(type) || (type == Boolean.class);
+			if (writeMethods.containsKey(name) && isValue) {
+				names.add(name);
+			}
+		}
+		Collections.sort(names);
+
+		List<String> descriptions = new ArrayList<String>();
+		for (T agent: geography.getAllObjects()) {
+			StringBuilder sb = new StringBuilder();
+			for (String name: names) {
+				sb.append(name).append("=").append(readMethods.get(name).invoke(agent)).append(";");
+			}
+			for (Coordinate c: agent.getGeom().getCoordinates()) {
+				sb.append(c.x).append(",").append(c.y).append(";");
+			}
+			descriptions.add(sb.toString());
+		}
+		Collections.sort(descriptions);
+		return descriptions;
+	}
+
+	/*
+	 * Agents loaded from a snapshot have the same attributes and geometries as agents loaded directly from the shapefile,
+	 * for each of the shapefiles that make up the environment.
+	 */
+	@Test
+	void testSnapshotRoundTripMatchesShapefileLoad() throws Exception {
+		EnvironmentSetup.setUpProperties();
+		Map<String, Class<? extends FixedGeography>> layers = new HashMap<String, Class<? extends FixedGeography>>();
+		layers.put(roadLinkFile, RoadLink.class);
+		layers.put("open-roads RoadLink Intersect Within simplify angles.shp", RoadLink.class);
+		layers.put("pedNetworkLinks.shp", RoadLink.class);
+		layers.put("OD_pedestrian_nodes_test.shp", OD.class);
+		layers.put("mastermap-itn RoadNode Intersect Within.shp", OD.class);
+		layers.put("topographicAreaPedestrian.shp", Road.class);
+		layers.put("topographicAreaVehicle.shp", Road.class);
+		layers.put(IO.getProperty("PedestrianObstructionShapefile"), PedObstruction.class);
+		layers.put(IO.getProperty("PavementJunctionsShapefile"), Junction.class);
+		layers.put("crossing_lines.shp", CrossingAlternative.class);
+
+		for (String file: layers.keySet()) {
+			Class<? extends FixedGeography> cl = layers.get(file);
+			String path = EnvironmentSetup.testGISDir + file;
+
+			EnvironmentSnapshot.setSnapshotDirectory(null);
+			List<String> fromShapefile = loadAgentDescriptions(cl, path);
+
+			File dir = setUpSnapshotDirectory();
+			loadAgentDescriptions(cl, path);
+			int nLoaded = EnvironmentSnapshot.getNLoaded();
+			List<String> fromSnapshot = loadAgentDescriptions(cl, path);
+			assert EnvironmentSnapshot.getNLoaded() == nLoaded + 1 : file + " was not loaded from its snapshot";
+			deleteSnapshotDirectory(dir);
+
+			assert fromShapefile.size() > 0;
+			assert fromShapefile.equals(fromSnapshot) : file + " agents loaded from snapshot differ from the shapefile";
+		}
+	}
+
+	@Test
+	void testSnapshotMatchesShapefile() throws Exception {
+		File dir = setUpSnapshotDirectory();
+
+		int nWritten = EnvironmentSnapshot.getNWritten();
+		int nLoaded = EnvironmentSnapshot.getNLoaded();
+
+		// First read parses the shapefile and writes the snapshot, second read uses the snapshot
+		Map<String, RoadLink> fromShapefile = roadLinksByFID(EnvironmentSetup.setUpRoadLinks(roadLinkFile));
+		assert EnvironmentSnapshot.getNWritten() == nWritten + 1;
+		assert EnvironmentSnapshot.getNLoaded() == nLoaded;
+
+		Map<String, RoadLink> fromSnapshot = roadLinksByFID(EnvironmentSetup.setUpRoadLinks(roadLinkFile));
+		assert EnvironmentSnapshot.getNWritten() == nWritten + 1;
+		assert EnvironmentSnapshot.getNLoaded() == nLoaded + 1;
+
+		assert fromShapefile.size() > 0;
+		assert fromShapefile.keySet().equals(fromSnapshot.keySet());
+		for (String fid: fromShapefile.keySet()) {
+			RoadLink rl1 = fromShapefile.get(fid);
+			RoadLink rl2 = fromSnapshot.get(fid);
+			assert rl1.getPedRLID().contentEquals(rl2.getPedRLID());
+			assert rl1.getDirection().contentEquals(rl2.getDirection());
+			assert rl1.getMNodeFID().contentEquals(rl2.getMNodeFID());
+			assert rl1.getPNodeFID().contentEquals(rl2.getPNodeFID());
+			assert rl1.getGeom().equalsExact(rl2.getGeom());
+		}
+
+		deleteSnapshotDirectory(dir);
+	}
+
+	@Test
+	void testOutOfDateSnapshotRebuilt() throws Exception {
+		File dir = setUpSnapshotDirectory();
+
+		EnvironmentSetup.setUpRoadLinks(roadLinkFile);
+		File snapshot = dir.listFiles()[0];
+
+		// Read the snapshot before replacing it, as happens when a run follows a run on the previous version of the data
+		int nLoadedBefore = EnvironmentSnapshot.getNLoaded();
+		EnvironmentSetup.setUpRoadLinks(roadLinkFile);
+		assert EnvironmentSnapshot.getNLoaded() == nLoadedBefore + 1;
+
+		// Change the recorded checksum of the source shapefile, as if the shapefile had been edited
+		try (RandomAccessFile raf = new RandomAccessFile(snapshot, "rw")) {
+			raf.seek(8);
+			long checksum = raf.readLong();
+			raf.seek(8);
+			raf.writeLong(checksum + 1);
+		}
+
+		int nWritten = EnvironmentSnapshot.getNWritten();
+		int nLoaded = EnvironmentSnapshot.getNLoaded();
+		Geography<RoadLink> rlG = EnvironmentSetup.setUpRoadLinks(roadLinkFile);
+		assert EnvironmentSnapshot.getNLoaded() == nLoaded;
+		assert EnvironmentSnapshot.getNWritten() == nWritten + 1;
+		assert rlG.getAllObjects().iterator().hasNext();
+
+		deleteSnapshotDirectory(dir);
+	}
+
+	/*
+	 * Time reading road links from the shapefile and from the snapshot.
+	 */
+	@Test
+	void benchmarkSnapshotLoad() throws Exception {
+		File dir = setUpSnapshotDirectory();
+		EnvironmentSetup.setUpRoadLinks(roadLinkFile);
+
+		int n = 20;
+		long start = System.nanoTime();
+		for (int i=0; i<n; i++) {
+			EnvironmentSetup.setUpRoadLinks(roadLinkFile);
+		}
+		long snapshotDuration = System.nanoTime() - start;
+
+		// Without a snapshot directory road links are read from the shapefile
+		deleteSnapshotDirectory(dir);
+		start = System.nanoTime();
+		for (int i=0; i<n; i++) {
+			EnvironmentSetup.setUpRoadLinks(roadLinkFile);
+		}
+		long shapefileDuration = System.nanoTime() - start;
+
+		System.out.println("Road link loading nReads=" + n + " shapefile ms/read=" + (shapefileDuration / 1e6 / n) + " snapshot ms/read=" + (snapshotDuration / 1e6 / n));
+	}
+}
@@ -0,0 +1,150 @@
+package repastInterSim.tests;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import repastInterSim.main.GlobalVars;
+import repastInterSim.pathfinding.FloodFieldCache;
+import repastInterSim.pathfinding.FloodFill;
+import repastInterSim.pathfinding.GridRaster;
+
+class FloodFieldCacheTest {
+
+	HashMap<Integer, Double> priorityMap(double vehicleCost) {
+		HashMap<Integer, Double> pm = new HashMap<Integer, Double>();
+		pm.put(1, 1.0);
+		pm.put(2, 2.0);
+		pm.put(3, vehicleCost);
+		pm.put(4, 20.0);
+		return pm;
+	}
+
+	GridRaster randomRaster(int width, int height, Random rand) {
+		int[] values = new int[width*height];
+		for (int k=0; k<values.length; k++) {
+			values[k] = rand.nextInt(5);
+		}
+		return new GridRaster(width, height, values);
+	}
+
+	void setUpCache(double cacheMB, boolean compress) {
+		GlobalVars.GRID_PARAMS.floodFieldCacheMB = cacheMB;
+		GlobalVars.GRID_PARAMS.compressFloodFields = compress;
+		FloodFieldCache.clearCaches();
+	}
+
+	@Test
+	void testCachedFieldMatchesFill() {
+		Random rand = new Random(1);
+		GridRaster raster = randomRaster(60, 40, rand);
+
+		for (boolean compress: new boolean[] {false, true}) {
+			setUpCache(16, compress);
+			double[] valueCosts = raster.valueCosts(priorityMap(5.0));
+			int end = raster.cellIndex(30, 20);
+			double[] expected = FloodFill.wavefront(raster, valueCosts, 10, 5, 50, 35, end);
+
+			double[] first = FloodFieldCache.getFloodField(raster, valueCosts, 10, 5, 50, 35, end);
+			assert FloodFieldCache.getNMisses() == 1;
+			assert FloodFieldCache.getNHits() == 0;
+
+			// Priority maps with the same costs share the cached field
+			double[] second = FloodFieldCache.getFloodField(raster, raster.valueCosts(priorityMap(5.0)), 10, 5, 50, 35, end);
+			assert FloodFieldCache.getNHits() == 1;
+			assert FloodFieldCache.getHitRate() == 0.5;
+
+			assert Arrays.equals(first, expected);
+			assert Arrays.equals(second, expected);
+			assert first != second;
+		}
+	}
+
+	@Test
+	void testDifferentCostsOrWindowMiss() {
+		Random rand = new Random(2);
+		GridRaster raster = randomRaster(60, 40, rand);
+		setUpCache(16, false);
+
+		int end = raster.cellIndex(30, 20);
+		FloodFieldCache.getFloodField(raster, raster.valueCosts(priorityMap(5.0)), 0, 0, 60, 40, end);
+		FloodFieldCache.getFloodField(raster, raster.valueCosts(priorityMap(6.0)), 0, 0, 60, 40, end);
+		FloodFieldCache.getFloodField(raster, raster.valueCosts(priorityMap(5.0)), 0, 0, 50, 40, end);
+		FloodFieldCache.getFloodField(raster, raster.valueCosts(priorityMap(5.0)), 0, 0, 60, 40, raster.cellIndex(31, 20));
+		assert FloodFieldCache.getNMisses() == 4;
+		assert FloodFieldCache.getNHits() == 0;
+		assert FloodFieldCache.getNFields() == 4;
+	}
+
+	@Test
+	void testLeastRecentlyUsedEvicted() {
+		Random rand = new Random(3);
+		GridRaster raster = randomRaster(100, 100, rand);
+		double[] valueCosts = raster.valueCosts(priorityMap(5.0));
+
+		// Room for two whole grid fields
+		setUpCache(2.5 * 100 * 100 * Double.BYTES / (1024 * 1024), false);
+
+		int a = raster.cellIndex(10, 10);
+		int b = raster.cellIndex(20, 20);
+		int c = raster.cellIndex(30, 30);
+		FloodFieldCache.getFloodField(raster, valueCosts, 0, 0, 100, 100, a);
+		FloodFieldCache.getFloodField(raster, valueCosts, 0, 0, 100, 100, b);
+		FloodFieldCache.getFloodField(raster, valueCosts, 0, 0, 100, 100, a);
+		FloodFieldCache.getFloodField(raster, valueCosts, 0, 0, 100, 100, c);
+		assert FloodFieldCache.getNFields() == 2;
+		assert FloodFieldCache.getNEvictions() == 1;
+		assert FloodFieldCache.getStoredBytes() <= GlobalVars.GRID_PARAMS.floodFieldCacheMB * 1024 * 1024;
+
+		// b was least recently used so was evicted
+		FloodFieldCache.getFloodField(raster, valueCosts, 0, 0, 100, 100, a);
+		assert FloodFieldCache.getNHits() == 2;
+		FloodFieldCache.getFloodField(raster, valueCosts, 0, 0, 100, 100, b);
+		assert FloodFieldCache.getNHits() == 2;
+
+		// A limit of zero disables the cache
+		setUpCache(0, false);
+		FloodFieldCache.getFloodField(raster, valueCosts, 0, 0, 100, 100, a);
+		FloodFieldCache.getFloodField(raster, valueCosts, 0, 0, 100, 100, a);
+		assert FloodFieldCache.getNHits() == 0;
+		assert FloodFieldCache.getNFields() == 0;
+
+		setUpCache(256, false);
+	}
+
+	/*
+	 * Time fields for many routes to a few destinations with and without the cache, and report the memory used by cached fields.
+	 */
+	@Test
+	void benchmarkFloodFieldCache() {
+		Random rand = new Random(4);
+		int size = 1000;
+		GridRaster raster = randomRaster(size, size, rand);
+		double[] valueCosts = raster.valueCosts(priorityMap(5.0));
+		int[] destinations = new int[5];
+		for (int d=0; d<destinations.length; d++) {
+			destinations[d] = raster.cellIndex(rand.nextInt(size), rand.nextInt(size));
+		}
+		int nRoutes = 50;
+
+		long start = System.nanoTime();
+		for (int r=0; r<nRoutes; r++) {
+			FloodFill.wavefront(raster, valueCosts, 0, 0, size, size, destinations[r % destinations.length]);
+		}
+		long uncachedDuration = System.nanoTime() - start;
+		System.out.println("Flood fields uncached grid=" + size + "x" + size + " nRoutes=" + nRoutes + " ms/route=" + (uncachedDuration / 1e6 / nRoutes));
+
+		for (boolean compress: new boolean[] {false, true}) {
+			setUpCache(256, compress);
+			start = System.nanoTime();
+			for (int r=0; r<nRoutes; r++) {
+				FloodFieldCache.getFloodField(raster, valueCosts, 0, 0, size, size, destinations[r % destinations.length]);
+			}
+			long duration = System.nanoTime() - start;
+			System.out.println("Flood fields cached compress=" + compress + " ms/route=" + (duration / 1e6 / nRoutes) + " hit rate=" + FloodFieldCache.getHitRate() + " MB stored=" + (FloodFieldCache.getStoredBytes() / (1024.0 * 1024)));
+		}
+		setUpCache(256, false);
+	}
+}
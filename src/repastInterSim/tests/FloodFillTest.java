@@ -0,0 +1,147 @@
+package repastInterSim.tests;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import repastInterSim.pathfinding.FloodFill;
+import repastInterSim.pathfinding.GridRaster;
+import repastInterSim.pathfinding.GridRouter;
+
+class FloodFillTest {
+
+	// Cell value 0 is the default grid value, which is not filled through
+	HashMap<Integer, Double> priorityMap() {
+		HashMap<Integer, Double> pm = new HashMap<Integer, Double>();
+		pm.put(1, 1.0);
+		pm.put(2, 2.5);
+		pm.put(3, 5.0);
+		pm.put(4, 20.0);
+		return pm;
+	}
+
+	GridRaster randomRaster(int width, int height, int minValue, Random rand) {
+		int[] values = new int[width*height];
+		for (int k=0; k<values.length; k++) {
+			values[k] = minValue + rand.nextInt(5 - minValue);
+		}
+		return new GridRaster(width, height, values);
+	}
+
+	long allocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	@Test
+	void testWavefrontGivesLeastCost() {
+		Random rand = new Random(1);
+		for (int t=0; t<10; t++) {
+			GridRaster raster = randomRaster(15, 10, 1, rand);
+			double[] valueCosts = raster.valueCosts(priorityMap());
+			int end = rand.nextInt(15*10);
+
+			double[] values = FloodFill.wavefront(raster, valueCosts, 0, 0, 15, 10, end);
+			for (int cell=0; cell<values.length; cell++) {
+				int[] path = GridRouter.shortestPath(raster, valueCosts, 0, 0, 15, 10, end, cell, false);
+				assert Math.abs(values[cell] - GridRouter.pathCost(raster, valueCosts, path)) < 1e-9;
+			}
+		}
+	}
+
+	@Test
+	void testDefaultCellsNotFilledThrough() {
+		// A wall of default value cells, with the fill window covering the left part of the grid
+		int width = 12;
+		int height = 8;
+		int[] values = new int[width*height];
+		Arrays.fill(values, 1);
+		for (int j=0; j<height; j++) {
+			values[j*width + 5] = 0;
+		}
+		GridRaster raster = new GridRaster(width, height, values);
+		double[] valueCosts = raster.valueCosts(priorityMap());
+		int end = raster.cellIndex(1, 1);
+
+		for (double[] filled: new double[][] {FloodFill.wavefront(raster, valueCosts, 0, 0, 10, height, end), FloodFill.randomOrder(raster, valueCosts, 0, 0, 10, height, end)}) {
+			assert filled[end] == 0;
+			for (int j=0; j<height; j++) {
+				for (int i=0; i<width; i++) {
+					double v = filled[raster.cellIndex(i, j)];
+					if (i < 5) {
+						assert (v > 0) | ((i==1) & (j==1));
+					}
+					else if (i == 5) {
+						assert v == Integer.MAX_VALUE;
+					}
+					else {
+						// Behind the wall or outside of the window
+						assert v == 0;
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void testRandomOrderNotLessThanWavefront() {
+		Random rand = new Random(2);
+		for (int t=0; t<10; t++) {
+			GridRaster raster = randomRaster(40, 30, 0, rand);
+			double[] valueCosts = raster.valueCosts(priorityMap());
+			int end = raster.cellIndex(rand.nextInt(40), rand.nextInt(30));
+			if (raster.getValue(end) == 0) {
+				// Random order fill sets an end cell with the default value to Integer.MAX_VALUE, as the original flood fill did
+				continue;
+			}
+
+			double[] wavefront = FloodFill.wavefront(raster, valueCosts, 0, 0, 40, 30, end);
+			double[] random = FloodFill.randomOrder(raster, valueCosts, 0, 0, 40, 30, end);
+			for (int cell=0; cell<wavefront.length; cell++) {
+				// Same cells are reached, random order values are never lower than the least cost
+				assert (wavefront[cell] == 0) == (random[cell] == 0);
+				assert random[cell] >= wavefront[cell] - 1e-9;
+			}
+		}
+	}
+
+	/*
+	 * Time and memory allocated by flood fills over whole grids of the sizes used for study area rasters.
+	 */
+	@Test
+	void benchmarkFloodFill() {
+		Random rand = new Random(3);
+		for (int size: new int[] {250, 500, 1000, 2000}) {
+			GridRaster raster = randomRaster(size, size, 0, rand);
+			double[] valueCosts = raster.valueCosts(priorityMap());
+			int end = raster.cellIndex(size/2, size/2);
+
+			for (boolean random: new boolean[] {false, true}) {
+				// Warm up
+				if (random) {
+					FloodFill.randomOrder(raster, valueCosts, 0, 0, size, size, end);
+				}
+				else {
+					FloodFill.wavefront(raster, valueCosts, 0, 0, size, size, end);
+				}
+
+				int n = 5;
+				long startBytes = allocatedBytes();
+				long start = System.nanoTime();
+				for (int i=0; i<n; i++) {
+					if (random) {
+						FloodFill.randomOrder(raster, valueCosts, 0, 0, size, size, end);
+					}
+					else {
+						FloodFill.wavefront(raster, valueCosts, 0, 0, size, size, end);
+					}
+				}
+				long duration = System.nanoTime() - start;
+				long bytes = allocatedBytes() - startBytes;
+				System.out.println("FloodFill " + (random ? "randomOrder" : "wavefront") + " grid=" + size + "x" + size + " ms/fill=" + (duration / 1e6 / n) + " MB allocated/fill=" + (bytes / 1e6 / n));
+			}
+		}
+	}
+}
@@ -354,4 +354,50 @@ class GISFunctionsTest {
 		System.out.print(duration);
 	}
 
+	/*
+	 * Test that roads are linked with the same road links as found by comparing each road with every road link.
+	 */
+	@Test
+	void testAssociateRoadsWithRoadLinks() throws Exception {
+		setUpProperties();
+		setUpRoads();
+		setUpRoadLinks();
+		EnvironmentSetup.setUpORRoadLinks();
+		
+		long start = System.nanoTime();
+		GISFunctions.associateRoadsWithRoadLinks(SpaceBuilder.roadGeography, SpaceBuilder.roadLinkGeography, SpaceBuilder.orRoadLinkGeography);
+		long duration = System.nanoTime() - start;
+		System.out.println("associateRoadsWithRoadLinks ms=" + duration / 1e6);
+		
+		for (Road r: SpaceBuilder.roadGeography.getAllObjects()) {
+			List<RoadLink> expectedRoadLinks = new ArrayList<RoadLink>();
+			for (RoadLink rl: SpaceBuilder.roadLinkGeography.getAllObjects()) {
+				if (rl.getPedRLID().contentEquals(r.getRoadLinkID())) {
+					expectedRoadLinks.add(rl);
+				}
+			}
+			
+			RoadLink expectedORLink = null;
+			for (RoadLink rl: SpaceBuilder.orRoadLinkGeography.getAllObjects()) {
+				if (rl.getFID().contentEquals(r.getRoadLinkID())) {
+					expectedORLink = rl;
+					break;
+				}
+			}
+			
+			assert r.getRoadLinks().equals(expectedRoadLinks);
+			assert r.getORRoadLink() == expectedORLink;
+		}
+		
+		for (RoadLink rl: SpaceBuilder.roadLinkGeography.getAllObjects()) {
+			List<Road> expectedRoads = new ArrayList<Road>();
+			for (Road r: SpaceBuilder.roadGeography.getAllObjects()) {
+				if (rl.getPedRLID().contentEquals(r.getRoadLinkID())) {
+					expectedRoads.add(r);
+				}
+			}
+			assert rl.getRoads().equals(expectedRoads);
+		}
+	}
+
 }
@@ -0,0 +1,167 @@
+package repastInterSim.tests;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import repastInterSim.pathfinding.GridRaster;
+import repastInterSim.pathfinding.GridRouter;
+
+class GridRouterTest {
+
+	// Cell value 0 is the default grid value, which costs Integer.MAX_VALUE to move into
+	HashMap<Integer, Double> priorityMap() {
+		HashMap<Integer, Double> pm = new HashMap<Integer, Double>();
+		pm.put(1, 1.0);
+		pm.put(2, 2.0);
+		pm.put(3, 5.0);
+		pm.put(4, 20.0);
+		return pm;
+	}
+
+	GridRaster randomRaster(int width, int height, Random rand) {
+		int[] values = new int[width*height];
+		for (int k=0; k<values.length; k++) {
+			values[k] = rand.nextInt(5);
+		}
+		return new GridRaster(width, height, values);
+	}
+
+	/*
+	 * Least cost to reach each cell in the window from the start cell, found by relaxing every move until no cost changes.
+	 */
+	double[] relaxedCosts(GridRaster raster, double[] valueCosts, int mini, int minj, int maxi, int maxj, int start) {
+		double[] cost = new double[raster.getWidth()*raster.getHeight()];
+		Arrays.fill(cost, Double.POSITIVE_INFINITY);
+		cost[start] = 0;
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int j=minj; j<maxj; j++) {
+				for (int i=mini; i<maxi; i++) {
+					int c = raster.cellIndex(i, j);
+					for (int di=-1; di<=1; di++) {
+						for (int dj=-1; dj<=1; dj++) {
+							int ni = i + di;
+							int nj = j + dj;
+							if ( ((di==0) & (dj==0)) || (ni < mini) || (ni >= maxi) || (nj < minj) || (nj >= maxj) ) {
+								continue;
+							}
+							int n = raster.cellIndex(ni, nj);
+							double nc = cost[n] + valueCosts[raster.getValue(c) - raster.getMinValue()];
+							if (nc < cost[c]) {
+								cost[c] = nc;
+								changed = true;
+							}
+						}
+					}
+				}
+			}
+		}
+		return cost;
+	}
+
+	void assertValidPath(GridRaster raster, int[] path, int mini, int minj, int maxi, int maxj, int start, int end) {
+		assert path[0] == start;
+		assert path[path.length-1] == end;
+		for (int k=0; k<path.length; k++) {
+			int i = path[k] % raster.getWidth();
+			int j = path[k] / raster.getWidth();
+			assert (i >= mini) & (i < maxi) & (j >= minj) & (j < maxj);
+			if (k > 0) {
+				int pi = path[k-1] % raster.getWidth();
+				int pj = path[k-1] / raster.getWidth();
+				assert Math.max(Math.abs(i - pi), Math.abs(j - pj)) == 1;
+			}
+		}
+	}
+
+	@Test
+	void testPathCostMatchesRelaxation() {
+		Random rand = new Random(1);
+		for (int t=0; t<50; t++) {
+			GridRaster raster = randomRaster(12, 9, rand);
+			double[] valueCosts = raster.valueCosts(priorityMap());
+			int start = rand.nextInt(12*9);
+			int end = rand.nextInt(12*9);
+
+			double[] expected = relaxedCosts(raster, valueCosts, 0, 0, 12, 9, start);
+			for (boolean aStar: new boolean[] {false, true}) {
+				int[] path = GridRouter.shortestPath(raster, valueCosts, 0, 0, 12, 9, start, end, aStar);
+				assertValidPath(raster, path, 0, 0, 12, 9, start, end);
+				assert Math.abs(GridRouter.pathCost(raster, valueCosts, path) - expected[end]) < 1e-6;
+			}
+		}
+	}
+
+	@Test
+	void testAStarCostMatchesDijkstra() {
+		Random rand = new Random(2);
+		for (int t=0; t<20; t++) {
+			GridRaster raster = randomRaster(80, 60, rand);
+			double[] valueCosts = raster.valueCosts(priorityMap());
+			int start = raster.cellIndex(rand.nextInt(80), rand.nextInt(60));
+			int end = raster.cellIndex(rand.nextInt(80), rand.nextInt(60));
+
+			int[] dijkstra = GridRouter.shortestPath(raster, valueCosts, 0, 0, 80, 60, start, end, false);
+			int[] aStar = GridRouter.shortestPath(raster, valueCosts, 0, 0, 80, 60, start, end, true);
+			assertValidPath(raster, aStar, 0, 0, 80, 60, start, end);
+			assert Math.abs(GridRouter.pathCost(raster, valueCosts, dijkstra) - GridRouter.pathCost(raster, valueCosts, aStar)) < 1e-6;
+		}
+	}
+
+	@Test
+	void testPartialWindow() {
+		// A wall of expensive cells with a cheap gap outside of the search window
+		int width = 20;
+		int height = 20;
+		int[] values = new int[width*height];
+		Arrays.fill(values, 1);
+		for (int j=0; j<height-1; j++) {
+			values[j*width + 10] = 4;
+		}
+		GridRaster raster = new GridRaster(width, height, values);
+		double[] valueCosts = raster.valueCosts(priorityMap());
+		int start = raster.cellIndex(5, 5);
+		int end = raster.cellIndex(15, 5);
+
+		int[] full = GridRouter.shortestPath(raster, valueCosts, 0, 0, width, height, start, end, false);
+		assert GridRouter.pathCost(raster, valueCosts, full) == 28;
+
+		int[] partial = GridRouter.shortestPath(raster, valueCosts, 2, 2, 18, 10, start, end, false);
+		assertValidPath(raster, partial, 2, 2, 18, 10, start, end);
+		assert GridRouter.pathCost(raster, valueCosts, partial) == 29;
+
+		int[] single = GridRouter.shortestPath(raster, valueCosts, 0, 0, width, height, start, start, true);
+		assert single.length == 1;
+	}
+
+	/*
+	 * Time Dijkstra's algorithm and A* between opposite corners of a 1000 x 1000 grid.
+	 */
+	@Test
+	void benchmarkShortestPath() {
+		Random rand = new Random(3);
+		int size = 1000;
+		GridRaster raster = randomRaster(size, size, rand);
+		double[] valueCosts = raster.valueCosts(priorityMap());
+		int start = raster.cellIndex(0, 0);
+		int end = raster.cellIndex(size-1, size-1);
+
+		for (boolean aStar: new boolean[] {false, true}) {
+			// Warm up
+			GridRouter.shortestPath(raster, valueCosts, 0, 0, size, size, start, end, aStar);
+
+			int n = 5;
+			int[] path = null;
+			long startTime = System.nanoTime();
+			for (int i=0; i<n; i++) {
+				path = GridRouter.shortestPath(raster, valueCosts, 0, 0, size, size, start, end, aStar);
+			}
+			long duration = System.nanoTime() - startTime;
+			System.out.println("GridRouter " + (aStar ? "A*" : "Dijkstra") + " grid=" + size + "x" + size + " ms/path=" + (duration / 1e6 / n) + " path cost=" + GridRouter.pathCost(raster, valueCosts, path));
+		}
+	}
+}
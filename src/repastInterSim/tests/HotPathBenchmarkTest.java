@@ -0,0 +1,311 @@
+package repastInterSim.tests;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Polygon;
+
+import repastInterSim.agent.Ped;
+import repastInterSim.agent.Vehicle;
+import repastInterSim.environment.ObstructionSegments;
+import repastInterSim.environment.RoadLink;
+import repastInterSim.environment.SpatialIndexManager;
+import repastInterSim.environment.VehicleArrivals;
+import repastInterSim.environment.VehicleQueue;
+import repastInterSim.main.SpaceBuilder;
+import repastInterSim.pathfinding.AccumulatorRoute;
+import repastInterSim.pathfinding.FloodFill;
+import repastInterSim.pathfinding.GridRaster;
+import repastInterSim.pathfinding.PedPathFinder;
+import repastInterSim.pathfinding.TacticalRoute;
+
+/*
+ * Benchmarks of the methods that take most of the time in a simulation step. The kernel benchmarks run on generated data and
+ * the hot path benchmarks run against the test GIS data.
+ *
+ * The benchmarks only run when the system property benchmark.run=true is set, so they are not part of the normal test run.
+ * Results are written to output/benchmarks/hot_paths.csv and compared against the baseline results committed alongside this
+ * test in hot_paths_baseline.csv, so that every commit is compared against the same reference. A benchmark fails if it is more
+ * than benchmark.tolerance (default 0.1) slower than its baseline or has no baseline result. Timings depend on the machine, so
+ * record the baseline on the machine the benchmarks are compared on by setting benchmark.updateBaseline=true on the baseline
+ * commit, and commit the file. Set benchmark.label to label the results, eg with a commit hash.
+ */
+class HotPathBenchmarkTest {
+
+	File resultsFile = new File(".//output//benchmarks//hot_paths.csv");
+	File baselineFile = new File(".//src//repastInterSim//tests//hot_paths_baseline.csv");
+
+	int warmupIterations = 20;
+	int measurementIterations = 50;
+
+	void setUpEnvironment() {
+		try {
+			EnvironmentSetup.setUpProperties();
+			EnvironmentSetup.setUpObjectGeography();
+			EnvironmentSetup.setUpRoads();
+			EnvironmentSetup.setUpPedObstructions();
+
+			EnvironmentSetup.setUpORRoadLinks();
+			EnvironmentSetup.setUpORRoadNetwork(false);
+
+			EnvironmentSetup.setUpITNRoadLinks();
+			EnvironmentSetup.setUpITNRoadNetwork(true);
+
+			EnvironmentSetup.setUpPedJunctions();
+			EnvironmentSetup.setUpPavementLinks("pedNetworkLinks.shp");
+			EnvironmentSetup.setUpPavementNetwork();
+
+			EnvironmentSetup.setUpPedODs();
+			EnvironmentSetup.setUpVehicleODs("mastermap-itn RoadNode Intersect Within.shp");
+
+			EnvironmentSetup.setUpCrossingAlternatives("CrossingAlternatives.shp");
+
+			EnvironmentSetup.assocaiteRoadsWithRoadLinks();
+		} catch (Exception e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+
+	/*
+	 * Write the results and check them against the baseline, or replace their baseline results if
+	 * benchmark.updateBaseline=true is set.
+	 */
+	void recordResults(BenchmarkRunner runner) throws Exception {
+		String label = System.getProperty("benchmark.label", String.valueOf(System.currentTimeMillis()));
+		runner.mergeResults(resultsFile, label);
+
+		if (Boolean.getBoolean("benchmark.updateBaseline")) {
+			runner.mergeResults(baselineFile, label);
+			return;
+		}
+
+		assert baselineFile.exists() : "Committed benchmark baseline " + baselineFile.getPath() + " not found";
+		List<String> missing = runner.missingFromBaseline(baselineFile);
+		assert missing.isEmpty() : "No baseline results for " + missing + ", record them with benchmark.updateBaseline=true";
+
+		double tolerance = Double.parseDouble(System.getProperty("benchmark.tolerance", "0.1"));
+		List<String> regressions = runner.compareToBaseline(baselineFile, tolerance);
+		assert regressions.isEmpty() : "Benchmarks more than " + tolerance + " slower than baseline: " + regressions;
+	}
+
+	/*
+	 * Benchmarks of the inner loops of ped sensing, crossing choice and grid routing, on generated data.
+	 */
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark.run", matches = "true")
+	void benchmarkKernels() throws Exception {
+		BenchmarkRunner runner = new BenchmarkRunner(warmupIterations, measurementIterations);
+		Random rand = new Random(1);
+
+		// Field of vision rays against the packed segments of nearby obstructions
+		double[] segs = new double[4 * 200];
+		for (int i=0; i<segs.length; i++) {
+			segs[i] = rand.nextDouble() * 20 - 10;
+		}
+		int nRays = 1000;
+		runner.run("ObstructionSegments.rayIntersectionDistance", () -> {
+			double d = 0;
+			for (int k=0; k<nRays; k++) {
+				double a = 2 * Math.PI * k / nRays;
+				d += ObstructionSegments.rayIntersectionDistance(0, 0, Math.sin(a), Math.cos(a), 10, segs);
+			}
+			return d >= 0 ? nRays : 0;
+		});
+
+		// Crossing alternative vehicle flow queries against a bent road link with vehicles travelling in both directions
+		Coordinate[] linkCoords = {new Coordinate(0, 0), new Coordinate(0, 50), new Coordinate(50, 50), new Coordinate(80, 20)};
+		VehicleQueue q = new VehicleQueue(40);
+		for (int i=0; i<40; i++) {
+			int pos = q.put(null);
+			q.updateState(pos, rand.nextDouble() * 80, rand.nextDouble() * 50, rand.nextDouble() * 15, rand.nextDouble() * 2 * Math.PI);
+		}
+		VehicleArrivals va = new VehicleArrivals(q, linkCoords);
+		runner.run("VehicleQueue.countReachingWithin", () -> {
+			int n = 0;
+			for (int k=0; k<1000; k++) {
+				n += q.countReachingWithin(k * 0.05, 25, 4);
+			}
+			return n >= 0 ? 1000 : 0;
+		});
+
+		runner.run("VehicleArrivals.countReachingWithin", () -> {
+			int n = 0;
+			for (int k=0; k<1000; k++) {
+				n += va.countReachingWithin(k * 0.05, 25, 4);
+			}
+			return n >= 0 ? 1000 : 0;
+		});
+
+		// Flood fill of a grid the size of a tactical route's grid window
+		int width = 200;
+		int height = 200;
+		int[] values = new int[width*height];
+		for (int k=0; k<values.length; k++) {
+			values[k] = 1 + rand.nextInt(4);
+		}
+		GridRaster raster = new GridRaster(width, height, values);
+		HashMap<Integer, Double> priorityMap = new HashMap<Integer, Double>();
+		priorityMap.put(1, 1.0);
+		priorityMap.put(2, 2.5);
+		priorityMap.put(3, 5.0);
+		priorityMap.put(4, 20.0);
+		double[] valueCosts = raster.valueCosts(priorityMap);
+		runner.run("FloodFill.wavefront", () -> {
+			FloodFill.wavefront(raster, valueCosts, 0, 0, width, height, raster.cellIndex(width / 2, height / 2));
+			return 1;
+		});
+
+		recordResults(runner);
+	}
+
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark.run", matches = "true")
+	void benchmarkHotPaths() throws Exception {
+
+		setUpEnvironment();
+		BenchmarkRunner runner = new BenchmarkRunner(warmupIterations, measurementIterations);
+
+		Ped ped = EnvironmentSetup.createPedestrian(3, 4, false);
+		Coordinate dLoc = ped.getDestination().getGeom().getCentroid().getCoordinate();
+		ped.senseWalk(dLoc);
+
+		runner.run("Ped.accel", () -> {
+			for (int i=0; i<100; i++) {
+				ped.accel();
+			}
+			return 100;
+		});
+
+		Polygon fieldOfVisionApprox = ped.getPedestrianFieldOfVisionPolygon(ped.getBearing());
+		List<Geometry> obstGeoms = ped.getObstacleGeometries(fieldOfVisionApprox, SpaceBuilder.pedObstructGeography);
+		List<Double> fovAngles = ped.sampleFoV();
+		double[] ds = new double[fovAngles.size()];
+		double[] dds = new double[fovAngles.size()];
+		runner.run("Ped.displacementDistancesToObstacleGeometries", () -> {
+			for (int i=0; i<100; i++) {
+				ped.displacementDistancesToObstacleGeometries(obstGeoms, fovAngles, ds, dds);
+			}
+			return 100;
+		});
+
+		List<Ped> fovPeds = new ArrayList<Ped>(ped.getPedsAndGeomsWithinGeometry(fieldOfVisionApprox).keySet());
+		runner.run("Ped.desiredDirectionIndex", () -> {
+			for (int i=0; i<100; i++) {
+				ped.desiredDirectionIndex(obstGeoms, fovPeds);
+			}
+			return 100;
+		});
+
+		runner.run("SpatialIndexManager.searchGeoms", () -> {
+			for (int i=0; i<100; i++) {
+				SpatialIndexManager.searchGeoms(SpaceBuilder.pedObstructGeography, fieldOfVisionApprox);
+			}
+			return 100;
+		});
+
+		runner.run("SpatialIndexManager.search", () -> {
+			for (int i=0; i<100; i++) {
+				SpatialIndexManager.search(SpaceBuilder.roadGeography, ped.getLoc());
+			}
+			return 100;
+		});
+
+		List<RoadLink> sP = ped.getPathFinder().getStrategicPath();
+		int horizonNLinks = PedPathFinder.getNLinksWithinAngularDistance(sP, ped.getpHorizon());
+		runner.run("PedPathFinder.planTacticalPath", () -> {
+			PedPathFinder.planTacticalPath(SpaceBuilder.pavementNetwork, SpaceBuilder.caGeography, SpaceBuilder.roadGeography, horizonNLinks, ped, sP, ped.getPathFinder().getStartPavementJunction(), ped.getPathFinder().getDestPavementJunction(), ped.getPathFinder().getPrimaryCostHeuristic(), ped.getPathFinder().getSecondaryCostHeuristic());
+			return 1;
+		});
+
+		// Accumulator routes stop updating once a crossing is chosen so a new one is planned for each iteration
+		runner.run("AccumulatorRoute.step", new BenchmarkRunner.Benchmark() {
+			AccumulatorRoute ar;
+
+			@Override
+			public void setUp() {
+				TacticalRoute tr = PedPathFinder.planTacticalPath(SpaceBuilder.pavementNetwork, SpaceBuilder.caGeography, SpaceBuilder.roadGeography, horizonNLinks, ped, sP, ped.getPathFinder().getStartPavementJunction(), ped.getPathFinder().getDestPavementJunction(), ped.getPathFinder().getPrimaryCostHeuristic(), ped.getPathFinder().getSecondaryCostHeuristic());
+				ar = tr.getAccumulatorRoute();
+			}
+
+			@Override
+			public int run() {
+				int n = 0;
+				while ( (n < 100) && !ar.caChosen() ) {
+					ar.step();
+					n++;
+				}
+				return n;
+			}
+		});
+
+		// Each iteration drives a new vehicle along its route
+		runner.run("Vehicle.drive", new BenchmarkRunner.Benchmark() {
+			Vehicle v = null;
+
+			@Override
+			public void setUp() throws Exception {
+				if (v != null) {
+					SpaceBuilder.removeMobileAgent(v, null);
+				}
+				v = EnvironmentSetup.createVehicle("osgb4000000029970431", "osgb4000000029971717");
+				v.step();
+			}
+
+			@Override
+			public int run() {
+				int n = 0;
+				while ( (n < 100) && (v.getRoute().getRouteX().size() > 1) ) {
+					v.drive();
+					n++;
+				}
+				return n;
+			}
+		});
+
+		recordResults(runner);
+	}
+
+	@Test
+	void testResultsReadAsBaseline() throws Exception {
+		BenchmarkRunner runner = new BenchmarkRunner(1, 5);
+		runner.run("fast", () -> 1);
+		runner.run("slow", () -> {
+			Thread.sleep(2);
+			return 1;
+		});
+
+		File f = File.createTempFile("benchmark_results", ".csv");
+		runner.writeResults(f, "test");
+
+		Map<String, Double> means = BenchmarkRunner.readMeans(f);
+		assert means.size() == 2;
+		assert means.get("fast") == runner.getResults().get(0).meanNsPerOp;
+		assert means.get("slow") >= 2000000;
+
+		// Compared to itself nothing has regressed
+		assert runner.compareToBaseline(f, 0.0).isEmpty();
+		assert runner.missingFromBaseline(f).isEmpty();
+
+		// Merging the results of other benchmarks keeps the existing rows
+		BenchmarkRunner other = new BenchmarkRunner(1, 5);
+		other.run("other", () -> 1);
+		assert other.missingFromBaseline(f).equals(Arrays.asList("other"));
+		other.mergeResults(f, "test");
+		means = BenchmarkRunner.readMeans(f);
+		assert means.size() == 3;
+		assert means.get("fast") == runner.getResults().get(0).meanNsPerOp;
+		assert means.get("other") == other.getResults().get(0).meanNsPerOp;
+		f.delete();
+	}
+}
@@ -619,6 +619,50 @@ class NetworkPathFinderTest {
 		
 	}
 	
+	/*
+	 * Test that the shared path finder reuses its JGraphT graph and rebuilds it when the network changes.
+	 */
+	@Test
+	public void testSharedJGraphTGraphInvalidation() {
+		try {
+			setUpPavementJunctions();
+			setUpPavementLinks("pedNetworkLinks.shp");
+			setUpPavementNetwork();
+		} catch (Exception e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+		
+		NetworkPathFinder<Junction> np = NetworkPathFinder.getSharedPathFinder(SpaceBuilder.pavementNetwork);
+		assert np == NetworkPathFinder.getSharedPathFinder(SpaceBuilder.pavementNetwork);
+		
+		DefaultUndirectedGraph<Junction, RepastEdge<Junction>> jgt = np.getFullJGraphTGraph();
+		assert jgt == np.getFullJGraphTGraph();
+		assert jgt.edgeSet().size() == np.getGraph().getEdgeCount();
+		
+		// Filtered view contains only nodes that pass the filter
+		Junction j = jgt.vertexSet().iterator().next();
+		org.jgrapht.Graph<Junction, RepastEdge<Junction>> filtered = np.getFilteredJGraphTGraph(n -> n != j);
+		assert filtered.vertexSet().size() == jgt.vertexSet().size() - 1;
+		assert filtered.containsVertex(j) == false;
+		
+		// Adding an edge to the network invalidates the cached graph
+		Junction other = null;
+		for (Junction k: jgt.vertexSet()) {
+			if ( (k != j) & (jgt.containsEdge(j, k)==false) ) {
+				other = k;
+				break;
+			}
+		}
+		RepastEdge<Junction> newEdge = SpaceBuilder.pavementNetwork.addEdge(j, other);
+		DefaultUndirectedGraph<Junction, RepastEdge<Junction>> jgtUpdated = np.getFullJGraphTGraph();
+		assert jgtUpdated != jgt;
+		assert jgtUpdated.edgeSet().size() == jgt.edgeSet().size() + 1;
+		
+		SpaceBuilder.pavementNetwork.removeEdge(newEdge);
+		assert np.getFullJGraphTGraph().edgeSet().size() == jgt.edgeSet().size();
+	}
+	
 	/*
 	 * Test choosing the shortest of a collection of simple paths based on heruistic.
 	 * 
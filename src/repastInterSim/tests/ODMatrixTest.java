@@ -0,0 +1,193 @@
+package repastInterSim.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import repastInterSim.environment.OD;
+import repastInterSim.environment.ODMatrix;
+
+class ODMatrixTest {
+
+	String[][] flowData = {
+			{"od_0", "od_1", "od_2", "od_3"},
+			{"0.0", "0.2", "0.5", "0.1"},
+			{"0.3", "0.0", "0.0", "0.3"},
+			{"0.0", "0.0", "0.0", "0.0"},
+			{"1.0", "0.4", "0.0", "0.0"}
+	};
+
+	List<String[]> odFlows() {
+		List<String[]> flows = new ArrayList<String[]>();
+		for (String[] row: flowData) {
+			flows.add(row);
+		}
+		return flows;
+	}
+
+	List<OD> odObjects() {
+		List<OD> ods = new ArrayList<OD>();
+		// Add in a different order to the matrix to check ODs are matched by FID
+		for (int i=flowData[0].length-1; i>=0; i--) {
+			OD od = new OD();
+			od.setFID(flowData[0][i]);
+			ods.add(od);
+		}
+		return ods;
+	}
+
+	/*
+	 * Sampling method used before ODMatrix was introduced. Iterates through all OD pairs and creates an agent
+	 * if the flow is above a random threshold and no agent has already been created at the origin.
+	 */
+	int[][] legacySample(List<String[]> odFlows, Random rand) {
+		int nOD = odFlows.get(0).length;
+		int[] originDest = new int[nOD];
+		for (int i=0; i<nOD; i++) {
+			originDest[i] = -1;
+		}
+
+		List<int[]> pairs = new ArrayList<int[]>();
+		for (int iD = 0; iD<nOD; iD++) {
+			for (int iO = 0; iO<nOD; iO++) {
+				if (originDest[iO] != -1) {
+					continue;
+				}
+				Float flow = Float.parseFloat(odFlows.get(iO+1)[iD]);
+				double threshold = rand.nextDouble();
+				if (flow > threshold) {
+					originDest[iO] = iD;
+					int[] pair = {iO, iD};
+					pairs.add(pair);
+				}
+			}
+		}
+		return pairs.toArray(new int[0][]);
+	}
+
+	@Test
+	void testODLookup() {
+		ODMatrix odm = new ODMatrix(odObjects(), odFlows());
+
+		assert odm.size() == 4;
+		for (int i=0; i<odm.size(); i++) {
+			assert odm.getOD(i).getFID().contentEquals(flowData[0][i]);
+			assert odm.getIndex(flowData[0][i]) == i;
+		}
+		assert odm.getIndex("not_an_od") == -1;
+
+		assert odm.getFlow(0, 2) == 0.5f;
+		assert odm.getFlow(3, 0) == 1.0f;
+	}
+
+	@Test
+	void testSampleDestination() {
+		ODMatrix odm = new ODMatrix(odObjects(), odFlows());
+
+		// Origin 0: P(d1) = 0.2, P(d2) = 0.8*0.5 = 0.4, P(d3) = 0.8*0.5*0.1 = 0.04
+		assert odm.sampleDestination(0, 0.0) == 1;
+		assert odm.sampleDestination(0, 0.1999) == 1;
+		assert odm.sampleDestination(0, 0.2001) == 2;
+		assert odm.sampleDestination(0, 0.61) == 3;
+		assert odm.sampleDestination(0, 0.65) == -1;
+
+		// Origin 2 never creates agents, origin 3 always creates agent with destination 0
+		assert odm.sampleDestination(2, 0.0) == -1;
+		assert odm.sampleDestination(3, 0.999) == 0;
+	}
+
+	/*
+	 * Compare the frequency of each OD pair produced by the ODMatrix with the legacy sampling method.
+	 */
+	@Test
+	void testSampleFrequenciesMatchLegacy() {
+		ODMatrix odm = new ODMatrix(odObjects(), odFlows());
+		int nOD = odm.size();
+		int nSamples = 200000;
+
+		double[][] freq = new double[nOD][nOD];
+		double[][] legacyFreq = new double[nOD][nOD];
+
+		Random rand = new Random(1);
+		for (int n=0; n<nSamples; n++) {
+			for (OD[] od: odm.sampleODs(rand::nextDouble)) {
+				freq[odm.getIndex(od[0].getFID())][odm.getIndex(od[1].getFID())] += 1.0 / nSamples;
+			}
+		}
+
+		Random legacyRand = new Random(2);
+		for (int n=0; n<nSamples; n++) {
+			for (int[] pair: legacySample(odFlows(), legacyRand)) {
+				legacyFreq[pair[0]][pair[1]] += 1.0 / nSamples;
+			}
+		}
+
+		for (int iO=0; iO<nOD; iO++) {
+			for (int iD=0; iD<nOD; iD++) {
+				assert Math.abs(freq[iO][iD] - legacyFreq[iO][iD]) < 0.01;
+			}
+		}
+	}
+
+	/*
+	 * Sampled pairs are ordered by destination then origin, as in the legacy method.
+	 */
+	@Test
+	void testSampleOrder() {
+		ODMatrix odm = new ODMatrix(odObjects(), odFlows());
+		Random rand = new Random(3);
+		for (int n=0; n<1000; n++) {
+			List<OD[]> ods = odm.sampleODs(rand::nextDouble);
+			for (int i=1; i<ods.size(); i++) {
+				int prevD = odm.getIndex(ods.get(i-1)[1].getFID());
+				int d = odm.getIndex(ods.get(i)[1].getFID());
+				assert prevD <= d;
+				if (prevD == d) {
+					assert odm.getIndex(ods.get(i-1)[0].getFID()) < odm.getIndex(ods.get(i)[0].getFID());
+				}
+			}
+		}
+	}
+
+	/*
+	 * Time sampling from a large, dense OD matrix.
+	 */
+	@Test
+	void benchmarkSampleODs() {
+		int nOD = 2000;
+		Random rand = new Random(4);
+		List<String[]> flows = new ArrayList<String[]>();
+		String[] ids = new String[nOD];
+		List<OD> ods = new ArrayList<OD>();
+		for (int i=0; i<nOD; i++) {
+			ids[i] = "od_" + i;
+			OD od = new OD();
+			od.setFID(ids[i]);
+			ods.add(od);
+		}
+		flows.add(ids);
+		for (int iO=0; iO<nOD; iO++) {
+			String[] row = new String[nOD];
+			for (int iD=0; iD<nOD; iD++) {
+				row[iD] = Float.toString(rand.nextFloat() * 0.001f);
+			}
+			flows.add(row);
+		}
+
+		long start = System.nanoTime();
+		ODMatrix odm = new ODMatrix(ods, flows);
+		long buildDuration = System.nanoTime() - start;
+
+		int nCalls = 1000;
+		int nAgents = 0;
+		start = System.nanoTime();
+		for (int n=0; n<nCalls; n++) {
+			nAgents += odm.sampleODs(rand::nextDouble).size();
+		}
+		long sampleDuration = System.nanoTime() - start;
+
+		System.out.println("ODMatrix nOD=" + nOD + " build ms=" + (buildDuration / 1e6) + " sample ms/call=" + (sampleDuration / 1e6 / nCalls) + " agents/call=" + ((double) nAgents / nCalls));
+	}
+}
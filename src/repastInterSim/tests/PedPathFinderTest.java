@@ -22,6 +22,7 @@ import repastInterSim.environment.OD;
 import repastInterSim.environment.RoadLink;
 import repastInterSim.main.GlobalVars;
 import repastInterSim.main.SpaceBuilder;
+import repastInterSim.pathfinding.NetworkPathFinder;
 import repastInterSim.pathfinding.PedPathFinder;
 import repastInterSim.pathfinding.TacticalRoute;
 
@@ -760,6 +761,78 @@ class PedPathFinderTest {
 		assert tr.getRemainderPath().size() == 0;		
 	}
 	
+	/*
+	 * Tactical replanning throughput. Times repeated tactical path planning using the shared pavement network path finder,
+	 * and again with the shared path finder cleared before each plan, which is equivalent to creating a new path finder each time.
+	 */
+	@Test
+	public void benchmarkTacticalReplanning() {
+		try {
+			EnvironmentSetup.setUpProperties();
+			EnvironmentSetup.setUpObjectGeography();
+			
+			EnvironmentSetup.setUpRoads();
+			
+			EnvironmentSetup.setUpITNRoadLinks();
+			EnvironmentSetup.setUpITNRoadNetwork(true);
+			EnvironmentSetup.setUpORRoadLinks();
+			EnvironmentSetup.setUpORRoadNetwork(false);
+			
+			EnvironmentSetup.setUpPedJunctions();
+			EnvironmentSetup.setUpPavementLinks("pedNetworkLinks.shp");
+			EnvironmentSetup.setUpPavementNetwork();
+			
+			EnvironmentSetup.setUpCrossingAlternatives("crossing_lines.shp");
+			
+			EnvironmentSetup.setUpPedODs();
+			
+			EnvironmentSetup.assocaiteRoadsWithRoadLinks();
+			
+		} catch (Exception e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+		
+		OD o = null;
+		OD d = null;
+		for (OD od : SpaceBuilder.pedestrianDestinationGeography.getAllObjects()) {
+			if (od.getId() == 5) {
+				o = od;
+			}
+			else if (od.getId() == 2) {
+				d = od;
+			}
+		}
+		
+		Ped p = new Ped(o, d, 0.5, 1.0, 0.9, 3.0, true, SpaceBuilder.pavementJunctionGeography, SpaceBuilder.pavementNetwork);
+		SpaceBuilder.context.add(p);
+		
+		List<RoadLink> sP = p.getPathFinder().getStrategicPath();
+		int horizonNLinks = sP.size();
+		int nPlans = 200;
+		
+		long[] durations = new long[2];
+		for (int k=0; k<2; k++) {
+			boolean shared = (k==0);
+			
+			// Warm up
+			for (int i=0; i<nPlans; i++) {
+				PedPathFinder.planTacticalPath(SpaceBuilder.pavementNetwork, SpaceBuilder.caGeography, SpaceBuilder.roadGeography, horizonNLinks, p, sP, p.getPathFinder().getStartPavementJunction(), p.getPathFinder().getDestPavementJunction(), p.getPathFinder().getPrimaryCostHeuristic(), p.getPathFinder().getSecondaryCostHeuristic());
+			}
+			
+			long start = System.nanoTime();
+			for (int i=0; i<nPlans; i++) {
+				if (!shared) {
+					NetworkPathFinder.clearCaches();
+				}
+				PedPathFinder.planTacticalPath(SpaceBuilder.pavementNetwork, SpaceBuilder.caGeography, SpaceBuilder.roadGeography, horizonNLinks, p, sP, p.getPathFinder().getStartPavementJunction(), p.getPathFinder().getDestPavementJunction(), p.getPathFinder().getPrimaryCostHeuristic(), p.getPathFinder().getSecondaryCostHeuristic());
+			}
+			durations[k] = System.nanoTime() - start;
+		}
+		
+		System.out.println("Tactical replanning plans/s shared path finder: " + (nPlans / (durations[0] / 1e9)) + " new path finder: " + (nPlans / (durations[1] / 1e9)));
+	}
+	
 	/*
 	 * Test the combined effect of cost heuristics and planning horizon.
 	 * 
@@ -0,0 +1,164 @@
+package repastInterSim.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+import repast.simphony.random.RandomHelper;
+import repastInterSim.agent.Ped;
+import repastInterSim.main.GlobalVars;
+import repastInterSim.main.SpaceBuilder;
+
+class PedSteppingTest {
+
+	// Origin and destination ids of the peds in the test scenario
+	int[][] ods = {{3,4}, {1,3}, {3,13}, {4,3}, {13,1}, {1,4}, {4,13}, {13,3}};
+
+	int nTicks = 50;
+
+	void setUpEnvironment() {
+		try {
+			EnvironmentSetup.setUpProperties();
+
+			EnvironmentSetup.setUpObjectGeography();
+			EnvironmentSetup.setUpRoads();
+			EnvironmentSetup.setUpPedObstructions();
+			EnvironmentSetup.setUpPedObstructionPoints();
+
+			EnvironmentSetup.setUpORRoadLinks();
+			EnvironmentSetup.setUpORRoadNetwork(false);
+
+			EnvironmentSetup.setUpITNRoadLinks();
+			EnvironmentSetup.setUpITNRoadNetwork(true);
+
+			EnvironmentSetup.setUpPedJunctions();
+			EnvironmentSetup.setUpPavementLinks("pedNetworkLinks.shp");
+			EnvironmentSetup.setUpPavementNetwork();
+
+			EnvironmentSetup.setUpPedODs();
+			EnvironmentSetup.setUpVehicleODs("mastermap-itn RoadNode Intersect Within.shp");
+
+			EnvironmentSetup.setUpCrossingAlternatives("crossing_lines.shp");
+
+			EnvironmentSetup.assocaiteRoadsWithRoadLinks();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/*
+	 * Set up a fresh environment with the random seed reset and create peds for the given origin and destination ids.
+	 */
+	List<Ped> createScenario(int[][] pedODs, int seed) {
+		setUpEnvironment();
+		RandomHelper.setSeed(seed);
+		List<Ped> peds = new ArrayList<Ped>();
+		for (int[] od: pedODs) {
+			peds.add(EnvironmentSetup.createPedestrian(od[0], od[1], false));
+		}
+		return peds;
+	}
+
+	/*
+	 * Step peds for a number of ticks, either with Ped.step or with the two phase step used when parallelPedStepping is
+	 * set, and return the location and bearing of each ped as {x, y, bearing}.
+	 */
+	double[][] stepScenario(List<Ped> peds, boolean parallel, int nThreads) throws Exception {
+		GlobalVars.parallelPedStepping = parallel;
+		ForkJoinPool pool = new ForkJoinPool(nThreads);
+		try {
+			for (int t=0; t<nTicks; t++) {
+				if (parallel) {
+					SpaceBuilder.stepPeds(peds, pool);
+				}
+				else {
+					for (Ped p: peds) {
+						p.step();
+					}
+				}
+			}
+		}
+		finally {
+			pool.shutdown();
+			GlobalVars.parallelPedStepping = false;
+		}
+
+		double[][] states = new double[peds.size()][];
+		for (int i=0; i<peds.size(); i++) {
+			Coordinate c = peds.get(i).getLoc();
+			states[i] = new double[] {c.x, c.y, peds.get(i).getBearing()};
+		}
+		return states;
+	}
+
+	void assertStatesEqual(double[][] expected, double[][] actual) {
+		assert expected.length == actual.length;
+		for (int i=0; i<expected.length; i++) {
+			for (int j=0; j<3; j++) {
+				assert Double.compare(expected[i][j], actual[i][j]) == 0;
+			}
+		}
+	}
+
+	/*
+	 * A ped stepped with the two phase step ends up where it does when stepped with Ped.step. With several peds the two
+	 * differ by design: in the two phase step peds sense the positions other peds had at the start of the tick, and random
+	 * numbers are drawn for all peds' tactical paths before any ped updates its crossing choice. So each ped is stepped in
+	 * a scenario of its own.
+	 */
+	@Test
+	void testParallelSteppingMatchesSerialForEachPed() throws Exception {
+		for (int[] od: this.ods) {
+			int[][] pedODs = {od};
+			double[][] serial = stepScenario(createScenario(pedODs, 1), false, 1);
+			double[][] parallel = stepScenario(createScenario(pedODs, 1), true, 4);
+			assertStatesEqual(serial, parallel);
+		}
+	}
+
+	/*
+	 * Peds that interact end in the same positions for a given seed however many threads calculate accelerations.
+	 */
+	@Test
+	void testParallelSteppingIndependentOfThreads() throws Exception {
+		double[][] oneThread = stepScenario(createScenario(this.ods, 1), true, 1);
+		double[][] fourThreads = stepScenario(createScenario(this.ods, 1), true, 4);
+		assertStatesEqual(oneThread, fourThreads);
+
+		// Check that the peds moved
+		List<Ped> start = createScenario(this.ods, 1);
+		for (int i=0; i<start.size(); i++) {
+			assert start.get(i).getLoc().distance(new Coordinate(oneThread[i][0], oneThread[i][1])) > 0;
+		}
+	}
+
+	/*
+	 * Time stepping the scenario's peds serially and with accelerations calculated in parallel. Each scenario ped is
+	 * repeated so that there are enough peds for the parallel phase to be worthwhile.
+	 */
+	@Test
+	void benchmarkParallelStepping() throws Exception {
+		int nRepeats = 8;
+		int[][] pedODs = new int[this.ods.length * nRepeats][];
+		for (int i=0; i<pedODs.length; i++) {
+			pedODs[i] = this.ods[i % this.ods.length];
+		}
+		int nThreads = Runtime.getRuntime().availableProcessors();
+
+		List<Ped> peds = createScenario(pedODs, 2);
+		long start = System.nanoTime();
+		stepScenario(peds, false, 1);
+		long durSerial = System.nanoTime() - start;
+
+		peds = createScenario(pedODs, 2);
+		start = System.nanoTime();
+		stepScenario(peds, true, nThreads);
+		long durParallel = System.nanoTime() - start;
+
+		System.out.println("Ped stepping nPeds=" + pedODs.length + " nThreads=" + nThreads + " serial ms/tick=" + (durSerial / 1e6 / nTicks) + " parallel ms/tick=" + (durParallel / 1e6 / nTicks));
+	}
+}
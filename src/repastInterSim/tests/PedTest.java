@@ -4,12 +4,14 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.jupiter.api.Test;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
 import com.vividsolutions.jts.operation.distance.DistanceOp;
@@ -18,6 +20,7 @@ import repast.simphony.context.Context;
 import repast.simphony.context.DefaultContext;
 import repastInterSim.agent.Ped;
 import repastInterSim.environment.GISFunctions;
+import repastInterSim.main.GlobalVars;
 import repastInterSim.main.IO;
 import repastInterSim.main.SpaceBuilder;
 
@@ -270,6 +273,390 @@ class PedTest {
 		validateOutput(output, expectedAngles, expectedDistances);
 	}
 	
+	/*
+	 * Previous implementation of Ped.distanceToObject that uses JTS DistanceOp to find intersections between the sampled ray
+	 * and obstruction geometries. Used to check the segment based implementation.
+	 */
+	static double distanceToObjectDistanceOp(Ped ped, double alpha, Iterable<Geometry> obstGeoms) {
+		Coordinate maLoc = ped.getLoc();
+		double dmax = GlobalVars.pedDmax/GlobalVars.spaceScale;
+		
+		// Initialise distance to nearest object as the max distance in the field of vision
+		double d = dmax;
+		
+		LineString sampledRay = GISFunctions.linestringRay(maLoc, alpha, dmax);
+		
+		for (Geometry obstG :obstGeoms) {
+			DistanceOp distOP = new DistanceOp(obstG, sampledRay);
+			int i=0;
+			while (Double.compare(distOP.distance(), 0.0) == 0) {
+				// When distance is zero geometries overlap. Shorten the ray up to the intersection point DistanceOp found and
+				// re run until the distance is non zero, meaning that the nearest intersecting coord is found.
+				Coordinate intersectingCoord = distOP.nearestPoints()[1];
+				d = maLoc.distance(intersectingCoord) - ped.getRad();
+				
+				sampledRay = GISFunctions.linestringRay(maLoc, alpha, d*0.9999);
+				distOP = new DistanceOp(obstG, sampledRay);
+				i++;
+				
+				// Add break clause to avoid infinite loop occuring
+				if (i>100) {
+					d = 0;
+					break;
+				}
+			}
+		}
+		
+		return d;
+	}
+	
+	/*
+	 * Test that the segment ray casting distance to obstructions matches the DistanceOp implementation, for a ped
+	 * next to a wall and a ped far from walls.
+	 */
+	@Test
+	void testSegmentDistanceToObjectMatchesDistanceOp() {
+		Coordinate[] cs = {new Coordinate(530509.6389832983, 180908.11179611267), new Coordinate(530522.0, 180918)};
+		double b = 3.9209401504483683;
+		
+		// Sets up the environment
+		wrapperDispalcementDistancesToGeometries(cs[0], b, true);
+		
+		for (Coordinate c: cs) {
+			Ped ped = createPedAtLocation(false, c, b);
+			Polygon fieldOfVisionApprox = ped.getPedestrianFieldOfVisionPolygon(b);
+			List<Geometry> obstGeoms = ped.getObstacleGeometries(fieldOfVisionApprox, SpaceBuilder.pedObstructGeography);
+			
+			// Sample angles more finely than the ped does
+			for (int i=0; i<360; i++) {
+				double alpha = b - Math.PI + (2*Math.PI*i)/360;
+				double dSegment = ped.distanceToObject(alpha, obstGeoms);
+				double dDistanceOp = distanceToObjectDistanceOp(ped, alpha, obstGeoms);
+				assert Math.abs(dSegment - dDistanceOp) < 0.0001;
+			}
+		}
+	}
+	
+	/*
+	 * Compare the time taken to calculate distances to obstructions using segment ray casting and DistanceOp.
+	 */
+	@Test
+	void benchmarkDistanceToObject() {
+		Coordinate c = new Coordinate(530509.6389832983, 180908.11179611267);
+		double b = 3.9209401504483683;
+		wrapperDispalcementDistancesToGeometries(c, b, true);
+		
+		Ped ped = createPedAtLocation(false, c, b);
+		Polygon fieldOfVisionApprox = ped.getPedestrianFieldOfVisionPolygon(b);
+		List<Geometry> obstGeoms = ped.getObstacleGeometries(fieldOfVisionApprox, SpaceBuilder.pedObstructGeography);
+		List<Double> fovAngles = ped.sampleFoV();
+		
+		int nIter = 10000;
+		double total = 0;
+		
+		// Warm up both implementations
+		for (int n=0; n<nIter; n++) {
+			for (double a: fovAngles) {
+				total += ped.distanceToObject(a, obstGeoms) + distanceToObjectDistanceOp(ped, a, obstGeoms);
+			}
+		}
+		
+		long start = System.nanoTime();
+		for (int n=0; n<nIter; n++) {
+			for (double a: fovAngles) {
+				total += distanceToObjectDistanceOp(ped, a, obstGeoms);
+			}
+		}
+		long durDistanceOp = System.nanoTime() - start;
+		
+		start = System.nanoTime();
+		for (int n=0; n<nIter; n++) {
+			for (double a: fovAngles) {
+				total += ped.distanceToObject(a, obstGeoms);
+			}
+		}
+		long durSegment = System.nanoTime() - start;
+		
+		System.out.print("distanceToObject ns/call DistanceOp: " + (durDistanceOp / (nIter*fovAngles.size())) + " segments: " + (durSegment / (nIter*fovAngles.size())) + " (" + total + ")\n");
+	}
+	
+	/*
+	 * Create peds around the ego ped, walking towards it, so that some sampled bearings are blocked by peds.
+	 */
+	List<Ped> createPedsAroundPed(Ped ped) {
+		List<Ped> peds = new ArrayList<Ped>();
+		double[][] offsets = {{1.5, 1.0}, {-1.0, 2.0}, {0.0, -2.5}, {2.0, -0.5}};
+		for (double[] o: offsets) {
+			Coordinate c = new Coordinate(ped.getLoc().x + o[0], ped.getLoc().y + o[1]);
+			Ped p = createPedAtLocation(false, c, 0);
+			double[] v = {-0.3*o[0], -0.3*o[1]};
+			p.setV(v);
+			peds.add(p);
+		}
+		return peds;
+	}
+	
+	/*
+	 * Ped.desiredDirection before the field of vision was sampled from trig tables, as a function of the ped. Samples the field
+	 * of vision as a list of angles and calculates sines and cosines for each angle and ped. Peds created by EnvironmentSetup
+	 * have desired speed GlobalVars.pedVavg.
+	 * 
+	 * @param Ped ped
+	 * @param double a0
+	 * 		The ped's bearing to its destination
+	 * @param Iterable<Geometry> obstGeoms
+	 * @param Iterable<Ped> peds
+	 */
+	static Map<String, Double> desiredDirectionBaseline(Ped ped, double a0, Iterable<Geometry> obstGeoms, Iterable<Ped> peds) {
+		double dmax = GlobalVars.pedDmax/GlobalVars.spaceScale;
+		double v0 = GlobalVars.pedVavg;
+		double angres = (2*Math.PI) / (36 / 3);
+		double theta = (2*Math.PI*75) / 360;
+		Coordinate maLoc = ped.getLoc();
+		
+		// Sample field of vision
+		List<Double> sampledAngles = new ArrayList<Double>();
+		double sampleAngle = ped.getBearing()-theta;
+		double sampleAnglemax = ped.getBearing() + theta;
+		while (sampleAngle <= sampleAnglemax) {
+			sampledAngles.add(sampleAngle);
+			sampleAngle+=angres;
+		}
+		double[] distances = new double[sampledAngles.size()];
+		double[] displacementDistances = new double[sampledAngles.size()];
+		
+		// Distances to obstruction geometries
+		for (int i=0; i<sampledAngles.size(); i++) {
+			double alpha = sampledAngles.get(i);
+			distances[i] = ped.distanceToObject(alpha, obstGeoms);
+			displacementDistances[i] = Math.pow(dmax, 2) + Math.pow(distances[i], 2) - 2*dmax*distances[i]*Math.cos(a0 - alpha);
+		}
+		
+		// Distances to peds
+		for (Ped p: peds) {
+			double[] dR = {maLoc.x - p.getLoc().x, maLoc.y - p.getLoc().y};
+			for (int i=0; i<sampledAngles.size(); i++) {
+				double b = sampledAngles.get(i);
+				double[] vThis = {v0*Math.sin(b), v0*Math.cos(b)};
+				double[] dV = {vThis[0] - p.getV()[0], vThis[1] - p.getV()[1]};
+				double tClosest = -(dR[0] *dV[0] + dR[1] * dV[1]) / ( dV[0]*dV[0] + dV[1]*dV[1]);
+				if (tClosest<0) {
+					tClosest = 0;
+				}
+				double[] futurePLoc = {p.getLoc().x+p.getV()[0]*tClosest, p.getLoc().y+p.getV()[1]*tClosest};
+				double[] futureThisLoc = {maLoc.x+v0*Math.sin(b)*tClosest, maLoc.y+v0*Math.cos(b)*tClosest};
+				double dClosest = Math.sqrt( Math.pow(futureThisLoc[0] - futurePLoc[0], 2) +  Math.pow(futureThisLoc[1] - futurePLoc[1], 2) ) - ped.getRad() - p.getRad();
+				if (dClosest<0) {
+					double fAlpha = v0*tClosest - ped.getRad() - p.getRad();
+					if (fAlpha < distances[i]) {
+						distances[i] = fAlpha;
+						displacementDistances[i] = Math.pow(dmax, 2) + Math.pow(fAlpha, 2) - 2*dmax*fAlpha*Math.cos(a0 - b);
+					}
+				}
+			}
+		}
+		
+		Integer lowi = null;
+		double minDD = Double.MAX_VALUE;
+		for (int i = 0;i<sampledAngles.size(); i++) {
+			if (displacementDistances[i] < 0) {
+				distances[i] = dmax;
+				displacementDistances[i] = Math.pow(dmax, 2) + Math.pow(distances[i], 2) - 2*dmax*distances[i]*Math.cos(a0 - sampledAngles.get(i));
+			}
+			if (displacementDistances[i] < minDD) {
+				minDD = displacementDistances[i];
+				lowi = i;
+			}
+		}
+		
+		Map<String, Double> output = new HashMap<String, Double>();
+		output.put("angle", sampledAngles.get(lowi));
+		output.put("collision_distance", distances[lowi]);
+		output.put("n_samples", (double) sampledAngles.size());
+		return output;
+	}
+	
+	/*
+	 * Check that the array based desired direction gives the same direction, collision distance and number of sampled bearings
+	 * as the baseline implementation for a range of ped bearings, including bearings where rounding drops the last sample.
+	 */
+	@Test
+	void testDesiredDirectionMatchesListImplementation() {
+		Coordinate c = new Coordinate(530509.6389832983, 180908.11179611267);
+		wrapperDispalcementDistancesToGeometries(c, 0, true);
+		
+		Ped ped = createPedAtLocation(false, c, 0);
+		List<Ped> peds = createPedsAroundPed(ped);
+		Coordinate dLoc = ped.getDestination().getGeom().getCentroid().getCoordinate();
+		ped.senseWalk(dLoc);
+		double a0 = ped.getBearingToDestinationCoord(dLoc);
+		
+		int nShort = 0;
+		for (int i=0; i<360; i++) {
+			double b = (2*Math.PI*i)/360;
+			ped.setBearing(b);
+			Polygon fieldOfVisionApprox = ped.getPedestrianFieldOfVisionPolygon(b);
+			List<Geometry> obstGeoms = ped.getObstacleGeometries(fieldOfVisionApprox, SpaceBuilder.pedObstructGeography);
+			
+			Map<String, Double> expected = desiredDirectionBaseline(ped, a0, obstGeoms, peds);
+			Map<String, Double> actual = ped.desiredDirection(obstGeoms, peds);
+			
+			assert expected.get("n_samples").intValue() == ped.getNFoVSamples();
+			assert ped.sampleFoV().size() == ped.getNFoVSamples();
+			if (ped.getNFoVSamples() < 6) {
+				nShort++;
+			}
+			assert Math.abs(expected.get("angle") - actual.get("angle")) < 0.000001;
+			assert Math.abs(expected.get("collision_distance") - actual.get("collision_distance")) < 0.000001;
+		}
+		
+		// Both sample counts occur across these bearings
+		assert (nShort > 0) && (nShort < 360);
+	}
+	
+	/*
+	 * Compare the time taken to find the desired direction using the baseline and array based implementations.
+	 */
+	@Test
+	void benchmarkDesiredDirection() {
+		Coordinate c = new Coordinate(530509.6389832983, 180908.11179611267);
+		double b = 3.9209401504483683;
+		wrapperDispalcementDistancesToGeometries(c, b, true);
+		
+		Ped ped = createPedAtLocation(false, c, b);
+		List<Ped> peds = createPedsAroundPed(ped);
+		Polygon fieldOfVisionApprox = ped.getPedestrianFieldOfVisionPolygon(b);
+		List<Geometry> obstGeoms = ped.getObstacleGeometries(fieldOfVisionApprox, SpaceBuilder.pedObstructGeography);
+		Coordinate dLoc = ped.getDestination().getGeom().getCentroid().getCoordinate();
+		ped.senseWalk(dLoc);
+		double a0 = ped.getBearingToDestinationCoord(dLoc);
+		
+		int nIter = 100000;
+		double total = 0;
+		
+		// Warm up both implementations
+		for (int n=0; n<nIter; n++) {
+			total += desiredDirectionBaseline(ped, a0, obstGeoms, peds).get("angle") + ped.desiredDirectionIndex(obstGeoms, peds);
+		}
+		
+		long start = System.nanoTime();
+		for (int n=0; n<nIter; n++) {
+			total += desiredDirectionBaseline(ped, a0, obstGeoms, peds).get("angle");
+		}
+		long durList = System.nanoTime() - start;
+		
+		start = System.nanoTime();
+		for (int n=0; n<nIter; n++) {
+			total += ped.getFoVAngle(ped.desiredDirectionIndex(obstGeoms, peds));
+		}
+		long durArray = System.nanoTime() - start;
+		
+		System.out.print("desiredDirection ns/call list: " + (durList / nIter) + " arrays: " + (durArray / nIter) + " (" + total + ")\n");
+	}
+	
+	/*
+	 * Check that arrival found using distances to the cached destination envelope matches comparing the ped's geometry
+	 * to the destination geometry.
+	 */
+	@Test
+	void testAtDestinationMatchesGeometryCheck() {
+		Coordinate c = new Coordinate(530509.6389832983, 180908.11179611267);
+		wrapperDispalcementDistancesToGeometries(c, 0, true);
+		
+		Ped ped = EnvironmentSetup.createPedestrian(3,4,false);
+		Geometry dGeom = ped.getDestination().getGeom();
+		Coordinate dLoc = dGeom.getCentroid().getCoordinate();
+		double d = GlobalVars.MOBILE_AGENT_PARAMS.destinationArrivalDistance;
+		
+		int nArrived = 0;
+		for (int i=0; i<60; i++) {
+			double r = i * 0.05;
+			for (int j=0; j<8; j++) {
+				double a = (2*Math.PI*j)/8;
+				
+				// Move the ped towards its destination
+				Point pt = GISFunctions.pointGeometryFromCoordinate(new Coordinate(dLoc.x + r*Math.sin(a), dLoc.y + r*Math.cos(a)));
+				GISFunctions.moveAgentToGeometry(SpaceBuilder.geography, pt.buffer(ped.getRad()), ped);
+				ped.setLoc();
+				
+				Geometry pGeom = GISFunctions.getAgentGeometry(SpaceBuilder.geography, ped);
+				boolean expected = dGeom.isWithinDistance(pGeom, d) || (ped.getDefaultDestination().distance(ped.getLoc()) < d);
+				assert ped.atDestination() == expected;
+				if (expected) {
+					nArrived++;
+				}
+			}
+		}
+		assert nArrived > 0;
+	}
+	
+	/*
+	 * Check that translating the ped's circle gives the same geometry and contacts as buffering a point.
+	 */
+	@Test
+	void testTranslatedPedGeometryMatchesBuffer() {
+		Coordinate c = new Coordinate(530509.6389832983, 180908.11179611267);
+		double b = 3.9209401504483683;
+		wrapperDispalcementDistancesToGeometries(c, b, true);
+		Ped ped = createPedAtLocation(false, c, b);
+		
+		Coordinate[] cs = {c, new Coordinate(530522.0, 180918), new Coordinate(530509.846, 180908.255)};
+		
+		GlobalVars.translatePedGeometry = true;
+		Geometry previous = null;
+		for (Coordinate ci: cs) {
+			Geometry translated = ped.pedGeometryAt(ci);
+			Geometry buffered = GISFunctions.pointGeometryFromCoordinate(ci).buffer(ped.getRad());
+			
+			// Successive geometries are different objects so the one held by the geography is not modified
+			assert translated != previous;
+			
+			Coordinate[] tCoords = translated.getCoordinates();
+			Coordinate[] bCoords = buffered.getCoordinates();
+			assert tCoords.length == bCoords.length;
+			for (int i=0; i<tCoords.length; i++) {
+				assert tCoords[i].distance(bCoords[i]) < 0.000001;
+			}
+			assert translated.getCentroid().getCoordinate().distance(ci) < 0.000001;
+			
+			// Contact with another ped is detected the same way
+			Geometry other = GISFunctions.pointGeometryFromCoordinate(new Coordinate(ci.x + 0.5, ci.y)).buffer(0.4);
+			assert Math.abs(new DistanceOp(translated, other).distance() - new DistanceOp(buffered, other).distance()) < 0.000001;
+			
+			previous = translated;
+		}
+		GlobalVars.translatePedGeometry = false;
+	}
+	
+	/*
+	 * Compare the time and memory allocated when moving a ped by buffering a point and by translating a circle.
+	 */
+	@Test
+	void benchmarkPedGeometryUpdate() {
+		Coordinate c = new Coordinate(530509.6389832983, 180908.11179611267);
+		double b = 3.9209401504483683;
+		wrapperDispalcementDistancesToGeometries(c, b, true);
+		Ped ped = createPedAtLocation(false, c, b);
+		
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+		long threadID = Thread.currentThread().getId();
+		int nIter = 100000;
+		
+		for (boolean translate: new boolean[] {false, true, false, true}) {
+			GlobalVars.translatePedGeometry = translate;
+			long bytesStart = threadBean.getThreadAllocatedBytes(threadID);
+			long start = System.nanoTime();
+			for (int n=0; n<nIter; n++) {
+				Coordinate ci = new Coordinate(c.x + (n % 100) * 0.01, c.y);
+				GISFunctions.moveAgentToGeometry(SpaceBuilder.geography, ped.pedGeometryAt(ci), ped);
+			}
+			long dur = System.nanoTime() - start;
+			long bytes = threadBean.getThreadAllocatedBytes(threadID) - bytesStart;
+			System.out.print("Ped geometry update translate=" + translate + " ns/update: " + (dur / nIter) + " bytes/update: " + (bytes / nIter) + "\n");
+		}
+		GlobalVars.translatePedGeometry = false;
+	}
+	
 	@Test
 	void testDistanceOpDetectsContactWithPed() {
 		
@@ -6,6 +6,10 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -19,6 +23,7 @@ import repast.simphony.space.gis.Geography;
 import repast.simphony.space.gis.GeographyParameters;
 import repast.simphony.space.graph.Network;
 import repast.simphony.space.graph.RepastEdge;
+import repast.simphony.space.graph.ShortestPath;
 import repastInterSim.environment.GISFunctions;
 import repastInterSim.environment.Junction;
 import repastInterSim.environment.NetworkEdge;
@@ -35,6 +40,7 @@ import repastInterSim.environment.contexts.VehicleDestinationContext;
 import repastInterSim.main.GlobalVars;
 import repastInterSim.main.IO;
 import repastInterSim.main.SpaceBuilder;
+import repastInterSim.pathfinding.CompactNetworkRouter;
 import repastInterSim.pathfinding.RoadNetworkRoute;
 
 public class RoadNetworkRouteTest {
@@ -470,5 +476,120 @@ public class RoadNetworkRouteTest {
 		double duration = System.currentTimeMillis() - start;
 		System.out.print("testGetRoadLinkPedestrianRoads() duration: \n" + duration + "\n");
 	}
+	
+	/*
+	 * Test that the compact router finds paths of the same length as the Repast ShortestPath class and that its paths
+	 * connect origin to destination.
+	 */
+	@Test
+	public void testCompactRouterMatchesShortestPath() {
+		List<Junction> junctions = new ArrayList<Junction>();
+		SpaceBuilder.roadNetwork.getNodes().forEach(junctions::add);
+		
+		CompactNetworkRouter<Junction> router = CompactNetworkRouter.getRouter(SpaceBuilder.roadNetwork);
+		assert router == CompactNetworkRouter.getRouter(SpaceBuilder.roadNetwork);
+		assert router.getNodeCount() == junctions.size();
+		
+		int nTest = Math.min(junctions.size(), 30);
+		for (int i=0; i<nTest; i++) {
+			Junction o = junctions.get(i);
+			CompactNetworkRouter<Junction>.ShortestPathTree tree = router.getShortestPathTree(o);
+			ShortestPath<Junction> sp = new ShortestPath<Junction>(SpaceBuilder.roadNetwork);
+			for (int j=0; j<nTest; j++) {
+				Junction d = junctions.get(j);
+				double expected = sp.getPathLength(o, d);
+				double length = tree.getPathLength(d);
+				assert (Double.isInfinite(expected) & Double.isInfinite(length)) | (Math.abs(expected - length) < 0.0000001);
+				
+				// Path edges should join up from origin to destination and sum to the path length
+				if (!Double.isInfinite(length)) {
+					Junction prev = o;
+					double pathLength = 0;
+					for (RepastEdge<Junction> e: tree.getPath(d)) {
+						assert e.getSource().equals(prev);
+						prev = e.getTarget();
+						pathLength += e.getWeight();
+					}
+					assert prev.equals(d);
+					assert Math.abs(pathLength - length) < 0.0000001;
+				}
+			}
+			sp.finalize();
+		}
+	}
+	
+	/*
+	 * Test that the shared router is rebuilt when the network changes.
+	 */
+	@Test
+	public void testCompactRouterInvalidation() {
+		CompactNetworkRouter<Junction> router = CompactNetworkRouter.getRouter(SpaceBuilder.roadNetwork);
+		int nArcs = router.getArcCount();
+		
+		RepastEdge<Junction> e = SpaceBuilder.roadNetwork.getEdges().iterator().next();
+		SpaceBuilder.roadNetwork.removeEdge(e);
+		
+		CompactNetworkRouter<Junction> updated = CompactNetworkRouter.getRouter(SpaceBuilder.roadNetwork);
+		assert updated != router;
+		assert updated.getArcCount() == nArcs - 1;
+	}
+	
+	/*
+	 * Time routing between all pairs of a set of junctions using a new ShortestPath for each pair under the global lock, as
+	 * RoadNetworkRoute used to, and using the compact router from multiple threads.
+	 */
+	@Test
+	public void benchmarkConcurrentRouting() throws Exception {
+		List<Junction> junctions = new ArrayList<Junction>();
+		SpaceBuilder.roadNetwork.getNodes().forEach(junctions::add);
+		List<Junction> ods = junctions.subList(0, Math.min(junctions.size(), 40));
+		
+		long start = System.nanoTime();
+		double totalSP = 0;
+		for (Junction o: ods) {
+			for (Junction d: ods) {
+				synchronized (GlobalVars.TRANSPORT_PARAMS.currentBurglarLock) {
+					ShortestPath<Junction> sp = new ShortestPath<Junction>(SpaceBuilder.roadNetwork);
+					double l = sp.getPathLength(o, d);
+					if (!Double.isInfinite(l)) totalSP += l;
+					sp.finalize();
+				}
+			}
+		}
+		long durationSP = System.nanoTime() - start;
+		
+		CompactNetworkRouter<Junction> router = CompactNetworkRouter.getRouter(SpaceBuilder.roadNetwork);
+		int nThreads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+		List<Callable<Double>> tasks = new ArrayList<Callable<Double>>();
+		for (int t=0; t<nThreads; t++) {
+			final int offset = t;
+			tasks.add(new Callable<Double>() {
+				@Override
+				public Double call() {
+					double total = 0;
+					for (int i=offset; i<ods.size(); i+=nThreads) {
+						CompactNetworkRouter<Junction>.ShortestPathTree tree = router.getShortestPathTree(ods.get(i));
+						for (Junction d: ods) {
+							double l = tree.getPathLength(d);
+							if (!Double.isInfinite(l)) total += l;
+						}
+					}
+					return total;
+				}
+			});
+		}
+		
+		start = System.nanoTime();
+		double totalRouter = 0;
+		for (Future<Double> f: executor.invokeAll(tasks)) {
+			totalRouter += f.get();
+		}
+		long durationRouter = System.nanoTime() - start;
+		executor.shutdown();
+		
+		assert Math.abs(totalSP - totalRouter) < 0.0001;
+		System.out.println("Routing " + ods.size() + "x" + ods.size() + " pairs ShortestPath ms=" + (durationSP / 1e6) + " compact router (" + nThreads + " threads) ms=" + (durationRouter / 1e6));
+	}
 
 }
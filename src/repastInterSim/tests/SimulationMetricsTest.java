@@ -0,0 +1,98 @@
+package repastInterSim.tests;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import repastInterSim.main.SimulationMetrics;
+import repastInterSim.main.SimulationMetrics.Metric;
+
+class SimulationMetricsTest {
+
+	File setUpOutputDirectory() throws Exception {
+		return Files.createTempDirectory("tick_metrics").toFile();
+	}
+
+	void deleteOutputDirectory(File dir) {
+		for (File f: dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+	}
+
+	@Test
+	void testDisabledRecordsNothing() throws Exception {
+		SimulationMetrics.disable();
+
+		assert SimulationMetrics.start() == 0;
+		SimulationMetrics.increment(Metric.SPATIAL_QUERIES);
+		SimulationMetrics.stop(Metric.PED_STEP, 0);
+		assert SimulationMetrics.getCurrent(Metric.SPATIAL_QUERIES) == 0;
+
+		// Nothing is written when disabled
+		File dir = setUpOutputDirectory();
+		SimulationMetrics.enable(dir, "test", 10);
+		SimulationMetrics.disable();
+		SimulationMetrics.endTick(1, 0, 0);
+		SimulationMetrics.flush();
+		assert dir.listFiles().length == 0;
+		deleteOutputDirectory(dir);
+	}
+
+	@Test
+	void testTicksWrittenWhenBufferFull() throws Exception {
+		File dir = setUpOutputDirectory();
+		SimulationMetrics.enable(dir, "test", 4);
+
+		for (int tick=1; tick<=10; tick++) {
+			for (int i=0; i<tick; i++) {
+				SimulationMetrics.increment(Metric.SPATIAL_QUERIES);
+			}
+			long start = SimulationMetrics.start();
+			SimulationMetrics.stop(Metric.VEHICLE_STEP, start);
+			SimulationMetrics.endTick(tick, 2*tick, 3);
+
+			// Rows are only written once the buffer is full
+			if (tick < 4) {
+				assert !SimulationMetrics.getCSVFile().exists();
+			}
+		}
+
+		// Counts are reset at the end of each tick
+		assert SimulationMetrics.getCurrent(Metric.SPATIAL_QUERIES) == 0;
+
+		assert Files.readAllLines(SimulationMetrics.getCSVFile().toPath()).size() == 1 + 8;
+		SimulationMetrics.flush();
+
+		List<String> lines = Files.readAllLines(SimulationMetrics.getCSVFile().toPath());
+		assert lines.size() == 1 + 10;
+
+		String[] header = lines.get(0).split(",");
+		int iQueries = -1;
+		int iPeds = -1;
+		for (int i=0; i<header.length; i++) {
+			if (header[i].contentEquals(Metric.SPATIAL_QUERIES.getColumnName())) {
+				iQueries = i;
+			}
+			else if (header[i].contentEquals("n_peds")) {
+				iPeds = i;
+			}
+		}
+		for (int tick=1; tick<=10; tick++) {
+			String[] row = lines.get(tick).split(",");
+			assert row.length == header.length;
+			assert Long.parseLong(row[0]) == tick;
+			assert Long.parseLong(row[iQueries]) == tick;
+			assert Long.parseLong(row[iPeds]) == 2*tick;
+		}
+
+		String summary = new String(Files.readAllBytes(SimulationMetrics.getJSONFile().toPath()));
+		assert summary.contains("\"ticks\": 10");
+		assert summary.contains("\"spatial_queries\": {\"total\": 55, \"mean\": 5.5}");
+
+		SimulationMetrics.disable();
+		deleteOutputDirectory(dir);
+	}
+}
@@ -0,0 +1,187 @@
+package repastInterSim.tests;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+
+import repastInterSim.environment.GISFunctions;
+import repastInterSim.environment.Road;
+import repastInterSim.environment.SpatialIndexManager;
+import repastInterSim.main.GlobalVars;
+import repastInterSim.main.SpaceBuilder;
+
+class SpatialIndexManagerTest {
+
+	void setUp() {
+		try {
+			EnvironmentSetup.setUpProperties();
+			EnvironmentSetup.setUpObjectGeography();
+			EnvironmentSetup.setUpRoads();
+			EnvironmentSetup.setUpPedObstructions();
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		} catch (Exception e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+
+	List<Coordinate> queryCoordinates() {
+		List<Coordinate> coords = new ArrayList<Coordinate>();
+		for (Road r: SpaceBuilder.roadGeography.getAllObjects()) {
+			coords.add(r.getGeom().getCentroid().getCoordinate());
+		}
+		return coords;
+	}
+
+	/*
+	 * Run a fixed number of road lookups and obstruction searches split across nThreads. Returns the elapsed time in nanoseconds.
+	 */
+	long timeQueries(List<Coordinate> coords, int nThreads, int nQueries) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for (int t=0; t<nThreads; t++) {
+			final int offset = t;
+			tasks.add(new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					int nFound = 0;
+					for (int i=offset; i<nQueries; i+=nThreads) {
+						Coordinate c = coords.get(i % coords.size());
+						nFound += SpatialIndexManager.findIntersectingObjects(SpaceBuilder.roadGeography, c).size();
+						Geometry pt = GISFunctions.pointGeometryFromCoordinate(c).buffer(10);
+						nFound += SpatialIndexManager.searchGeoms(SpaceBuilder.pedObstructGeography, pt).size();
+					}
+					return nFound;
+				}
+			});
+		}
+
+		long start = System.nanoTime();
+		for (Future<Integer> f: executor.invokeAll(tasks)) {
+			f.get();
+		}
+		long duration = System.nanoTime() - start;
+		executor.shutdown();
+		return duration;
+	}
+
+	@Test
+	void testFrozenQueriesMatchMutableQueries() {
+		setUp();
+
+		List<Coordinate> coords = queryCoordinates();
+
+		List<List<Road>> mutableResults = new ArrayList<List<Road>>();
+		List<Road> mutableNearest = new ArrayList<Road>();
+		for (Coordinate c: coords) {
+			mutableResults.add(SpatialIndexManager.findIntersectingObjects(SpaceBuilder.roadGeography, c));
+			mutableNearest.add(SpatialIndexManager.findNearestObject(SpaceBuilder.roadGeography, c, null, GlobalVars.GEOGRAPHY_PARAMS.BUFFER_DISTANCE.SMALLPLUS));
+		}
+
+		assert SpatialIndexManager.isFrozen(SpaceBuilder.roadGeography) == false;
+		SpatialIndexManager.freezeIndices();
+		assert SpatialIndexManager.isFrozen(SpaceBuilder.roadGeography);
+		assert SpatialIndexManager.isFrozen(SpaceBuilder.pedObstructGeography);
+
+		for (int i=0; i<coords.size(); i++) {
+			Coordinate c = coords.get(i);
+			assert SpatialIndexManager.findIntersectingObjects(SpaceBuilder.roadGeography, c).equals(mutableResults.get(i));
+			assert SpatialIndexManager.findNearestObject(SpaceBuilder.roadGeography, c, null, GlobalVars.GEOGRAPHY_PARAMS.BUFFER_DISTANCE.SMALLPLUS) == mutableNearest.get(i);
+		}
+	}
+
+	@Test
+	void testPreparedContainsMatchesGeometryContains() {
+		setUp();
+
+		List<Coordinate> coords = queryCoordinates();
+		List<List<Road>> mutableResults = new ArrayList<List<Road>>();
+		for (Coordinate c: coords) {
+			Geometry pt = GISFunctions.pointGeometryFromCoordinate(c);
+			mutableResults.add(SpatialIndexManager.findIntersectingObjects(SpaceBuilder.roadGeography, pt, "contains"));
+		}
+
+		SpatialIndexManager.freezeIndices();
+
+		for (int i=0; i<coords.size(); i++) {
+			Geometry pt = GISFunctions.pointGeometryFromCoordinate(coords.get(i));
+			assert SpatialIndexManager.findIntersectingObjects(SpaceBuilder.roadGeography, pt, "contains").equals(mutableResults.get(i));
+		}
+	}
+
+	/*
+	 * Road lookup benchmark. Times finding the road at a coordinate on a single thread using the geometries of a mutable
+	 * index and then the prepared geometries of a frozen index.
+	 */
+	@Test
+	void benchmarkRoadLookup() throws Exception {
+		setUp();
+
+		List<Coordinate> coords = queryCoordinates();
+		int nQueries = 100000;
+
+		long[] durations = new long[2];
+		for (int f=0; f<2; f++) {
+			if (f==1) {
+				SpatialIndexManager.freezeIndices();
+			}
+
+			// Warm up
+			for (int i=0; i<nQueries; i++) {
+				GISFunctions.getCoordinateRoad(coords.get(i % coords.size()), SpaceBuilder.roadGeography);
+			}
+
+			long start = System.nanoTime();
+			for (int i=0; i<nQueries; i++) {
+				GISFunctions.getCoordinateRoad(coords.get(i % coords.size()), SpaceBuilder.roadGeography);
+			}
+			durations[f] = System.nanoTime() - start;
+		}
+
+		System.out.println("getCoordinateRoad ns/call geometry: " + (durations[0] / nQueries) + " prepared: " + (durations[1] / nQueries) + " speed up: " + ((double) durations[0] / durations[1]));
+	}
+
+	/*
+	 * Contention benchmark. Times the same number of queries spread over 1 to 32 threads, using locked (mutable) indices
+	 * and then lock free (frozen) indices.
+	 */
+	@Test
+	void benchmarkQueryContention() throws Exception {
+		setUp();
+
+		List<Coordinate> coords = queryCoordinates();
+		int nQueries = 20000;
+		int[] nThreads = {1, 2, 4, 8, 16, 32};
+
+		// Warm up
+		timeQueries(coords, 1, nQueries);
+
+		long[] mutableTimes = new long[nThreads.length];
+		for (int i=0; i<nThreads.length; i++) {
+			mutableTimes[i] = timeQueries(coords, nThreads[i], nQueries);
+		}
+
+		SpatialIndexManager.freezeIndices();
+		timeQueries(coords, 1, nQueries);
+
+		long[] frozenTimes = new long[nThreads.length];
+		for (int i=0; i<nThreads.length; i++) {
+			frozenTimes[i] = timeQueries(coords, nThreads[i], nQueries);
+		}
+
+		for (int i=0; i<nThreads.length; i++) {
+			System.out.println("SpatialIndexManager threads=" + nThreads[i] + " mutable ms=" + (mutableTimes[i] / 1e6) + " frozen ms=" + (frozenTimes[i] / 1e6));
+		}
+	}
+}
@@ -0,0 +1,223 @@
+package repastInterSim.tests;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+import repastInterSim.environment.Junction;
+import repastInterSim.environment.OD;
+import repastInterSim.environment.RoadLink;
+import repastInterSim.main.SpaceBuilder;
+import repastInterSim.pathfinding.PedPathFinder;
+import repastInterSim.pathfinding.RoadNetworkRoute;
+import repastInterSim.pathfinding.StrategicPathCache;
+
+class StrategicPathCacheTest {
+
+	void setUpEnvironment() {
+		try {
+			EnvironmentSetup.setUpProperties();
+			EnvironmentSetup.setUpObjectGeography();
+
+			EnvironmentSetup.setUpRoads();
+
+			EnvironmentSetup.setUpORRoadLinks();
+			EnvironmentSetup.setUpORRoadNetwork(false);
+
+			EnvironmentSetup.setUpPedJunctions();
+			EnvironmentSetup.setUpPavementLinks("pedNetworkLinks.shp");
+			EnvironmentSetup.setUpPavementNetwork();
+
+			EnvironmentSetup.setUpPedODs();
+
+			EnvironmentSetup.assocaiteRoadsWithRoadLinks();
+
+		} catch (Exception e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+
+	OD getOD(int id) {
+		for (OD od : SpaceBuilder.pedestrianDestinationGeography.getAllObjects()) {
+			if (od.getId() == id) {
+				return od;
+			}
+		}
+		return null;
+	}
+
+	List<String> fids(List<RoadLink> sP) {
+		List<String> ids = new ArrayList<String>();
+		for (RoadLink rl: sP) {
+			ids.add(rl.getFID());
+		}
+		return ids;
+	}
+
+	@Test
+	void testCachedPathMatchesPlannedPath() {
+		setUpEnvironment();
+		OD o = getOD(5);
+		OD d = getOD(2);
+
+		PedPathFinder ppf1 = new PedPathFinder(o, d, SpaceBuilder.pavementJunctionGeography, SpaceBuilder.pavementNetwork, true);
+		assert StrategicPathCache.getMisses() == 1;
+		assert StrategicPathCache.getHits() == 0;
+
+		PedPathFinder ppf2 = new PedPathFinder(o, d, SpaceBuilder.pavementJunctionGeography, SpaceBuilder.pavementNetwork, true);
+		assert StrategicPathCache.getHits() == 1;
+
+		assert fids(ppf1.getStrategicPath()).equals(fids(ppf2.getStrategicPath()));
+		assert ppf1.getStartPavementJunction().getFID().contentEquals(ppf2.getStartPavementJunction().getFID());
+		assert ppf1.getDestPavementJunction().getFID().contentEquals(ppf2.getDestPavementJunction().getFID());
+
+		// Each path finder has its own copy of the path
+		ppf2.getStrategicPath().remove(0);
+		assert ppf1.getStrategicPath().size() == ppf2.getStrategicPath().size() + 1;
+	}
+
+	@Test
+	void testLeastRecentlyUsedPathRemoved() {
+		setUpEnvironment();
+		StrategicPathCache.setCapacity(2);
+
+		List<RoadLink> sP = new ArrayList<RoadLink>();
+		SpaceBuilder.orRoadLinkGeography.getAllObjects().forEach(sP::add);
+		Junction j = SpaceBuilder.pavementJunctionGeography.getAllObjects().iterator().next();
+		Coordinate c = new Coordinate(0, 0);
+
+		StrategicPathCache.put("o1", c, "d1", c, SpaceBuilder.orRoadLinkGeography, SpaceBuilder.pavementJunctionGeography, sP, j, j);
+		StrategicPathCache.put("o2", c, "d2", c, SpaceBuilder.orRoadLinkGeography, SpaceBuilder.pavementJunctionGeography, sP, j, j);
+
+		// Use the first path so that the second is the least recently used
+		assert StrategicPathCache.get("o1", c, "d1", c, SpaceBuilder.orRoadLinkGeography, SpaceBuilder.pavementJunctionGeography) != null;
+		StrategicPathCache.put("o3", c, "d3", c, SpaceBuilder.orRoadLinkGeography, SpaceBuilder.pavementJunctionGeography, sP, j, j);
+
+		assert StrategicPathCache.getMemoryCacheSize() == 2;
+		assert StrategicPathCache.get("o1", c, "d1", c, SpaceBuilder.orRoadLinkGeography, SpaceBuilder.pavementJunctionGeography) != null;
+		assert StrategicPathCache.get("o2", c, "d2", c, SpaceBuilder.orRoadLinkGeography, SpaceBuilder.pavementJunctionGeography) == null;
+		assert StrategicPathCache.get("o3", c, "d3", c, SpaceBuilder.orRoadLinkGeography, SpaceBuilder.pavementJunctionGeography) != null;
+
+		StrategicPathCache.setCapacity(1000);
+	}
+
+	/*
+	 * Paths saved to file are used after the in memory cache is cleared, as happens at the start of each run in a batch.
+	 */
+	@Test
+	void testPathsReusedFromFile() throws Exception {
+		setUpEnvironment();
+		File f = File.createTempFile("strategic_path_cache", ".serialised");
+		f.delete();
+		StrategicPathCache.setSerialisedLocation(f);
+
+		OD o = getOD(5);
+		OD d = getOD(2);
+		PedPathFinder ppf1 = new PedPathFinder(o, d, SpaceBuilder.pavementJunctionGeography, SpaceBuilder.pavementNetwork, true);
+
+		// Clearing caches writes the paths to file
+		StrategicPathCache.clearCaches();
+		assert f.exists();
+
+		StrategicPathCache.setSerialisedLocation(f);
+		PedPathFinder ppf2 = new PedPathFinder(o, d, SpaceBuilder.pavementJunctionGeography, SpaceBuilder.pavementNetwork, true);
+		assert StrategicPathCache.getHits() == 1;
+		assert StrategicPathCache.getMisses() == 0;
+		assert fids(ppf1.getStrategicPath()).equals(fids(ppf2.getStrategicPath()));
+
+		StrategicPathCache.clearCaches();
+		f.delete();
+	}
+
+	/*
+	 * Moving an origin or destination without changing its FID means the path is planned again rather than reused, from memory
+	 * or from file.
+	 */
+	@Test
+	void testPathReplannedWhenODMoves() throws Exception {
+		setUpEnvironment();
+		File f = File.createTempFile("strategic_path_cache", ".serialised");
+		f.delete();
+		StrategicPathCache.setSerialisedLocation(f);
+
+		OD o = getOD(5);
+		OD d = getOD(2);
+		OD o2 = getOD(1);
+		new PedPathFinder(o, d, SpaceBuilder.pavementJunctionGeography, SpaceBuilder.pavementNetwork, true);
+
+		// Clearing caches writes the path to file
+		StrategicPathCache.clearCaches();
+		StrategicPathCache.setSerialisedLocation(f);
+
+		// Give the origin the location of another origin
+		Geometry g = o.getGeom();
+		o.setGeom(o2.getGeom());
+		PedPathFinder moved = new PedPathFinder(o, d, SpaceBuilder.pavementJunctionGeography, SpaceBuilder.pavementNetwork, true);
+		assert StrategicPathCache.getHits() == 0;
+		assert StrategicPathCache.getMisses() == 1;
+
+		// The path is the path planned from the other origin
+		PedPathFinder expected = new PedPathFinder(o2, d, SpaceBuilder.pavementJunctionGeography, SpaceBuilder.pavementNetwork, true);
+		assert fids(moved.getStrategicPath()).equals(fids(expected.getStrategicPath()));
+
+		// Moved back, the path saved to file is used again
+		o.setGeom(g);
+		new PedPathFinder(o, d, SpaceBuilder.pavementJunctionGeography, SpaceBuilder.pavementNetwork, true);
+		assert StrategicPathCache.getHits() == 1;
+
+		StrategicPathCache.clearCaches();
+		f.delete();
+	}
+
+	/*
+	 * Editing a road link's geometry without changing its FID changes the network checksum, so saved paths are not reused.
+	 */
+	@Test
+	void testChecksumChangesWithGeometry() {
+		setUpEnvironment();
+		long checksum = StrategicPathCache.calculateNetworkChecksum(SpaceBuilder.orRoadLinkGeography, SpaceBuilder.pavementJunctionGeography);
+		assert checksum == StrategicPathCache.calculateNetworkChecksum(SpaceBuilder.orRoadLinkGeography, SpaceBuilder.pavementJunctionGeography);
+
+		RoadLink rl = SpaceBuilder.orRoadLinkGeography.getAllObjects().iterator().next();
+		Geometry g = rl.getGeom();
+		Coordinate[] ends = {g.getCoordinates()[0], new Coordinate(g.getCoordinates()[0].x + 1, g.getCoordinates()[0].y + 1)};
+		rl.setGeom(new GeometryFactory().createLineString(ends));
+		assert checksum != StrategicPathCache.calculateNetworkChecksum(SpaceBuilder.orRoadLinkGeography, SpaceBuilder.pavementJunctionGeography);
+
+		rl.setGeom(g);
+		assert checksum == StrategicPathCache.calculateNetworkChecksum(SpaceBuilder.orRoadLinkGeography, SpaceBuilder.pavementJunctionGeography);
+	}
+
+	/*
+	 * Time planning strategic paths for pedestrians repeatedly created between the same origin and destination.
+	 */
+	@Test
+	void benchmarkStrategicPathPlanning() throws Exception {
+		setUpEnvironment();
+		OD o = getOD(5);
+		OD d = getOD(2);
+
+		int nPeds = 200;
+		long start = System.nanoTime();
+		for (int i=0; i<nPeds; i++) {
+			RoadNetworkRoute rnr = new RoadNetworkRoute(o.getGeom().getCoordinate(), d.getGeom().getCoordinate());
+			rnr.setRoadLinkRoute(SpaceBuilder.pavementJunctionGeography, SpaceBuilder.pavementNetwork);
+		}
+		long uncachedDuration = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i=0; i<nPeds; i++) {
+			new PedPathFinder(o, d, SpaceBuilder.pavementJunctionGeography, SpaceBuilder.pavementNetwork, true);
+		}
+		long cachedDuration = System.nanoTime() - start;
+
+		System.out.println("Strategic path planning nPeds=" + nPeds + " uncached ms/ped=" + (uncachedDuration / 1e6 / nPeds) + " cached ms/ped=" + (cachedDuration / 1e6 / nPeds));
+	}
+}
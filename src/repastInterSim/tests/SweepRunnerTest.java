@@ -0,0 +1,79 @@
+package repastInterSim.tests;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import repastInterSim.main.SweepRunner;
+import repastInterSim.main.SweepRunner.SweepPoint;
+
+class SweepRunnerTest {
+
+	@Test
+	void testUnrollSweep() throws Exception {
+		List<SweepPoint> points = SweepRunner.unrollSweep(new File(".//batch//batch_params_sig_spatial.xml"));
+
+		// Four constants, one single valued list and three lists with two values each
+		assert points.size() == 8;
+		for (SweepPoint p: points) {
+			assert p.getValues().size() == 8;
+			assert p.getValues().get("addPedTicks").contentEquals("50");
+			assert p.getValues().get("epsilon").contentEquals("4");
+			assert p.getType("addVehicleTicks").contentEquals("int");
+		}
+
+		// The most nested parameter varies fastest
+		assert points.get(0).getValues().get("addVehicleTicks").contentEquals("10");
+		assert points.get(1).getValues().get("addVehicleTicks").contentEquals("50");
+		assert points.get(0).getValues().get("lambda").contentEquals("0.1");
+		assert points.get(7).getValues().get("lambda").contentEquals("1");
+
+		// Each point is a distinct combination of values
+		for (int i=0; i<points.size(); i++) {
+			for (int j=i+1; j<points.size(); j++) {
+				assert !points.get(i).getValues().equals(points.get(j).getValues());
+			}
+		}
+	}
+
+	@Test
+	void testPointSweepFileIsConstant() throws Exception {
+		List<SweepPoint> points = SweepRunner.unrollSweep(new File(".//batch//batch_params_sig_spatial.xml"));
+
+		File f = File.createTempFile("sweep_point", ".xml");
+		FileWriter writer = new FileWriter(f);
+		writer.append(points.get(5).toSweepXML());
+		writer.close();
+
+		List<SweepPoint> reread = SweepRunner.unrollSweep(f);
+		assert reread.size() == 1;
+		Map<String, String> values = reread.get(0).getValues();
+		assert values.equals(points.get(5).getValues());
+		f.delete();
+	}
+
+	@Test
+	void testPointScenarioWritesToPointDirectory() throws Exception {
+		File scenarioDir = new File(".//repastInterSim.rs");
+		File pointDir = Files.createTempDirectory("sweep_point").toFile();
+		File copy = SweepRunner.createPointScenario(scenarioDir, pointDir);
+
+		assert copy.getName().contentEquals(scenarioDir.getName());
+		assert new File(copy, "scenario.xml").exists();
+		assert new File(copy, "styles").listFiles().length == new File(scenarioDir, "styles").listFiles().length;
+
+		// File sinks write to the point directory
+		String sink = new String(Files.readAllBytes(new File(copy, "repast.simphony.action.file_sink_3.xml").toPath()), StandardCharsets.UTF_8);
+		String expected = new File(pointDir, "pedestrian_locations.csv").getAbsolutePath();
+		assert sink.contains("<fileName>" + expected + "</fileName>");
+
+		// Class path entries still point at the model's classes
+		String userPath = new String(Files.readAllBytes(new File(copy, "user_path.xml").toPath()), StandardCharsets.UTF_8);
+		assert userPath.contains("path=\"" + new File(scenarioDir, "../bin").getCanonicalPath() + "\"");
+	}
+}
@@ -0,0 +1,142 @@
+package repastInterSim.tests;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+
+import repastInterSim.util.UniformGridIndex;
+
+class UniformGridIndexTest {
+
+	double cellSize = 10.0;
+	double areaSize = 500.0;
+
+	List<Coordinate> randomCoordinates(int n, Random rand) {
+		List<Coordinate> coords = new ArrayList<Coordinate>();
+		for (int i=0; i<n; i++) {
+			coords.add(new Coordinate(rand.nextDouble()*areaSize - areaSize/2, rand.nextDouble()*areaSize - areaSize/2));
+		}
+		return coords;
+	}
+
+	UniformGridIndex<Coordinate> buildIndex(List<Coordinate> coords) {
+		UniformGridIndex<Coordinate> index = new UniformGridIndex<Coordinate>(cellSize);
+		for (Coordinate c: coords) {
+			index.put(c, c.x, c.y);
+		}
+		return index;
+	}
+
+	@Test
+	void testQueryContainsAllWithinEnvelope() {
+		Random rand = new Random(1);
+		List<Coordinate> coords = randomCoordinates(2000, rand);
+		UniformGridIndex<Coordinate> index = buildIndex(coords);
+
+		assert index.size() == coords.size();
+
+		for (int q=0; q<100; q++) {
+			Coordinate c = coords.get(rand.nextInt(coords.size()));
+			Envelope env = new Envelope(c.x - 11, c.x + 11, c.y - 11, c.y + 11);
+
+			List<Coordinate> candidates = new ArrayList<Coordinate>();
+			index.query(env, 0, candidates);
+			Set<Coordinate> candidateSet = new HashSet<Coordinate>(candidates);
+
+			// Every coordinate within the envelope must be returned as a candidate
+			for (Coordinate other: coords) {
+				if (env.contains(other)) {
+					assert candidateSet.contains(other);
+				}
+			}
+
+			// Candidates only come from the cells overlapping the envelope
+			for (Coordinate cand: candidates) {
+				assert env.distance(new Envelope(cand)) < 2*cellSize;
+			}
+		}
+	}
+
+	@Test
+	void testQueryPadding() {
+		UniformGridIndex<Coordinate> index = new UniformGridIndex<Coordinate>(cellSize);
+		Coordinate c = new Coordinate(25, 25);
+		index.put(c, c.x, c.y);
+
+		Envelope env = new Envelope(0, 5, 0, 5);
+
+		List<Coordinate> candidates = new ArrayList<Coordinate>();
+		index.query(env, 0, candidates);
+		assert candidates.size() == 0;
+
+		index.query(env, 20, candidates);
+		assert candidates.size() == 1;
+	}
+
+	@Test
+	void testClear() {
+		List<Coordinate> coords = randomCoordinates(100, new Random(2));
+		UniformGridIndex<Coordinate> index = buildIndex(coords);
+		index.clear();
+
+		assert index.size() == 0;
+
+		List<Coordinate> candidates = new ArrayList<Coordinate>();
+		index.query(new Envelope(-areaSize, areaSize, -areaSize, areaSize), 0, candidates);
+		assert candidates.size() == 0;
+	}
+
+	/*
+	 * Benchmark of a tick's worth of index use: rebuild followed by a field of vision sized query per item.
+	 *
+	 * Density is held constant as the number of items increases, as in a crowded scenario spread over a larger area,
+	 * so the cost per item should stay roughly constant.
+	 */
+	@Test
+	void benchmarkRebuildAndQueryScaling() {
+		int[] nItems = {100, 1000, 10000};
+		double[] nsPerItem = new double[nItems.length];
+
+		for (int k=0; k<nItems.length; k++) {
+			int n = nItems[k];
+			double side = Math.sqrt(n) * 5; // 25m2 per item
+			Random rand = new Random(3);
+			List<Coordinate> coords = new ArrayList<Coordinate>();
+			for (int i=0; i<n; i++) {
+				coords.add(new Coordinate(rand.nextDouble()*side, rand.nextDouble()*side));
+			}
+
+			UniformGridIndex<Coordinate> index = new UniformGridIndex<Coordinate>(cellSize);
+			List<Coordinate> candidates = new ArrayList<Coordinate>();
+			int nTicks = 20;
+			long start = 0;
+			for (int t=0; t<nTicks*2; t++) {
+				// First half of ticks are warm up
+				if (t==nTicks) {
+					start = System.nanoTime();
+				}
+				index.clear();
+				for (Coordinate c: coords) {
+					index.put(c, c.x, c.y);
+				}
+				for (Coordinate c: coords) {
+					candidates.clear();
+					index.query(new Envelope(c.x - 11, c.x + 11, c.y - 11, c.y + 11), cellSize, candidates);
+				}
+			}
+			long duration = System.nanoTime() - start;
+			nsPerItem[k] = (double) duration / (nTicks * n);
+			System.out.println("UniformGridIndex n=" + n + " ms/tick=" + (duration / 1e6 / nTicks) + " ns/item=" + nsPerItem[k]);
+		}
+
+		// Close to linear growth in per tick cost means per item cost does not grow with n
+		assert nsPerItem[nItems.length-1] < nsPerItem[0] * 10;
+	}
+}
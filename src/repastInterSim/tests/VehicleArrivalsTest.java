@@ -0,0 +1,187 @@
+package repastInterSim.tests;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+import repastInterSim.environment.GISFunctions;
+import repastInterSim.environment.RoadLink;
+import repastInterSim.environment.VehicleArrivals;
+import repastInterSim.environment.VehicleQueue;
+import repastInterSim.main.GlobalVars;
+
+class VehicleArrivalsTest {
+
+	// Straight road link running east, with vehicles spaced along it travelling east (bearing pi/2) or west (bearing 3pi/2)
+	VehicleQueue straightLinkQueue(int nVehicles, double linkLength, boolean east, Random rand) {
+		VehicleQueue q = new VehicleQueue(nVehicles);
+		double spacing = linkLength / nVehicles;
+		for (int i=0; i<nVehicles; i++) {
+			int pos = q.put(null);
+			// First vehicle in the queue is furthest along the link
+			double d = linkLength - (i + rand.nextDouble()) * spacing;
+			double x = east ? d : linkLength - d;
+			q.updateState(pos, x, rand.nextDouble() - 0.5, rand.nextDouble() * 15, east ? Math.PI / 2 : 3 * Math.PI / 2);
+		}
+		return q;
+	}
+
+	@Test
+	void testMatchesBearingCountOnStraightLink() {
+		Random rand = new Random(1);
+		Coordinate[] linkCoords = {new Coordinate(0, 0), new Coordinate(40, 0), new Coordinate(100, 0)};
+		for (boolean east: new boolean[] {true, false}) {
+			for (int t=0; t<20; t++) {
+				VehicleQueue q = straightLinkQueue(1 + rand.nextInt(25), 100, east, rand);
+				VehicleArrivals va = new VehicleArrivals(q, linkCoords);
+
+				// Crossing point at the edge of the road
+				double cx = rand.nextDouble() * 100;
+				double cy = 3 + rand.nextDouble();
+				double crossingTime = rand.nextDouble() * 5;
+				assert va.countReachingWithin(cx, cy, crossingTime) == q.countReachingWithin(cx, cy, crossingTime);
+			}
+		}
+	}
+
+	@Test
+	void testRebuiltWhenQueueChanges() {
+		Coordinate[] linkCoords = {new Coordinate(0, 0), new Coordinate(0, 50), new Coordinate(50, 50)};
+		VehicleQueue q = new VehicleQueue(5);
+		VehicleArrivals va = new VehicleArrivals(q, linkCoords);
+		assert va.getLength() == 100;
+		assert va.countReachingWithin(20, 52, 2.5) == 0;
+
+		// Vehicle heading north on the first segment, 30m along the link, reaches 70m along the link within 2.5s
+		int p1 = q.put(null);
+		q.updateState(p1, 0, 30, 20, 0);
+		assert va.countReachingWithin(20, 52, 2.5) == 1;
+		assert va.countReachingWithin(20, 52, 1) == 0;
+
+		// Vehicle going the other way along the link, 90m along it, reaches 70m along the link within 2.5s
+		int p2 = q.put(null);
+		q.updateState(p2, 40, 50, 10, 3 * Math.PI / 2);
+		assert va.countReachingWithin(20, 52, 2.5) == 2;
+
+		// Once past the point vehicles are not counted
+		q.updateState(p1, 30, 50, 20, Math.PI / 2);
+		assert va.countReachingWithin(20, 52, 2.5) == 1;
+		q.take();
+		q.take();
+		assert va.countReachingWithin(20, 52, 2.5) == 0;
+	}
+
+	/*
+	 * By default road links count vehicles from their bearings, giving the same counts as checking each vehicle's location
+	 * and bearing as UnmarkedCrossingAlternative.getvFlow did, including on road links that bend.
+	 */
+	@Test
+	void testRoadLinkCountMatchesBearingCountOnMultiSegmentLink() {
+		assert !GlobalVars.vehicleArrivalSummary;
+
+		Random rand = new Random(3);
+		Coordinate[] linkCoords = {new Coordinate(0, 0), new Coordinate(0, 50), new Coordinate(50, 50), new Coordinate(80, 20)};
+		RoadLink rl = new RoadLink();
+		rl.setGeom(new GeometryFactory().createLineString(linkCoords));
+		VehicleArrivals va = rl.getVehicleArrivals();
+
+		int nVehicles = rl.getQueue().capacity();
+		for (int i=0; i<nVehicles; i++) {
+			// Vehicle on a random segment of the link, heading along the segment in either direction
+			int seg = rand.nextInt(linkCoords.length - 1);
+			Coordinate a = linkCoords[seg];
+			Coordinate b = linkCoords[seg+1];
+			double f = rand.nextDouble();
+			double x = a.x + f*(b.x - a.x);
+			double y = a.y + f*(b.y - a.y);
+			double bearing = rand.nextBoolean() ? GISFunctions.bearingBetweenCoordinates(a, b) : GISFunctions.bearingBetweenCoordinates(b, a);
+			int pos = rl.getQueue().put(null);
+			rl.getQueue().updateState(pos, x, y, rand.nextDouble() * 15, bearing);
+		}
+
+		int nDiffer = 0;
+		for (int t=0; t<200; t++) {
+			// Crossing point at the edge of the road next to a random point on the link
+			int seg = rand.nextInt(linkCoords.length - 1);
+			Coordinate a = linkCoords[seg];
+			Coordinate b = linkCoords[seg+1];
+			double f = rand.nextDouble();
+			double len = a.distance(b);
+			Coordinate c = new Coordinate(a.x + f*(b.x - a.x) + 3*(b.y - a.y)/len, a.y + f*(b.y - a.y) - 3*(b.x - a.x)/len);
+			double crossingTime = rand.nextDouble() * 5;
+
+			// Count vehicles using their coordinates, as UnmarkedCrossingAlternative.getvFlow did
+			VehicleQueue q = rl.getQueue();
+			int expected = 0;
+			for (int j=0; j<q.count(); j++) {
+				int vi = (q.readPos() + j) % q.capacity();
+				Coordinate loc = new Coordinate(q.getX(vi), q.getY(vi));
+				double vb = q.getBearing(vi);
+				if (!GISFunctions.coordInFront(loc, vb, c)) {
+					continue;
+				}
+				double travelDist = q.getSpeed(vi) * crossingTime;
+				Coordinate futureLoc = new Coordinate(loc.x + Math.sin(vb)*travelDist, loc.y + Math.cos(vb)*travelDist);
+				if (!GISFunctions.coordInFront(futureLoc, vb, c)) {
+					expected++;
+				}
+			}
+
+			assert rl.countVehiclesReachingWithin(c.x, c.y, crossingTime) == expected;
+			if (va.countReachingWithin(c.x, c.y, crossingTime) != expected) {
+				nDiffer++;
+			}
+		}
+		System.out.println("Vehicle arrival summary counts differing from bearing counts on a bent link: " + nDiffer + "/200");
+	}
+
+	/*
+	 * Time counting the vehicles that will reach crossing points on busy road links, as when vehicles are added every 10 ticks
+	 * (addVehicleTicks=10) and road links fill up. Vehicles move every tick, so the summaries are rebuilt each tick.
+	 */
+	@Test
+	void benchmarkCountReachingWithin() {
+		Random rand = new Random(2);
+		int nLinks = 100;
+		double linkLength = 200;
+		int nVehicles = 50;
+		int nPedQueries = 50; // Crossing alternative flow queries per road link per tick
+		int nTicks = 100;
+		Coordinate[] linkCoords = {new Coordinate(0, 0), new Coordinate(linkLength / 2, 1), new Coordinate(linkLength, 0)};
+
+		VehicleQueue[] queues = new VehicleQueue[nLinks];
+		VehicleArrivals[] arrivals = new VehicleArrivals[nLinks];
+		for (int i=0; i<nLinks; i++) {
+			queues[i] = straightLinkQueue(nVehicles, linkLength, true, rand);
+			arrivals[i] = new VehicleArrivals(queues[i], linkCoords);
+		}
+		double[] cxs = new double[nPedQueries];
+		for (int k=0; k<nPedQueries; k++) {
+			cxs[k] = rand.nextDouble() * linkLength;
+		}
+
+		for (boolean summary: new boolean[] {false, true}) {
+			int total = 0;
+			long start = System.nanoTime();
+			for (int tick=0; tick<nTicks; tick++) {
+				for (int i=0; i<nLinks; i++) {
+					// Vehicle moves
+					queues[i].updateState(queues[i].readPos(), queues[i].getX(queues[i].readPos()), 0, 10, Math.PI / 2);
+					for (int k=0; k<nPedQueries; k++) {
+						if (summary) {
+							total += arrivals[i].countReachingWithin(cxs[k], 3, 4);
+						}
+						else {
+							total += queues[i].countReachingWithin(cxs[k], 3, 4);
+						}
+					}
+				}
+			}
+			long duration = System.nanoTime() - start;
+			System.out.println("Vehicle flow " + (summary ? "arrival summary" : "queue scan") + " nLinks=" + nLinks + " nVehicles=" + nVehicles + " ms/tick=" + (duration / 1e6 / nTicks) + " total=" + total);
+		}
+	}
+}
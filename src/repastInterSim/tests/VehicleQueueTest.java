@@ -0,0 +1,126 @@
+package repastInterSim.tests;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+import repastInterSim.environment.GISFunctions;
+import repastInterSim.environment.VehicleQueue;
+
+class VehicleQueueTest {
+
+	// Fill a queue with vehicle states. Vehicles are null since only the recorded states are used.
+	VehicleQueue randomQueue(int capacity, int nTaken, int nVehicles, Random rand) {
+		VehicleQueue q = new VehicleQueue(capacity);
+		for (int i=0; i<nTaken; i++) {
+			q.put(null);
+			q.take();
+		}
+		for (int i=0; i<nVehicles; i++) {
+			int pos = q.put(null);
+			q.updateState(pos, rand.nextDouble()*100, rand.nextDouble()*100, rand.nextDouble()*15, rand.nextDouble()*2*Math.PI);
+		}
+		return q;
+	}
+
+	@Test
+	void testLeaderAndFollowerPositions() {
+		// Wrap the queue around the end of the buffer
+		VehicleQueue q = new VehicleQueue(5);
+		assert q.backPos() == -1;
+		assert q.leaderPos(0) == -1;
+
+		int[] pos = new int[8];
+		for (int i=0; i<8; i++) {
+			pos[i] = q.put(null);
+			if (i < 5) {
+				q.take();
+			}
+		}
+		// Three vehicles in positions 0, 1, 2 following one another
+		assert q.count() == 3;
+		assert pos[5] == 0;
+		assert q.leaderPos(pos[5]) == -1;
+		assert q.leaderPos(pos[6]) == pos[5];
+		assert q.leaderPos(pos[7]) == pos[6];
+		assert q.followerPos(pos[5]) == pos[6];
+		assert q.followerPos(pos[7]) == -1;
+		assert q.backPos() == pos[7];
+
+		// Leader of the front of the queue is found across the end of the buffer
+		q.take();
+		q.take();
+		q.put(null);
+		q.put(null);
+		q.put(null);
+		assert q.readPos() == 2;
+		assert q.backPos() == 0;
+		assert q.leaderPos(0) == 4;
+		assert q.followerPos(4) == 0;
+		assert q.leaderPos(2) == -1;
+	}
+
+	@Test
+	void testCountReachingWithin() {
+		Random rand = new Random(1);
+		for (int t=0; t<20; t++) {
+			VehicleQueue q = randomQueue(20, rand.nextInt(20), rand.nextInt(20), rand);
+			Coordinate c = new Coordinate(rand.nextDouble()*100, rand.nextDouble()*100);
+			double crossingTime = rand.nextDouble()*10;
+
+			// Count vehicles using their coordinates, as UnmarkedCrossingAlternative.getvFlow did
+			int expected = 0;
+			for (int j=0; j<q.count(); j++) {
+				int vi = (q.readPos() + j) % q.capacity();
+				Coordinate loc = new Coordinate(q.getX(vi), q.getY(vi));
+				double b = q.getBearing(vi);
+				if (!GISFunctions.coordInFront(loc, b, c)) {
+					continue;
+				}
+				double travelDist = q.getSpeed(vi) * crossingTime;
+				Coordinate futureLoc = new Coordinate(loc.x + Math.sin(b)*travelDist, loc.y + Math.cos(b)*travelDist);
+				if (!GISFunctions.coordInFront(futureLoc, b, c)) {
+					expected++;
+				}
+			}
+
+			assert q.countReachingWithin(c.x, c.y, crossingTime) == expected;
+		}
+	}
+
+	@Test
+	void testBearingBetweenCoordinates() {
+		Random rand = new Random(2);
+		for (int t=0; t<100; t++) {
+			Coordinate a = new Coordinate(rand.nextDouble()*100, rand.nextDouble()*100);
+			Coordinate b = new Coordinate(rand.nextDouble()*100, rand.nextDouble()*100);
+			assert GISFunctions.bearingBetweenCoordinates(a, b) == GISFunctions.bearingBetweenCoordinates(a.x, a.y, b.x, b.y);
+		}
+	}
+
+	/*
+	 * Time counting the vehicles approaching a crossing point from the recorded vehicle states.
+	 */
+	@Test
+	void benchmarkCountReachingWithin() {
+		Random rand = new Random(3);
+		int nQueues = 1000;
+		VehicleQueue[] queues = new VehicleQueue[nQueues];
+		for (int i=0; i<nQueues; i++) {
+			queues[i] = randomQueue(50, rand.nextInt(50), rand.nextInt(50), rand);
+		}
+
+		int nQueries = 100;
+		int total = 0;
+		long start = System.nanoTime();
+		for (int k=0; k<nQueries; k++) {
+			for (VehicleQueue q: queues) {
+				total += q.countReachingWithin(50, 50, 5);
+			}
+		}
+		long duration = System.nanoTime() - start;
+		System.out.println("VehicleQueue countReachingWithin nQueues=" + nQueues + " ns/queue=" + (duration / (double) (nQueues * nQueries)) + " total=" + total);
+	}
+}
@@ -2,7 +2,10 @@ package repastInterSim.tests;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.Test;
 
@@ -11,8 +14,12 @@ import com.vividsolutions.jts.geom.Coordinate;
 import repastInterSim.agent.Ped;
 import repastInterSim.agent.Vehicle;
 import repastInterSim.environment.CrossingAlternative;
+import repastInterSim.environment.GISFunctions;
+import repastInterSim.environment.RoadLink;
+import repastInterSim.environment.RoadLinkCrossingAlternatives;
 import repastInterSim.main.GlobalVars;
 import repastInterSim.main.IO;
+import repastInterSim.main.SpaceBuilder;
 
 class VehicleTest {
 	
@@ -113,6 +120,71 @@ class VehicleTest {
 		assert v.getSpeed() == GlobalVars.initialVehicleSpeed + GlobalVars.defaultVehicleAcceleration*GlobalVars.stepToTimeRatio;
 	}
 	
+	/*
+	 * Test that when there is no vehicle ahead on the current road link the vehicle in front is the vehicle at the back of
+	 * the next road link on the route, not the vehicle at the back of the road link after that.
+	 */
+	@Test
+	void testVehicleAtEndOfNextRoadLink() {
+		
+		// Set up environment
+		try {
+			EnvironmentSetup.setUpProperties();
+			EnvironmentSetup.setUpObjectGeography();
+			EnvironmentSetup.setUpRoads();
+			EnvironmentSetup.setUpITNRoadLinks();
+			EnvironmentSetup.setUpORRoadLinks();
+			EnvironmentSetup.setUpVehicleODs("OD_vehicle_nodes_intersect_within.shp");
+			EnvironmentSetup.setUpITNRoadNetwork(true);
+			EnvironmentSetup.setUpCrossingAlternatives("CrossingAlternatives.shp");
+			EnvironmentSetup.assocaiteRoadsWithRoadLinks();
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		} catch (Exception e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+		
+		String originID = "osgb4000000029970681";
+		String destID = "osgb4000000029971717";
+		
+		Vehicle v = EnvironmentSetup.createVehicle(originID, destID);
+		try {
+			v.getRoute().setRoute();
+		} catch (Exception e1) {
+			// TODO Auto-generated catch block
+			e1.printStackTrace();
+		}
+		
+		// Find the next two road links on the route after the current one
+		List<RoadLink> roadsX = v.getRoute().getRoadsX();
+		RoadLink current = roadsX.get(0);
+		RoadLink next = null;
+		RoadLink after = null;
+		for (RoadLink rl: roadsX) {
+			if ( (next == null) && !rl.getFID().contentEquals(current.getFID()) ) {
+				next = rl;
+			}
+			else if ( (next != null) && !rl.getFID().contentEquals(next.getFID()) ) {
+				after = rl;
+				break;
+			}
+		}
+		assert after != null;
+		
+		v.setCurrentRoadLinkAndQueuePos(current);
+		
+		// Vehicles at the back of each of the two road links, at the same location as the vehicle so both are within its perception distance
+		Vehicle leader = EnvironmentSetup.createVehicle(originID, destID);
+		leader.setCurrentRoadLinkAndQueuePos(next);
+		Vehicle other = EnvironmentSetup.createVehicle(originID, destID);
+		other.setCurrentRoadLinkAndQueuePos(after);
+		
+		assert v.getVehicleAtEndOfNextRoadLink() == leader;
+		assert v.getVehicleInFront() == leader;
+	}
+	
 	/*
 	 * Test that leader vehicle is identified when on the same link as follower vehicle. Test that acceleration is set so that follower vehicle
 	 * matches speed of leader after one tick - this is an overly simplistic car following model.
@@ -604,6 +676,16 @@ class VehicleTest {
 		assert cas.size()==1;
 		CrossingAlternative ca = cas.get(0);
 		
+		// The list is shared with other vehicles so can't be modified
+		boolean modified = true;
+		try {
+			cas.remove(0);
+		} catch (UnsupportedOperationException e) {
+			modified = false;
+		}
+		assert !modified;
+		assert cas.size()==1;
+		
 		// Check that while vehicle is further than perception distance away acceleration crossing alternative does not affect acceleration
 		while (v.getLoc().distance(ca.getSignalLoc())>v.getDMax()) {
 			assert v.crossingAlternativeSafeSpeed(cas) == Double.MAX_VALUE;
@@ -643,5 +725,147 @@ class VehicleTest {
 		caSpd = v.crossingAlternativeSafeSpeed(cas); 
 		assert caSpd == Double.MAX_VALUE;
 	}
+	
+	/*
+	 * Benchmark of the crossing alternative part of a vehicle's step as the number of crossing alternatives in the
+	 * study area increases. Additional crossing alternatives are placed on a road link the vehicle does not travel along,
+	 * so the time taken should not increase with their number.
+	 */
+	@Test
+	void benchmarkCrossingAlternativeLookup() {
+		
+		// Setup the environment
+		try {
+			EnvironmentSetup.setUpProperties();
+			EnvironmentSetup.setUpObjectGeography();
+			EnvironmentSetup.setUpRoads();
+			EnvironmentSetup.setUpPedObstructions();
+
+			EnvironmentSetup.setUpORRoadLinks();
+			EnvironmentSetup.setUpORRoadNetwork(false);
+			
+			EnvironmentSetup.setUpITNRoadLinks();
+			EnvironmentSetup.setUpITNRoadNetwork(true);
+			
+			EnvironmentSetup.setUpPedJunctions();
+			EnvironmentSetup.setUpPavementLinks("pedNetworkLinks.shp");
+			EnvironmentSetup.setUpPavementNetwork();
+						
+			EnvironmentSetup.setUpPedODs();
+			EnvironmentSetup.setUpVehicleODs("mastermap-itn RoadNode Intersect Within.shp");
+			
+			EnvironmentSetup.setUpCrossingAlternatives("CrossingAlternatives.shp");
+			
+			EnvironmentSetup.assocaiteRoadsWithRoadLinks();
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		} catch (Exception e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+		
+		Vehicle v = EnvironmentSetup.createVehicle("osgb4000000029970431", "osgb4000000029971717");
+		try {
+			v.step();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		String rlID = v.getRoute().getRoadsX().get(0).getFID();
+		
+		CrossingAlternative caOnLink = v.getRoadLinkCrossingAlterantives(rlID).get(0);
+		
+		int[] nAdditional = {0, 1000, 10000};
+		int nAdded = 0;
+		int nIter = 100000;
+		for (int n: nAdditional) {
+			
+			// Add crossing alternatives on a different road link
+			for (; nAdded<n; nAdded++) {
+				CrossingAlternative ca = new CrossingAlternative();
+				ca.setRoadLinkID("benchmark_or_link");
+				ca.setITNLinkIDs("benchmark_itn_link");
+				SpaceBuilder.caContext.add(ca);
+				GISFunctions.moveAgentToGeometry(SpaceBuilder.caGeography, caOnLink.getGeom(), ca);
+			}
+			RoadLinkCrossingAlternatives.indexCrossingAlternatives(SpaceBuilder.caGeography);
+			assert v.getRoadLinkCrossingAlterantives(rlID).size() == 1;
+			
+			double total = 0;
+			long start = 0;
+			for (int i=0; i<nIter*2; i++) {
+				// First half of iterations are warm up
+				if (i==nIter) {
+					start = System.nanoTime();
+				}
+				List<CrossingAlternative> cas = v.getRoadLinkCrossingAlterantives(rlID);
+				total += v.crossingAlternativeSafeSpeed(cas);
+			}
+			long duration = System.nanoTime() - start;
+			System.out.println("Vehicle crossing alternative lookup nCAs=" + SpaceBuilder.caGeography.size() + " ns/step=" + ((double) duration / nIter) + " (" + total + ")");
+		}
+	}
+
+	/*
+	 * Test that the crossing peds recorded by each road link are the peds on the road link that are crossing, as the ped
+	 * walks along its route and crosses the road.
+	 */
+	@Test
+	void testRoadLinkCrossingPedsMatchPedsOnRoadLink() {
+		
+		// Setup the environment
+		try {
+			EnvironmentSetup.setUpProperties();
+			EnvironmentSetup.setUpObjectGeography();
+			EnvironmentSetup.setUpRoads();
+			EnvironmentSetup.setUpPedObstructions();
+
+			EnvironmentSetup.setUpORRoadLinks();
+			EnvironmentSetup.setUpORRoadNetwork(false);
+			
+			EnvironmentSetup.setUpITNRoadLinks();
+			EnvironmentSetup.setUpITNRoadNetwork(true);
+			
+			EnvironmentSetup.setUpPedJunctions();
+			EnvironmentSetup.setUpPavementLinks("pedNetworkLinks.shp");
+			EnvironmentSetup.setUpPavementNetwork();
+						
+			EnvironmentSetup.setUpPedODs();
+			EnvironmentSetup.setUpVehicleODs("mastermap-itn RoadNode Intersect Within.shp");
+			
+			EnvironmentSetup.setUpCrossingAlternatives("crossing_lines.shp");
+			
+			EnvironmentSetup.assocaiteRoadsWithRoadLinks();
+		} catch (Exception e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+		
+		Ped ped = EnvironmentSetup.createPedestrian(3,4,false);
+		
+		boolean crossed = false;
+		for (int i=0; i<500; i++) {
+			try {
+				ped.step();
+			} catch (Exception e) {
+				// Ped has reached the end of its route
+				break;
+			}
+			
+			for (RoadLink rl: SpaceBuilder.orRoadLinkGeography.getAllObjects()) {
+				Set<Ped> expected = rl.getPeds().stream().filter(p -> p.isCrossing()).collect(Collectors.toSet());
+				assert new HashSet<Ped>(rl.getCrossingPeds()).equals(expected);
+				assert rl.getCrossingPeds().size() == expected.size();
+			}
+			crossed = crossed | ped.isCrossing();
+		}
+		assert crossed;
+		
+		// Removing the ped removes it from the crossing peds
+		ped.tidyForRemoval();
+		for (RoadLink rl: SpaceBuilder.orRoadLinkGeography.getAllObjects()) {
+			assert !rl.getCrossingPeds().contains(ped);
+		}
+	}
 
 }
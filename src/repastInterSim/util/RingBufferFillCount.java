@@ -75,7 +75,7 @@ public class RingBufferFillCount<T> {
 		}
 	}
 	
-	private int endPos() {
+	protected int endPos() {
 		int end = this.writePos - 1;
 		if (end<0) {
 			end+=capacity;
@@ -0,0 +1,110 @@
+package repastInterSim.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/*
+ * A uniform grid (spatial hash) of point locations. Used to index the locations of mobile agents, which change every tick
+ * and so are poorly suited to tree based spatial indices.
+ *
+ * The index is rebuilt by clearing it and re-adding every item. Cell lists are kept between rebuilds so that
+ * rebuilding the index each tick does not allocate once the occupied cells have been created.
+ */
+public class UniformGridIndex<T> {
+
+	private double cellSize;
+	private HashMap<Long, List<T>> cells = new HashMap<Long, List<T>>();
+	private int count = 0;
+
+	/*
+	 * Create a new grid index.
+	 *
+	 * @param cellSize
+	 * 		The width and height of the grid cells. Should be of the order of the typical query size.
+	 */
+	public UniformGridIndex(double cellSize) {
+		if (cellSize <= 0) {
+			throw new IllegalArgumentException("UniformGridIndex: cell size must be positive, got " + cellSize);
+		}
+		this.cellSize = cellSize;
+	}
+
+	/*
+	 * Remove all items from the index.
+	 */
+	public void clear() {
+		for (List<T> cell: this.cells.values()) {
+			cell.clear();
+		}
+		this.count = 0;
+	}
+
+	/*
+	 * Add an item to the index at the location given by x and y.
+	 *
+	 * @param item
+	 * 		The item to add
+	 * @param x
+	 * 		The x coordinate of the item
+	 * @param y
+	 * 		The y coordinate of the item
+	 */
+	public void put(T item, double x, double y) {
+		long key = cellKey(cellIndex(x), cellIndex(y));
+		List<T> cell = this.cells.get(key);
+		if (cell == null) {
+			cell = new ArrayList<T>();
+			this.cells.put(key, cell);
+		}
+		cell.add(item);
+		this.count++;
+	}
+
+	/*
+	 * Add to the output collection the items in all cells that overlap the input envelope expanded by the pad distance.
+	 *
+	 * The result is a superset of the items located within the envelope, callers are expected to apply their own exact filter.
+	 *
+	 * @param env
+	 * 		The envelope to search
+	 * @param pad
+	 * 		Distance by which to expand the search. Used to account for items that have moved since the index was built.
+	 * @param out
+	 * 		The collection to add the candidate items to
+	 */
+	public void query(Envelope env, double pad, Collection<T> out) {
+		int mini = cellIndex(env.getMinX() - pad);
+		int maxi = cellIndex(env.getMaxX() + pad);
+		int minj = cellIndex(env.getMinY() - pad);
+		int maxj = cellIndex(env.getMaxY() + pad);
+
+		for (int i = mini; i <= maxi; i++) {
+			for (int j = minj; j <= maxj; j++) {
+				List<T> cell = this.cells.get(cellKey(i, j));
+				if (cell != null) {
+					out.addAll(cell);
+				}
+			}
+		}
+	}
+
+	public int size() {
+		return this.count;
+	}
+
+	public double getCellSize() {
+		return this.cellSize;
+	}
+
+	private int cellIndex(double v) {
+		return (int) Math.floor(v / this.cellSize);
+	}
+
+	private static long cellKey(int i, int j) {
+		return (((long) i) << 32) | (j & 0xffffffffL);
+	}
+}